@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MimeTypes#detect(InputStream, Metadata)} of the documents of the
+ * {@link SyntheticCorpus}, by their magic bytes only and by their file
+ * name only, known or not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectorBenchmark {
+
+    @Param({"PDF_DENSE_TEXT", "DOCX", "XLSX", "HTML"})
+    public SyntheticCorpus document;
+
+    private MimeTypes mimeTypes;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        mimeTypes = MimeTypes.getDefaultMimeTypes();
+        bytes = document.getBytes();
+    }
+
+    @Benchmark
+    public MediaType detectByMagic() throws Exception {
+        try (InputStream stream = TikaInputStream.get(bytes)) {
+            return mimeTypes.detect(stream, new Metadata());
+        }
+    }
+
+    @Benchmark
+    public MediaType detectByName() throws Exception {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, document.getFileName());
+        return mimeTypes.detect(null, metadata);
+    }
+
+    /**
+     * A name without a known extension, which goes through every glob.
+     */
+    @Benchmark
+    public MediaType detectByUnknownName() throws Exception {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, "report-" + document.name() + ".unknown");
+        return mimeTypes.detect(null, metadata);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses each document of the {@link SyntheticCorpus} with the parser that
+ * handles its type, into XHTML.  The parser is looked up once, so neither
+ * detection nor the {@link AutoDetectParser} dispatch is measured.  PDFs
+ * are parsed without OCR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"PDF_DENSE_TEXT", "PDF_ROTATED_TEXT", "PDF_MANY_FONTS", "DOCX", "XLSX", "HTML"})
+    public SyntheticCorpus document;
+
+    /**
+     * Only applies to the PDFs
+     */
+    @Param({"false"})
+    public boolean detectAngles;
+
+    private byte[] bytes;
+    private Parser parser;
+    private ParseContext context;
+
+    @Setup
+    public void setUp() throws Exception {
+        bytes = document.getBytes();
+        context = new ParseContext();
+        MediaType type = MediaType.parse(document.getMediaType());
+        parser = new AutoDetectParser();
+        while (parser instanceof CompositeParser) {
+            parser = ((CompositeParser) parser).getParsers(context).get(type);
+        }
+        if (parser == null) {
+            throw new IllegalStateException("No parser for " + type);
+        }
+        PDFParserConfig pdfParserConfig = new PDFParserConfig();
+        pdfParserConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.NO_OCR);
+        pdfParserConfig.setDetectAngles(detectAngles);
+        context.set(PDFParserConfig.class, pdfParserConfig);
+    }
+
+    @Benchmark
+    public String parse() throws Exception {
+        ToXMLContentHandler handler = new ToXMLContentHandler();
+        try (InputStream stream = TikaInputStream.get(bytes)) {
+            parser.parse(stream, handler, new Metadata(), context);
+        }
+        return handler.toString();
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+/**
+ * The documents the benchmarks run against.  They are generated from a
+ * fixed seed rather than checked in as binaries, so every run (and every
+ * checkout) measures the same content.  Run {@link #main(String[])} to
+ * write them out, e.g. to look at them or to profile the parsers outside
+ * of JMH.
+ */
+public enum SyntheticCorpus {
+
+    /**
+     * Twenty letter size pages, each filled with 60 lines of small text
+     */
+    PDF_DENSE_TEXT("dense-text.pdf", "application/pdf") {
+        @Override
+        byte[] generate(Random random) throws IOException {
+            try (PDDocument document = new PDDocument()) {
+                for (int i = 0; i < 20; i++) {
+                    PDPage page = new PDPage(PDRectangle.LETTER);
+                    document.addPage(page);
+                    try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                        content.beginText();
+                        content.setFont(PDType1Font.TIMES_ROMAN, 9);
+                        content.setLeading(11);
+                        content.newLineAtOffset(40, 740);
+                        for (int line = 0; line < 60; line++) {
+                            content.showText(words(random, 18));
+                            content.newLine();
+                        }
+                        content.endText();
+                    }
+                }
+                return save(document);
+            }
+        }
+    },
+
+    /**
+     * Five pages of text blocks at several angles, for the angle detection
+     */
+    PDF_ROTATED_TEXT("rotated-text.pdf", "application/pdf") {
+        @Override
+        byte[] generate(Random random) throws IOException {
+            int[] angles = {0, 15, 45, 90, 180, 270};
+            try (PDDocument document = new PDDocument()) {
+                for (int i = 0; i < 5; i++) {
+                    PDPage page = new PDPage(PDRectangle.LETTER);
+                    document.addPage(page);
+                    try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                        for (int a = 0; a < angles.length; a++) {
+                            content.beginText();
+                            content.setFont(PDType1Font.HELVETICA, 10);
+                            Matrix matrix = Matrix.getRotateInstance(Math.toRadians(angles[a]),
+                                    306, 396);
+                            matrix.translate(-150 + 20 * a, -150 + 50 * a);
+                            content.setTextMatrix(matrix);
+                            content.setLeading(12);
+                            for (int line = 0; line < 8; line++) {
+                                content.showText(words(random, 6));
+                                content.newLine();
+                            }
+                            content.endText();
+                        }
+                    }
+                }
+                return save(document);
+            }
+        }
+    },
+
+    /**
+     * Ten pages that switch between the standard 14 fonts, and an embedded
+     * TrueType font, every few words
+     */
+    PDF_MANY_FONTS("many-fonts.pdf", "application/pdf") {
+        @Override
+        byte[] generate(Random random) throws IOException {
+            try (PDDocument document = new PDDocument()) {
+                List<PDFont> fonts = new ArrayList<>();
+                fonts.add(PDType1Font.TIMES_ROMAN);
+                fonts.add(PDType1Font.TIMES_BOLD);
+                fonts.add(PDType1Font.TIMES_ITALIC);
+                fonts.add(PDType1Font.TIMES_BOLD_ITALIC);
+                fonts.add(PDType1Font.HELVETICA);
+                fonts.add(PDType1Font.HELVETICA_BOLD);
+                fonts.add(PDType1Font.HELVETICA_OBLIQUE);
+                fonts.add(PDType1Font.HELVETICA_BOLD_OBLIQUE);
+                fonts.add(PDType1Font.COURIER);
+                fonts.add(PDType1Font.COURIER_BOLD);
+                fonts.add(PDType1Font.COURIER_OBLIQUE);
+                fonts.add(PDType1Font.COURIER_BOLD_OBLIQUE);
+                try (InputStream ttf = PDDocument.class.getResourceAsStream(
+                        "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf")) {
+                    fonts.add(PDType0Font.load(document, ttf));
+                }
+                for (int i = 0; i < 10; i++) {
+                    PDPage page = new PDPage(PDRectangle.LETTER);
+                    document.addPage(page);
+                    try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                        content.beginText();
+                        content.setLeading(14);
+                        content.newLineAtOffset(40, 740);
+                        for (int line = 0; line < 45; line++) {
+                            for (int run = 0; run < 4; run++) {
+                                PDFont font = fonts.get(random.nextInt(fonts.size()));
+                                content.setFont(font, 8 + random.nextInt(5));
+                                content.showText(words(random, 3) + " ");
+                            }
+                            content.newLine();
+                        }
+                        content.endText();
+                    }
+                }
+                return save(document);
+            }
+        }
+    },
+
+    /**
+     * Two hundred styled paragraphs with a table after every twentieth
+     */
+    DOCX("document.docx",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document") {
+        @Override
+        byte[] generate(Random random) throws IOException {
+            try (XWPFDocument document = new XWPFDocument()) {
+                for (int i = 0; i < 200; i++) {
+                    XWPFParagraph paragraph = document.createParagraph();
+                    if (i % 20 == 0) {
+                        paragraph.setStyle("Heading1");
+                    }
+                    for (int r = 0; r < 4; r++) {
+                        XWPFRun run = paragraph.createRun();
+                        run.setBold(r == 1);
+                        run.setItalic(r == 2);
+                        run.setText(words(random, 8) + " ");
+                    }
+                    if (i % 20 == 19) {
+                        XWPFTable table = document.createTable(5, 4);
+                        for (int row = 0; row < 5; row++) {
+                            for (int cell = 0; cell < 4; cell++) {
+                                table.getRow(row).getCell(cell).setText(words(random, 2));
+                            }
+                        }
+                    }
+                }
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                document.write(bos);
+                return bos.toByteArray();
+            }
+        }
+    },
+
+    /**
+     * Three sheets of 500 rows of mixed string, number and formula cells
+     */
+    XLSX("workbook.xlsx",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet") {
+        @Override
+        byte[] generate(Random random) throws IOException {
+            try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+                for (int s = 0; s < 3; s++) {
+                    Sheet sheet = workbook.createSheet("Sheet" + (s + 1));
+                    for (int r = 0; r < 500; r++) {
+                        Row row = sheet.createRow(r);
+                        row.createCell(0).setCellValue(words(random, 3));
+                        row.createCell(1).setCellValue(random.nextInt(100000));
+                        row.createCell(2).setCellValue(random.nextDouble() * 1000);
+                        row.createCell(3).setCellFormula("B" + (r + 1) + "*C" + (r + 1));
+                        row.createCell(4).setCellValue(words(random, 1));
+                    }
+                }
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                workbook.write(bos);
+                return bos.toByteArray();
+            }
+        }
+    },
+
+    /**
+     * A page of headings, paragraphs, links, lists and a table
+     */
+    HTML("page.html", "text/html") {
+        @Override
+        byte[] generate(Random random) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\">");
+            sb.append("<title>").append(words(random, 4)).append("</title></head><body>\n");
+            for (int section = 0; section < 30; section++) {
+                sb.append("<h2>").append(words(random, 3)).append("</h2>\n");
+                for (int p = 0; p < 5; p++) {
+                    sb.append("<p>").append(words(random, 20));
+                    sb.append(" <a href=\"https://example.com/").append(section).append('/')
+                            .append(p).append("\">").append(words(random, 2)).append("</a> ");
+                    sb.append("<b>").append(words(random, 3)).append("</b> ")
+                            .append(words(random, 10)).append("</p>\n");
+                }
+                sb.append("<ul>");
+                for (int li = 0; li < 5; li++) {
+                    sb.append("<li>").append(words(random, 4)).append("</li>");
+                }
+                sb.append("</ul>\n<table>");
+                for (int row = 0; row < 4; row++) {
+                    sb.append("<tr>");
+                    for (int cell = 0; cell < 3; cell++) {
+                        sb.append("<td>").append(words(random, 2)).append("</td>");
+                    }
+                    sb.append("</tr>");
+                }
+                sb.append("</table>\n");
+            }
+            sb.append("</body></html>\n");
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final long SEED = 20200401L;
+
+    private static final String[] WORDS = {
+            "tika", "extracts", "metadata", "and", "text", "from", "over", "a",
+            "thousand", "different", "file", "types", "such", "as", "the", "portable",
+            "document", "format", "spreadsheets", "presentations", "with", "one",
+            "interface", "making", "it", "useful", "for", "search", "engine",
+            "indexing", "content", "analysis", "translation", "much", "more", "of",
+            "page", "paragraph", "line", "glyph", "font", "stream", "parser", "handler"
+    };
+
+    private final String fileName;
+    private final String mediaType;
+    private byte[] bytes;
+
+    SyntheticCorpus(String fileName, String mediaType) {
+        this.fileName = fileName;
+        this.mediaType = mediaType;
+    }
+
+    abstract byte[] generate(Random random) throws IOException;
+
+    /**
+     * @return the bytes of the document; it is generated on first use
+     */
+    public synchronized byte[] getBytes() throws IOException {
+        if (bytes == null) {
+            bytes = generate(new Random(SEED + ordinal()));
+        }
+        return bytes;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (i == 0) {
+                word = word.substring(0, 1).toUpperCase(Locale.ROOT) + word.substring(1);
+            }
+            sb.append(word);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] save(PDDocument document) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        document.save(bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Writes the corpus to the given directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: SyntheticCorpus <output directory>");
+            System.exit(1);
+        }
+        File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        for (SyntheticCorpus document : values()) {
+            Files.write(new File(dir, document.getFileName()).toPath(), document.getBytes());
+        }
+    }
+}
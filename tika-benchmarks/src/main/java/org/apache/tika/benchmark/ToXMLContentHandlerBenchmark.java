@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Sends the SAX events of a page of text lines straight into a
+ * {@link ToXMLContentHandler}: one <code>&lt;p&gt;</code> with a style
+ * attribute per line, as PDF2XHTML writes them, in the XHTML namespace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToXMLContentHandlerBenchmark {
+
+    private static final String XHTML = XHTMLContentHandler.XHTML;
+
+    @Param({"1000"})
+    public int lines;
+
+    @Param({"64", "4096"})
+    public int styleLength;
+
+    private char[] text;
+    private char[] newline;
+    private AttributesImpl empty;
+    private AttributesImpl style;
+
+    @Setup
+    public void setUp() {
+        text = ("Tika extracts metadata & text from over a thousand <different> file "
+                + "types, with one \"interface\".").toCharArray();
+        newline = new char[]{'\n'};
+        empty = new AttributesImpl();
+        char[] value = new char[styleLength];
+        Arrays.fill(value, 'x');
+        String declarations = "font-family: \"Times\"; font-size: 12pt; ";
+        System.arraycopy(declarations.toCharArray(), 0, value, 0,
+                Math.min(declarations.length(), styleLength));
+        style = new AttributesImpl();
+        style.addAttribute("", "style", "style", "CDATA", new String(value));
+    }
+
+    @Benchmark
+    public String write() throws Exception {
+        ToXMLContentHandler handler = new ToXMLContentHandler();
+        handler.startDocument();
+        handler.startPrefixMapping("", XHTML);
+        handler.startElement(XHTML, "html", "html", empty);
+        handler.startElement(XHTML, "body", "body", empty);
+        for (int i = 0; i < lines; i++) {
+            handler.startElement(XHTML, "p", "p", style);
+            handler.characters(text, 0, text.length);
+            handler.endElement(XHTML, "p", "p");
+            handler.ignorableWhitespace(newline, 0, 1);
+        }
+        handler.endElement(XHTML, "body", "body");
+        handler.endElement(XHTML, "html", "html");
+        handler.endPrefixMapping("");
+        handler.endDocument();
+        return handler.toString();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Writes a page of paragraphs, the way the PDF parser does, through an
+ * {@link XHTMLContentHandler} into a {@link ToXMLContentHandler}, without
+ * any parser in front of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XHTMLContentHandlerBenchmark {
+
+    @Param({"1000"})
+    public int paragraphs;
+
+    private char[] text;
+    private Metadata metadata;
+    private AttributesImpl attributes;
+
+    @Setup
+    public void setUp() {
+        text = ("Tika extracts metadata & text from over a thousand <different> file "
+                + "types, with one \"interface\".").toCharArray();
+        metadata = new Metadata();
+        metadata.set(TikaCoreProperties.TITLE, "benchmark");
+        attributes = new AttributesImpl();
+        attributes.addAttribute("", "class", "class", "CDATA", "page");
+    }
+
+    @Benchmark
+    public String write() throws Exception {
+        ToXMLContentHandler handler = new ToXMLContentHandler();
+        XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+        xhtml.startDocument();
+        xhtml.startElement("div", attributes);
+        for (int i = 0; i < paragraphs; i++) {
+            xhtml.startElement("p");
+            xhtml.characters(text, 0, text.length);
+            xhtml.startElement("b");
+            xhtml.characters(text, 0, 10);
+            xhtml.endElement("b");
+            xhtml.characters(" \t ");
+            xhtml.endElement("p");
+        }
+        xhtml.endElement("div");
+        xhtml.endDocument();
+        return handler.toString();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The magic matching of {@link MimeTypes#getMimeType(byte[])} on the
+ * prefixes of the documents of the {@link SyntheticCorpus}: through the
+ * {@link MagicIndex}, and by evaluating every magic in order as it was done
+ * before the index.  In this package, as both are package private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MagicIndexBenchmark {
+
+    @Param({"PDF_DENSE_TEXT", "DOCX", "XLSX", "HTML"})
+    public SyntheticCorpus document;
+
+    private MagicIndex index;
+    private byte[] prefix;
+
+    @Setup
+    public void setUp() throws Exception {
+        MimeTypes mimeTypes = MimeTypes.getDefaultMimeTypes();
+        index = mimeTypes.getMagicIndex();
+        byte[] bytes = document.getBytes();
+        prefix = Arrays.copyOf(bytes, Math.min(bytes.length, mimeTypes.getMinLength()));
+    }
+
+    @Benchmark
+    public List<MimeType> indexed() {
+        return index.match(prefix);
+    }
+
+    @Benchmark
+    public List<MimeType> linear() {
+        return index.matchAll(prefix);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Makes sure the benchmarks measure what they claim to: every document of
+ * the corpus is detected as its type and yields text.
+ */
+public class SyntheticCorpusTest {
+
+    @Test
+    public void testDetectAndParse() throws Exception {
+        for (SyntheticCorpus document : SyntheticCorpus.values()) {
+            DetectorBenchmark detector = new DetectorBenchmark();
+            detector.document = document;
+            detector.setUp();
+            //the magic of the OOXML formats is that of any OOXML package;
+            //only the zip container detector tells them apart
+            String magicType = document.getFileName().endsWith("x")
+                    ? "application/x-tika-ooxml" : document.getMediaType();
+            assertEquals(document.name(), magicType, detector.detectByMagic().toString());
+            assertEquals(document.name(), document.getMediaType(),
+                    detector.detectByName().toString());
+
+            ParserBenchmark parser = new ParserBenchmark();
+            parser.document = document;
+            parser.setUp();
+            String xml = parser.parse();
+            assertTrue(document.name(), xml.contains("<p") || xml.contains("<td>"));
+            assertTrue(document.name(), xml.contains("Tika") || xml.contains("tika"));
+        }
+    }
+
+    @Test
+    public void testRepeatable() throws Exception {
+        ParserBenchmark parser = new ParserBenchmark();
+        parser.document = SyntheticCorpus.PDF_ROTATED_TEXT;
+        parser.detectAngles = true;
+        parser.setUp();
+        assertEquals(parser.parse(), parser.parse());
+    }
+
+    @Test
+    public void testXHTMLContentHandler() throws Exception {
+        XHTMLContentHandlerBenchmark benchmark = new XHTMLContentHandlerBenchmark();
+        benchmark.paragraphs = 3;
+        benchmark.setUp();
+        String xml = benchmark.write();
+        assertTrue(xml.contains("metadata &amp; text from over a thousand &lt;different&gt;"));
+        assertEquals(3, xml.split("<p>", -1).length - 1);
+    }
+}
@@ -19,8 +19,7 @@ package org.apache.tika.detect;
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
+import java.util.BitSet;
 import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -223,6 +222,17 @@ public class MagicDetector implements Detector {
      */
     private final boolean isStringIgnoreCase;
 
+    /**
+     * The compiled regular expression if pattern is one, null otherwise.
+     */
+    private final Pattern regex;
+
+    /**
+     * The bytes that may start a match of the regular expression, or null
+     * if it isn't one or they are unknown.
+     */
+    private final BitSet regexLeadingBytes;
+
     /**
      * Bit mask that is applied to the source bytes before pattern matching.
      */
@@ -341,6 +351,19 @@ public class MagicDetector implements Detector {
 
         this.offsetRangeBegin = offsetRangeBegin;
         this.offsetRangeEnd = offsetRangeEnd;
+
+        if (this.isRegex) {
+            int flags = 0;
+            if (this.isStringIgnoreCase) {
+                flags = Pattern.CASE_INSENSITIVE;
+            }
+            String regex = new String(this.pattern, UTF_8);
+            this.regex = Pattern.compile(regex, flags);
+            this.regexLeadingBytes = flags == 0 ? RegexLeadingBytes.of(regex) : null;
+        } else {
+            this.regex = null;
+            this.regexLeadingBytes = null;
+        }
     }
 
     /**
@@ -388,16 +411,7 @@ public class MagicDetector implements Detector {
             }
 
             if (this.isRegex) {
-                int flags = 0;
-                if (this.isStringIgnoreCase) {
-                    flags = Pattern.CASE_INSENSITIVE;
-                }
-                
-                Pattern p = Pattern.compile(new String(this.pattern, UTF_8), flags);
-
-                ByteBuffer bb = ByteBuffer.wrap(buffer);
-                CharBuffer result = ISO_8859_1.decode(bb);
-                Matcher m = p.matcher(result);
+                Matcher m = regex.matcher(new Latin1Sequence(buffer, 0, buffer.length));
 
                 boolean match = false;
                 // Loop until we've covered the entire offset range
@@ -439,6 +453,46 @@ public class MagicDetector implements Detector {
         return this.patternLength;
     }
 
+    /**
+     * @return first offset (inclusive) of the comparison window
+     */
+    public int getOffsetRangeBegin() {
+        return offsetRangeBegin;
+    }
+
+    /**
+     * @return last offset (inclusive) at which the comparison window may start
+     */
+    public int getOffsetRangeEnd() {
+        return offsetRangeEnd;
+    }
+
+    /**
+     * Returns whether the given byte at the given position of the comparison
+     * window may be part of a match, i.e. whether it matches that byte of the
+     * possibly bit-masked pattern. For regular expressions, only the first
+     * byte is checked, and only if the expression is simple enough. Used to
+     * index detectors by their leading bytes.
+     *
+     * @param index position within the comparison window
+     * @param b byte at that position
+     * @return <code>false</code> if no window with that byte there matches
+     */
+    public boolean mayMatchAt(int index, byte b) {
+        if (isRegex) {
+            return index > 0 || regexLeadingBytes == null
+                    || regexLeadingBytes.get(b & 0xff);
+        } else if (index >= patternLength) {
+            return true;
+        }
+        // Same comparison as in detect()
+        int masked = (b & mask[index]);
+        if (this.isStringIgnoreCase) {
+            masked = Character.toLowerCase(masked);
+        }
+        return masked == pattern[index];
+    }
+
     /**
      * Returns a string representation of the Detection Rule.
      * Should sort nicely by type and details, as we sometimes
@@ -451,4 +505,45 @@ public class MagicDetector implements Detector {
                 " bytes = " + this.pattern + 
                 " mask = " + this.mask;
     }
+
+    /**
+     * The bytes as ISO_8859_1 characters, without decoding them up front.
+     */
+    private static final class Latin1Sequence implements CharSequence {
+
+        private final byte[] bytes;
+
+        private final int offset;
+
+        private final int length;
+
+        Latin1Sequence(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return (char) (bytes[offset + index] & 0xff);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException(start + ", " + end);
+            }
+            return new Latin1Sequence(bytes, offset + start, end - start);
+        }
+
+        public String toString() {
+            return new String(bytes, offset, length, ISO_8859_1);
+        }
+
+    }
 }
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.detect;
+
+import java.util.BitSet;
+
+/**
+ * Works out which bytes may start a match of a regular expression in a
+ * {@link MagicDetector}, where the input is ISO_8859_1 and the match starts
+ * at the beginning of the comparison window.
+ * <p>
+ * Only a subset of the syntax is understood: literals, the usual escapes,
+ * predefined and bracketed character classes, groups with alternatives,
+ * boundaries, lookarounds and quantifiers.  Anything else, e.g. a back
+ * reference or a case-insensitive or comments flag, and any expression that
+ * may match the empty string, give all bytes, so the result never excludes
+ * a byte that may start a match.
+ */
+final class RegexLeadingBytes {
+
+    private static final BitSet ALL = new BitSet(256);
+
+    static {
+        ALL.set(0, 256);
+    }
+
+    private final String regex;
+
+    private int pos = 0;
+
+    private RegexLeadingBytes(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * @param regex regular expression, compiled without flags
+     * @return the bytes that may start a match
+     */
+    static BitSet of(String regex) {
+        try {
+            RegexLeadingBytes parser = new RegexLeadingBytes(regex);
+            Result result = parser.alternatives();
+            if (parser.pos != regex.length() || result.nullable) {
+                return ALL;
+            }
+            return result.bytes;
+        } catch (UnsupportedOperationException | IndexOutOfBoundsException
+                | NumberFormatException e) {
+            return ALL;
+        }
+    }
+
+    /** alternatives := sequence ('|' sequence)* */
+    private Result alternatives() {
+        Result result = sequence();
+        while (pos < regex.length() && regex.charAt(pos) == '|') {
+            pos++;
+            Result next = sequence();
+            result.bytes.or(next.bytes);
+            result.nullable |= next.nullable;
+        }
+        return result;
+    }
+
+    /** sequence := (atom quantifier?)* */
+    private Result sequence() {
+        Result result = new Result(new BitSet(256), true);
+        while (pos < regex.length()
+                && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+            Result atom = atom();
+            if (quantifier()) {
+                atom.nullable = true;
+            }
+            // The atoms after the first one that can't be empty don't
+            // start a match, but they still need to be parsed
+            if (result.nullable) {
+                result.bytes.or(atom.bytes);
+                result.nullable = atom.nullable;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Skips a quantifier, if there is one.
+     *
+     * @return whether it allows zero repetitions
+     */
+    private boolean quantifier() {
+        if (pos == regex.length()) {
+            return false;
+        }
+        boolean optional;
+        char c = regex.charAt(pos);
+        if (c == '?' || c == '*') {
+            optional = true;
+            pos++;
+        } else if (c == '+') {
+            optional = false;
+            pos++;
+        } else if (c == '{') {
+            int close = regex.indexOf('}', pos);
+            if (close == -1) {
+                throw new UnsupportedOperationException();
+            }
+            String bounds = regex.substring(pos + 1, close);
+            int comma = bounds.indexOf(',');
+            int min = Integer.parseInt(comma == -1 ? bounds : bounds.substring(0, comma));
+            optional = min == 0;
+            pos = close + 1;
+        } else {
+            return false;
+        }
+        // Reluctant or possessive
+        if (pos < regex.length()
+                && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+            pos++;
+        }
+        return optional;
+    }
+
+    private Result atom() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '.':
+                return new Result((BitSet) ALL.clone(), false);
+            case '^':
+            case '$':
+                return new Result(new BitSet(256), true);
+            case '[':
+                return new Result(characterClass(), false);
+            case '(':
+                return group();
+            case '\\':
+                return escape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case ']':
+            case '}':
+                throw new UnsupportedOperationException();
+            default:
+                return new Result(singleton(c), false);
+        }
+    }
+
+    private Result group() {
+        if (regex.startsWith("?:", pos)) {
+            pos += 2;
+        } else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+            pos += 2;
+            alternatives();
+            expect(')');
+            // Zero-width
+            return new Result(new BitSet(256), true);
+        } else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+            pos += 3;
+            alternatives();
+            expect(')');
+            return new Result(new BitSet(256), true);
+        } else if (regex.startsWith("?", pos)) {
+            // Only flags that don't change what a character matches
+            int end = pos + 1;
+            while (end < regex.length() && "sm-".indexOf(regex.charAt(end)) != -1) {
+                end++;
+            }
+            if (end == regex.length() || regex.charAt(end) != ')') {
+                throw new UnsupportedOperationException();
+            }
+            pos = end + 1;
+            return new Result(new BitSet(256), true);
+        }
+        Result result = alternatives();
+        expect(')');
+        return result;
+    }
+
+    private Result escape() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'G':
+            case 'z':
+            case 'Z':
+                return new Result(new BitSet(256), true);
+            default:
+                if (Character.isDigit(c)) {
+                    // A back reference may match anything, even nothing
+                    return new Result((BitSet) ALL.clone(), true);
+                }
+                return new Result(escapedClass(c), false);
+        }
+    }
+
+    /**
+     * @param c character after the backslash, already consumed
+     * @return bytes matched by the escape sequence
+     */
+    private BitSet escapedClass(char c) {
+        switch (c) {
+            case 'x':
+                char value = (char) Integer.parseInt(regex.substring(pos, pos + 2), 16);
+                pos += 2;
+                return singleton(value);
+            case 't':
+                return singleton('\t');
+            case 'n':
+                return singleton('\n');
+            case 'r':
+                return singleton('\r');
+            case 'f':
+                return singleton('\f');
+            case 'a':
+                return singleton('\u0007');
+            case 'e':
+                return singleton('\u001B');
+            case 's':
+                return whitespace();
+            case 'S':
+                return complement(whitespace());
+            case 'd':
+                return range('0', '9');
+            case 'D':
+                return complement(range('0', '9'));
+            case 'w':
+                return word();
+            case 'W':
+                return complement(word());
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    // Octal, unicode, properties, quotes, ...
+                    throw new UnsupportedOperationException();
+                }
+                return singleton(c);
+        }
+    }
+
+    /** class := '[' '^'? (char ('-' char)? | escape)+ ']' */
+    private BitSet characterClass() {
+        boolean negated = false;
+        if (regex.charAt(pos) == '^') {
+            negated = true;
+            pos++;
+        }
+        if (regex.charAt(pos) == ']') {
+            throw new UnsupportedOperationException();
+        }
+        BitSet bytes = new BitSet(256);
+        while (regex.charAt(pos) != ']') {
+            char c = regex.charAt(pos++);
+            if (c == '[' || (c == '&' && regex.charAt(pos) == '&')) {
+                // Unions and intersections
+                throw new UnsupportedOperationException();
+            }
+            BitSet single;
+            if (c == '\\') {
+                single = escapedClass(regex.charAt(pos++));
+            } else {
+                single = singleton(c);
+            }
+            if (regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                pos++;
+                char to = regex.charAt(pos++);
+                if (to == '\\') {
+                    BitSet end = escapedClass(regex.charAt(pos++));
+                    if (end.cardinality() != 1) {
+                        throw new UnsupportedOperationException();
+                    }
+                    to = (char) end.nextSetBit(0);
+                }
+                if (single.cardinality() != 1) {
+                    throw new UnsupportedOperationException();
+                }
+                single = range((char) single.nextSetBit(0), to);
+            }
+            bytes.or(single);
+        }
+        pos++;
+        return negated ? complement(bytes) : bytes;
+    }
+
+    private void expect(char c) {
+        if (regex.charAt(pos++) != c) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static BitSet singleton(char c) {
+        BitSet bytes = new BitSet(256);
+        if (c < 256) {
+            bytes.set(c);
+        }
+        return bytes;
+    }
+
+    private static BitSet range(char from, char to) {
+        BitSet bytes = new BitSet(256);
+        if (from <= to && from < 256) {
+            bytes.set(from, Math.min(to, 255) + 1);
+        }
+        return bytes;
+    }
+
+    private static BitSet complement(BitSet bytes) {
+        BitSet complement = (BitSet) ALL.clone();
+        complement.andNot(bytes);
+        return complement;
+    }
+
+    private static BitSet whitespace() {
+        BitSet bytes = range('\t', '\r');
+        bytes.set(' ');
+        return bytes;
+    }
+
+    private static BitSet word() {
+        BitSet bytes = range('a', 'z');
+        bytes.or(range('A', 'Z'));
+        bytes.or(range('0', '9'));
+        bytes.set('_');
+        return bytes;
+    }
+
+    private static final class Result {
+
+        private final BitSet bytes;
+
+        private boolean nullable;
+
+        Result(BitSet bytes, boolean nullable) {
+            this.bytes = bytes;
+            this.nullable = nullable;
+        }
+
+    }
+
+}
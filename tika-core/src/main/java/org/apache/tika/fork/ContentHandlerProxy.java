@@ -18,14 +18,38 @@ package org.apache.tika.fork;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
-class ContentHandlerProxy implements ContentHandler, ForkProxy {
+/**
+ * Sends the SAX events of a parse in the forked server process back to the
+ * {@link ContentHandlerResource} in the parent process.
+ * <p>
+ * Events are encoded into a buffer and sent in batches, as one
+ * {@link #BATCH} request of at least {@link #BATCH_SIZE} bytes, at the end
+ * of the document, or when the server {@link #flush() flushes} the proxy
+ * before it responds to the call.  Within a batch, each event is its type
+ * followed by its arguments:
+ * <ul>
+ *     <li>names (namespaces, element and attribute names and types,
+ *     prefixes, processing instruction targets and skipped entities) are
+ *     interned: each is sent once and then referred to by its index in a
+ *     table that both sides build as they go;</li>
+ *     <li>text (characters, attribute values and processing instruction
+ *     data) is sent as its length in chars followed by its UTF-8 bytes.
+ *     Each char is encoded on its own, so that unpaired surrogates round
+ *     trip;</li>
+ *     <li>lengths and indexes are variable length ints.</li>
+ * </ul>
+ */
+class ContentHandlerProxy implements ContentHandler, ForkProxy, Flushable {
 
     public static final int START_DOCUMENT         =  1;
     public static final int END_DOCUMENT           =  2;
@@ -37,6 +61,23 @@ class ContentHandlerProxy implements ContentHandler, ForkProxy {
     public static final int IGNORABLE_WHITESPACE   =  8;
     public static final int PROCESSING_INSTRUCTION =  9;
     public static final int SKIPPED_ENTITY         = 10;
+    public static final int BATCH                  = 11;
+
+    //codes of a name; larger codes are indexes into the name table
+    static final int NULL_NAME = 0;
+    static final int LITERAL_NAME = 1;
+    static final int NEW_NAME = 2;
+    static final int FIRST_NAME_INDEX = 3;
+
+    /**
+     * Maximum number of interned names, so that a document with many
+     * distinct names doesn't grow the tables without bounds; further
+     * names are sent as literals.
+     */
+    static final int MAX_NAMES = 4096;
+
+    /** Batches are sent once they reach this many bytes. */
+    static final int BATCH_SIZE = 32 * 1024;
 
     /** Serial version UID */
     private static final long serialVersionUID = 737511106054617524L;
@@ -45,54 +86,126 @@ class ContentHandlerProxy implements ContentHandler, ForkProxy {
 
     private transient DataOutputStream output;
 
+    private transient Map<String, Integer> names;
+
+    private transient byte[] buffer;
+
+    private transient int length;
+
     public ContentHandlerProxy(int resource) {
         this.resource = resource;
     }
 
     public void init(DataInputStream input, DataOutputStream output) {
         this.output = output;
+        this.names = new HashMap<>();
+        this.buffer = new byte[BATCH_SIZE + 1024];
+        this.length = 0;
     }
 
-    private void sendRequest(int type) throws SAXException {
-        try {
-            output.writeByte(ForkServer.RESOURCE);
-            output.writeByte(resource);
-            output.writeByte(type);
-        } catch (IOException e) {
-            throw new SAXException("Unexpected fork proxy problem", e);
+    /**
+     * Sends the events that have been buffered so far.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length == 0) {
+            return;
         }
+        output.writeByte(ForkServer.RESOURCE);
+        output.writeByte(resource);
+        output.writeByte(BATCH);
+        output.writeInt(length);
+        output.write(buffer, 0, length);
+        output.flush();
+        length = 0;
     }
 
-    private void sendString(String string) throws SAXException {
-        try {
-            if (string != null) {
-                output.writeBoolean(true);
-                output.writeUTF(string);
-            } else {
-                output.writeBoolean(false);
-            }
-        } catch (IOException e) {
-            throw new SAXException("Unexpected fork proxy problem", e);
+    private void doneSending() throws SAXException {
+        if (length >= BATCH_SIZE) {
+            flushOrFail();
         }
     }
 
-    private void sendCharacters(char[] ch, int start, int length)
-            throws SAXException {
+    private void flushOrFail() throws SAXException {
         try {
-            output.writeInt(length);
-            for (int i = 0; i < length; i++) {
-                output.writeChar(ch[start + i]);
-            }
+            flush();
         } catch (IOException e) {
             throw new SAXException("Unexpected fork proxy problem", e);
         }
     }
 
-    private void doneSending() throws SAXException {
-        try {
-            output.flush();
-        } catch (IOException e) {
-            throw new SAXException("Unexpected fork proxy problem", e);
+    private void ensureCapacity(int n) {
+        if (length + n > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, length + n)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+
+    private void sendRequest(int type) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) type;
+    }
+
+    private void sendInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void sendName(String name) {
+        if (name == null) {
+            sendInt(NULL_NAME);
+            return;
+        }
+        Integer index = names.get(name);
+        if (index != null) {
+            sendInt(FIRST_NAME_INDEX + index);
+        } else if (names.size() < MAX_NAMES) {
+            names.put(name, names.size());
+            sendInt(NEW_NAME);
+            sendString(name);
+        } else {
+            sendInt(LITERAL_NAME);
+            sendString(name);
+        }
+    }
+
+    //0 for null, or the length plus one
+    private void sendString(String string) {
+        if (string == null) {
+            sendInt(0);
+            return;
+        }
+        int n = string.length();
+        sendInt(n + 1);
+        ensureCapacity(3 * n);
+        for (int i = 0; i < n; i++) {
+            putChar(string.charAt(i));
+        }
+    }
+
+    private void sendCharacters(char[] ch, int start, int n) {
+        sendInt(n);
+        ensureCapacity(3 * n);
+        for (int i = start; i < start + n; i++) {
+            putChar(ch[i]);
+        }
+    }
+
+    private void putChar(char c) {
+        if (c < 0x80) {
+            buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[length++] = (byte) (0xC0 | (c >> 6));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            buffer[length++] = (byte) (0xE0 | (c >> 12));
+            buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
         }
     }
 
@@ -107,20 +220,20 @@ class ContentHandlerProxy implements ContentHandler, ForkProxy {
 
     public void endDocument() throws SAXException {
         sendRequest(END_DOCUMENT);
-        doneSending();
+        flushOrFail();
     }
 
     public void startPrefixMapping(String prefix, String uri)
             throws SAXException {
         sendRequest(START_PREFIX_MAPPING);
-        sendString(prefix);
-        sendString(uri);
+        sendName(prefix);
+        sendName(uri);
         doneSending();
     }
 
     public void endPrefixMapping(String prefix) throws SAXException {
         sendRequest(END_PREFIX_MAPPING);
-        sendString(prefix);
+        sendName(prefix);
         doneSending();
     }
 
@@ -128,23 +241,20 @@ class ContentHandlerProxy implements ContentHandler, ForkProxy {
             String uri, String localName, String qName, Attributes atts)
             throws SAXException {
         sendRequest(START_ELEMENT);
-        sendString(uri);
-        sendString(localName);
-        sendString(qName);
+        sendName(uri);
+        sendName(localName);
+        sendName(qName);
+        //0 for no attributes object at all
         int n = -1;
         if (atts != null) {
             n = atts.getLength();
         }
-        try {
-            output.writeInt(n);
-        } catch (IOException e) {
-            throw new SAXException("Unexpected fork proxy problem", e);
-        }
+        sendInt(n + 1);
         for (int i = 0; i < n; i++) {
-            sendString(atts.getURI(i));
-            sendString(atts.getLocalName(i));
-            sendString(atts.getQName(i));
-            sendString(atts.getType(i));
+            sendName(atts.getURI(i));
+            sendName(atts.getLocalName(i));
+            sendName(atts.getQName(i));
+            sendName(atts.getType(i));
             sendString(atts.getValue(i));
         }
         doneSending();
@@ -153,9 +263,9 @@ class ContentHandlerProxy implements ContentHandler, ForkProxy {
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
         sendRequest(END_ELEMENT);
-        sendString(uri);
-        sendString(localName);
-        sendString(qName);
+        sendName(uri);
+        sendName(localName);
+        sendName(qName);
         doneSending();
     }
 
@@ -176,14 +286,14 @@ class ContentHandlerProxy implements ContentHandler, ForkProxy {
     public void processingInstruction(String target, String data)
             throws SAXException {
         sendRequest(PROCESSING_INSTRUCTION);
-        sendString(target);
+        sendName(target);
         sendString(data);
         doneSending();
     }
 
     public void skippedEntity(String name) throws SAXException {
         sendRequest(SKIPPED_ENTITY);
-        sendString(name);
+        sendName(name);
         doneSending();
     }
 
@@ -19,89 +19,196 @@ package org.apache.tika.fork;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
+/**
+ * Replays the batches of SAX events sent by a {@link ContentHandlerProxy}
+ * on the given handler; see there for the format.
+ */
 class ContentHandlerResource implements ForkResource {
 
     private final ContentHandler handler;
 
+    private final List<String> names = new ArrayList<>();
+
+    private byte[] buffer = new byte[0];
+
+    private int position;
+
+    private int length;
+
+    private char[] chars = new char[256];
+
     public ContentHandlerResource(ContentHandler handler) {
         this.handler = handler;
     }
 
     public Throwable process(DataInputStream input, DataOutputStream output)
             throws IOException {
-        try {
-            internalProcess(input);
-            return null;
-        } catch (SAXException e) {
-            return e;
+        int type = input.readUnsignedByte();
+        if (type != ContentHandlerProxy.BATCH) {
+            throw new IOException("Unexpected content handler request: " + type);
+        }
+        length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid content handler batch length: " + length);
+        }
+        if (buffer.length < length) {
+            buffer = new byte[length];
         }
+        input.readFully(buffer, 0, length);
+        position = 0;
+
+        //the rest of the batch is replayed after a failure, as each event
+        //was sent on its own before, and to keep the name tables in sync
+        SAXException first = null;
+        while (position < length) {
+            try {
+                internalProcess();
+            } catch (SAXException e) {
+                if (first == null) {
+                    first = e;
+                }
+            }
+        }
+        return first;
     }
 
-    private void internalProcess(DataInputStream input)
-            throws IOException, SAXException {
-        int type = input.readUnsignedByte();
+    private void internalProcess() throws IOException, SAXException {
+        int type = buffer[position++] & 0xFF;
         if (type == ContentHandlerProxy.START_DOCUMENT) {
             handler.startDocument();
         } else if (type == ContentHandlerProxy.END_DOCUMENT) {
             handler.endDocument();
         } else if (type == ContentHandlerProxy.START_PREFIX_MAPPING) {
-            handler.startPrefixMapping(readString(input), readString(input));
+            handler.startPrefixMapping(readName(), readName());
         } else if (type == ContentHandlerProxy.END_PREFIX_MAPPING) {
-            handler.endPrefixMapping(readString(input));
+            handler.endPrefixMapping(readName());
         } else if (type == ContentHandlerProxy.START_ELEMENT) {
-            String uri = readString(input);
-            String localName = readString(input);
-            String qName = readString(input);
+            String uri = readName();
+            String localName = readName();
+            String qName = readName();
             AttributesImpl atts = null;
-            int n = input.readInt();
+            int n = readInt() - 1;
             if (n >= 0) {
                 atts = new AttributesImpl();
                 for (int i = 0; i < n; i++) {
                     atts.addAttribute(
-                            readString(input), readString(input),
-                            readString(input), readString(input),
-                            readString(input));
+                            readName(), readName(),
+                            readName(), readName(),
+                            readString());
                 }
             }
             handler.startElement(uri, localName, qName, atts);
         } else if (type == ContentHandlerProxy.END_ELEMENT) {
-            String uri = readString(input);
-            String localName = readString(input);
-            String qName = readString(input);
+            String uri = readName();
+            String localName = readName();
+            String qName = readName();
             handler.endElement(uri, localName, qName);
         } else if (type == ContentHandlerProxy.CHARACTERS) {
-            char[] ch = readCharacters(input);
-            handler.characters(ch, 0, ch.length);
+            int n = readCharacters();
+            handler.characters(chars, 0, n);
         } else if (type == ContentHandlerProxy.IGNORABLE_WHITESPACE) {
-            char[] ch = readCharacters(input);
-            handler.characters(ch, 0, ch.length);
+            int n = readCharacters();
+            handler.characters(chars, 0, n);
         } else if (type == ContentHandlerProxy.PROCESSING_INSTRUCTION) {
-            handler.processingInstruction(readString(input), readString(input));
+            handler.processingInstruction(readName(), readString());
         } else if (type == ContentHandlerProxy.SKIPPED_ENTITY) {
-            handler.skippedEntity(readString(input));
+            handler.skippedEntity(readName());
+        } else {
+            throw new IOException("Unexpected content handler event: " + type);
         }
     }
 
-    private String readString(DataInputStream input) throws IOException {
-        if (input.readBoolean()) {
-            return input.readUTF();
-        } else {
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position >= length) {
+                throw new IOException("Truncated content handler event");
+            }
+            byte b = buffer[position++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed content handler event");
+    }
+
+    private String readName() throws IOException {
+        int code = readInt();
+        if (code == ContentHandlerProxy.NULL_NAME) {
+            return null;
+        } else if (code == ContentHandlerProxy.LITERAL_NAME) {
+            return readString();
+        } else if (code == ContentHandlerProxy.NEW_NAME) {
+            if (names.size() >= ContentHandlerProxy.MAX_NAMES) {
+                throw new IOException("Too many names");
+            }
+            String name = readString();
+            names.add(name);
+            return name;
+        }
+        int index = code - ContentHandlerProxy.FIRST_NAME_INDEX;
+        if (index < 0 || index >= names.size()) {
+            throw new IOException("Unknown name index: " + index);
+        }
+        return names.get(index);
+    }
+
+    private String readString() throws IOException {
+        int n = readInt() - 1;
+        if (n < 0) {
             return null;
         }
+        decode(n);
+        return new String(chars, 0, n);
     }
 
-    private char[] readCharacters(DataInputStream input) throws IOException {
-        int n = input.readInt();
-        char[] ch = new char[n];
+    /**
+     * @return number of chars decoded into {@link #chars}
+     */
+    private int readCharacters() throws IOException {
+        int n = readInt();
+        decode(n);
+        return n;
+    }
+
+    private void checkAvailable(int n) throws IOException {
+        if (length - position < n) {
+            throw new IOException("Truncated content handler event");
+        }
+    }
+
+    private void decode(int n) throws IOException {
+        //each char takes at least one byte
+        if (n < 0 || n > length - position) {
+            throw new IOException("Invalid content handler string length: " + n);
+        }
+        if (chars.length < n) {
+            chars = new char[Math.max(n, 2 * chars.length)];
+        }
         for (int i = 0; i < n; i++) {
-            ch[i] = input.readChar();
+            if (position >= length) {
+                throw new IOException("Truncated content handler event");
+            }
+            int b = buffer[position++] & 0xFF;
+            if (b < 0x80) {
+                chars[i] = (char) b;
+            } else if (b < 0xE0) {
+                checkAvailable(1);
+                chars[i] = (char) (((b & 0x1F) << 6) | (buffer[position++] & 0x3F));
+            } else {
+                checkAvailable(2);
+                chars[i] = (char) (((b & 0x0F) << 12) | ((buffer[position++] & 0x3F) << 6)
+                        | (buffer[position++] & 0x3F));
+            }
         }
-        return ch;
     }
 
 }
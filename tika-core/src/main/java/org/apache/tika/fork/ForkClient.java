@@ -275,9 +275,16 @@ class ForkClient {
         }
     }
 
+    /**
+     * @return the first exception that a resource, e.g. the content handler,
+     * threw while the call was served, or else the exception of the call.
+     * A handler that reaches its write limit only truncates the output, as
+     * it always has.
+     */
     private Throwable waitForResponse(List<ForkResource> resources)
             throws IOException {
         output.flush();
+        Throwable first = null;
         while (true) {
             int type = input.read();
             if (type == -1) {
@@ -286,21 +293,41 @@ class ForkClient {
             } else if (type == ForkServer.RESOURCE) {
                 ForkResource resource =
                     resources.get(input.readUnsignedByte());
-                resource.process(input, output);
+                Throwable t = resource.process(input, output);
+                if (first == null && !isWriteLimitReached(t)) {
+                    first = t;
+                }
             } else if ((byte) type == ForkServer.ERROR) {
+                Throwable error;
                 try {
-                    return (Throwable) ForkObjectInputStream.readObject(
+                    error = (Throwable) ForkObjectInputStream.readObject(
                             input, loader);
                 } catch (ClassNotFoundException e) {
                     throw new IOException(
                             "Unable to deserialize an exception", e);
                 }
+                return first != null ? first : error;
             } else {
-                return null;
+                return first;
             }
         }
     }
 
+    /**
+     * Copied from RecursiveParserWrapper, to detect the exceptions of both
+     * BodyContentHandler and WriteOutContentHandler
+     */
+    private static boolean isWriteLimitReached(Throwable t) {
+        if (t == null) {
+            return false;
+        } else if (t.getMessage() != null &&
+                t.getMessage().indexOf("Your document contained more than") == 0) {
+            return true;
+        } else {
+            return isWriteLimitReached(t.getCause());
+        }
+    }
+
     /**
      * Creates a temporary jar file that can be used to bootstrap the forked
      * server process. Remember to remove the file when no longer used.
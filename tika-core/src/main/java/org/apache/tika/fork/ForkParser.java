@@ -21,12 +21,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.tika.config.Field;
 import org.apache.tika.exception.TikaException;
@@ -62,9 +64,20 @@ public class ForkParser extends AbstractParser implements Closeable {
     @Field
     private int poolSize = 5;
 
+    /**
+     * Guards the pool.  It is fair, and waiting parses are signalled in
+     * turn, so that a parse that waits for a process isn't overtaken by
+     * later ones.  Processes are started, pinged and closed outside of it.
+     */
+    private final ReentrantLock poolLock = new ReentrantLock(true);
+
+    private final Condition clientReleased = poolLock.newCondition();
+
+    /** Processes that are in use, being started or being pinged */
     private int currentlyInUse = 0;
 
-    private final Queue<ForkClient> pool = new LinkedList<>();
+    /** Idle processes, most recently used last */
+    private final Deque<IdleClient> pool = new ArrayDeque<>();
 
     @Field
     private long serverPulseMillis = 1000;
@@ -135,8 +148,13 @@ public class ForkParser extends AbstractParser implements Closeable {
      *
      * @return process pool size
      */
-    public synchronized int getPoolSize() {
-        return poolSize;
+    public int getPoolSize() {
+        poolLock.lock();
+        try {
+            return poolSize;
+        } finally {
+            poolLock.unlock();
+        }
     }
 
     /**
@@ -144,8 +162,14 @@ public class ForkParser extends AbstractParser implements Closeable {
      *
      * @param poolSize process pool size
      */
-    public synchronized void setPoolSize(int poolSize) {
-        this.poolSize = poolSize;
+    public void setPoolSize(int poolSize) {
+        poolLock.lock();
+        try {
+            this.poolSize = poolSize;
+            clientReleased.signalAll();
+        } finally {
+            poolLock.unlock();
+        }
     }
 
     /**
@@ -293,44 +317,100 @@ public class ForkParser extends AbstractParser implements Closeable {
         }
     }
 
-    public synchronized void close() {
-        for (ForkClient client : pool) {
-            client.close();
+    public void close() {
+        List<IdleClient> idle;
+        poolLock.lock();
+        try {
+            idle = new ArrayList<>(pool);
+            pool.clear();
+            poolSize = 0;
+        } finally {
+            poolLock.unlock();
+        }
+        for (IdleClient client : idle) {
+            client.client.close();
         }
-        pool.clear();
-        poolSize = 0;
     }
 
-    private synchronized ForkClient acquireClient()
+    private ForkClient acquireClient()
             throws IOException, TikaException {
         while (true) {
-            ForkClient client = pool.poll();
-
-            // Create a new process if there's room in the pool
-            if (client == null && currentlyInUse < poolSize) {
-                client = newClient();
-            }
-
-            // Ping the process, and get rid of it if it's inactive
-            if (client != null && !client.ping()) {
-                client.close();
-                client = null;
+            ForkClient client = null;
+            List<ForkClient> expired = new ArrayList<>();
+            poolLock.lock();
+            try {
+                while (true) {
+                    evictIdleClients(expired);
+                    // The most recently used process is the least likely
+                    // to have timed out; the others age out
+                    IdleClient idle = pool.pollLast();
+                    if (idle != null) {
+                        client = idle.client;
+                        break;
+                    } else if (currentlyInUse < poolSize) {
+                        // There's room in the pool for a new process
+                        break;
+                    }
+                    try {
+                        clientReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new TikaException(
+                                "Interrupted while waiting for a fork parser", e);
+                    }
+                }
+                currentlyInUse++;
+            } finally {
+                poolLock.unlock();
+                for (ForkClient old : expired) {
+                    old.close();
+                }
             }
 
-            if (client != null) {
-                currentlyInUse++;
-                return client;
-            } else if (currentlyInUse >= poolSize) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    throw new TikaException(
-                            "Interrupted while waiting for a fork parser", e);
+            boolean acquired = false;
+            try {
+                if (client == null) {
+                    client = newClient();
+                }
+                // Ping the process, and get rid of it if it's inactive
+                if (client.ping()) {
+                    acquired = true;
+                    return client;
+                }
+            } finally {
+                if (!acquired) {
+                    if (client != null) {
+                        client.close();
+                    }
+                    releaseSlot();
                 }
             }
         }
     }
 
+    /**
+     * Removes the processes that have been idle for so long that they
+     * have most likely shut down, oldest first.  Must hold the pool lock.
+     *
+     * @param expired the removed processes, to be closed outside of the lock
+     */
+    private void evictIdleClients(List<ForkClient> expired) {
+        long maxIdleMillis = Math.max(0, serverWaitTimeoutMillis - serverPulseMillis);
+        long now = System.currentTimeMillis();
+        while (!pool.isEmpty() && now - pool.peekFirst().since > maxIdleMillis) {
+            expired.add(pool.pollFirst().client);
+        }
+    }
+
+    private void releaseSlot() {
+        poolLock.lock();
+        try {
+            currentlyInUse--;
+            clientReleased.signal();
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
     private ForkClient newClient() throws IOException, TikaException {
         TimeoutLimits timeoutLimits = new TimeoutLimits(serverPulseMillis, serverParseTimeoutMillis, serverWaitTimeoutMillis);
         if (loader == null && parser == null && tikaBin != null && parserFactoryFactory != null) {
@@ -345,16 +425,23 @@ public class ForkParser extends AbstractParser implements Closeable {
         }
     }
 
-    private synchronized void releaseClient(ForkClient client, boolean alive) {
-        currentlyInUse--;
-        if (currentlyInUse + pool.size() < poolSize && alive) {
-            if (maxFilesProcessedPerClient > 0 && client.getFilesProcessed() >= maxFilesProcessedPerClient) {
-                client.close();
-            } else {
-                pool.offer(client);
+    private void releaseClient(ForkClient client, boolean alive) {
+        boolean pooled = false;
+        poolLock.lock();
+        try {
+            currentlyInUse--;
+            if (currentlyInUse + pool.size() < poolSize && alive
+                    && (maxFilesProcessedPerClient <= 0
+                    || client.getFilesProcessed() < maxFilesProcessedPerClient)) {
+                pool.offerLast(new IdleClient(client, System.currentTimeMillis()));
+                pooled = true;
             }
-            notifyAll();
-        } else {
+            // Either way there's a process or room for one
+            clientReleased.signal();
+        } finally {
+            poolLock.unlock();
+        }
+        if (!pooled) {
             client.close();
         }
     }
@@ -406,4 +493,13 @@ public class ForkParser extends AbstractParser implements Closeable {
         this.maxFilesProcessedPerClient = maxFilesProcessedPerClient;
     }
 
+    private static class IdleClient {
+        private final ForkClient client;
+        private final long since;
+
+        IdleClient(ForkClient client, long since) {
+            this.client = client;
+            this.since = since;
+        }
+    }
 }
@@ -23,6 +23,7 @@ import org.xml.sax.SAXException;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.NotSerializableException;
@@ -247,8 +248,10 @@ class ForkServer implements Runnable {
             }
             try {
                 method.invoke(object, args);
+                flush(args);
                 output.write(DONE);
             } catch (InvocationTargetException e) {
+                flush(args);
                 output.write(ERROR);
                 // Try to send the underlying Exception itself
                 Throwable toSend = e.getCause();
@@ -270,6 +273,18 @@ class ForkServer implements Runnable {
         }
     }
 
+    /**
+     * Sends whatever the proxies among the arguments have buffered, as
+     * the parent stops listening for them once the call is done.
+     */
+    private void flush(Object[] args) throws IOException {
+        for (Object arg : args) {
+            if (arg instanceof Flushable) {
+                ((Flushable) arg).flush();
+            }
+        }
+    }
+
     private Method getMethod(Object object, String name) {
         Class<?> klass = object.getClass();
         while (klass != null) {
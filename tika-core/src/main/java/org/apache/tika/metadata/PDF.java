@@ -78,6 +78,49 @@ public interface PDF {
     Property UNMAPPED_UNICODE_CHARS_PER_PAGE =
             Property.internalIntegerSequence(PDF_PREFIX+"unmappedUnicodeCharsPerPage");
 
+    /**
+     * Number of lines of text written per page.  This and the other
+     * statistics below are only recorded if the PDFParser is configured
+     * to collect statistics.
+     */
+    Property LINES_PER_PAGE = Property.internalIntegerSequence(PDF_PREFIX+"linesPerPage");
+
+    Property PARAGRAPHS_PER_PAGE = Property.internalIntegerSequence(PDF_PREFIX+"paragraphsPerPage");
+
+    /**
+     * Milliseconds spent loading the document's structure
+     */
+    Property LOAD_MILLIS = Property.internalInteger(PDF_PREFIX+"loadMillis");
+
+    /**
+     * Milliseconds spent stripping the text from the pages' content streams
+     */
+    Property TEXT_MILLIS = Property.internalInteger(PDF_PREFIX+"textMillis");
+
+    Property TEXT_MILLIS_PER_PAGE = Property.internalIntegerSequence(PDF_PREFIX+"textMillisPerPage");
+
+    /**
+     * Milliseconds spent extracting the pages' inline images
+     */
+    Property IMAGE_MILLIS = Property.internalInteger(PDF_PREFIX+"imageMillis");
+
+    Property IMAGE_MILLIS_PER_PAGE = Property.internalIntegerSequence(PDF_PREFIX+"imageMillisPerPage");
+
+    /**
+     * Milliseconds spent handling the pages' annotations
+     */
+    Property ANNOTATION_MILLIS = Property.internalInteger(PDF_PREFIX+"annotationMillis");
+
+    Property ANNOTATION_MILLIS_PER_PAGE = Property.internalIntegerSequence(PDF_PREFIX+"annotationMillisPerPage");
+
+    /**
+     * Milliseconds spent rendering and OCR'ing pages.  With concurrent OCR,
+     * this is the sum of the time spent on all threads.
+     */
+    Property OCR_MILLIS = Property.internalInteger(PDF_PREFIX+"ocrMillis");
+
+    Property OCR_MILLIS_PER_PAGE = Property.internalIntegerSequence(PDF_PREFIX+"ocrMillisPerPage");
+
     /**
      * Has XFA
      */
@@ -47,6 +47,10 @@ class Magic implements Clause, Comparable<Magic> {
         return priority;
     }
 
+    Clause getClause() {
+        return clause;
+    }
+
     public boolean eval(byte[] data) {
         return clause.eval(data);
     }
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.tika.detect.MagicDetector;
+
+/**
+ * Index of a list of magics by their leading bytes, so that only the magics
+ * that may match some data need to be evaluated.
+ * <p>
+ * A magic match can only match where its comparison window starts with a
+ * few given byte values, those of its pattern or, for a regular expression,
+ * those that may start a match (see {@link MagicDetector#mayMatchAt}).
+ * Each magic is reduced to such anchors: an offset range and the values
+ * allowed for the first few bytes there.  The anchors of an and-clause are
+ * those of one of its matches, and the anchors of an or-clause are those of
+ * all of its alternatives.  The magics that are anchored at offset zero
+ * only are indexed by the first byte of the data.  The other anchored magics are
+ * checked by scanning their offset range for their leading bytes, which is
+ * still much cheaper than evaluating them.  Magics without anchors, e.g.
+ * regular expressions that may start with any byte, are always evaluated.
+ * <p>
+ * The remaining magics are evaluated in the order of the list, with the
+ * same priority cut-off as {@link #matchAll(byte[])}, so the result is the
+ * same as that of evaluating every magic.
+ */
+final class MagicIndex {
+
+    /** Number of leading bytes of a magic match that are checked */
+    private static final int ANCHOR_LENGTH = 4;
+
+    private static final int[] NONE = new int[0];
+
+    private final Magic[] magics;
+
+    /** Anchors of the magics, <code>null</code> if a magic has none */
+    private final Anchor[][] anchors;
+
+    /** Indexes of the magics anchored at offset zero, by the first byte */
+    private final int[][] byFirstByte = new int[256][];
+
+    /** Indexes of the other magics */
+    private final int[] scanned;
+
+    MagicIndex(List<Magic> magics) {
+        this.magics = magics.toArray(new Magic[0]);
+        this.anchors = new Anchor[this.magics.length][];
+
+        List<List<Integer>> first = new ArrayList<>(256);
+        for (int b = 0; b < 256; b++) {
+            first.add(new ArrayList<Integer>());
+        }
+        List<Integer> scanned = new ArrayList<>();
+        for (int i = 0; i < this.magics.length; i++) {
+            List<Anchor> anchors = getAnchors(this.magics[i].getClause());
+            if (anchors == null) {
+                scanned.add(i);
+                continue;
+            }
+            this.anchors[i] = anchors.toArray(new Anchor[0]);
+            if (isAtStart(anchors)) {
+                for (int b = 0; b < 256; b++) {
+                    for (Anchor anchor : anchors) {
+                        if (anchor.contains(0, (byte) b)) {
+                            first.get(b).add(i);
+                            break;
+                        }
+                    }
+                }
+            } else {
+                scanned.add(i);
+            }
+        }
+        for (int b = 0; b < 256; b++) {
+            byFirstByte[b] = toArray(first.get(b));
+        }
+        this.scanned = toArray(scanned);
+    }
+
+    /**
+     * Evaluates the magics that may match the given data.
+     *
+     * @param data first few bytes of a document stream
+     * @return types of the matching magics of the highest matching priority
+     */
+    List<MimeType> match(byte[] data) {
+        // Beyond the end of the data the magics compare zeros
+        int[] first = byFirstByte[data.length > 0 ? data[0] & 0xff : 0];
+        List<MimeType> result = new ArrayList<MimeType>(1);
+        int currentPriority = -1;
+        int i = 0;
+        int j = 0;
+        while (i < first.length || j < scanned.length) {
+            int index;
+            if (j == scanned.length
+                    || (i < first.length && first[i] < scanned[j])) {
+                index = first[i++];
+            } else {
+                index = scanned[j++];
+            }
+            Magic magic = magics[index];
+            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
+                break;
+            }
+            if (anchors[index] != null && !mayMatch(anchors[index], data)) {
+                continue;
+            }
+            if (magic.eval(data)) {
+                result.add(magic.getType());
+                currentPriority = magic.getPriority();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates every magic, in order, until a lower priority than that of
+     * the first match is reached.
+     *
+     * @param data first few bytes of a document stream
+     * @return types of the matching magics of the highest matching priority
+     */
+    List<MimeType> matchAll(byte[] data) {
+        List<MimeType> result = new ArrayList<MimeType>(1);
+        int currentPriority = -1;
+        for (Magic magic : magics) {
+            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
+                break;
+            }
+            if (magic.eval(data)) {
+                result.add(magic.getType());
+                currentPriority = magic.getPriority();
+            }
+        }
+        return result;
+    }
+
+    private static boolean mayMatch(Anchor[] anchors, byte[] data) {
+        for (Anchor anchor : anchors) {
+            if (anchor.mayMatch(data)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return alternative anchors of which at least one is present wherever
+     *         the clause matches, or <code>null</code> if it can't be anchored
+     */
+    private static List<Anchor> getAnchors(Clause clause) {
+        if (clause instanceof Magic) {
+            return getAnchors(((Magic) clause).getClause());
+        } else if (clause instanceof MagicMatch) {
+            MagicDetector detector = ((MagicMatch) clause).getDetector();
+            Anchor anchor = new Anchor(
+                    detector.getOffsetRangeBegin(), detector.getOffsetRangeEnd());
+            for (int k = 0; k < ANCHOR_LENGTH; k++) {
+                boolean full = true;
+                for (int b = 0; b < 256; b++) {
+                    full &= detector.mayMatchAt(k, (byte) b);
+                }
+                if (full) {
+                    break;
+                }
+                for (int b = 0; b < 256; b++) {
+                    if (detector.mayMatchAt(k, (byte) b)) {
+                        anchor.add(k, (byte) b);
+                    }
+                }
+            }
+            return anchor.length == 0 ? null : Arrays.asList(anchor);
+        } else if (clause instanceof AndClause) {
+            // Every match of an and-clause must be present, so pick the
+            // one whose anchors are cheapest to check
+            List<Anchor> best = null;
+            for (Clause c : ((AndClause) clause).getClauses()) {
+                List<Anchor> anchors = getAnchors(c);
+                if (anchors != null
+                        && (best == null || getCost(anchors) < getCost(best))) {
+                    best = anchors;
+                }
+            }
+            return best;
+        } else if (clause instanceof OrClause) {
+            List<Anchor> all = new ArrayList<>();
+            for (Clause c : ((OrClause) clause).getClauses()) {
+                List<Anchor> anchors = getAnchors(c);
+                if (anchors == null) {
+                    return null;
+                }
+                all.addAll(anchors);
+            }
+            return all.isEmpty() ? null : all;
+        } else {
+            return null;
+        }
+    }
+
+    private static boolean isAtStart(List<Anchor> anchors) {
+        for (Anchor anchor : anchors) {
+            if (anchor.begin != 0 || anchor.end != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of bytes to check, or zero if the anchors are indexed
+     */
+    private static long getCost(List<Anchor> anchors) {
+        if (isAtStart(anchors)) {
+            return 0;
+        }
+        long cost = 0;
+        for (Anchor anchor : anchors) {
+            cost += anchor.end - anchor.begin + 1;
+        }
+        return cost;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        if (list.isEmpty()) {
+            return NONE;
+        }
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * The values of the leading bytes of a match that starts within an
+     * offset range.
+     */
+    private static final class Anchor {
+
+        private final int begin;
+
+        private final int end;
+
+        /** Allowed values of the first byte, for a quick scan */
+        private final boolean[] first = new boolean[256];
+
+        /** Bit sets of the allowed values of each leading byte */
+        private final long[][] bytes = new long[ANCHOR_LENGTH][4];
+
+        private int length = 0;
+
+        Anchor(int begin, int end) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        void add(int k, byte b) {
+            if (k == 0) {
+                first[b & 0xff] = true;
+            }
+            bytes[k][(b & 0xff) >>> 6] |= 1L << b;
+            length = Math.max(length, k + 1);
+        }
+
+        boolean contains(int k, byte b) {
+            return (bytes[k][(b & 0xff) >>> 6] & (1L << b)) != 0;
+        }
+
+        boolean mayMatch(byte[] data) {
+            // Windows that lie within the data
+            int last = Math.min(end, data.length - length);
+            int i = begin;
+            for (; i <= last; i++) {
+                if (first[data[i] & 0xff] && matchesAt(data, i)) {
+                    return true;
+                }
+            }
+            // Beyond the end of the data the magics compare zeros, so
+            // the first window that starts there stands for all of the
+            // windows that start later
+            last = Math.min(end, Math.max(i, data.length));
+            for (; i <= last; i++) {
+                int k = 0;
+                while (k < length
+                        && contains(k, i + k < data.length ? data[i + k] : 0)) {
+                    k++;
+                }
+                if (k == length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesAt(byte[] data, int i) {
+            for (int k = 1; k < length; k++) {
+                if (!contains(k, data[i + k])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -111,6 +111,9 @@ public final class MimeTypes implements Detector, Serializable {
     /** Sorted list of all registered magics */
     private final List<Magic> magics = new ArrayList<Magic>();
 
+    /** Index of the magics by their leading bytes, built in {@link #init()} */
+    private transient MagicIndex magicIndex;
+
     /** Sorted list of all registered rootXML */
     private final List<MimeType> xmls = new ArrayList<MimeType>();
 
@@ -187,18 +190,8 @@ public final class MimeTypes implements Detector, Serializable {
         }
 
         // Then, check for magic bytes
-        List<MimeType> result = new ArrayList<MimeType>(1);
-        int currentPriority = -1;
-        for (Magic magic : magics) {
-            if (currentPriority > 0 && currentPriority > magic.getPriority()) {
-                break;
-            }
-            if (magic.eval(data)) {
-                result.add(magic.getType());
-                currentPriority = magic.getPriority();
-            }
-        }
- 
+        List<MimeType> result = getMagicIndex().match(data);
+
         if (!result.isEmpty()) {
             for (int i=0; i<result.size(); i++) {
                 final MimeType matched = result.get(i);
@@ -445,6 +438,7 @@ public final class MimeTypes implements Detector, Serializable {
         // Update the magics index...
         if (type.hasMagic()) {
             magics.addAll(type.getMagics());
+            magicIndex = null;
         }
 
         // Update the xml (xmlRoot) index...
@@ -466,6 +460,20 @@ public final class MimeTypes implements Detector, Serializable {
         }
         Collections.sort(magics);
         Collections.sort(xmls);
+        magicIndex = new MagicIndex(magics);
+    }
+
+    /**
+     * @return index of the registered magics, built anew if they changed
+     *         since {@link #init()} or this instance was deserialized
+     */
+    MagicIndex getMagicIndex() {
+        MagicIndex index = magicIndex;
+        if (index == null) {
+            index = new MagicIndex(magics);
+            magicIndex = index;
+        }
+        return index;
     }
 
     /**
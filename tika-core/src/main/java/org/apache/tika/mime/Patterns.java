@@ -17,11 +17,13 @@
 package org.apache.tika.mime;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 /**
  * Defines a MimeType pattern.
@@ -46,9 +48,11 @@ class Patterns implements Serializable {
     private final Map<String, MimeType> extensions =
         new HashMap<String, MimeType>();
 
-    private int minExtensionLength = Integer.MAX_VALUE;
-
-    private int maxExtensionLength = 0;
+    /**
+     * The extension patterns, in a trie of their reversed characters, so
+     * that the longest extension of a name is found in a single pass.
+     */
+    private final SuffixNode suffixes = new SuffixNode();
 
     /**
      * Index of generic glob patterns, sorted by length.
@@ -56,6 +60,11 @@ class Patterns implements Serializable {
     private final SortedMap<String, MimeType> globs =
         new TreeMap<String, MimeType>(new LengthComparator());
 
+    /**
+     * The generic glob patterns, compiled, in the order of {@link #globs}.
+     */
+    private Glob[] compiledGlobs = new Glob[0];
+
     private static final class LengthComparator
             implements Comparator<String>, Serializable {
 
@@ -128,9 +137,7 @@ class Patterns implements Serializable {
         if (previous == null
                 || registry.isSpecializationOf(previous.getType(), type.getType())) {
             extensions.put(extension, type);
-            int length = extension.length();
-            minExtensionLength = Math.min(minExtensionLength, length);
-            maxExtensionLength = Math.max(maxExtensionLength, length);
+            suffixes.put(extension, type);
         } else if (previous == type
                 || registry.isSpecializationOf(type.getType(), previous.getType())) {
             // do nothing
@@ -146,6 +153,7 @@ class Patterns implements Serializable {
         if (previous == null
                 || registry.isSpecializationOf(previous.getType(), type.getType())) {
             globs.put(glob, type);
+            compileGlobs();
         } else if (previous == type
                 || registry.isSpecializationOf(type.getType(), previous.getType())) {
             // do nothing
@@ -174,29 +182,36 @@ class Patterns implements Serializable {
         }
 
         // First, try exact match of the provided resource name
-        if (names.containsKey(name)) {
-            return names.get(name);
+        MimeType type = names.get(name);
+        if (type != null) {
+            return type;
         }
 
         // Then try "extension" (*.xxx) matching
-        int maxLength = Math.min(maxExtensionLength, name.length());
-        for (int n = maxLength; n >= minExtensionLength; n--) {
-            String extension = name.substring(name.length() - n);
-            if (extensions.containsKey(extension)) {
-                return extensions.get(extension);
-            }
+        type = suffixes.getLongestSuffix(name);
+        if (type != null) {
+            return type;
         }
 
         // And finally, try complex regexp matching
-        for (Map.Entry<String, MimeType> entry : globs.entrySet()) {
-            if (name.matches(entry.getKey())) {
-                return entry.getValue();
+        for (Glob glob : compiledGlobs) {
+            if (glob.pattern.matcher(name).matches()) {
+                return glob.type;
             }
         }
 
         return null;
     }
 
+    private void compileGlobs() {
+        Glob[] compiled = new Glob[globs.size()];
+        int i = 0;
+        for (Map.Entry<String, MimeType> entry : globs.entrySet()) {
+            compiled[i++] = new Glob(Pattern.compile(entry.getKey()), entry.getValue());
+        }
+        compiledGlobs = compiled;
+    }
+
     private String compile(String glob) {
         StringBuilder pattern = new StringBuilder();
         pattern.append("\\A");
@@ -217,4 +232,95 @@ class Patterns implements Serializable {
         return pattern.toString();
     }
 
+    private static final class Glob implements Serializable {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 2736541478390346178L;
+
+        private final Pattern pattern;
+
+        private final MimeType type;
+
+        private Glob(Pattern pattern, MimeType type) {
+            this.pattern = pattern;
+            this.type = type;
+        }
+
+    }
+
+    /**
+     * A node of the trie of reversed extensions.  The children of a node
+     * are kept sorted by their character.
+     */
+    private static final class SuffixNode implements Serializable {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = -3390219466307384521L;
+
+        private static final char[] NO_CHARS = new char[0];
+
+        private static final SuffixNode[] NO_NODES = new SuffixNode[0];
+
+        private char[] chars = NO_CHARS;
+
+        private SuffixNode[] children = NO_NODES;
+
+        /**
+         * Type of the extension that ends at this node, if any.
+         */
+        private MimeType type;
+
+        void put(String extension, MimeType type) {
+            SuffixNode node = this;
+            for (int i = extension.length() - 1; i >= 0; i--) {
+                char ch = extension.charAt(i);
+                int index = Arrays.binarySearch(node.chars, ch);
+                if (index < 0) {
+                    index = -index - 1;
+                    node.insert(index, ch);
+                }
+                node = node.children[index];
+            }
+            node.type = type;
+        }
+
+        private void insert(int index, char ch) {
+            char[] chars = new char[this.chars.length + 1];
+            SuffixNode[] children = new SuffixNode[chars.length];
+            System.arraycopy(this.chars, 0, chars, 0, index);
+            System.arraycopy(this.children, 0, children, 0, index);
+            chars[index] = ch;
+            children[index] = new SuffixNode();
+            System.arraycopy(this.chars, index, chars, index + 1, this.chars.length - index);
+            System.arraycopy(this.children, index, children, index + 1, this.children.length - index);
+            this.chars = chars;
+            this.children = children;
+        }
+
+        /**
+         * @return type of the longest extension that the name ends with,
+         *         or <code>null</code> if it ends with none
+         */
+        MimeType getLongestSuffix(String name) {
+            MimeType longest = type;
+            SuffixNode node = this;
+            for (int i = name.length() - 1; i >= 0; i--) {
+                int index = Arrays.binarySearch(node.chars, name.charAt(i));
+                if (index < 0) {
+                    break;
+                }
+                node = node.children[index];
+                if (node.type != null) {
+                    longest = node.type;
+                }
+            }
+            return longest;
+        }
+
+    }
+
 }
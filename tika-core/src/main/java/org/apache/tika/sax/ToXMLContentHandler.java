@@ -18,7 +18,6 @@ package org.apache.tika.sax;
 
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,6 +29,11 @@ import org.xml.sax.SAXException;
  * The incoming SAX events are expected to be well-formed (properly nested,
  * etc.) and to explicitly include namespace declaration attributes and
  * corresponding namespace prefixes in element and attribute names.
+ * <p>
+ * The markup of each event is escaped and assembled in a reusable buffer
+ * and then written in one go, without copying attribute values or
+ * building qualified names on the way.  Only the elements that declare
+ * namespaces are tracked for resolving prefixes.
  *
  * @since Apache Tika 0.10
  */
@@ -39,41 +43,27 @@ public class ToXMLContentHandler extends ToTextContentHandler {
 
         private final ElementInfo parent;
 
+        /** Depth of the element that declares the namespaces */
+        private final int depth;
+
         private final Map<String, String> namespaces;
 
-        public ElementInfo(ElementInfo parent, Map<String, String> namespaces) {
+        public ElementInfo(
+                ElementInfo parent, int depth, Map<String, String> namespaces) {
             this.parent = parent;
-            if (namespaces.isEmpty()) {
-                this.namespaces = Collections.emptyMap();
-            } else {
-                this.namespaces = new HashMap<String, String>(namespaces);
-            }
+            this.depth = depth;
+            this.namespaces = new HashMap<String, String>(namespaces);
         }
 
-        public String getPrefix(String uri) throws SAXException {
-            String prefix = namespaces.get(uri);
-            if (prefix != null) {
-                return prefix;
-            } else if (parent != null) {
-                return parent.getPrefix(uri);
-            } else if (uri == null || uri.length() == 0) {
-                return "";
-            } else {
-                throw new SAXException("Namespace " + uri + " not declared");
-            }
-        }
+    }
 
-        public String getQName(String uri, String localName)
-                throws SAXException {
-            String prefix = getPrefix(uri);
-            if (prefix.length() > 0) {
-                return prefix + ":" + localName;
-            } else {
-                return localName;
-            }
-        }
+    private static final int BUFFER_SIZE = 8192;
 
-    }
+    /**
+     * Number of characters of a string that are copied into the buffer
+     * at a time, and copied again if one of them needs escaping.
+     */
+    private static final int CHUNK_SIZE = 512;
 
     private final String encoding;
 
@@ -82,8 +72,16 @@ public class ToXMLContentHandler extends ToTextContentHandler {
     protected final Map<String, String> namespaces =
         new HashMap<String, String>();
 
+    /** Innermost open element that declares namespaces, if any */
     private ElementInfo currentElement;
 
+    /** Number of open elements */
+    private int depth = 0;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int length = 0;
+
     /**
      * Creates an XML serializer that writes to the given byte stream
      * using the given character encoding.
@@ -114,24 +112,22 @@ public class ToXMLContentHandler extends ToTextContentHandler {
     @Override
     public void startDocument() throws SAXException {
         if (encoding != null) {
-            write("<?xml version=\"1.0\" encoding=\"");
-            write(encoding);
-            write("\"?>\n");
+            append("<?xml version=\"1.0\" encoding=\"");
+            append(encoding);
+            append("\"?>\n");
+            flushBuffer();
         }
 
         currentElement = null;
+        depth = 0;
         namespaces.clear();
     }
 
     @Override
     public void startPrefixMapping(String prefix, String uri)
             throws SAXException {
-        try {
-            if (currentElement != null
-                    && prefix.equals(currentElement.getPrefix(uri))) {
-                return;
-            }
-        } catch (SAXException ignore) {
+        if (depth > 0 && prefix.equals(findPrefix(uri))) {
+            return;
         }
         namespaces.put(uri, prefix);
     }
@@ -140,71 +136,84 @@ public class ToXMLContentHandler extends ToTextContentHandler {
     public void startElement(
             String uri, String localName, String qName, Attributes atts)
             throws SAXException {
-        lazyCloseStartElement();
+        try {
+            lazyCloseStartElement();
 
-        currentElement = new ElementInfo(currentElement, namespaces);
+            depth++;
+            if (!namespaces.isEmpty()) {
+                currentElement =
+                        new ElementInfo(currentElement, depth, namespaces);
+            }
 
-        write('<');
-        write(currentElement.getQName(uri, localName));
+            append('<');
+            appendQName(uri, localName);
 
-        for (int i = 0; i < atts.getLength(); i++) {
-            write(' ');
-            write(currentElement.getQName(atts.getURI(i), atts.getLocalName(i)));
-            write('=');
-            write('"');
-            char[] ch = atts.getValue(i).toCharArray();
-            writeEscaped(ch, 0, ch.length, true);
-            write('"');
-        }
+            for (int i = 0; i < atts.getLength(); i++) {
+                append(' ');
+                appendQName(atts.getURI(i), atts.getLocalName(i));
+                append('=');
+                append('"');
+                appendEscaped(atts.getValue(i), true);
+                append('"');
+            }
 
-        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
-            write(' ');
-            write("xmlns");
-            String prefix = entry.getValue();
-            if (prefix.length() > 0) {
-                write(':');
-                write(prefix);
+            if (!namespaces.isEmpty()) {
+                for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+                    append(' ');
+                    append("xmlns");
+                    String prefix = entry.getValue();
+                    if (prefix.length() > 0) {
+                        append(':');
+                        append(prefix);
+                    }
+                    append('=');
+                    append('"');
+                    appendEscaped(entry.getKey(), true);
+                    append('"');
+                }
+                namespaces.clear();
             }
-            write('=');
-            write('"');
-            char[] ch = entry.getKey().toCharArray();
-            writeEscaped(ch, 0, ch.length, true);
-            write('"');
-        }
-        namespaces.clear();
 
-        inStartElement = true;
+            inStartElement = true;
+        } finally {
+            flushBuffer();
+        }
     }
 
     @Override
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
         if (inStartElement) {
-            write(" />");
+            append(" />");
             inStartElement = false;
         } else {
-            write("</");
-            write(qName);
-            write('>');
+            append("</");
+            append(qName);
+            append('>');
         }
+        flushBuffer();
 
         namespaces.clear();
 
         // Reset the position in the tree, to avoid endless stack overflow
         // chains (see TIKA-1070)
-        currentElement = currentElement.parent;
+        if (currentElement != null && currentElement.depth == depth) {
+            currentElement = currentElement.parent;
+        }
+        depth--;
     }
 
     @Override
     public void characters(char[] ch, int start, int length)
             throws SAXException {
         lazyCloseStartElement();
-        writeEscaped(ch, start, start + length, false);
+        appendEscaped(ch, start, start + length, false);
+        flushBuffer();
     }
 
     private void lazyCloseStartElement() throws SAXException {
         if (inStartElement) {
-            write('>');
+            append('>');
             inStartElement = false;
         }
     }
@@ -216,7 +225,8 @@ public class ToXMLContentHandler extends ToTextContentHandler {
      * @throws SAXException if the character could not be written
      */
     protected void write(char ch) throws SAXException {
-        super.characters(new char[] { ch }, 0, 1);
+        append(ch);
+        flushBuffer();
     }
 
     /**
@@ -226,31 +236,121 @@ public class ToXMLContentHandler extends ToTextContentHandler {
      * @throws SAXException if the character string could not be written
      */
     protected void write(String string) throws SAXException {
-        super.characters(string.toCharArray(), 0, string.length());
+        append(string);
+        flushBuffer();
     }
 
     /**
-     * Writes the given characters as-is followed by the given entity.
+     * Returns the prefix of the given namespace in the current element.
+     *
+     * @param uri namespace URI
+     * @return prefix, or <code>null</code> if the namespace is not declared
+     */
+    private String findPrefix(String uri) {
+        for (ElementInfo element = currentElement;
+                element != null; element = element.parent) {
+            String prefix = element.namespaces.get(uri);
+            if (prefix != null) {
+                return prefix;
+            }
+        }
+        if (uri == null || uri.length() == 0) {
+            return "";
+        } else {
+            return null;
+        }
+    }
+
+    private void appendQName(String uri, String localName)
+            throws SAXException {
+        String prefix = findPrefix(uri);
+        if (prefix == null) {
+            throw new SAXException("Namespace " + uri + " not declared");
+        }
+        if (prefix.length() > 0) {
+            append(prefix);
+            append(':');
+        }
+        append(localName);
+    }
+
+    /**
+     * Writes the buffered characters to the character stream.
      *
-     * @param ch character array
-     * @param from start position in the array
-     * @param to end position in the array
-     * @param entity entity code
-     * @return next position in the array,
-     *         after the characters plus one entity
      * @throws SAXException if the characters could not be written
      */
-    private int writeCharsAndEntity(char[] ch, int from, int to, String entity)
+    private void flushBuffer() throws SAXException {
+        if (length > 0) {
+            int n = length;
+            length = 0;
+            super.characters(buffer, 0, n);
+        }
+    }
+
+    private void append(char ch) throws SAXException {
+        if (length == buffer.length) {
+            flushBuffer();
+        }
+        buffer[length++] = ch;
+    }
+
+    private void append(String string) throws SAXException {
+        append(string, 0, string.length());
+    }
+
+    private void append(String string, int from, int to)
             throws SAXException {
-        super.characters(ch, from, to - from);
-        write('&');
-        write(entity);
-        write(';');
-        return to + 1;
+        while (from < to) {
+            if (length == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(to - from, buffer.length - length);
+            string.getChars(from, from + n, buffer, length);
+            length += n;
+            from += n;
+        }
+    }
+
+    private void append(char[] ch, int from, int to) throws SAXException {
+        int n = to - from;
+        if (n > buffer.length - length) {
+            flushBuffer();
+            if (n >= buffer.length) {
+                // Too large to be worth copying
+                super.characters(ch, from, n);
+                return;
+            }
+        }
+        System.arraycopy(ch, from, buffer, length, n);
+        length += n;
+    }
+
+    /**
+     * Returns the entity that the given character is escaped as.
+     *
+     * @param ch character
+     * @param attribute whether the character is in an attribute value
+     *                  or in normal character content
+     * @return entity code, or <code>null</code> if the character is
+     *         written as-is
+     */
+    private static String getEntity(char ch, boolean attribute) {
+        switch (ch) {
+            case '<':
+                return "lt";
+            case '>':
+                return "gt";
+            case '&':
+                return "amp";
+            case '"':
+                return attribute ? "quot" : null;
+            default:
+                return null;
+        }
     }
 
     /**
-     * Writes the given characters with XML meta characters escaped.
+     * Appends the given characters with XML meta characters escaped.
      *
      * @param ch character array
      * @param from start position in the array
@@ -259,23 +359,58 @@ public class ToXMLContentHandler extends ToTextContentHandler {
      *                  an attribute value or normal character content
      * @throws SAXException if the characters could not be written
      */
-    private void writeEscaped(char[] ch, int from, int to, boolean attribute)
+    private void appendEscaped(char[] ch, int from, int to, boolean attribute)
             throws SAXException {
-        int pos = from;
-        while (pos < to) {
-            if (ch[pos] == '<') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "lt");
-            } else if (ch[pos] == '>') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "gt");
-            } else if (ch[pos] == '&') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "amp");
-            } else if (attribute && ch[pos] == '"') {
-                from = pos = writeCharsAndEntity(ch, from, pos, "quot");
-            } else {
+        for (int pos = from; pos < to; pos++) {
+            String entity = getEntity(ch[pos], attribute);
+            if (entity != null) {
+                append(ch, from, pos);
+                appendEntity(entity);
+                from = pos + 1;
+            }
+        }
+        append(ch, from, to);
+    }
+
+    /**
+     * Appends the given string with XML meta characters escaped,
+     * without copying it first: it is copied into the buffer a chunk at
+     * a time and escaped there.
+     *
+     * @see #appendEscaped(char[], int, int, boolean)
+     */
+    private void appendEscaped(String string, boolean attribute)
+            throws SAXException {
+        int from = 0;
+        int to = string.length();
+        while (from < to) {
+            if (length == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(to - from,
+                    Math.min(CHUNK_SIZE, buffer.length - length));
+            string.getChars(from, from + n, buffer, length);
+            int pos = length;
+            int end = length + n;
+            String entity = null;
+            while (pos < end
+                    && (entity = getEntity(buffer[pos], attribute)) == null) {
                 pos++;
             }
+            from += pos - length;
+            length = pos;
+            if (entity != null) {
+                // The rest of the chunk is copied again after the entity
+                appendEntity(entity);
+                from++;
+            }
         }
-        super.characters(ch, from, to - from);
+    }
+
+    private void appendEntity(String entity) throws SAXException {
+        append('&');
+        append(entity);
+        append(';');
     }
 
 }
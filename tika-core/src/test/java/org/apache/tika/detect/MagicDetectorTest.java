@@ -19,16 +19,21 @@ package org.apache.tika.detect;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.tika.io.IOUtils;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 import org.junit.Test;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_16BE;
 import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -229,6 +234,65 @@ public class MagicDetectorTest {
         assertDetect(detector, testMT, data.getBytes(US_ASCII));
     }
 
+    @Test
+    public void testMayMatchAt() throws Exception {
+        MediaType testMT = new MediaType("application", "test");
+        MagicDetector detector;
+
+        detector = MagicDetector.parse(testMT, "string", "0", "ab", null);
+        assertTrue(detector.mayMatchAt(0, (byte) 'a'));
+        assertFalse(detector.mayMatchAt(0, (byte) 'b'));
+        assertTrue(detector.mayMatchAt(1, (byte) 'b'));
+        assertTrue(detector.mayMatchAt(2, (byte) 'c'));
+
+        detector = MagicDetector.parse(testMT, "stringignorecase", "0", "Ab", null);
+        assertTrue(detector.mayMatchAt(0, (byte) 'a'));
+        assertTrue(detector.mayMatchAt(0, (byte) 'A'));
+        assertFalse(detector.mayMatchAt(0, (byte) 'b'));
+
+        detector = MagicDetector.parse(testMT, "string", "0", "0x8000", "0xF000");
+        assertTrue(detector.mayMatchAt(0, (byte) 0x8F));
+        assertFalse(detector.mayMatchAt(0, (byte) 0x7F));
+        assertTrue(detector.mayMatchAt(1, (byte) 0xFF));
+
+        detector = MagicDetector.parse(testMT, "regex", "0", "(?s)^[a-c]x|\\\\s*d", null);
+        assertTrue(detector.mayMatchAt(0, (byte) 'b'));
+        assertTrue(detector.mayMatchAt(0, (byte) ' '));
+        assertTrue(detector.mayMatchAt(0, (byte) 'd'));
+        assertFalse(detector.mayMatchAt(0, (byte) 'x'));
+        assertTrue(detector.mayMatchAt(1, (byte) 'y'));
+
+        // Expressions that may match nothing, or aren't understood
+        for (String regex : new String[] {"a?", "a|", "(?i)a", "\\\\Qa\\\\E", "(a?)\\\\1"}) {
+            detector = MagicDetector.parse(testMT, "regex", "0", regex, null);
+            assertTrue(regex, detector.mayMatchAt(0, (byte) 'x'));
+        }
+    }
+
+    @Test
+    public void testMayMatchAtRegexRandom() throws Exception {
+        MediaType testMT = new MediaType("application", "test");
+        String[] regexes = {
+                "(?s)^[\\\\x61-\\\\x63].[^a]", "(?:a|bc)+d", "(?:a?b*)c", "\\\\s*(?:x\\\\s+)?(?:y)?z\\\\b",
+                "(?=a)[a-c]", "[^\\\\x00-\\\\x61]{2,}", "(?s)^\\\\x62{0,3}.{1}", "\\\\W\\\\w\\\\d", "(?:)a"
+        };
+        Random random = new Random(42);
+        byte[] alphabet = " abcdxyz0\t\n\u0000".getBytes(ISO_8859_1);
+        for (String regex : regexes) {
+            MagicDetector detector = MagicDetector.parse(testMT, "regex", "0", regex, null);
+            for (int i = 0; i < 2000; i++) {
+                byte[] data = new byte[1 + random.nextInt(6)];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = alphabet[random.nextInt(alphabet.length)];
+                }
+                if (detector.detect(new ByteArrayInputStream(data), new Metadata()) == testMT) {
+                    assertTrue(regex + " " + Arrays.toString(data),
+                            detector.mayMatchAt(0, data[0]));
+                }
+            }
+        }
+    }
+
     private void assertDetect(Detector detector, MediaType type, String data) {
         byte[] bytes = data.getBytes(US_ASCII);
         assertDetect(detector, type, bytes);
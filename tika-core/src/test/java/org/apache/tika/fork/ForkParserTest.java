@@ -21,6 +21,9 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -55,10 +58,13 @@ import org.apache.tika.sax.BasicContentHandlerFactory;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.ContentHandlerFactory;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
 public class ForkParserTest extends TikaTest {
@@ -206,6 +212,102 @@ public class ForkParserTest extends TikaTest {
         }
     }
 
+    @Test
+    public void testLargeDocument() throws Exception {
+        //more events than fit in a batch, more names than are interned,
+        //and text that isn't ascii
+        Parser manyEvents = new ManyEventsParser();
+        ContentHandler expected = new ToXMLContentHandler();
+        manyEvents.parse(new ByteArrayInputStream(new byte[0]), expected,
+                new Metadata(), new ParseContext());
+
+        ForkParser parser = new ForkParser(
+                ForkParserTest.class.getClassLoader(), manyEvents);
+        try {
+            for (int i = 0; i < 2; i++) {
+                ContentHandler output = new ToXMLContentHandler();
+                parser.parse(new ByteArrayInputStream(new byte[0]), output,
+                        new Metadata(), new ParseContext());
+                assertEquals(expected.toString(), output.toString());
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Test
+    public void testHandlerException() throws Exception {
+        ForkParser parser = new ForkParser(
+                ForkParserTest.class.getClassLoader(), new ManyEventsParser());
+        try {
+            ContentHandler failing = new DefaultHandler() {
+                @Override
+                public void characters(char[] ch, int start, int length) throws SAXException {
+                    throw new SAXException("handler failed");
+                }
+            };
+            try {
+                parser.parse(new ByteArrayInputStream(new byte[0]), failing,
+                        new Metadata(), new ParseContext());
+                fail("the handler's exception should have been reported");
+            } catch (SAXException e) {
+                assertEquals("handler failed", e.getMessage());
+            }
+            //the process is still usable
+            ContentHandler output = new ToXMLContentHandler();
+            parser.parse(new ByteArrayInputStream(new byte[0]), output,
+                    new Metadata(), new ParseContext());
+            assertTrue(output.toString().contains("caf\u00e9"));
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Test
+    public void testWriteLimit() throws Exception {
+        ForkParser parser = new ForkParser(
+                ForkParserTest.class.getClassLoader(), new ManyEventsParser());
+        try {
+            //reaching the write limit truncates the output, but isn't an error
+            ContentHandler output = new WriteOutContentHandler(100);
+            parser.parse(new ByteArrayInputStream(new byte[0]), output,
+                    new Metadata(), new ParseContext());
+            assertEquals(100, output.toString().length());
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Test
+    public void testCorruptBatch() throws Exception {
+        //characters event with a two byte char that is cut off
+        assertCorruptBatch(ContentHandlerProxy.CHARACTERS, 1, 0xC3);
+        //characters event that claims more chars than the batch has
+        assertCorruptBatch(ContentHandlerProxy.CHARACTERS, 100, 'a');
+        //end element with a name that was never sent
+        assertCorruptBatch(ContentHandlerProxy.END_ELEMENT, ContentHandlerProxy.FIRST_NAME_INDEX + 5);
+        //varint that doesn't end
+        assertCorruptBatch(ContentHandlerProxy.END_ELEMENT, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF);
+    }
+
+    private void assertCorruptBatch(int... batch) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(ContentHandlerProxy.BATCH);
+        data.writeInt(batch.length);
+        for (int b : batch) {
+            data.writeByte(b);
+        }
+        ContentHandlerResource resource = new ContentHandlerResource(new DefaultHandler());
+        try {
+            resource.process(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                    new DataOutputStream(new ByteArrayOutputStream()));
+            fail("corrupt batch should have been rejected");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
     @Test
     public void testPulseAndTimeouts() throws Exception {
 
@@ -446,6 +548,33 @@ public class ForkParserTest extends TikaTest {
     }
 
 
+    private static class ManyEventsParser extends ForkTestParser {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
+                          ParseContext context) throws IOException, SAXException, TikaException {
+            handler.startDocument();
+            handler.startPrefixMapping("t", "urn:test");
+            handler.startElement("urn:test", "root", "t:root", new AttributesImpl());
+            for (int i = 0; i < 10000; i++) {
+                AttributesImpl atts = new AttributesImpl();
+                atts.addAttribute("", "id", "id", "CDATA", "\u00e9\u2603" + i);
+                String name = "e" + (i % 5000);
+                handler.startElement("urn:test", name, "t:" + name, atts);
+                char[] ch = ("caf\u00e9 \u2603 \uD83D\uDE00 \uD800 " + i).toCharArray();
+                handler.characters(ch, 0, ch.length);
+                handler.endElement("urn:test", name, "t:" + name);
+                handler.ignorableWhitespace(new char[]{'\n'}, 0, 1);
+            }
+            handler.processingInstruction("target", null);
+            handler.endElement("urn:test", "root", "t:root");
+            handler.endPrefixMapping("t");
+            handler.endDocument();
+        }
+    }
+
     //use this to test that the wrapper handler is acted upon by the server but not proxied back
     private static class ToFileHandler extends AbstractRecursiveParserWrapperHandler {
 
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.tika.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link MagicIndex} of the default types finds the same
+ * types as evaluating every magic.
+ */
+public class MagicIndexTest {
+
+    private MimeTypes mimeTypes;
+
+    private MagicIndex index;
+
+    @Before
+    public void setUp() {
+        mimeTypes = MimeTypes.getDefaultMimeTypes();
+        index = mimeTypes.getMagicIndex();
+    }
+
+    @Test
+    public void testTestDocuments() throws Exception {
+        List<byte[]> documents = getTestDocuments();
+        assertFalse(documents.isEmpty());
+        for (byte[] document : documents) {
+            assertSameMatches(Arrays.copyOf(
+                    document, Math.min(document.length, mimeTypes.getMinLength())));
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        // Magics compare zeros beyond the end of the data
+        for (byte[] document : getTestDocuments()) {
+            for (int length = 0; length < Math.min(document.length, 300); length++) {
+                assertSameMatches(Arrays.copyOf(document, length));
+            }
+        }
+        assertSameMatches(new byte[0]);
+        assertSameMatches(new byte[100]);
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(data);
+            assertSameMatches(data);
+        }
+    }
+
+    @Test
+    public void testCorrupted() throws Exception {
+        // Keeps the magics of the documents mostly intact
+        Random random = new Random(42);
+        for (byte[] document : getTestDocuments()) {
+            for (int i = 0; i < 20; i++) {
+                byte[] data = Arrays.copyOf(document, Math.min(document.length, 1024));
+                for (int j = 0; j < 4 && data.length > 0; j++) {
+                    data[random.nextInt(Math.min(data.length, 64))] = (byte) random.nextInt();
+                }
+                assertSameMatches(data);
+            }
+        }
+    }
+
+    private void assertSameMatches(byte[] data) {
+        assertEquals(index.matchAll(data), index.match(data));
+    }
+
+    private List<byte[]> getTestDocuments() throws Exception {
+        URL url = MagicIndexTest.class.getResource("/org/apache/tika/mime");
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get(url.toURI()).getParent())) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> !file.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+        }
+        List<byte[]> documents = new ArrayList<>();
+        for (Path file : files) {
+            try (InputStream stream = Files.newInputStream(file)) {
+                documents.add(IOUtils.toByteArray(stream));
+            }
+        }
+        return documents;
+    }
+
+}
@@ -93,4 +93,43 @@ public class PatternsTest {
         assertTrue(extensions.contains(".jpeg"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLongestExtension() throws MimeTypeException {
+        MimeType gzip = types.forName("application/gzip");
+        MimeType tar = types.forName("application/x-gtar");
+        MimeType any = types.forName("application/x-any");
+        patterns.add("*.gz", gzip);
+        patterns.add("*.tar.gz", tar);
+        patterns.add("*z", any);
+
+        assertEquals(tar, patterns.matches("data.tar.gz"));
+        assertEquals(tar, patterns.matches(".tar.gz"));
+        assertEquals(gzip, patterns.matches("data.gz"));
+        assertEquals(gzip, patterns.matches("data.ar.gz"));
+        assertEquals(any, patterns.matches("data.xz"));
+        assertEquals(any, patterns.matches("z"));
+        assertEquals(null, patterns.matches("data.tar"));
+        assertEquals(null, patterns.matches(""));
+    }
+
+    @Test
+    public void testGlobs() throws MimeTypeException {
+        MimeType readme = types.forName("text/x-readme");
+        MimeType log = types.forName("text/x-log");
+        MimeType rdf = types.forName("application/rdf+xml");
+        patterns.add("README", text);
+        patterns.add("README*", readme);
+        patterns.add("*.log.?", log);
+        patterns.add("^rdf$", true, rdf);
+
+        // Exact names first, then the longest glob
+        assertEquals(text, patterns.matches("README"));
+        assertEquals(readme, patterns.matches("README.txt"));
+        assertEquals(log, patterns.matches("README.log.1"));
+        assertEquals(log, patterns.matches("x.log.1"));
+        assertEquals(null, patterns.matches("x.log.10"));
+        assertEquals(rdf, patterns.matches("rdf"));
+        assertEquals(null, patterns.matches("rdfs"));
+    }
+
+}
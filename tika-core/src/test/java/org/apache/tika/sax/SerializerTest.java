@@ -17,8 +17,10 @@
 package org.apache.tika.sax;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 public class SerializerTest {
@@ -77,6 +79,46 @@ public class SerializerTest {
                 new ToHTMLContentHandler());
     }
 
+    @Test
+    public void testToXMLContentHandlerNamespaces() throws Exception {
+        String xhtml = "http://www.w3.org/1999/xhtml";
+        String dc = "http://purl.org/dc/elements/1.1/";
+        ContentHandler handler = new ToXMLContentHandler();
+        handler.startDocument();
+        handler.startPrefixMapping("", xhtml);
+        handler.startElement(xhtml, "html", "html", new AttributesImpl());
+        handler.startPrefixMapping("dc", dc);
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute(dc, "title", "dc:title", "CDATA", "<\u00e9>");
+        attributes.addAttribute("", "lang", "lang", "CDATA", "en");
+        handler.startElement(xhtml, "head", "head", attributes);
+        handler.startElement(dc, "creator", "dc:creator", new AttributesImpl());
+        handler.endElement(dc, "creator", "dc:creator");
+        handler.endElement(xhtml, "head", "head");
+        handler.endPrefixMapping("dc");
+        // Already declared on an ancestor
+        handler.startPrefixMapping("", xhtml);
+        handler.startElement(xhtml, "body", "body", new AttributesImpl());
+        handler.characters("a & b".toCharArray(), 0, 5);
+        handler.endElement(xhtml, "body", "body");
+        handler.endElement(xhtml, "html", "html");
+        handler.endDocument();
+        assertEquals("<html xmlns=\"http://www.w3.org/1999/xhtml\">"
+                + "<head dc:title=\"&lt;\u00e9&gt;\" lang=\"en\""
+                + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+                + "<dc:creator /></head><body>a &amp; b</body></html>",
+                handler.toString());
+
+        handler = new ToXMLContentHandler();
+        handler.startDocument();
+        try {
+            handler.startElement(dc, "creator", "dc:creator", new AttributesImpl());
+            fail("undeclared namespace");
+        } catch (SAXException e) {
+            // expected
+        }
+    }
+
     private void assertStartDocument(String expected, ContentHandler handler)
             throws Exception {
         handler.startDocument();
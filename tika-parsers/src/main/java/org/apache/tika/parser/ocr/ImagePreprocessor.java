@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Prepares an image for OCR in the JVM, as configured by the image
+ * processing fields of {@link TesseractOCRConfig}:
+ * <ul>
+ *     <li>colorspace: <code>gray</code> converts to grayscale; anything
+ *     else keeps the colors</li>
+ *     <li>resize: scales by this percentage, with the resampling of the
+ *     filter: <code>point</code> picks the nearest pixel, <code>box</code>
+ *     and <code>triangle</code> interpolate bilinearly, and the others
+ *     bicubically; the scaled image has at most {@link #MAX_PIXELS}
+ *     pixels, as it is held in the heap</li>
+ *     <li>applyRotation: straightens the text lines, with the skew
+ *     estimated from the projection profile of the dark pixels</li>
+ *     <li>depth: reduces each sample to this number of bits;
+ *     <code>1</code> binarizes with Otsu's threshold</li>
+ * </ul>
+ * The density is not a property of the image; it is written as the
+ * resolution of the encoded image, which Tesseract reads.
+ * <p>
+ * This replaces running a python script and ImageMagick on an image file,
+ * and works on an image that is already decoded, such as a rendered PDF
+ * page.
+ */
+public class ImagePreprocessor {
+
+    //Tesseract can't read larger images
+    private static final int MAX_DIMENSION = 32767;
+
+    /**
+     * Images are not scaled up beyond this many pixels, about 600 dpi for
+     * a letter page.  The default resize of 900% would otherwise turn a page
+     * rendered at 300 dpi into buffers of some 680 MB each.
+     */
+    public static final long MAX_PIXELS = 32L * 1024 * 1024;
+
+    //the skew is searched within +/- this many degrees
+    private static final double MAX_SKEW = 15;
+    private static final double COARSE_STEP = 0.5;
+    private static final double FINE_STEP = 0.05;
+    //the skew is estimated on a sample of at most this many pixels per side
+    private static final int SKEW_SAMPLE_SIZE = 1024;
+    //fewer dark pixels than this leave nothing to estimate the skew from
+    private static final int MIN_DARK_PIXELS = 100;
+
+    private ImagePreprocessor() {
+    }
+
+    /**
+     * @return the processed image; <code>image</code> is not modified
+     */
+    public static BufferedImage process(BufferedImage image, TesseractOCRConfig config) {
+        boolean gray = isGray(config.getColorspace());
+        BufferedImage result = gray ? toGray(image) : toRGB(image);
+        double skew = config.getApplyRotation() ? getSkewAngle(gray ? result : toGray(result)) : 0;
+        result = resize(result, config.getResize() / 100.0, config.getFilter());
+        if (skew != 0) {
+            result = rotate(result, -skew, config.getFilter());
+        }
+        return reduceDepth(result, config.getDepth());
+    }
+
+    static boolean isGray(String colorspace) {
+        String c = colorspace.toLowerCase(Locale.ROOT);
+        return c.equals("gray") || c.equals("grey");
+    }
+
+    /**
+     * @return the image as {@link BufferedImage#TYPE_BYTE_GRAY}, with
+     * transparent pixels on white
+     */
+    static BufferedImage toGray(BufferedImage image) {
+        if (isPlainGray(image)) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        BufferedImage gray = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int argb = row[x];
+                int a = argb >>> 24;
+                int luma = (299 * ((argb >> 16) & 0xff) + 587 * ((argb >> 8) & 0xff)
+                        + 114 * (argb & 0xff)) / 1000;
+                pixels[y * w + x] = (byte) ((luma * a + 255 * (255 - a)) / 255);
+            }
+        }
+        return gray;
+    }
+
+    //the pixels are the raster's bytes, row by row
+    private static boolean isPlainGray(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_GRAY && image.getRaster().getParent() == null
+                && ((DataBufferByte) image.getRaster().getDataBuffer()).getData().length
+                == image.getWidth() * image.getHeight();
+    }
+
+    private static BufferedImage toRGB(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    static BufferedImage resize(BufferedImage image, double scale, String filter) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        scale = Math.min(scale, Math.min((double) MAX_DIMENSION / w, (double) MAX_DIMENSION / h));
+        //an image that is over the budget already isn't shrunk
+        scale = Math.min(scale, Math.max(1, Math.sqrt((double) MAX_PIXELS / ((double) w * h))));
+        int width = Math.max(1, (int) Math.round(w * scale));
+        int height = Math.max(1, (int) Math.round(h * scale));
+        if (width == w && height == h) {
+            return image;
+        }
+        BufferedImage resized = new BufferedImage(width, height, image.getType());
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, getInterpolation(filter));
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return resized;
+    }
+
+    private static Object getInterpolation(String filter) {
+        switch (filter.toLowerCase(Locale.ROOT)) {
+            case "point":
+                return RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+            case "box":
+            case "triangle":
+                return RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+            default:
+                return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+        }
+    }
+
+    /**
+     * Rotates the image about its center, on a white canvas that is large
+     * enough to hold all of it.
+     *
+     * @param degrees clockwise
+     */
+    static BufferedImage rotate(BufferedImage image, double degrees, String filter) {
+        double radians = Math.toRadians(degrees);
+        double sin = Math.abs(Math.sin(radians));
+        double cos = Math.abs(Math.cos(radians));
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int width = Math.min(MAX_DIMENSION, (int) Math.ceil(w * cos + h * sin));
+        int height = Math.min(MAX_DIMENSION, (int) Math.ceil(w * sin + h * cos));
+        BufferedImage rotated = new BufferedImage(width, height, image.getType());
+        Graphics2D g = rotated.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, getInterpolation(filter));
+            g.translate(width / 2.0, height / 2.0);
+            g.rotate(radians);
+            g.drawImage(image, -w / 2, -h / 2, null);
+        } finally {
+            g.dispose();
+        }
+        return rotated;
+    }
+
+    /**
+     * Estimates the skew of the text lines: projected along the lines,
+     * the dark pixels pile up in sharp peaks separated by empty rows, so
+     * the angle with the largest differences between neighboring rows of
+     * the projection is taken.
+     *
+     * @param gray image returned by {@link #toGray(BufferedImage)}
+     * @return skew of the text lines in degrees, clockwise
+     */
+    static double getSkewAngle(BufferedImage gray) {
+        int w = gray.getWidth();
+        int h = gray.getHeight();
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        int step = Math.max(1, (Math.max(w, h) + SKEW_SAMPLE_SIZE - 1) / SKEW_SAMPLE_SIZE);
+        int threshold = getOtsuThreshold(pixels);
+
+        //coordinates of the dark pixels of the sample, relative to its center
+        int sampleWidth = (w + step - 1) / step;
+        int sampleHeight = (h + step - 1) / step;
+        int[] xs = new int[sampleWidth * sampleHeight];
+        int[] ys = new int[xs.length];
+        int numDark = 0;
+        for (int y = 0; y < h; y += step) {
+            for (int x = 0; x < w; x += step) {
+                if ((pixels[y * w + x] & 0xff) <= threshold) {
+                    xs[numDark] = x / step - sampleWidth / 2;
+                    ys[numDark] = y / step - sampleHeight / 2;
+                    numDark++;
+                }
+            }
+        }
+        if (numDark < MIN_DARK_PIXELS || numDark == xs.length) {
+            return 0;
+        }
+        int offset = (int) Math.ceil(Math.sqrt((double) sampleWidth * sampleWidth
+                + (double) sampleHeight * sampleHeight) / 2) + 1;
+        int[] profile = new int[2 * offset + 1];
+
+        //no skew, unless another angle is better
+        double best = 0;
+        double bestScore = score(xs, ys, numDark, 0, profile, offset);
+        for (double angle = -MAX_SKEW; angle <= MAX_SKEW; angle += COARSE_STEP) {
+            double score = score(xs, ys, numDark, angle, profile, offset);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        double coarse = best;
+        for (double angle = coarse - COARSE_STEP; angle <= coarse + COARSE_STEP; angle += FINE_STEP) {
+            double score = score(xs, ys, numDark, angle, profile, offset);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        return Math.round(best / FINE_STEP) * FINE_STEP;
+    }
+
+    private static double score(int[] xs, int[] ys, int numDark, double degrees, int[] profile, int offset) {
+        double radians = Math.toRadians(degrees);
+        double sin = Math.sin(radians);
+        double cos = Math.cos(radians);
+        Arrays.fill(profile, 0);
+        for (int i = 0; i < numDark; i++) {
+            profile[(int) Math.round(ys[i] * cos - xs[i] * sin) + offset]++;
+        }
+        double score = 0;
+        for (int i = 1; i < profile.length; i++) {
+            double d = profile[i] - profile[i - 1];
+            score += d * d;
+        }
+        return score;
+    }
+
+    /**
+     * @return the gray level that separates the dark from the light pixels
+     * with the least variance within each class
+     */
+    static int getOtsuThreshold(byte[] pixels) {
+        long[] histogram = new long[256];
+        for (byte p : pixels) {
+            histogram[p & 0xff]++;
+        }
+        double total = pixels.length;
+        double sum = 0;
+        for (int i = 0; i < 256; i++) {
+            sum += i * (double) histogram[i];
+        }
+        double sumDark = 0;
+        long numDark = 0;
+        double bestVariance = -1;
+        int threshold = 127;
+        for (int t = 0; t < 256; t++) {
+            numDark += histogram[t];
+            if (numDark == 0) {
+                continue;
+            }
+            long numLight = (long) total - numDark;
+            if (numLight == 0) {
+                break;
+            }
+            sumDark += t * (double) histogram[t];
+            double meanDark = sumDark / numDark;
+            double meanLight = (sum - sumDark) / numLight;
+            double variance = (double) numDark * numLight * (meanDark - meanLight) * (meanDark - meanLight);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * Reduces each sample to <code>depth</code> bits; a gray image with a
+     * depth of 1 is binarized with Otsu's threshold.
+     */
+    static BufferedImage reduceDepth(BufferedImage image, int depth) {
+        if (depth >= 8) {
+            return image;
+        }
+        int levels = 1 << depth;
+        byte[] lookup = new byte[256];
+        boolean gray = isPlainGray(image);
+        if (depth == 1 && gray) {
+            int threshold = getOtsuThreshold(
+                    ((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+            for (int i = 0; i < 256; i++) {
+                lookup[i] = (byte) (i <= threshold ? 0 : 255);
+            }
+        } else {
+            for (int i = 0; i < 256; i++) {
+                int level = (i * (levels - 1) + 127) / 255;
+                lookup[i] = (byte) (level * 255 / (levels - 1));
+            }
+        }
+        //the input may be shared, e.g. an image that was already gray
+        BufferedImage reduced = new BufferedImage(image.getWidth(), image.getHeight(),
+                gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        if (gray) {
+            byte[] src = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            byte[] dst = ((DataBufferByte) reduced.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < src.length; i++) {
+                dst[i] = lookup[src[i] & 0xff];
+            }
+            return reduced;
+        }
+        int w = image.getWidth();
+        int[] row = new int[w];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int rgb = row[x];
+                row[x] = 0xff000000 | (lookup[(rgb >> 16) & 0xff] & 0xff) << 16
+                        | (lookup[(rgb >> 8) & 0xff] & 0xff) << 8 | (lookup[rgb & 0xff] & 0xff);
+            }
+            reduced.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return reduced;
+    }
+}
@@ -79,6 +79,9 @@ public class TesseractOCRConfig implements Serializable {
     // Maximum time (seconds) to wait for the ocring process termination
     private int timeout = 120;
 
+    // Maximum time (seconds) to wait for a batch of images; 0 allows timeout per image
+    private int batchTimeout = 0;
+
     // The format of the ocr'ed output to be returned, txt or hocr.
     private OUTPUT_TYPE outputType = OUTPUT_TYPE.TXT;
 
@@ -109,6 +112,9 @@ public class TesseractOCRConfig implements Serializable {
     // whether or not to preserve interword spacing
     private boolean preserveInterwordSpacing = false;
 
+    // whether or not to pipe images to tesseract and read its output instead of using files
+    private boolean streaming = false;
+
     // whether or not to apply rotation calculated by the rotation.py script
     private boolean applyRotation = false;
 
@@ -167,8 +173,11 @@ public class TesseractOCRConfig implements Serializable {
                 getProp(props, "maxFileSizeToOcr", getMaxFileSizeToOcr()));
         setTimeout(
                 getProp(props, "timeout", getTimeout()));
+        setBatchTimeout(
+                getProp(props, "batchTimeout", getBatchTimeout()));
         setOutputType(getProp(props, "outputType", getOutputType().toString()));
         setPreserveInterwordSpacing(getProp(props, "preserveInterwordSpacing", false));
+        setStreaming(getProp(props, "streaming", getStreaming()));
 
         // set parameters for ImageMagick
         setEnableImageProcessing(
@@ -321,6 +330,32 @@ public class TesseractOCRConfig implements Serializable {
     public boolean getPreserveInterwordSpacing() {
         return preserveInterwordSpacing;
     }
+
+    /**
+     * Whether or not to pipe each image to Tesseract's standard input and
+     * read the result from its standard output, so that Tesseract's input
+     * and output aren't written to temporary files; the image is read into
+     * memory instead.  The metadata of JPEG and TIFF images is still read
+     * from a temporary file.  This needs Tesseract 3.03 or later; with
+     * older versions, or if Tesseract repeatedly fails to read images from
+     * its input, files are used.
+     * A batch of images, see {@link TesseractOCRParser#parseInline(java.util.List,
+     * java.util.List, org.apache.tika.parser.ParseContext, TesseractOCRConfig)},
+     * is always OCR'd from files.  Default is <code>false</code>.
+     *
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     *
+     * @return whether or not to pipe images to Tesseract and read its output
+     */
+    public boolean getStreaming() {
+        return streaming;
+    }
     /**
      * @see #setMinFileSizeToOcr(long minFileSizeToOcr)
      */
@@ -367,6 +402,28 @@ public class TesseractOCRConfig implements Serializable {
         return timeout;
     }
 
+    /**
+     * Set maximum time (seconds) to wait for the ocring process to terminate
+     * when a batch of images is OCR'd in one process, see
+     * {@link TesseractOCRParser#parseInline(java.util.List, java.util.List,
+     * org.apache.tika.parser.ParseContext, TesseractOCRConfig)}.
+     * Default value is 0, which allows the timeout for each image in the batch.
+     */
+    public void setBatchTimeout(int batchTimeout) {
+        if (batchTimeout < 0) {
+            throw new IllegalArgumentException("batchTimeout must be >= 0");
+        }
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * @return batch timeout value for Tesseract
+     * @see #setBatchTimeout(int batchTimeout)
+     */
+    public int getBatchTimeout() {
+        return batchTimeout;
+    }
+
     /**
      * Set output type from ocr process.  Default is "txt", but can be "hocr".
      * Default value is {@link OUTPUT_TYPE#TXT}.
@@ -407,8 +464,11 @@ public class TesseractOCRConfig implements Serializable {
     }
 
     /**
-     * Set the value to true if processing is to be enabled.
-     * Default value is false.
+     * Set the value to 1 if processing is to be enabled.  Images are
+     * processed in the JVM by {@link ImagePreprocessor}; images that
+     * ImageIO can't read, or that have more than one frame, such as
+     * multi-page TIFFs, are processed by ImageMagick, if it is available.
+     * Default value is 0.
      */
     public void setEnableImageProcessing(int enableImageProcessing) {
         this.enableImageProcessing = enableImageProcessing;
@@ -440,18 +500,19 @@ public class TesseractOCRConfig implements Serializable {
     }
 
     /**
-     * @param depth the depth to set. Valid values are 2, 4, 8, 16, 32, 64, 256, 4096.
+     * @param depth the depth to set. Valid values are 1, 2, 4, 8, 16, 32, 64, 256, 4096.
+     *              1 binarizes the image.
      *              Default value is 4.
      */
     public void setDepth(int depth) {
-        int[] allowedValues = {2, 4, 8, 16, 32, 64, 256, 4096};
+        int[] allowedValues = {1, 2, 4, 8, 16, 32, 64, 256, 4096};
         for (int i = 0; i < allowedValues.length; i++) {
             if (depth == allowedValues[i]) {
                 this.depth = depth;
                 return;
             }
         }
-        throw new IllegalArgumentException("Invalid depth value. Valid values are 2, 4, 8, 16, 32, 64, 256, 4096.");
+        throw new IllegalArgumentException("Invalid depth value. Valid values are 1, 2, 4, 8, 16, 32, 64, 256, 4096.");
     }
 
     /**
@@ -547,17 +608,18 @@ public class TesseractOCRConfig implements Serializable {
     }
 
     /**
-     * @return Whether or not a rotation value should be calculated and passed to ImageMagick before performing OCR.
-     * (Requires that Python is installed).
+     * @return Whether or not the skew of the text should be estimated and corrected before performing OCR.
      */
     public boolean getApplyRotation() {
     	return this.applyRotation;
     }
 
     /**
-     * Sets whether or not a rotation value should be calculated and passed to ImageMagick.
+     * Sets whether or not the skew of the text should be estimated and corrected,
+     * see {@link ImagePreprocessor}.  Images that are processed by ImageMagick
+     * instead need Python to estimate the skew.
      * 
-     * @param applyRotation to calculate and apply rotation, false to skip.  Default is false, true required Python installed.
+     * @param applyRotation to calculate and apply rotation, false to skip.  Default is false.
      */
     public void setApplyRotation(boolean applyRotation) {
     	this.applyRotation = applyRotation;
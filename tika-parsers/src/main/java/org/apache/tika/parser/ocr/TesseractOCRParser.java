@@ -20,8 +20,10 @@ import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
 import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOExceptionWithCause;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.pdfbox.tools.imageio.ImageIOUtil;
 import org.apache.tika.config.Field;
 import org.apache.tika.config.Initializable;
 import org.apache.tika.config.InitializableProblemHandler;
@@ -52,8 +54,11 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -64,8 +69,10 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
@@ -73,15 +80,19 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -115,8 +126,19 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
             })));
     private final TesseractOCRConfig defaultConfig = new TesseractOCRConfig();
 
+    //written after each image of a batch; Tesseract's own default, which it never recognizes as text
+    private static final String BATCH_PAGE_SEPARATOR = "\f";
+
     private static Map<String,Boolean> TESSERACT_PRESENT = new HashMap<>();
     private static Map<String,Boolean> IMAGE_MAGICK_PRESENT = new HashMap<>();
+    private static final Map<String,Boolean> TESSERACT_STDIN = new ConcurrentHashMap<>();
+    //images in a row that Tesseract OCR'd from a file but not from its input,
+    //or STDIN_CONFIRMED once it has OCR'd an image from its input
+    private static final Map<String,Integer> TESSERACT_STDIN_FAILURES = new ConcurrentHashMap<>();
+    private static final int STDIN_CONFIRMED = -1;
+    private static final int MAX_STDIN_FAILURES = 3;
+
+    private static final Pattern TESSERACT_VERSION = Pattern.compile("(?m)^tesseract\\s+v?(\\d+)\\.(\\d+)");
 
 
     @Override
@@ -170,6 +192,67 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
      
     }
     
+    /**
+     * @return whether Tesseract can read an image from its standard input,
+     * which it can as of 3.03
+     */
+    boolean hasStdin(TesseractOCRConfig config) {
+        String tesseract = config.getTesseractPath() + getTesseractProg();
+        Boolean hasStdin = TESSERACT_STDIN.get(tesseract);
+        if (hasStdin != null) {
+            return hasStdin;
+        }
+        //prevent memory bloat
+        if (TESSERACT_STDIN.size() > 100) {
+            TESSERACT_STDIN.clear();
+            TESSERACT_STDIN_FAILURES.clear();
+        }
+        ProcessBuilder pb = new ProcessBuilder(tesseract, "--version");
+        setEnv(config, pb);
+        //older versions print the version to stderr
+        pb.redirectErrorStream(true);
+        String version = "";
+        try {
+            final Process process = pb.start();
+            process.getOutputStream().close();
+            FutureTask<String> versionTask = new FutureTask<>(new Callable<String>() {
+                public String call() throws Exception {
+                    try (InputStream is = process.getInputStream()) {
+                        return IOUtils.toString(is, UTF_8);
+                    }
+                }
+            });
+            new Thread(versionTask).start();
+            if (process.waitFor(config.getTimeout(), TimeUnit.SECONDS)) {
+                version = versionTask.get(config.getTimeout(), TimeUnit.SECONDS);
+            } else {
+                process.destroyForcibly();
+                LOG.warn("Tesseract at '{}' didn't print its version in time; " +
+                        "using files instead", config.getTesseractPath());
+            }
+        } catch (IOException|ExecutionException|TimeoutException e) {
+            LOG.debug("Couldn't get the version of Tesseract", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        hasStdin = hasStdin(version);
+        TESSERACT_STDIN.put(tesseract, hasStdin);
+        return hasStdin;
+    }
+
+    /**
+     * @param version output of <code>tesseract --version</code>
+     */
+    static boolean hasStdin(String version) {
+        Matcher matcher = TESSERACT_VERSION.matcher(version);
+        if (!matcher.find()) {
+            return false;
+        }
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        return major > 3 || (major == 3 && minor >= 3);
+    }
+
     private boolean hasImageMagick(TesseractOCRConfig config) {
         // Fetch where the config says to find ImageMagick Program
         String ImageMagick = getImageMagickPath(config);
@@ -269,22 +352,31 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
         try {
             TikaInputStream tikaStream = TikaInputStream.get(stream, tmp);
 
-            //trigger the spooling to a tmp file if the stream wasn't
-            //already a TikaInputStream that contained a file
-            tikaStream.getPath();
-            //this is the text output file name specified on the tesseract
-            //commandline.  The actual output file name will have a suffix added.
-            File tmpOCROutputFile = tmp.createTemporaryFile();
+            //an image that is piped to Tesseract is read into memory instead
+            byte[] image = null;
+            if (config.getStreaming() && hasStdin(config)) {
+                image = readImageBytes(tikaStream, config);
+            }
+            if (image == null) {
+                //trigger the spooling to a tmp file if the stream wasn't
+                //already a TikaInputStream that contained a file
+                tikaStream.getPath();
+            }
 
             // Temporary workaround for TIKA-1445 - until we can specify
             //  composite parsers with strategies (eg Composite, Try In Turn),
             //  always send the image onwards to the regular parser to have
             //  the metadata for them extracted as well
-            _TMP_IMAGE_METADATA_PARSER.parse(tikaStream, new DefaultHandler(), metadata, parseContext);
+            _TMP_IMAGE_METADATA_PARSER.parse(image == null ? tikaStream : TikaInputStream.get(image),
+                    new DefaultHandler(), metadata, parseContext);
 
             XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
             xhtml.startDocument();
-            parse(tikaStream, tmpOCROutputFile, parseContext, xhtml, config);
+            if (image == null) {
+                parse(tikaStream, tmp, parseContext, xhtml, config);
+            } else {
+                parseStreaming(image, tmp, parseContext, xhtml, config);
+            }
             xhtml.endDocument();
         } finally {
             tmp.dispose();
@@ -333,15 +425,201 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
         TemporaryResources tmp = new TemporaryResources();
         try {
             TikaInputStream tikaStream = TikaInputStream.get(stream, tmp);
-            File tmpImgFile = tmp.createTemporaryFile();
-            parse(tikaStream, tmpImgFile, parseContext, xhtml, config);
+            parse(tikaStream, tmp, parseContext, xhtml, config);
+        } finally {
+            tmp.dispose();
+        }
+    }
+
+    /**
+     * OCRs a batch of images with a single Tesseract process, so that
+     * Tesseract starts and loads its language models once per batch
+     * instead of once per image.  Tesseract is handed a list file of the
+     * images, and its output is split back into one part per image, which
+     * is appended to the corresponding handler as with
+     * {@link #parseInline(InputStream, XHTMLContentHandler, ParseContext, TesseractOCRConfig)}.
+     * <p>
+     * The process is given {@link TesseractOCRConfig#getBatchTimeout()}
+     * seconds.  If its output can't be split into one part per image,
+     * the images are OCR'd one at a time instead.
+     *
+     * @param images images to OCR
+     * @param xhtmls handlers, one for each image
+     * @param config TesseractOCRConfig to use for this parse
+     * @throws IOException
+     * @throws SAXException
+     * @throws TikaException if the batch timed out
+     */
+    public void parseInline(List<Path> images, List<? extends XHTMLContentHandler> xhtmls,
+                            ParseContext parseContext, TesseractOCRConfig config)
+            throws IOException, SAXException, TikaException {
+        if (images.size() != xhtmls.size()) {
+            throw new IllegalArgumentException("Need one handler for each image");
+        }
+        if (! hasTesseract(config))
+            return;
+
+        TemporaryResources tmp = new TemporaryResources();
+        File tmpOutput = null;
+        try {
+            List<Path> inputs = new ArrayList<>();
+            List<XHTMLContentHandler> outputs = new ArrayList<>();
+            for (int i = 0; i < images.size(); i++) {
+                Path input = images.get(i);
+                long size = Files.size(input);
+                if (size < config.getMinFileSizeToOcr() || size > config.getMaxFileSizeToOcr()) {
+                    continue;
+                }
+                inputs.add(processImage(input.toFile(), tmp, config).toPath());
+                outputs.add(xhtmls.get(i));
+            }
+            if (inputs.isEmpty()) {
+                return;
+            }
+
+            //one image per line; Tesseract reads a file that is not an image as a list of images
+            File list = tmp.createTemporaryFile();
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(list), UTF_8)) {
+                for (Path input : inputs) {
+                    writer.write(input.toAbsolutePath().toString());
+                    writer.write('\n');
+                }
+            }
+            File tmpOCROutputFile = tmp.createTemporaryFile();
+            int timeout = config.getBatchTimeout() > 0 ?
+                    config.getBatchTimeout() : config.getTimeout() * inputs.size();
+            doOCR(list, tmpOCROutputFile, config, BATCH_PAGE_SEPARATOR, timeout);
+
+            tmpOutput = new File(tmpOCROutputFile.getAbsolutePath() + "." +
+                    config.getOutputType().toString().toLowerCase(Locale.US));
+            if (tmpOutput.exists()) {
+                boolean split;
+                try (InputStream is = new FileInputStream(tmpOutput)) {
+                    if (config.getOutputType().equals(TesseractOCRConfig.OUTPUT_TYPE.HOCR)) {
+                        split = splitHOCROutput(IOUtils.toByteArray(is), parseContext, outputs);
+                    } else {
+                        split = splitOutput(is, outputs, config.getPageSeparator());
+                    }
+                }
+                if (!split) {
+                    LOG.warn("Couldn't split the output of Tesseract into {} pages; " +
+                            "OCRing the images one at a time", inputs.size());
+                    for (int i = 0; i < inputs.size(); i++) {
+                        try (InputStream is = TikaInputStream.get(inputs.get(i))) {
+                            parseInline(is, outputs.get(i), parseContext, config);
+                        }
+                    }
+                }
+            }
         } finally {
+            if (tmpOutput != null) {
+                tmpOutput.delete();
+            }
             tmp.dispose();
         }
     }
 
     /**
-     * This method is used to process the image to an OCR-friendly format.
+     * Processes the image to an OCR-friendly format if image processing is
+     * enabled, see {@link ImagePreprocessor}.  An image that can't be read
+     * by ImageIO, or that has more than one frame, such as a multi-page
+     * TIFF, is processed by ImageMagick instead, if it is available.
+     *
+     * @param input image to be processed
+     * @param tmp where the processed image is created
+     * @param config TesseractOCRconfig class to get the image processing properties
+     * @return the image to OCR: the processed image, or the input
+     * @throws IOException if an input error occurred
+     * @throws TikaException if an exception timed out
+     */
+    private File processImage(File input, TemporaryResources tmp, TesseractOCRConfig config)
+            throws IOException, TikaException {
+        if (config.isEnableImageProcessing() != 1) {
+            return input;
+        }
+        BufferedImage image = readImage(input);
+        if (image != null) {
+            File processed = tmp.createTemporaryFile();
+            try (OutputStream os = new FileOutputStream(processed)) {
+                writeProcessedImage(image, os, config);
+            }
+            return processed;
+        }
+        if (hasImageMagick(config)) {
+            // copy the contents of the original input file into a temporary file
+            // which will be preprocessed for OCR
+            File tmpFile = tmp.createTemporaryFile();
+            FileUtils.copyFile(input, tmpFile);
+            processImage(tmpFile, config);
+            return tmpFile;
+        }
+        return input;
+    }
+
+    /**
+     * Processes the image to an OCR-friendly format if image processing is
+     * enabled, see {@link ImagePreprocessor}.
+     *
+     * @param image encoded image to be processed
+     * @param config TesseractOCRconfig class to get the image processing properties
+     * @return the encoded image to OCR: the processed image, the input, or
+     * <code>null</code> if ImageIO can't read the image or it has more than
+     * one frame; it is then left to
+     * {@link #processImage(File, TemporaryResources, TesseractOCRConfig)}
+     * @throws IOException if an input error occurred
+     */
+    private byte[] processImage(byte[] image, TesseractOCRConfig config) throws IOException {
+        if (config.isEnableImageProcessing() != 1) {
+            return image;
+        }
+        BufferedImage bufferedImage = readImage(new ByteArrayInputStream(image));
+        if (bufferedImage == null) {
+            return null;
+        }
+        ByteArrayOutputStream processed = new ByteArrayOutputStream();
+        writeProcessedImage(bufferedImage, processed, config);
+        return processed.toByteArray();
+    }
+
+    /**
+     * @param input a File or an InputStream
+     * @return the image, or <code>null</code> if ImageIO can't read it or it
+     * has more than one frame, of which ImageIO would only read the first
+     */
+    private static BufferedImage readImage(Object input) {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = iis == null ?
+                    Collections.<ImageReader>emptyIterator() : ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                LOG.debug("ImageIO has no reader for the image to process");
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis);
+                if (reader.getNumImages(true) != 1) {
+                    LOG.debug("The image to process has more than one frame");
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException|RuntimeException e) {
+            LOG.debug("ImageIO couldn't read the image to process", e);
+            return null;
+        }
+    }
+
+    private static void writeProcessedImage(BufferedImage image, OutputStream os, TesseractOCRConfig config)
+            throws IOException {
+        ImageIOUtil.writeImage(ImagePreprocessor.process(image, config), "png", os,
+                config.getDensity());
+    }
+
+    /**
+     * This method is used to process the image to an OCR-friendly format
+     * with ImageMagick.
      * @param scratchFile input image to be processed
      * @param config TesseractOCRconfig class to get ImageMagick properties
      * @throws IOException if an input error occurred
@@ -404,49 +682,48 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
         tmp.close();
     }
     
-    private void parse(TikaInputStream tikaInputStream, File tmpOCROutputFile, ParseContext parseContext,
+    private void parse(TikaInputStream tikaInputStream, TemporaryResources tmp, ParseContext parseContext,
                        XHTMLContentHandler xhtml, TesseractOCRConfig config)
             throws IOException, SAXException, TikaException {
+        if (config.getStreaming() && hasStdin(config)) {
+            byte[] image = readImageBytes(tikaInputStream, config);
+            if (image != null) {
+                parseStreaming(image, tmp, parseContext, xhtml, config);
+                return;
+            }
+        }
+        File input = tikaInputStream.getFile();
+        long size = tikaInputStream.getLength();
+
+        if (size >= config.getMinFileSizeToOcr() && size <= config.getMaxFileSizeToOcr()) {
+            parse(input, tmp, parseContext, xhtml, config);
+        }
+    }
+
+    /**
+     * @return whether Tesseract wrote a result
+     */
+    private boolean parse(File input, TemporaryResources tmp, ParseContext parseContext,
+                          XHTMLContentHandler xhtml, TesseractOCRConfig config)
+            throws IOException, SAXException, TikaException {
+        //this is the text output file name specified on the tesseract
+        //commandline.  The actual output file name will have a suffix added.
+        File tmpOCROutputFile = tmp.createTemporaryFile();
         File tmpTxtOutput = null;
         try {
-            File input = tikaInputStream.getFile();
-            long size = tikaInputStream.getLength();
-
-            if (size >= config.getMinFileSizeToOcr() && size <= config.getMaxFileSizeToOcr()) {
-
-            	// Process image if ImageMagick Tool is present
-            	if(config.isEnableImageProcessing() == 1 && hasImageMagick(config)) {
-                    // copy the contents of the original input file into a temporary file
-                    // which will be preprocessed for OCR
-                    TemporaryResources tmp = new TemporaryResources();
-                    try {
-                        File tmpFile = tmp.createTemporaryFile();
-                        FileUtils.copyFile(input, tmpFile);
-                        processImage(tmpFile, config);
-                        doOCR(tmpFile, tmpOCROutputFile, config);
-                    } finally {
-                        if (tmp != null) {
-                            tmp.dispose();
-                        }
-                    }
-            	} else {
-                    doOCR(input, tmpOCROutputFile, config);
-                }
+            doOCR(processImage(input, tmp, config), tmpOCROutputFile, config);
 
-                // Tesseract appends the output type (.txt or .hocr) to output file name
-                tmpTxtOutput = new File(tmpOCROutputFile.getAbsolutePath() + "." +
-                        config.getOutputType().toString().toLowerCase(Locale.US));
+            // Tesseract appends the output type (.txt or .hocr) to output file name
+            tmpTxtOutput = new File(tmpOCROutputFile.getAbsolutePath() + "." +
+                    config.getOutputType().toString().toLowerCase(Locale.US));
 
-                if (tmpTxtOutput.exists()) {
-                    try (InputStream is = new FileInputStream(tmpTxtOutput)) {
-                        if (config.getOutputType().equals(TesseractOCRConfig.OUTPUT_TYPE.HOCR)) {
-                            extractHOCROutput(is, parseContext, xhtml);
-                        } else {
-                            extractOutput(is, xhtml);
-                        }
-                    }
-                }
+            if (!tmpTxtOutput.exists()) {
+                return false;
             }
+            try (InputStream is = new FileInputStream(tmpTxtOutput)) {
+                extractOutput(is, parseContext, xhtml, config);
+            }
+            return true;
         } finally {
             if (tmpTxtOutput != null) {
                 tmpTxtOutput.delete();
@@ -454,6 +731,90 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
         }
     }
 
+    /**
+     * Reads the image to pipe it to Tesseract.  The stream is left as it
+     * was if the image is larger than {@link TesseractOCRConfig#getMaxFileSizeToOcr()},
+     * which is then neither read into memory nor OCR'd.
+     *
+     * @return the image, or <code>null</code> if it is too large
+     */
+    private static byte[] readImageBytes(TikaInputStream tikaInputStream, TesseractOCRConfig config)
+            throws IOException {
+        long maxSize = config.getMaxFileSizeToOcr();
+        if (tikaInputStream.hasFile()) {
+            //the stream may have been read already if it is backed by a file
+            return tikaInputStream.getLength() > maxSize ?
+                    null : Files.readAllBytes(tikaInputStream.getPath());
+        }
+        if (tikaInputStream.hasLength() && tikaInputStream.getLength() > maxSize) {
+            return null;
+        }
+        int readLimit = (int) Math.min(maxSize + 1, Integer.MAX_VALUE);
+        tikaInputStream.mark(readLimit);
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = tikaInputStream.read(buffer); n != -1; n = tikaInputStream.read(buffer)) {
+            image.write(buffer, 0, n);
+            if (image.size() > maxSize) {
+                tikaInputStream.reset();
+                return null;
+            }
+        }
+        return image.toByteArray();
+    }
+
+    /**
+     * Pipes the image to Tesseract and reads the result from its output,
+     * so that neither the image nor the result is written to a file.  If
+     * Tesseract fails, the image is OCR'd from a file instead, unless
+     * Tesseract has read images from its input before; after
+     * {@link #MAX_STDIN_FAILURES} images in a row were OCR'd from files
+     * only, files are used from then on.
+     */
+    private void parseStreaming(byte[] image, TemporaryResources tmp,
+                                ParseContext parseContext, XHTMLContentHandler xhtml,
+                                TesseractOCRConfig config)
+            throws IOException, SAXException, TikaException {
+        if (image.length < config.getMinFileSizeToOcr() || image.length > config.getMaxFileSizeToOcr()) {
+            return;
+        }
+        String tesseract = config.getTesseractPath() + getTesseractProg();
+        byte[] processed = processImage(image, config);
+        if (processed != null) {
+            byte[] output = doOCR(processed, config);
+            if (output != null) {
+                TESSERACT_STDIN_FAILURES.put(tesseract, STDIN_CONFIRMED);
+                extractOutput(new ByteArrayInputStream(output), parseContext, xhtml, config);
+                return;
+            }
+            Integer failures = TESSERACT_STDIN_FAILURES.get(tesseract);
+            if (failures != null && failures == STDIN_CONFIRMED) {
+                //Tesseract can read from its input, so it failed on the image itself
+                return;
+            }
+        }
+        File input = tmp.createTemporaryFile();
+        Files.write(input.toPath(), image);
+        if (parse(input, tmp, parseContext, xhtml, config) && processed != null) {
+            int failures = TESSERACT_STDIN_FAILURES.merge(tesseract, 1,
+                    (a, b) -> a == STDIN_CONFIRMED ? a : a + b);
+            if (failures >= MAX_STDIN_FAILURES) {
+                LOG.warn("Tesseract at '{}' couldn't read an image from its input; " +
+                        "using files instead", config.getTesseractPath());
+                TESSERACT_STDIN.put(tesseract, false);
+            }
+        }
+    }
+
+    private void extractOutput(InputStream is, ParseContext parseContext, XHTMLContentHandler xhtml,
+                               TesseractOCRConfig config) throws IOException, SAXException, TikaException {
+        if (config.getOutputType().equals(TesseractOCRConfig.OUTPUT_TYPE.HOCR)) {
+            extractHOCROutput(is, parseContext, xhtml);
+        } else {
+            extractOutput(is, xhtml);
+        }
+    }
+
     /**
      * no-op
      * @param params params to use for initialization
@@ -512,20 +873,30 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
      *           if an input error occurred
      */
     private void doOCR(File input, File output, TesseractOCRConfig config) throws IOException, TikaException {
-        ArrayList<String> cmd = new ArrayList<>(Arrays.asList(
-                config.getTesseractPath() + getTesseractProg(), input.getPath(),  output.getPath(), "-l",
-                config.getLanguage(), "--psm", config.getPageSegMode()
-        ));
-        for (Map.Entry<String, String> entry : config.getOtherTesseractConfig().entrySet()) {
-            cmd.add("-c");
-            cmd.add(entry.getKey() + "=" + entry.getValue());
-        }
-        cmd.addAll(Arrays.asList(
-                "-c", "page_separator=" + config.getPageSeparator(),
-                "-c",
-                (config.getPreserveInterwordSpacing())? "preserve_interword_spaces=1" : "preserve_interword_spaces=0",
-                config.getOutputType().name().toLowerCase(Locale.US)
-        ));
+        doOCR(input, output, config, config.getPageSeparator(), config.getTimeout());
+    }
+
+    /**
+     * Run external tesseract-ocr process.
+     *
+     * @param input
+     *          File to be ocred, or a list of files
+     * @param output
+     *          File to collect ocr result
+     * @param config
+     *          Configuration of tesseract-ocr engine
+     * @param pageSeparator
+     *          written after the text of each page
+     * @param timeout
+     *          maximum time (seconds) to wait for the process to terminate
+     * @throws TikaException
+     *           if the extraction timed out
+     * @throws IOException
+     *           if an input error occurred
+     */
+    private void doOCR(File input, File output, TesseractOCRConfig config, String pageSeparator,
+                       int timeout) throws IOException, TikaException {
+        List<String> cmd = getCommand(input.getPath(), output.getPath(), config, pageSeparator);
         LOG.debug("Tesseract command: " + String.join(" ", cmd));
         
         ProcessBuilder pb = new ProcessBuilder(cmd);
@@ -544,12 +915,105 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
                 return process.waitFor();
             }
         });
+        waitFor(process, waitTask, timeout);
+    }
+
+    /**
+     * Run external tesseract-ocr process on an image that is piped to its
+     * standard input, and collect the result from its standard output.
+     *
+     * @param image
+     *          encoded image to be ocred
+     * @param config
+     *          Configuration of tesseract-ocr engine
+     * @return the result, or <code>null</code> if Tesseract failed without
+     * a result, e.g. because it couldn't read the image from its input
+     * @throws TikaException
+     *           if the extraction timed out
+     * @throws IOException
+     *           if an input error occurred
+     */
+    private byte[] doOCR(final byte[] image, TesseractOCRConfig config) throws IOException, TikaException {
+        List<String> cmd = getCommand("stdin", "stdout", config, config.getPageSeparator());
+        LOG.debug("Tesseract command: " + String.join(" ", cmd));
+
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        setEnv(config, pb);
+        final Process process = pb.start();
+
+        logStream("OCR ERROR", process.getErrorStream(), null);
+
+        FutureTask<byte[]> outputTask = new FutureTask<>(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                try (InputStream out = process.getInputStream()) {
+                    return IOUtils.toByteArray(out);
+                }
+            }
+        });
+        new Thread(outputTask).start();
+
+        FutureTask<Integer> waitTask = new FutureTask<>(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                try (OutputStream in = process.getOutputStream()) {
+                    in.write(image);
+                } catch (IOException e) {
+                    //Tesseract stopped reading; its exit value tells why
+                }
+                return process.waitFor();
+            }
+        });
+        Integer exitValue = waitFor(process, waitTask, config.getTimeout());
+
+        byte[] output;
+        try {
+            //the process has terminated, so its output is complete
+            output = outputTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaException("TesseractOCRParser interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOExceptionWithCause("Unable to read the output of Tesseract", e.getCause());
+        }
+        if (output.length == 0 && (exitValue == null || exitValue != 0)) {
+            return null;
+        }
+        return output;
+    }
+
+    /**
+     * @return the command line to run tesseract-ocr on the input
+     */
+    private List<String> getCommand(String input, String output, TesseractOCRConfig config,
+                                    String pageSeparator) {
+        ArrayList<String> cmd = new ArrayList<>(Arrays.asList(
+                config.getTesseractPath() + getTesseractProg(), input,  output, "-l",
+                config.getLanguage(), "--psm", config.getPageSegMode()
+        ));
+        for (Map.Entry<String, String> entry : config.getOtherTesseractConfig().entrySet()) {
+            cmd.add("-c");
+            cmd.add(entry.getKey() + "=" + entry.getValue());
+        }
+        cmd.addAll(Arrays.asList(
+                "-c", "page_separator=" + pageSeparator,
+                "-c",
+                (config.getPreserveInterwordSpacing())? "preserve_interword_spaces=1" : "preserve_interword_spaces=0",
+                config.getOutputType().name().toLowerCase(Locale.US)
+        ));
+        return cmd;
+    }
 
+    /**
+     * Runs the task that waits for the process, and destroys the process
+     * if it doesn't terminate in time.
+     *
+     * @return the task's result, <code>null</code> if the task failed
+     */
+    private <T> T waitFor(Process process, FutureTask<T> waitTask, int timeout) throws TikaException {
         Thread waitThread = new Thread(waitTask);
         waitThread.start();
 
         try {
-            waitTask.get(config.getTimeout(), TimeUnit.SECONDS);
+            return waitTask.get(timeout, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             waitThread.interrupt();
             process.destroy();
@@ -557,6 +1021,7 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
             throw new TikaException("TesseractOCRParser interrupted", e);
         } catch (ExecutionException e) {
             // should not be thrown
+            return null;
         } catch (TimeoutException e) {
             waitThread.interrupt();
             process.destroy();
@@ -602,6 +1067,67 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
 
     }
 
+    /**
+     * Splits the text output of a batch into its pages, and writes each
+     * page as {@link #extractOutput(InputStream, XHTMLContentHandler)}
+     * would have, followed by the configured page separator.  Nothing is
+     * written if the number of pages doesn't match.
+     *
+     * @return whether the output had one page for each handler
+     */
+    static boolean splitOutput(InputStream stream, List<? extends XHTMLContentHandler> xhtmls,
+                               String pageSeparator) throws SAXException, IOException {
+        String[] pages = IOUtils.toString(stream, UTF_8).split(BATCH_PAGE_SEPARATOR, -1);
+        int numPages = pages.length;
+        //depending on the version, the separator follows each page or comes between pages
+        if (numPages == xhtmls.size() + 1 && pages[numPages - 1].isEmpty()) {
+            numPages--;
+        }
+        if (numPages != xhtmls.size()) {
+            return false;
+        }
+        for (int i = 0; i < numPages; i++) {
+            XHTMLContentHandler xhtml = xhtmls.get(i);
+            String text = pages[i] + pageSeparator;
+            xhtml.startElement("div", "class", "ocr");
+            if (!text.isEmpty()) {
+                xhtml.characters(text);
+            }
+            xhtml.endElement("div");
+        }
+        return true;
+    }
+
+    /**
+     * Splits the hOCR output of a batch at its ocr_page elements, and
+     * writes each page as {@link #extractHOCROutput(InputStream, ParseContext, XHTMLContentHandler)}
+     * would have.  Nothing is written if the number of pages doesn't match.
+     *
+     * @return whether the output had one page for each handler
+     */
+    static boolean splitHOCROutput(byte[] hocr, ParseContext parseContext,
+                                   List<? extends XHTMLContentHandler> xhtmls)
+            throws TikaException, IOException, SAXException {
+        if (parseContext == null) {
+            parseContext = new ParseContext();
+        }
+        HOCRPageSplitter counter = new HOCRPageSplitter(null);
+        XMLReaderUtils.parseSAX(new ByteArrayInputStream(hocr),
+                new OfflineContentHandler(counter), parseContext);
+        if (counter.pages != xhtmls.size()) {
+            return false;
+        }
+        for (XHTMLContentHandler xhtml : xhtmls) {
+            xhtml.startElement("div", "class", "ocr");
+        }
+        XMLReaderUtils.parseSAX(new ByteArrayInputStream(hocr),
+                new OfflineContentHandler(new HOCRPageSplitter(xhtmls)), parseContext);
+        for (XHTMLContentHandler xhtml : xhtmls) {
+            xhtml.endElement("div");
+        }
+        return true;
+    }
+
     /**
      * Starts a thread that reads the contents of the standard output or error
      * stream of the given process to not block the process. The stream is closed
@@ -683,6 +1209,57 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
         }
     }
 
+    /**
+     * Passes each ocr_page element of a multi-page hOCR document through
+     * to the next handler; counts the pages if there are no handlers.
+     */
+    private static class HOCRPageSplitter extends DefaultHandler {
+        private final List<? extends ContentHandler> xhtmls;
+        private ContentHandler page = null;
+        //depth of the open elements within the current page
+        private int depth = 0;
+        int pages = 0;
+
+        HOCRPageSplitter(List<? extends ContentHandler> xhtmls) {
+            this.xhtmls = xhtmls;
+        }
+
+        @Override
+        public void startElement(
+                String uri, String local, String name, Attributes attributes)
+                throws SAXException {
+            if (depth == 0) {
+                if (!"ocr_page".equals(attributes.getValue("class"))) {
+                    return;
+                }
+                page = xhtmls == null || pages >= xhtmls.size() ? null : xhtmls.get(pages);
+                pages++;
+            }
+            depth++;
+            if (page != null) {
+                page.startElement(uri, local, name, attributes);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String local, String name) throws SAXException {
+            if (depth == 0) {
+                return;
+            }
+            depth--;
+            if (page != null) {
+                page.endElement(uri, local, name);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (depth > 0 && page != null) {
+                page.characters(ch, start, length);
+            }
+        }
+    }
+
     protected boolean hasWarned() {
         if (HAS_WARNED) {
             return true;
@@ -734,6 +1311,16 @@ public class TesseractOCRParser extends AbstractParser implements Initializable
         defaultConfig.setTimeout(timeout);
     }
 
+    @Field
+    public void setBatchTimeout(int batchTimeout) {
+        defaultConfig.setBatchTimeout(batchTimeout);
+    }
+
+    @Field
+    public void setStreaming(boolean streaming) {
+        defaultConfig.setStreaming(streaming);
+    }
+
     @Field
     public void setOutputType(String outputType) {
         defaultConfig.setOutputType(outputType);
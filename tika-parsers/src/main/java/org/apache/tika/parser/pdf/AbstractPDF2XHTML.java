@@ -19,12 +19,15 @@ package org.apache.tika.parser.pdf;
 import static org.apache.tika.parser.pdf.PDFParserConfig.OCR_STRATEGY.NO_OCR;
 
 import javax.xml.stream.XMLStreamException;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
@@ -41,9 +44,13 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.IOExceptionWithCause;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
@@ -51,8 +58,10 @@ import org.apache.pdfbox.pdmodel.PDDocumentNameDictionary;
 import org.apache.pdfbox.pdmodel.PDEmbeddedFilesNameTreeNode;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageTree;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDDestinationOrAction;
 import org.apache.pdfbox.pdmodel.common.PDNameTreeNode;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
 import org.apache.pdfbox.pdmodel.common.filespecification.PDEmbeddedFile;
 import org.apache.pdfbox.pdmodel.common.filespecification.PDFileSpecification;
@@ -98,6 +107,7 @@ import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ocr.ImagePreprocessor;
 import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.apache.tika.parser.ocr.TesseractOCRParser;
 import org.apache.tika.parser.sas.SAS7BDATParser;
@@ -165,32 +175,88 @@ class AbstractPDF2XHTML extends PDFTextStripper {
     final EmbeddedDocumentExtractor embeddedDocumentExtractor;
     final PDFParserConfig config;
     final TesseractOCRParser tesseractOCRParser;//can be null!
+    final OCRPipeline ocrPipeline;//null unless OCR runs concurrently or in batches
+    final ParseStatistics statistics = new ParseStatistics();
 
     //zero-based pageIndex
     int pageIndex = 0;
     int startPage = -1;//private in PDFTextStripper...must have own copy because we override processpages
     int unmappedUnicodeCharsPerPage = 0;
     int totalCharsPerPage = 0;
+    //largest fraction of the page covered by a single image; only tracked for AUTO OCR
+    float imageCoveragePerPage = 0;
 
     private final Set<String> fontNames = new HashSet<>();
 
+    //created on the first page that is OCR'd
+    private PDFRenderer renderer;
+
+    //the config with image processing that unprocessedConfig was copied from
+    private TesseractOCRConfig imageProcessingConfig;
+    private TesseractOCRConfig unprocessedConfig;
+
     AbstractPDF2XHTML(PDDocument pdDocument, ContentHandler handler, ParseContext context, Metadata metadata,
                       PDFParserConfig config) throws IOException {
+        this(pdDocument, newContentHandler(handler, metadata, config), context, metadata, config);
+    }
+
+    AbstractPDF2XHTML(PDDocument pdDocument, XHTMLContentHandler xhtml, ParseContext context, Metadata metadata,
+                      PDFParserConfig config) throws IOException {
         this.pdDocument = pdDocument;
-        this.xhtml = new XHTMLContentHandler(handler, metadata);
+        this.xhtml = xhtml;
         this.context = context;
         this.metadata = metadata;
         this.config = config;
+        this.ocrPipeline = (xhtml instanceof OCRPipeline) ? (OCRPipeline) xhtml : null;
         embeddedDocumentExtractor = EmbeddedDocumentUtil.getEmbeddedDocumentExtractor(context);
         if (config.getOcrStrategy() == NO_OCR) {
             tesseractOCRParser = null;
         } else {
             tesseractOCRParser = (TesseractOCRParser)EmbeddedDocumentUtil.tryToFindExistingLeafParser(TesseractOCRParser.class, context);
         }
+        setStartPage(config.getStartPage());
+        if (config.getEndPage() > -1) {
+            setEndPage(config.getEndPage());
+        }
+    }
+
+    private static XHTMLContentHandler newContentHandler(ContentHandler handler, Metadata metadata,
+                                                         PDFParserConfig config) {
+        if (config.getOcrStrategy() != NO_OCR
+                && (config.getOcrThreads() > 1 || config.getOcrBatchSize() > 1)) {
+            return new OCRPipeline(handler, metadata, config.getOcrThreads(), config.getOcrBatchSize());
+        }
+        return new XHTMLContentHandler(handler, metadata);
+    }
+
+    @Override
+    public void writeText(PDDocument doc, Writer outputStream) throws IOException {
+        try {
+            super.writeText(doc, outputStream);
+        } catch (IOException|RuntimeException e) {
+            if (ocrPipeline != null) {
+                //write the output that preceded the failure, as inline OCR would have
+                ocrPipeline.finishAfterFailure(this);
+            }
+            throw e;
+        } finally {
+            if (ocrPipeline != null) {
+                ocrPipeline.shutdown();
+            }
+            finishStatistics();
+        }
+    }
+
+    /**
+     * Publishes the statistics of the pages, once the document is done.
+     */
+    void finishStatistics() {
+        statistics.finish(metadata, config.getCollectStatistics());
     }
 
     @Override
     protected void startPage(PDPage page) throws IOException {
+        statistics.startPage();
         try {
             xhtml.startElement("div", "class", "page");
             xhtml.startElement("br");
@@ -406,6 +472,11 @@ class AbstractPDF2XHTML extends PDFTextStripper {
     }
 
     void handleCatchableIOE(IOException e) throws IOException {
+        if (ocrPipeline != null && ocrPipeline.isDeferring()) {
+            //handled when the output reaches this point
+            ocrPipeline.exception(e);
+            return;
+        }
         if (config.getCatchIntermediateIOExceptions()) {
             if (e.getCause() instanceof SAXException && e.getCause().getMessage() != null &&
                     e.getCause().getMessage().contains("Your document contained more than")) {
@@ -436,39 +507,159 @@ class AbstractPDF2XHTML extends PDFTextStripper {
             throw new TikaException("Tesseract is not available. "+
                     "Please set the OCR_STRATEGY to NO_OCR or configure Tesseract correctly");
         }
+        //the rendered page is processed before it is encoded, so Tesseract gets it as is
+        final TesseractOCRConfig imageProcessing =
+                tesseractConfig.isEnableImageProcessing() == 1 ? tesseractConfig : null;
+        if (imageProcessing != null) {
+            tesseractConfig = withoutImageProcessing(tesseractConfig);
+        }
 
-        PDFRenderer renderer = new PDFRenderer(pdDocument);
-        TemporaryResources tmp = new TemporaryResources();
+        if (renderer == null) {
+            renderer = new PDFRenderer(pdDocument);
+        }
+        long renderStart = System.nanoTime();
+        final BufferedImage image;
         try {
-
-            int dpi = config.getOcrDPI();
-            BufferedImage image = renderer.renderImageWithDPI(pageIndex, dpi, config.getOcrImageType());
-            Path tmpFile = tmp.createTempFile();
-            try (OutputStream os = Files.newOutputStream(tmpFile)) {
-                //TODO: get output format from TesseractConfig
-                ImageIOUtil.writeImage(image, config.getOcrImageFormatName(),
-                        os, dpi, config.getOcrImageQuality());
-            }
-            try (InputStream is = TikaInputStream.get(tmpFile)) {
-                tesseractOCRParser.parseInline(is, xhtml, tesseractConfig);
+            //the document can only be read from this thread
+            image = renderer.renderImageWithDPI(pageIndex, config.getOcrDPI(), config.getOcrImageType());
+        } catch (IOException e) {
+            handleCatchableIOE(e);
+            return;
+        } finally {
+            statistics.end(ParseStatistics.Phase.OCR, renderStart);
+        }
+        if (ocrPipeline != null && ocrPipeline.isBatching()) {
+            OCRBatch batch = ocrPipeline.getBatch(this, tesseractConfig);
+            long encodeStart = System.nanoTime();
+            Path imageFile;
+            try {
+                //the batch holds files, not rendered pages
+                imageFile = batch.createImageFile();
+                writeImage(image, imageFile, imageProcessing);
+            } catch (IOException e) {
+                handleCatchableIOE(e);
+                return;
+            } finally {
+                statistics.end(ParseStatistics.Phase.OCR, encodeStart);
             }
+            ocrPipeline.submit(imageFile, getCurrentPageNo(), statistics.getCurrentPage());
+            return;
+        }
+        if (ocrPipeline != null) {
+            final TesseractOCRConfig pageTesseractConfig = tesseractConfig;
+            final int pageNumber = getCurrentPageNo();
+            final ParseStatistics.Page pageStatistics = statistics.getCurrentPage();
+            ocrPipeline.submit(this, new Callable<PageEventBuffer>() {
+                @Override
+                public PageEventBuffer call() {
+                    PageEventBuffer ocrEvents = new PageEventBuffer();
+                    long ocrStart = System.nanoTime();
+                    try {
+                        ocrImage(image, ocrEvents, pageTesseractConfig, imageProcessing);
+                    } catch (IOException e) {
+                        ocrEvents.exception(e);
+                    } catch (TikaException e) {
+                        //e.g. a Tesseract timeout; by the time this is written
+                        //the page has moved on, so it is reported like an IOException
+                        ocrEvents.exception(new IOExceptionWithCause("Unable to OCR page " + pageNumber, e));
+                    } catch (SAXException e) {
+                        ocrEvents.fatal = new IOExceptionWithCause("error writing OCR content from PDF", e);
+                    } catch (RuntimeException e) {
+                        ocrEvents.fatal = e;
+                    }
+                    if (pageStatistics != null) {
+                        pageStatistics.add(ParseStatistics.Phase.OCR, System.nanoTime() - ocrStart);
+                    }
+                    return ocrEvents;
+                }
+            });
+            return;
+        }
+        long ocrStart = System.nanoTime();
+        try {
+            ocrImage(image, xhtml, tesseractConfig, imageProcessing);
         } catch (IOException e) {
             handleCatchableIOE(e);
         } catch (SAXException e) {
             throw new IOExceptionWithCause("error writing OCR content from PDF", e);
+        } finally {
+            statistics.end(ParseStatistics.Phase.OCR, ocrStart);
+        }
+    }
+
+    /**
+     * @return a copy of the config that leaves the image as it is
+     */
+    private TesseractOCRConfig withoutImageProcessing(TesseractOCRConfig tesseractConfig) {
+        if (tesseractConfig != imageProcessingConfig) {
+            unprocessedConfig = SerializationUtils.clone(tesseractConfig);
+            unprocessedConfig.setEnableImageProcessing(0);
+            imageProcessingConfig = tesseractConfig;
+        }
+        return unprocessedConfig;
+    }
+
+    /**
+     * Encodes a rendered page and runs Tesseract on it.  This does not
+     * touch the document, so it can run on any thread.
+     *
+     * @param imageProcessing config to process the image with, or <code>null</code>
+     */
+    private void ocrImage(BufferedImage image, XHTMLContentHandler ocrXHTML, TesseractOCRConfig tesseractConfig,
+                          TesseractOCRConfig imageProcessing)
+            throws IOException, SAXException, TikaException {
+        if (tesseractConfig.getStreaming()) {
+            //the encoded image is piped to Tesseract
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            writeImage(image, os, imageProcessing);
+            try (InputStream is = TikaInputStream.get(os.toByteArray())) {
+                tesseractOCRParser.parseInline(is, ocrXHTML, tesseractConfig);
+            }
+            return;
+        }
+        TemporaryResources tmp = new TemporaryResources();
+        try {
+            Path tmpFile = tmp.createTempFile();
+            writeImage(image, tmpFile, imageProcessing);
+            try (InputStream is = TikaInputStream.get(tmpFile)) {
+                tesseractOCRParser.parseInline(is, ocrXHTML, tesseractConfig);
+            }
         } finally {
             tmp.dispose();
         }
     }
 
+    /**
+     * @param imageProcessing config to process the image with, or <code>null</code>
+     */
+    private void writeImage(BufferedImage image, Path file, TesseractOCRConfig imageProcessing)
+            throws IOException {
+        try (OutputStream os = Files.newOutputStream(file)) {
+            writeImage(image, os, imageProcessing);
+        }
+    }
+
+    private void writeImage(BufferedImage image, OutputStream os, TesseractOCRConfig imageProcessing)
+            throws IOException {
+        int dpi = config.getOcrDPI();
+        if (imageProcessing != null) {
+            image = ImagePreprocessor.process(image, imageProcessing);
+            dpi = imageProcessing.getDensity();
+        }
+        //TODO: get output format from TesseractConfig
+        ImageIOUtil.writeImage(image, config.getOcrImageFormatName(),
+                os, dpi, config.getOcrImageQuality());
+    }
+
     @Override
     protected void endPage(PDPage page) throws IOException {
         metadata.add(PDF.CHARACTERS_PER_PAGE, totalCharsPerPage);
         metadata.add(PDF.UNMAPPED_UNICODE_CHARS_PER_PAGE,
                 unmappedUnicodeCharsPerPage);
-
+        statistics.setGlyphs(totalCharsPerPage);
 
         try {
+            long annotationStart = System.nanoTime();
             for (PDAnnotation annotation : page.getAnnotations()) {
 
                 if (annotation instanceof PDAnnotationFileAttachment) {
@@ -534,11 +725,11 @@ class AbstractPDF2XHTML extends PDFTextStripper {
                     }
                 }
             }
+            statistics.end(ParseStatistics.Phase.ANNOTATIONS, annotationStart);
             if (config.getOcrStrategy().equals(PDFParserConfig.OCR_STRATEGY.OCR_AND_TEXT_EXTRACTION)) {
                 doOCROnCurrentPage();
             } else if (config.getOcrStrategy().equals(PDFParserConfig.OCR_STRATEGY.AUTO)) {
-                //TODO add more sophistication
-                if (totalCharsPerPage < 10 || unmappedUnicodeCharsPerPage > 10) {
+                if (needsOCR()) {
                     doOCROnCurrentPage();
                 }
             }
@@ -556,6 +747,10 @@ class AbstractPDF2XHTML extends PDFTextStripper {
         } finally {
             totalCharsPerPage = 0;
             unmappedUnicodeCharsPerPage = 0;
+            imageCoveragePerPage = 0;
+        }
+        if (ocrPipeline != null) {
+            ocrPipeline.flush(this);
         }
 
         if (config.getExtractFontNames()) {
@@ -572,6 +767,22 @@ class AbstractPDF2XHTML extends PDFTextStripper {
         }
     }
 
+    /**
+     * @return whether {@link PDFParserConfig.OCR_STRATEGY#AUTO} should OCR
+     * the current page: its text layer is (nearly) empty, mostly unmapped,
+     * or it is covered by an image, as a scanned page is
+     */
+    boolean needsOCR() {
+        if (totalCharsPerPage < config.getOcrAutoMinCharsPerPage()) {
+            return true;
+        }
+        if (totalCharsPerPage > 0 && unmappedUnicodeCharsPerPage >
+                config.getOcrAutoUnmappedRatio() * totalCharsPerPage) {
+            return true;
+        }
+        return imageCoveragePerPage > config.getOcrAutoImageCoverage();
+    }
+
     private void handleWidget(PDAnnotationWidget widget) throws TikaException, SAXException, IOException {
         if (widget == null) {
             return;
@@ -666,6 +877,9 @@ class AbstractPDF2XHTML extends PDFTextStripper {
 
     @Override
     protected void endDocument(PDDocument pdf) throws IOException {
+        if (ocrPipeline != null) {
+            ocrPipeline.finish(this);
+        }
         try {
             // Extract text for any bookmarks:
 			if(config.getExtractBookmarksText()) {
@@ -969,6 +1183,20 @@ class AbstractPDF2XHTML extends PDFTextStripper {
         }
     }
 
+    /**
+     * Processes only the page at the given zero-based index.
+     *
+     * @param pages
+     * @param index
+     * @throws IOException
+     */
+    void processPageAt(PDPageTree pages, int index) throws IOException {
+        //see processPages for why we need to reset PDFTextStripper's startPage
+        super.setStartPage(-1);
+        pageIndex = index;
+        processPage(pages.get(index));
+    }
+
     @Override
     public void setStartBookmark(PDOutlineItem pdOutlineItem) {
         throw new UnsupportedOperationException("We don't currently support this -- See PDFTextStripper's processPages() for how to implement this.");
@@ -989,6 +1217,53 @@ class AbstractPDF2XHTML extends PDFTextStripper {
         return startPage;
     }
 
+    @Override
+    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+        if (config.getOcrStrategy() == PDFParserConfig.OCR_STRATEGY.AUTO) {
+            String name = operator.getName();
+            if ("BI".equals(name)) {
+                addImageCoverage();
+            } else if ("Do".equals(name) && operands.size() > 0 &&
+                    operands.get(0) instanceof COSName) {
+                PDResources resources = getResources();
+                if (resources != null && resources.isImageXObject((COSName) operands.get(0))) {
+                    addImageCoverage();
+                }
+            }
+        }
+        super.processOperator(operator, operands);
+    }
+
+    /**
+     * Records the fraction of the page's crop box that is covered by the
+     * image about to be drawn, which fills the unit square of the current
+     * transformation matrix.  The image itself is never decoded.
+     */
+    private void addImageCoverage() {
+        PDRectangle cropBox = getCurrentPage().getCropBox();
+        float pageArea = cropBox.getWidth() * cropBox.getHeight();
+        if (pageArea <= 0) {
+            return;
+        }
+        Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int corner = 0; corner < 4; corner++) {
+            Point2D.Float p = ctm.transformPoint(corner & 1, corner >> 1);
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        float width = Math.min(maxX, cropBox.getUpperRightX()) - Math.max(minX, cropBox.getLowerLeftX());
+        float height = Math.min(maxY, cropBox.getUpperRightY()) - Math.max(minY, cropBox.getLowerLeftY());
+        if (width > 0 && height > 0) {
+            imageCoveragePerPage = Math.max(imageCoveragePerPage, (width * height) / pageArea);
+        }
+    }
+
     @Override
     protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, String unicode, Vector displacement) throws IOException
     {
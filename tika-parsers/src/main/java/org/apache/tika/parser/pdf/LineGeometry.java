@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Geometry of a single line of text as collected by
+ * {@link PDF2XHTML#writeString(String, List)}, and its serialization
+ * in the formats of {@link PDFParserConfig.LINE_GEOMETRY_FORMAT}.
+ * <p/>
+ * Word positions are kept in flat primitive arrays so that an instance can be
+ * {@link #reset() reset} and reused for every line without allocating.
+ */
+class LineGeometry {
+
+    //font weights that are not a number in the font descriptor
+    static final float WEIGHT_NORMAL = 0f;
+    static final float WEIGHT_BOLD = -1f;
+
+    //position and size of the first character
+    float startX;
+    float startY;
+    float startFontSize;
+
+    //position and size of the last character
+    float lastX;
+    float lastY;
+    float fontSize;
+
+    String fontFamily = "";
+    boolean italic = false;
+    float fontWeight = WEIGHT_NORMAL;
+
+    //{x, y, fontSize, fontWeight} of the first and last character of each word,
+    //POSITION_SIZE floats per word
+    private static final int POSITION_SIZE = 4;
+    private float[] wordStarts = new float[20 * POSITION_SIZE];
+    private int wordStartsLength = 0;
+    private float[] wordEnds = new float[20 * POSITION_SIZE];
+    private int wordEndsLength = 0;
+
+    void reset() {
+        startX = startY = startFontSize = 0;
+        lastX = lastY = fontSize = 0;
+        fontFamily = "";
+        italic = false;
+        fontWeight = WEIGHT_NORMAL;
+        wordStartsLength = 0;
+        wordEndsLength = 0;
+    }
+
+    void addWordStart(float x, float y, float size) {
+        if (wordStartsLength == wordStarts.length) {
+            wordStarts = Arrays.copyOf(wordStarts, wordStarts.length * 2);
+        }
+        wordStartsLength = addPosition(wordStarts, wordStartsLength, x, y, size);
+    }
+
+    void addWordEnd(float x, float y, float size) {
+        if (wordEndsLength == wordEnds.length) {
+            wordEnds = Arrays.copyOf(wordEnds, wordEnds.length * 2);
+        }
+        wordEndsLength = addPosition(wordEnds, wordEndsLength, x, y, size);
+    }
+
+    private int addPosition(float[] positions, int length, float x, float y, float size) {
+        positions[length++] = x;
+        positions[length++] = y;
+        positions[length++] = size;
+        positions[length++] = fontWeight;
+        return length;
+    }
+
+    /**
+     * @return the CSS-like style attribute value that PDF2XHTML has always written
+     */
+    String toStyle() {
+        StringBuilder sb = new StringBuilder(128 + 8 * (wordStartsLength + wordEndsLength));
+        sb.append("top1:").append(startY).append("px;");
+        sb.append("start-font-size:").append(startFontSize).append("px;");
+        sb.append("font-size:").append(fontSize).append("px;");
+        sb.append("font-family:").append(fontFamily).append(";");
+        sb.append("font-style:").append(italic ? "italic" : "normal").append(";");
+        sb.append("font-weight:");
+        appendStyleWeight(sb, fontWeight);
+        sb.append(";");
+        sb.append("top:").append(lastY).append("px;");
+        sb.append("position:absolute;");
+        sb.append("text-indent:").append(startX).append("px;");
+        sb.append("word-start-positions:");
+        appendStylePositions(sb, wordStarts, wordStartsLength);
+        sb.append(";last-char:(").append(lastX).append(", ").append(lastY).append(")");
+        sb.append(";word-end-positions:");
+        appendStylePositions(sb, wordEnds, wordEndsLength);
+        return sb.toString();
+    }
+
+    /**
+     * @return the geometry as a compact JSON array of
+     * <code>[x, y, startFontSize, fontSize, fontFamily, italic, fontWeight,
+     * [lastX, lastY], wordStarts, wordEnds]</code>; positional rather than
+     * keyed so that only the font family needs quoting inside an attribute
+     */
+    String toJson() {
+        StringBuilder sb = new StringBuilder(64 + 6 * (wordStartsLength + wordEndsLength));
+        sb.append('[');
+        appendJsonNumber(sb, startX);
+        sb.append(',');
+        appendJsonNumber(sb, startY);
+        sb.append(',');
+        appendJsonNumber(sb, startFontSize);
+        sb.append(',');
+        appendJsonNumber(sb, fontSize);
+        sb.append(',');
+        appendJsonString(sb, fontFamily);
+        sb.append(',').append(italic).append(',');
+        appendJsonNumber(sb, jsonWeight(fontWeight));
+        sb.append(",[");
+        appendJsonNumber(sb, lastX);
+        sb.append(',');
+        appendJsonNumber(sb, lastY);
+        sb.append("],");
+        appendJsonPositions(sb, wordStarts, wordStartsLength);
+        sb.append(',');
+        appendJsonPositions(sb, wordEnds, wordEndsLength);
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private static void appendStyleWeight(StringBuilder sb, float weight) {
+        if (weight == WEIGHT_NORMAL) {
+            sb.append("normal");
+        } else if (weight == WEIGHT_BOLD) {
+            sb.append("bold");
+        } else {
+            sb.append(weight);
+        }
+    }
+
+    private static void appendStylePositions(StringBuilder sb, float[] p, int length) {
+        sb.append('[');
+        for (int i = 0; i < length; i += POSITION_SIZE) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('(').append(p[i]).append(',').append(p[i + 1]).append(',').append(p[i + 2]).append(',');
+            appendStyleWeight(sb, p[i + 3]);
+            sb.append(')');
+        }
+        sb.append(']');
+    }
+
+    private static float jsonWeight(float weight) {
+        if (weight == WEIGHT_NORMAL) {
+            return 400f;
+        } else if (weight == WEIGHT_BOLD) {
+            return 700f;
+        }
+        return weight;
+    }
+
+    private static void appendJsonPositions(StringBuilder sb, float[] p, int length) {
+        sb.append('[');
+        for (int i = 0; i < length; i += POSITION_SIZE) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('[');
+            appendJsonNumber(sb, p[i]);
+            sb.append(',');
+            appendJsonNumber(sb, p[i + 1]);
+            sb.append(',');
+            appendJsonNumber(sb, p[i + 2]);
+            sb.append(',');
+            appendJsonNumber(sb, jsonWeight(p[i + 3]));
+            sb.append(']');
+        }
+        sb.append(']');
+    }
+
+    static void appendJsonNumber(StringBuilder sb, float f) {
+        if (Float.isNaN(f) || Float.isInfinite(f)) {
+            sb.append("null");
+        } else if (f == Math.rint(f) && Math.abs(f) < 1e7f) {
+            //drop the trailing ".0" of whole numbers
+            sb.append((int) f);
+        } else {
+            sb.append(f);
+        }
+    }
+
+    static void appendJsonString(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
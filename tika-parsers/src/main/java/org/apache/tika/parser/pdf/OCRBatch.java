@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOExceptionWithCause;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.parser.ocr.TesseractOCRParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Pages that are OCR'd by one Tesseract process, see
+ * {@link PDFParserConfig#setOcrBatchSize(int)}.
+ * <p>
+ * Pages are added on the parsing thread as encoded images in temporary
+ * files, each with a future for its OCR results.  {@link #run()} OCRs the
+ * batch, typically on a pool thread, completes the futures in page order
+ * and deletes the images.
+ */
+class OCRBatch implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OCRBatch.class);
+
+    private final TesseractOCRParser tesseractOCRParser;
+    private final ParseContext context;
+    private final TesseractOCRConfig tesseractConfig;
+    private final TemporaryResources tmp = new TemporaryResources();
+
+    private final List<Path> images = new ArrayList<>();
+    private final List<Integer> pageNumbers = new ArrayList<>();
+    private final List<ParseStatistics.Page> statistics = new ArrayList<>();
+    private final List<CompletableFuture<PageEventBuffer>> results = new ArrayList<>();
+
+    OCRBatch(TesseractOCRParser tesseractOCRParser, ParseContext context,
+             TesseractOCRConfig tesseractConfig) {
+        this.tesseractOCRParser = tesseractOCRParser;
+        this.context = context;
+        this.tesseractConfig = tesseractConfig;
+    }
+
+    /**
+     * @return a temporary file for an image, deleted with the batch
+     */
+    Path createImageFile() throws IOException {
+        return tmp.createTempFile();
+    }
+
+    /**
+     * @param image encoded image of the page
+     * @param pageNumber 1-based, for error messages
+     * @param pageStatistics may be <code>null</code>
+     * @return the page's OCR results
+     */
+    Future<PageEventBuffer> add(Path image, int pageNumber, ParseStatistics.Page pageStatistics) {
+        CompletableFuture<PageEventBuffer> result = new CompletableFuture<>();
+        images.add(image);
+        pageNumbers.add(pageNumber);
+        statistics.add(pageStatistics);
+        results.add(result);
+        return result;
+    }
+
+    int size() {
+        return images.size();
+    }
+
+    /**
+     * @return whether the future is the result of one of this batch's pages
+     */
+    boolean contains(Object result) {
+        for (Future<PageEventBuffer> future : results) {
+            if (future == result) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        List<PageEventBuffer> events = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            events.add(new PageEventBuffer());
+        }
+        long ocrStart = System.nanoTime();
+        try {
+            ocr(events);
+        } catch (Error e) {
+            for (CompletableFuture<PageEventBuffer> result : results) {
+                result.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            discard();
+        }
+        //the pages share the process, so each gets its share of the time
+        long pageNanos = images.isEmpty() ? 0 : (System.nanoTime() - ocrStart) / images.size();
+        for (int i = 0; i < images.size(); i++) {
+            if (statistics.get(i) != null) {
+                statistics.get(i).add(ParseStatistics.Phase.OCR, pageNanos);
+            }
+            results.get(i).complete(events.get(i));
+        }
+    }
+
+    private void ocr(List<PageEventBuffer> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            tesseractOCRParser.parseInline(images, events, context, tesseractConfig);
+        } catch (IOException e) {
+            for (PageEventBuffer pageEvents : events) {
+                pageEvents.exception(e);
+            }
+        } catch (TikaException e) {
+            //e.g. a Tesseract timeout; reported for each page like an IOException
+            for (int i = 0; i < events.size(); i++) {
+                events.get(i).exception(
+                        new IOExceptionWithCause("Unable to OCR page " + pageNumbers.get(i), e));
+            }
+        } catch (SAXException e) {
+            events.get(0).fatal = new IOExceptionWithCause("error writing OCR content from PDF", e);
+        } catch (RuntimeException e) {
+            events.get(0).fatal = e;
+        }
+    }
+
+    /**
+     * Deletes the images, e.g. of a batch that won't be run
+     */
+    void discard() {
+        try {
+            tmp.close();
+        } catch (IOException e) {
+            LOG.warn("Couldn't delete the images of an OCR batch", e);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOExceptionWithCause;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * {@link XHTMLContentHandler} that lets the OCR of pages run concurrently
+ * with the rest of the parse.
+ * <p>
+ * PDFBox's object model is not thread safe, so pages are still rendered on
+ * the calling thread, but encoding the rendered image and running Tesseract
+ * on it is handed to a bounded pool via {@link #submit(AbstractPDF2XHTML, Callable)}.
+ * Until the OCR of a page has finished, everything written after it is
+ * recorded into {@link PageEventBuffer}s; the results and the recorded
+ * events are replayed in order as soon as they are available, so the output
+ * is the same as with inline OCR.
+ * <p>
+ * With a batch size greater than one, pages are collected into an
+ * {@link OCRBatch} via {@link #submit(Path, int, ParseStatistics.Page)}
+ * instead, and each batch is OCR'd by one Tesseract process.  A batch is
+ * handed to the pool once it is full, or as soon as the output has to
+ * wait for one of its pages.
+ * <p>
+ * The one difference is a {@link org.apache.tika.exception.TikaException}
+ * from Tesseract (e.g. a timeout): inline, it abandons the rest of the page
+ * (or, with OCR only, the document); here, it is reported at its position
+ * in the output like any other per page IOException.
+ */
+class OCRPipeline extends XHTMLContentHandler {
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+    private final int numThreads;
+    private final int batchSize;
+    private ExecutorService executorService;
+    //pages that are collected for the next batch
+    private OCRBatch openBatch;
+
+    //OCR results that are not yet written (Future<PageEventBuffer>)
+    //and the events that were written after them (PageEventBuffer), in order
+    private final Deque<Object> pending = new ArrayDeque<>();
+    private int pendingOCR = 0;
+    private boolean replaying = false;
+    //writing the pending output threw; what is left comes after the failure
+    private boolean failed = false;
+
+    OCRPipeline(ContentHandler handler, Metadata metadata, int numThreads, int batchSize) {
+        super(handler, metadata);
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return whether pages are OCR'd in batches
+     */
+    boolean isBatching() {
+        return batchSize > 1;
+    }
+
+    /**
+     * @return whether events are currently being held back behind a running OCR
+     */
+    boolean isDeferring() {
+        return !replaying && !pending.isEmpty();
+    }
+
+    /**
+     * Queues the OCR of a page.  The events it records are written at the
+     * current position of the output.  This blocks while too many pages
+     * are waiting for OCR, which bounds the number of rendered images that
+     * are held in memory.
+     */
+    void submit(AbstractPDF2XHTML target, Callable<PageEventBuffer> ocr) throws IOException {
+        drain(target, numThreads * 2 - 1);
+        pending.add(getExecutorService().submit(ocr));
+        pendingOCR++;
+    }
+
+    /**
+     * This blocks while too many batches are waiting for OCR, which bounds
+     * the number of images in temporary files.
+     *
+     * @return the batch that the next page is added to
+     */
+    OCRBatch getBatch(AbstractPDF2XHTML target, TesseractOCRConfig tesseractConfig) throws IOException {
+        drain(target, numThreads * 2 * batchSize - 1);
+        if (openBatch == null) {
+            openBatch = new OCRBatch(target.tesseractOCRParser, target.context, tesseractConfig);
+        }
+        return openBatch;
+    }
+
+    /**
+     * Adds a page to the batch returned by {@link #getBatch(AbstractPDF2XHTML, TesseractOCRConfig)}.
+     * The events it records are written at the current position of the
+     * output.  A full batch is handed to the pool.
+     *
+     * @param image the page's image, in a file of the batch
+     */
+    void submit(Path image, int pageNumber, ParseStatistics.Page pageStatistics) {
+        pending.add(openBatch.add(image, pageNumber, pageStatistics));
+        pendingOCR++;
+        if (openBatch.size() >= batchSize) {
+            submitBatch();
+        }
+    }
+
+    private void submitBatch() {
+        //not wrapped, so that shutdownNow returns it
+        getExecutorService().execute(openBatch);
+        openBatch = null;
+    }
+
+    private ExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = Executors.newFixedThreadPool(numThreads, newThreadFactory());
+        }
+        return executorService;
+    }
+
+    /**
+     * Records an exception at the current position of the output, so that
+     * it is handled in the same order as with inline OCR.
+     */
+    void exception(IOException e) {
+        tail().exception(e);
+    }
+
+    /**
+     * Writes the OCR results that have finished, and the events that
+     * follow them, without blocking.
+     */
+    void flush(AbstractPDF2XHTML target) throws IOException {
+        drain(target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Waits for all OCR and writes everything that is pending.
+     */
+    void finish(AbstractPDF2XHTML target) throws IOException {
+        drain(target, 0);
+    }
+
+    /**
+     * Called when the parse failed on the calling thread: everything that
+     * is pending preceded the failure, so it is written before the failure
+     * is reported -- unless the failure came from writing the pending
+     * output itself.
+     */
+    void finishAfterFailure(AbstractPDF2XHTML target) throws IOException {
+        if (!failed) {
+            finish(target);
+        }
+    }
+
+    void shutdown() {
+        pending.clear();
+        pendingOCR = 0;
+        if (openBatch != null) {
+            openBatch.discard();
+            openBatch = null;
+        }
+        if (executorService == null) {
+            return;
+        }
+        for (Runnable notRun : executorService.shutdownNow()) {
+            if (notRun instanceof OCRBatch) {
+                ((OCRBatch) notRun).discard();
+            }
+        }
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executorService = null;
+    }
+
+    /**
+     * Writes pending output in order, waiting for OCR results while more
+     * than <code>maxPendingOCR</code> pages are waiting.
+     */
+    private void drain(AbstractPDF2XHTML target, int maxPendingOCR) throws IOException {
+        while (!pending.isEmpty()) {
+            Object head = pending.peekFirst();
+            if (head instanceof Future && !((Future<?>) head).isDone()) {
+                if (pendingOCR <= maxPendingOCR) {
+                    return;
+                }
+                if (openBatch != null && openBatch.contains(head)) {
+                    //the output can't go on without it
+                    submitBatch();
+                }
+            }
+            pending.removeFirst();
+            //stays set if writing this item throws
+            failed = true;
+            PageEventBuffer events;
+            if (head instanceof Future) {
+                pendingOCR--;
+                @SuppressWarnings("unchecked")
+                Future<PageEventBuffer> ocr = (Future<PageEventBuffer>) head;
+                events = await(ocr);
+            } else {
+                events = (PageEventBuffer) head;
+            }
+            replay(target, events);
+            failed = false;
+        }
+    }
+
+    private void replay(AbstractPDF2XHTML target, PageEventBuffer events) throws IOException {
+        replaying = true;
+        try {
+            events.replay(target);
+        } catch (SAXException e) {
+            throw new IOExceptionWithCause("error writing OCR content from PDF", e);
+        } finally {
+            replaying = false;
+        }
+        if (events.fatal instanceof IOException) {
+            throw (IOException) events.fatal;
+        } else if (events.fatal instanceof RuntimeException) {
+            throw (RuntimeException) events.fatal;
+        } else if (events.fatal != null) {
+            throw new IOExceptionWithCause("Unable to end a page", events.fatal);
+        }
+    }
+
+    private PageEventBuffer await(Future<PageEventBuffer> ocr) throws IOException {
+        try {
+            return ocr.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOExceptionWithCause("interrupted while waiting for OCR", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOExceptionWithCause("Unable to OCR page", cause);
+        }
+    }
+
+    private PageEventBuffer tail() {
+        Object last = pending.peekLast();
+        if (last instanceof PageEventBuffer) {
+            return (PageEventBuffer) last;
+        }
+        PageEventBuffer buffer = new PageEventBuffer();
+        pending.add(buffer);
+        return buffer;
+    }
+
+    private ThreadFactory newThreadFactory() {
+        final int poolNumber = POOL_COUNTER.incrementAndGet();
+        return new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "pdf-ocr-" + poolNumber + "-" +
+                        threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    @Override
+    public void startElement(String uri, String local, String name, Attributes attributes)
+            throws SAXException {
+        if (isDeferring()) {
+            tail().startElement(uri, local, name, attributes);
+        } else {
+            super.startElement(uri, local, name, attributes);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String local, String name) throws SAXException {
+        if (isDeferring()) {
+            tail().endElement(uri, local, name);
+        } else {
+            super.endElement(uri, local, name);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (isDeferring()) {
+            tail().characters(ch, start, length);
+        } else {
+            super.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (isDeferring()) {
+            tail().ignorableWhitespace(ch, start, length);
+        } else {
+            super.ignorableWhitespace(ch, start, length);
+        }
+    }
+}
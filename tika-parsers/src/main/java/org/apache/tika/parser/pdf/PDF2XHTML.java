@@ -16,23 +16,24 @@
  */
 package org.apache.tika.parser.pdf;
 
+import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Locale;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.pdfbox.cos.COSArray;
-import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
@@ -40,6 +41,7 @@ import org.apache.pdfbox.util.Matrix;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.XHTMLContentHandler;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
@@ -50,6 +52,23 @@ import org.xml.sax.SAXException;
  */
 class PDF2XHTML extends AbstractPDF2XHTML {
 
+    /**
+     * Extract text using a dummy Writer as we override the
+     * key methods to output to the given content handler.
+     */
+    static final Writer NULL_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
 
     /**
      * This keeps track of the pdf object ids for inline
@@ -64,12 +83,31 @@ class PDF2XHTML extends AbstractPDF2XHTML {
      */
     private Map<COSStream, Integer> processedInlineImages = new HashMap<>();
     private AtomicInteger inlineImageCounter = new AtomicInteger(0);
+
+    /**
+     * Resolved family, weight and style of each font, by font identity.
+     * PDFBox hands out the same {@link PDFont} instance for a font resource,
+     * so consecutive glyphs almost always hit this cache.
+     */
+    private final Map<PDFont, FontStyle> fontStyles = new IdentityHashMap<>();
+
+    /**
+     * Reused for every line written by {@link #writeString(String, List)}
+     */
+    private final LineGeometry lineGeometry = new LineGeometry();
+
     PDF2XHTML(PDDocument document, ContentHandler handler, ParseContext context, Metadata metadata,
               PDFParserConfig config)
             throws IOException {
         super(document, handler, context, metadata, config);
     }
 
+    PDF2XHTML(PDDocument document, XHTMLContentHandler xhtml, ParseContext context, Metadata metadata,
+              PDFParserConfig config)
+            throws IOException {
+        super(document, xhtml, context, metadata, config);
+    }
+
     /**
      * Converts the given PDF document (and related metadata) to a stream
      * of XHTML SAX events sent to the given content handler.
@@ -84,31 +122,41 @@ class PDF2XHTML extends AbstractPDF2XHTML {
             PDDocument document, ContentHandler handler, ParseContext context, Metadata metadata,
             PDFParserConfig config)
             throws SAXException, TikaException {
+        process(document, handler, context, metadata, config, null);
+    }
+
+    /**
+     * Converts the given PDF document (and related metadata) to a stream
+     * of XHTML SAX events sent to the given content handler.
+     * <p>
+     * If {@link PDFParserConfig#getPageExtractionThreads()} is greater than one
+     * and a <code>documentLoader</code> is available, the pages are extracted
+     * concurrently; see {@link ParallelPDF2XHTML}.
+     *
+     * @param document PDF document
+     * @param handler  SAX content handler
+     * @param metadata PDF metadata
+     * @param documentLoader loads additional copies of the document for page workers; can be null
+     * @throws SAXException  if the content handler fails to process SAX events
+     * @throws TikaException if there was an exception outside of per page processing
+     */
+    static void process(
+            PDDocument document, ContentHandler handler, ParseContext context, Metadata metadata,
+            PDFParserConfig config, ParallelPDF2XHTML.DocumentLoader documentLoader)
+            throws SAXException, TikaException {
         PDF2XHTML pdf2XHTML = null;
         try {
-            // Extract text using a dummy Writer as we override the
-            // key methods to output to the given content
-            // handler.
             if (config.getDetectAngles()) {
                 pdf2XHTML = new AngleDetectingPDF2XHTML(document, handler, context, metadata, config);
+            } else if (documentLoader != null && config.getPageExtractionThreads() > 1) {
+                pdf2XHTML = new ParallelPDF2XHTML(document, handler, context, metadata, config,
+                        documentLoader);
             } else {
                 pdf2XHTML = new PDF2XHTML(document, handler, context, metadata, config);
             }
             config.configure(pdf2XHTML);
 
-            pdf2XHTML.writeText(document, new Writer() {
-                @Override
-                public void write(char[] cbuf, int off, int len) {
-                }
-
-                @Override
-                public void flush() {
-                }
-
-                @Override
-                public void close() {
-                }
-            });
+            pdf2XHTML.writeText(document, NULL_WRITER);
         } catch (IOException e) {
             if (e.getCause() instanceof SAXException) {
                 throw (SAXException) e.getCause();
@@ -134,14 +182,10 @@ class PDF2XHTML extends AbstractPDF2XHTML {
 
     @Override
     protected void endPage(PDPage page) throws IOException {
+        statistics.endText();
         try {
-           writeParagraphEnd();
-            try {
-                extractImages(page);
-            } catch (IOException e) {
-                handleCatchableIOE(e);
-            }
-            super.endPage(page);
+            writeParagraphEnd();
+            endPageContent(page);
         } catch (SAXException e) {
             throw new IOException("Unable to end a page", e);
         } catch (IOException e) {
@@ -149,6 +193,23 @@ class PDF2XHTML extends AbstractPDF2XHTML {
         }
     }
 
+    /**
+     * Everything that happens at the end of a page once the page's
+     * text has been written: inline images, annotations, OCR and the
+     * per page metadata.
+     */
+    void endPageContent(PDPage page) throws IOException, SAXException {
+        long imageStart = System.nanoTime();
+        try {
+            extractImages(page);
+        } catch (IOException e) {
+            handleCatchableIOE(e);
+        } finally {
+            statistics.end(ParseStatistics.Phase.IMAGES, imageStart);
+        }
+        super.endPage(page);
+    }
+
     void extractImages(PDPage page) throws SAXException, IOException {
         if (config.getExtractInlineImages() == false) {
             return;
@@ -181,7 +242,7 @@ class PDF2XHTML extends AbstractPDF2XHTML {
     @Override
     protected void writeParagraphStart() throws IOException {
         super.writeParagraphStart();
-        System.out.println("paragraph start");
+        statistics.addParagraph();
     }
     /*
         @Override
@@ -195,11 +256,6 @@ class PDF2XHTML extends AbstractPDF2XHTML {
         }
 
      */
-    @Override
-    protected void writeParagraphEnd() throws IOException {
-        super.writeParagraphEnd();
-        System.out.println("paragraph end");
-    }
 
     // @Override
     // protected void writeString(String text) throws IOException {
@@ -217,103 +273,114 @@ class PDF2XHTML extends AbstractPDF2XHTML {
 
     @Override
     protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+        statistics.addLine();
         try {
-            StringBuilder testWordStartPos = new StringBuilder();
-            ArrayList<String> wordsStartPos = new ArrayList<>(20);
-            ArrayList<String> wordsEndPos = new ArrayList<>(20);
-            ArrayList<String> wordSpaceDistanceList = new ArrayList<>(20);
-            // int wordCount = text.split("\\s+").length;
-            // String[] wordsStartPos2 = new String[wordCount];
-
-            float linePositiony = 0;
-            float linePositionx = 0;
-            String last_char_pos = "[]";
-            String height = "8";
-            String y_rel = "";
-            String font_type = "";
-            String font_weight = "normal";
-            String font_style = "normal";
-            String word_start_pos = "";
-            //xhtml.startElement("div", "style", "border:3px solid ##ff0000;");
-            String s1 = Float.toString(textPositions.get(0).getXDirAdj() * 1);
-            String indent = "text-indent:" + s1 + "px;";
-            String prev = " ";
-            String height1 = "start-font-size:" + Float.toString((float) Math.pow(textPositions.get(0).getHeightDir(), 1)) + "px;";
-            String top1 = "top1:" + Float.toString(textPositions.get(0).getYDirAdj()) + "px;";
-            String font_size = "";
-            //for (TextPosition s : textPositions) {
-            for (int i = 0; i < textPositions.size(); i ++) {
-                TextPosition s = textPositions.get(i);
-                font_size = Float.toString((float) Math.pow(s.getHeightDir(), 1));
-                height = "font-size:" + Float.toString((float) Math.pow(s.getHeightDir(), 1)) + "px;";
-                y_rel = "top:" + Float.toString(s.getYDirAdj()) + "px;";
-                linePositiony = s.getYDirAdj();
-                linePositionx = s.getXDirAdj();
-
-
-                PDFontDescriptor fd = s.getFont().getFontDescriptor();
-                font_type = fd.getFontFamily();
-                if (font_type == null) {
-                    font_type = fd.getFontName();
-
-                    if (font_type.contains("+")) {
-                        font_type = font_type.split("\\+")[1];
-                    }
+            switch (config.getLineGeometryFormat()) {
+                case NONE:
+                    xhtml.startElement("p");
+                    break;
+                case JSON:
+                    xhtml.startElement("p", "data-geometry", measureLine(textPositions).toJson());
+                    break;
+                default:
+                    xhtml.startElement("p", "style", measureLine(textPositions).toStyle());
+            }
+            xhtml.characters(text);
+            xhtml.endElement("p");
+        } catch (SAXException e) {
+            throw new IOException(
+                    "Unable to write a string: " + text, e);
+        }
+    }
 
-                    if (font_type.contains(",")) {
-                        String[] arr = font_type.split(",");
-                        if (arr[1].toLowerCase(Locale.ENGLISH).contains("bold")) {
-                            font_weight = "bold";
-                        }
-                        font_type = arr[0];
-                    }
-                }
+    /**
+     * Collects the position and font of the first and last character, and
+     * the start and end position of each word of a line.
+     */
+    private LineGeometry measureLine(List<TextPosition> textPositions) {
+        LineGeometry line = lineGeometry;
+        line.reset();
+        TextPosition first = textPositions.get(0);
+        line.startX = first.getXDirAdj();
+        line.startY = first.getYDirAdj();
+        line.startFontSize = first.getHeightDir();
+        String prev = " ";
+        for (int i = 0; i < textPositions.size(); i++) {
+            TextPosition s = textPositions.get(i);
+            float x = s.getXDirAdj();
+            float y = s.getYDirAdj();
+            float size = s.getHeightDir();
+
+            FontStyle fontStyle = getFontStyle(s.getFont());
+            line.fontFamily = fontStyle.family;
+            if (fontStyle.bold) {
+                line.fontWeight = LineGeometry.WEIGHT_BOLD;
+            }
+            if (line.fontWeight == LineGeometry.WEIGHT_NORMAL && fontStyle.weight >= 100) {
+                line.fontWeight = fontStyle.weight;
+            }
+            if (fontStyle.italic) {
+                line.italic = true;
+            }
 
-                float fw = fd.getFontWeight();
-                if (font_weight.equals("normal") && fw >= 100) {
-                    font_weight = Float.toString(fw);
-                }
-                if (fd.getItalicAngle() != 0) {
-                    font_style = "italic";
-                }
+            // the last char of a word is followed by a space or ends the line
+            if (i + 1 == textPositions.size() || textPositions.get(i + 1).toString().equals(" ")) {
+                line.addWordEnd(x, y, size);
+            }
+            // the first char of a word follows a space or starts the line
+            if (prev.equals(" ")) {
+                line.addWordStart(x, y, size);
+            }
 
-                if (i+1 < textPositions.size()) {
-                    if (textPositions.get(i+1).toString().equals(" ")) {
-                        // if next char is a space save get the position of the last char of the word
-                        wordsEndPos.add("(" + linePositionx + "," + linePositiony + "," + font_size + "," +font_weight + ")");
-                    }
-                } else {
-                    // last char
-                    wordsEndPos.add("(" + linePositionx + "," + linePositiony + "," + font_size + "," +font_weight + ")");
-                }
+            prev = s.toString();
+            line.lastX = x;
+            line.lastY = y;
+            line.fontSize = size;
+        }
+        return line;
+    }
+
+    private FontStyle getFontStyle(PDFont font) {
+        FontStyle fontStyle = fontStyles.get(font);
+        if (fontStyle == null) {
+            fontStyle = new FontStyle(font.getFontDescriptor());
+            fontStyles.put(font, fontStyle);
+        }
+        return fontStyle;
+    }
 
-                // get start of word in format (xCoord, yCoord)
-                if (prev.equals(" ")) {
-                    //String tempWordPos = "(" + linePositionx + "," + linePositiony + ")";
-                    String tempWordPos = "(" + linePositionx + "," + linePositiony + "," + font_size + "," +font_weight + ")";
-                    testWordStartPos.append("(").append(linePositionx).append(",").append(linePositiony).append(")").append("current char: ").append(s.toString());
-                    wordsStartPos.add(tempWordPos.toString());
+    /**
+     * Family, weight and style of a font as written to the line geometry
+     */
+    private static class FontStyle {
+        private final String family;
+        //the font name has a bold suffix, e.g. "Arial,Bold"
+        private final boolean bold;
+        private final float weight;
+        private final boolean italic;
+
+        private FontStyle(PDFontDescriptor fd) {
+            String family = fd.getFontFamily();
+            boolean bold = false;
+            if (family == null) {
+                family = fd.getFontName();
+
+                if (family.contains("+")) {
+                    family = family.split("\\+")[1];
                 }
 
-                prev = s.toString();
-                last_char_pos = "(" + Float.toString(linePositionx) + ", " + Float.toString(linePositiony) + ")";
+                if (family.contains(",")) {
+                    String[] arr = family.split(",");
+                    if (arr[1].toLowerCase(Locale.ENGLISH).contains("bold")) {
+                        bold = true;
+                    }
+                    family = arr[0];
+                }
             }
-            font_weight = "font-weight:" + font_weight + ";";
-            font_style = "font-style:" + font_style + ";";
-            font_type = "font-family:" + font_type + ";";
-            word_start_pos = "word-start-positions:" + wordsStartPos.toString();
-            String word_end_pos = ";word-end-positions:" + wordsEndPos.toString();
-
-            String val = top1 + height1 + height + font_type + font_style + font_weight + y_rel + "position:absolute;" +
-                    indent + word_start_pos + ";last-char:" + last_char_pos + word_end_pos;
-            //String val = height + y_rel  + indent;
-            xhtml.startElement("p", "style", val);
-            xhtml.characters(text);
-            xhtml.endElement("p");
-            //xhtml.endElement("div");
-        } catch (SAXException e) {
-            throw new IOException(
-                    "Unable to write a string: " + text, e);
+            this.family = family;
+            this.bold = bold;
+            this.weight = fd.getFontWeight();
+            this.italic = fd.getItalicAngle() != 0;
         }
     }
 
@@ -347,105 +414,91 @@ class PDF2XHTML extends AbstractPDF2XHTML {
         }
     }
 
-    class AngleCollector extends PDFTextStripper {
-        Set<Integer> angles = new HashSet<>();
-
-        public Set<Integer> getAngles() {
-            return angles;
-        }
-
-        /**
-         * Instantiate a new PDFTextStripper object.
-         *
-         * @throws IOException If there is an error loading the properties.
-         */
-        AngleCollector() throws IOException {
-        }
-
-        @Override
-        protected void processTextPosition(TextPosition text) {
-            Matrix m = text.getTextMatrix();
-            m.concatenate(text.getFont().getFontMatrix());
-            int angle = (int) Math.round(Math.toDegrees(Math.atan2(m.getShearY(), m.getScaleY())));
-            angle = (angle + 360) % 360;
-            angles.add(angle);
-        }
-    }
-
+    /**
+     * Extracts the text at every angle of a page in a single pass over its
+     * content stream.  Each character is rotated upright about the origin of
+     * user space, and the characters of each angle are then written as if they
+     * were a page of their own, so that PDFTextStripper's line and word
+     * detection applies to them (PDFBOX-4371).
+     */
     private static class AngleDetectingPDF2XHTML extends PDF2XHTML {
 
+        //angles in the order in which the text of the current page is written
+        private Set<Integer> angles = new HashSet<>();
+        private final Map<TextPosition, Integer> textAngles = new IdentityHashMap<>();
+
         private AngleDetectingPDF2XHTML(PDDocument document, ContentHandler handler, ParseContext context, Metadata metadata, PDFParserConfig config) throws IOException {
             super(document, handler, context, metadata, config);
         }
 
         @Override
         protected void startPage(PDPage page) throws IOException {
-            //no-op
+            //a new set per page keeps the iteration order independent of earlier pages
+            angles = new HashSet<>();
+            textAngles.clear();
+            super.startPage(page);
         }
 
         @Override
-        protected void endPage(PDPage page) throws IOException {
-            //no-op
+        protected void processTextPosition(TextPosition text) {
+            int angle = getAngle(text);
+            angles.add(angle);
+            TextPosition upright = rotateUpright(text, angle);
+            textAngles.put(upright, angle);
+            super.processTextPosition(upright);
         }
 
         @Override
-        public void processPage(PDPage page) throws IOException {
-            try {
-                super.startPage(page);
-                detectAnglesAndProcessPage(page);
-            } catch (IOException e) {
-                handleCatchableIOE(e);
-            } finally {
-                super.endPage(page);
+        protected void writePage() throws IOException {
+            List<List<TextPosition>> articles = new ArrayList<>(charactersByArticle.size());
+            for (List<TextPosition> article : charactersByArticle) {
+                articles.add(new ArrayList<>(article));
             }
-        }
-
-        private void detectAnglesAndProcessPage(PDPage page) throws IOException {
-            //copied and pasted from https://issues.apache.org/jira/secure/attachment/12947452/ExtractAngledText.java
-            //PDFBOX-4371
-            AngleCollector angleCollector = new AngleCollector(); // alternatively, reset angles
-            angleCollector.setStartPage(getCurrentPageNo());
-            angleCollector.setEndPage(getCurrentPageNo());
-            angleCollector.getText(document);
-
-            int rotation = page.getRotation();
-            page.setRotation(0);
-
-            for (Integer angle : angleCollector.getAngles()) {
-                if (angle == 0) {
-                    try {
-                        super.processPage(page);
-                    } catch (IOException e) {
-                        handleCatchableIOE(e);
-                    }
-                } else {
-                    // prepend a transformation
-                    try (PDPageContentStream cs = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.PREPEND, false)) {
-                        cs.transform(Matrix.getRotateInstance(-Math.toRadians(angle), 0, 0));
-                    }
-
-                    try {
-                        super.processPage(page);
-                    } catch (IOException e) {
-                        handleCatchableIOE(e);
+            try {
+                for (Integer angle : angles) {
+                    for (int i = 0; i < articles.size(); i++) {
+                        List<TextPosition> article = charactersByArticle.get(i);
+                        article.clear();
+                        for (TextPosition text : articles.get(i)) {
+                            if (angle.equals(textAngles.get(text))) {
+                                article.add(text);
+                            }
+                        }
                     }
-
-                    // remove transformation
-                    COSArray contents = (COSArray) page.getCOSObject().getItem(COSName.CONTENTS);
-                    contents.remove(0);
+                    super.writePage();
                 }
+            } finally {
+                textAngles.clear();
             }
-            page.setRotation(rotation);
         }
 
-        @Override
-        protected void processTextPosition(TextPosition text) {
-            Matrix m = text.getTextMatrix();
+        private static int getAngle(TextPosition text) {
+            Matrix m = text.getTextMatrix().clone();
             m.concatenate(text.getFont().getFontMatrix());
             int angle = (int) Math.round(Math.toDegrees(Math.atan2(m.getShearY(), m.getScaleY())));
-            if (angle == 0) {
-                super.processTextPosition(text);
+            return (angle + 360) % 360;
+        }
+
+        /**
+         * @return the character as it would have been extracted had the page
+         * been unrotated and its content drawn rotated by <code>-angle</code>
+         */
+        private TextPosition rotateUpright(TextPosition text, int angle) {
+            if (angle == 0 && text.getRotation() == 0) {
+                return text;
             }
+            //the text matrix and end position are relative to the crop box
+            PDRectangle cropBox = getCurrentPage().getCropBox();
+            Matrix m = Matrix.getTranslateInstance(cropBox.getLowerLeftX(), cropBox.getLowerLeftY());
+            m = m.multiply(Matrix.getRotateInstance(-Math.toRadians(angle), 0, 0));
+            m = m.multiply(Matrix.getTranslateInstance(-cropBox.getLowerLeftX(), -cropBox.getLowerLeftY()));
+
+            Matrix textMatrix = text.getTextMatrix().multiply(m);
+            Point2D.Float end = m.transformPoint(text.getEndX(), text.getEndY());
+            return new TextPosition(0, text.getPageWidth(), text.getPageHeight(), textMatrix,
+                    end.x, end.y, text.getHeight(), end.x - textMatrix.getTranslateX(),
+                    text.getWidthOfSpace(), text.getUnicode(), text.getCharacterCodes(),
+                    text.getFont(), text.getFontSize(), (int) text.getFontSizeInPt());
         }
     }
 }
@@ -47,6 +47,7 @@ import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.io.TemporaryResources;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.AccessPermissions;
 import org.apache.tika.metadata.Metadata;
@@ -132,6 +133,7 @@ public class PDFParser extends AbstractParser implements Initializable {
         }
 
         PDDocument pdfDocument = null;
+        TemporaryResources tmp = new TemporaryResources();
 
         String password = "";
         try {
@@ -141,6 +143,16 @@ public class PDFParser extends AbstractParser implements Initializable {
             if (localConfig.getMaxMainMemoryBytes() >= 0) {
                 memoryUsageSetting = MemoryUsageSetting.setupMixed(localConfig.getMaxMainMemoryBytes());
             }
+            ParallelPDF2XHTML.DocumentLoader documentLoader = null;
+            if (localConfig.getPageExtractionThreads() > 1) {
+                //each page worker loads its own copy of the document, so we need a file
+                if (tstream == null) {
+                    tstream = TikaInputStream.get(new CloseShieldInputStream(stream), tmp);
+                }
+                documentLoader = newDocumentLoader(tstream.getPath(), password, memoryUsageSetting,
+                        metadata, context);
+            }
+            long loadStart = System.nanoTime();
             if (tstream != null && tstream.hasFile()) {
                 // File based -- send file directly to PDFBox
                 pdfDocument = getPDDocument(tstream, password, memoryUsageSetting, metadata,
@@ -149,6 +161,11 @@ public class PDFParser extends AbstractParser implements Initializable {
                 pdfDocument = getPDDocument(new CloseShieldInputStream(stream), password,
                         memoryUsageSetting, metadata, context);
             }
+            long loadNanos = System.nanoTime() - loadStart;
+            PDFParserMetrics.getInstance().addDocument(loadNanos);
+            if (localConfig.getCollectStatistics()) {
+                metadata.set(PDF.LOAD_MILLIS, (int) ParseStatistics.toMillis(loadNanos));
+            }
             metadata.set(PDF.IS_ENCRYPTED, Boolean.toString(pdfDocument.isEncrypted()));
 
             metadata.set(Metadata.CONTENT_TYPE, MEDIA_TYPE.toString());
@@ -165,13 +182,15 @@ public class PDFParser extends AbstractParser implements Initializable {
                 } else if (localConfig.getOcrStrategy().equals(PDFParserConfig.OCR_STRATEGY.OCR_ONLY)) {
                     metadata.add("X-Parsed-By", TesseractOCRParser.class.toString());
                     OCR2XHTML.process(pdfDocument, handler, context, metadata, localConfig);
-                } else if (hasMarkedContent && localConfig.getExtractMarkedContent()) {
+                } else if (hasMarkedContent && localConfig.getExtractMarkedContent()
+                        && ! localConfig.hasPageRange()) {
+                    //the marked content tree spans pages, so it can only be extracted as a whole
                     PDFMarkedContent2XHTML.process(pdfDocument, handler, context, metadata, localConfig);
                 } else {
                     if (localConfig.getOcrStrategy().equals(PDFParserConfig.OCR_STRATEGY.OCR_AND_TEXT_EXTRACTION)) {
                         metadata.add("X-Parsed-By", TesseractOCRParser.class.toString());
                     }
-                    PDF2XHTML.process(pdfDocument, handler, context, metadata, localConfig);
+                    PDF2XHTML.process(pdfDocument, handler, context, metadata, localConfig, documentLoader);
                 }
             }
         } catch (InvalidPasswordException e) {
@@ -181,9 +200,22 @@ public class PDFParser extends AbstractParser implements Initializable {
             if (pdfDocument != null) {
                 pdfDocument.close();
             }
+            tmp.dispose();
         }
     }
 
+    private ParallelPDF2XHTML.DocumentLoader newDocumentLoader(final Path path, final String password,
+                                                               final MemoryUsageSetting memoryUsageSetting,
+                                                               final Metadata metadata,
+                                                               final ParseContext context) {
+        return new ParallelPDF2XHTML.DocumentLoader() {
+            @Override
+            public PDDocument load() throws IOException {
+                return getPDDocument(path, password, memoryUsageSetting, metadata, context);
+            }
+        };
+    }
+
     protected PDDocument getPDDocument(InputStream inputStream, String password,
                                      MemoryUsageSetting memoryUsageSetting,
                                        Metadata metadata, ParseContext parseContext) throws IOException {
@@ -579,6 +611,56 @@ public class PDFParser extends AbstractParser implements Initializable {
         defaultConfig.setDetectAngles(detectAngles);
     }
 
+    @Field
+    void setPageExtractionThreads(int pageExtractionThreads) {
+        defaultConfig.setPageExtractionThreads(pageExtractionThreads);
+    }
+
+    @Field
+    void setLineGeometryFormat(String lineGeometryFormat) {
+        defaultConfig.setLineGeometryFormat(lineGeometryFormat);
+    }
+
+    @Field
+    void setStartPage(int startPage) {
+        defaultConfig.setStartPage(startPage);
+    }
+
+    @Field
+    void setEndPage(int endPage) {
+        defaultConfig.setEndPage(endPage);
+    }
+
+    @Field
+    void setOcrThreads(int ocrThreads) {
+        defaultConfig.setOcrThreads(ocrThreads);
+    }
+
+    @Field
+    void setOcrBatchSize(int ocrBatchSize) {
+        defaultConfig.setOcrBatchSize(ocrBatchSize);
+    }
+
+    @Field
+    void setOcrAutoMinCharsPerPage(int ocrAutoMinCharsPerPage) {
+        defaultConfig.setOcrAutoMinCharsPerPage(ocrAutoMinCharsPerPage);
+    }
+
+    @Field
+    void setOcrAutoUnmappedRatio(float ocrAutoUnmappedRatio) {
+        defaultConfig.setOcrAutoUnmappedRatio(ocrAutoUnmappedRatio);
+    }
+
+    @Field
+    void setOcrAutoImageCoverage(float ocrAutoImageCoverage) {
+        defaultConfig.setOcrAutoImageCoverage(ocrAutoImageCoverage);
+    }
+
+    @Field
+    void setCollectStatistics(boolean collectStatistics) {
+        defaultConfig.setCollectStatistics(collectStatistics);
+    }
+
     @Field
     void setExtractMarkedContent(boolean extractMarkedContent) {
         defaultConfig.setExtractMarkedContent(extractMarkedContent);
@@ -79,6 +79,48 @@ public class PDFParserConfig implements Serializable {
         }
     }
 
+    /**
+     * How the geometry of each line of text (position, font and word
+     * boundaries) is written by the text extractor.
+     */
+    public enum LINE_GEOMETRY_FORMAT {
+        /**
+         * CSS-like <code>style</code> attribute on each <code>&lt;p&gt;</code>
+         */
+        STYLE,
+        /**
+         * compact JSON array in a <code>data-geometry</code> attribute
+         * on each <code>&lt;p&gt;</code>
+         */
+        JSON,
+        /**
+         * no geometry; each line is a bare <code>&lt;p&gt;</code>
+         */
+        NONE;
+
+        private static LINE_GEOMETRY_FORMAT parse(String s) {
+            if (s == null) {
+                return STYLE;
+            }
+            for (LINE_GEOMETRY_FORMAT format : LINE_GEOMETRY_FORMAT.values()) {
+                if (format.name().equalsIgnoreCase(s.trim())) {
+                    return format;
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("I regret that I don't recognize '").append(s);
+            sb.append("' as a LINE_GEOMETRY_FORMAT. I only recognize:");
+            int i = 0;
+            for (LINE_GEOMETRY_FORMAT format : LINE_GEOMETRY_FORMAT.values()) {
+                if (i++ > 0) {
+                    sb.append(", ");
+                }
+                sb.append(format.toString());
+            }
+            throw new IllegalArgumentException(sb.toString());
+        }
+    }
+
     private static final long serialVersionUID = 6492570218190936986L;
 
     // True if we let PDFBox "guess" where spaces should go:
@@ -158,6 +200,31 @@ public class PDFParserConfig implements Serializable {
 
     private boolean detectAngles = false;
 
+    //Number of threads used to extract the text of pages concurrently.
+    //1 (the default) processes the pages sequentially on the calling thread.
+    private int pageExtractionThreads = 1;
+
+    //How the geometry of each line of text is written by PDF2XHTML
+    private LINE_GEOMETRY_FORMAT lineGeometryFormat = LINE_GEOMETRY_FORMAT.STYLE;
+
+    //1-based, inclusive range of pages to extract; a negative endPage means the last page
+    private int startPage = 1;
+    private int endPage = -1;
+
+    //Number of pages that are OCR'd concurrently; 1 OCRs each page inline
+    private int ocrThreads = 1;
+
+    //Number of pages that are OCR'd by one Tesseract process; 1 starts one per page
+    private int ocrBatchSize = 1;
+
+    //Thresholds with which OCR_STRATEGY.AUTO decides whether a page is OCR'd
+    private int ocrAutoMinCharsPerPage = 10;
+    private float ocrAutoUnmappedRatio = 0.5f;
+    private float ocrAutoImageCoverage = 0.9f;
+
+    //Whether per page timings and counters are written to the metadata
+    private boolean collectStatistics = false;
+
     public PDFParserConfig() {
         init(this.getClass().getResourceAsStream("PDFParser.properties"));
     }
@@ -261,6 +328,21 @@ public class PDFParserConfig implements Serializable {
 
         maxMainMemoryBytes = getLongProp(props.getProperty("maxMainMemoryBytes"), -1);
         detectAngles = getBooleanProp(props.getProperty("detectAngles"), false);
+        setPageExtractionThreads(getIntProp(props.getProperty("pageExtractionThreads"),
+                getPageExtractionThreads()));
+        setLineGeometryFormat(LINE_GEOMETRY_FORMAT.parse(props.getProperty("lineGeometryFormat")));
+        setStartPage(getIntProp(props.getProperty("startPage"), getStartPage()));
+        setEndPage(getIntProp(props.getProperty("endPage"), getEndPage()));
+        setOcrThreads(getIntProp(props.getProperty("ocrThreads"), getOcrThreads()));
+        setOcrBatchSize(getIntProp(props.getProperty("ocrBatchSize"), getOcrBatchSize()));
+        setOcrAutoMinCharsPerPage(getIntProp(props.getProperty("ocrAutoMinCharsPerPage"),
+                getOcrAutoMinCharsPerPage()));
+        setOcrAutoUnmappedRatio(getFloatProp(props.getProperty("ocrAutoUnmappedRatio"),
+                getOcrAutoUnmappedRatio()));
+        setOcrAutoImageCoverage(getFloatProp(props.getProperty("ocrAutoImageCoverage"),
+                getOcrAutoImageCoverage()));
+        setCollectStatistics(getBooleanProp(props.getProperty("collectStatistics"),
+                getCollectStatistics()));
     }
 
     /**
@@ -825,6 +907,316 @@ public class PDFParserConfig implements Serializable {
         return detectAngles;
     }
 
+    /**
+     * Number of threads to use to extract the text of the pages of a single
+     * document concurrently.  Each thread works on its own copy of the document,
+     * so memory use grows with this value (see {@link #setMaxMainMemoryBytes(long)}).
+     * The output is identical to sequential extraction: the pages are written
+     * to the content handler in page order, and inline images, annotations,
+     * OCR and per page metadata are still handled on the calling thread.
+     * <p/>
+     * This is ignored if {@link #setDetectAngles(boolean)} is <code>true</code>.
+     * <p/>
+     * The default is <code>1</code>, which processes the pages sequentially.
+     *
+     * @param pageExtractionThreads number of page worker threads
+     * @since 1.24.1
+     */
+    public void setPageExtractionThreads(int pageExtractionThreads) {
+        if (pageExtractionThreads < 1) {
+            throw new IllegalArgumentException("pageExtractionThreads must be >= 1");
+        }
+        this.pageExtractionThreads = pageExtractionThreads;
+    }
+
+    /**
+     * @see #setPageExtractionThreads(int)
+     * @return number of threads used to extract pages
+     */
+    public int getPageExtractionThreads() {
+        return pageExtractionThreads;
+    }
+
+    /**
+     * How the geometry of each line of text (start position, font size,
+     * family, style and weight, and the start and end position of each word)
+     * is written.
+     * <p/>
+     * {@link LINE_GEOMETRY_FORMAT#STYLE} (the default) writes a CSS-like
+     * <code>style</code> attribute that has to be re-parsed by the client.
+     * {@link LINE_GEOMETRY_FORMAT#JSON} writes the same values as a typed,
+     * positional JSON array in a <code>data-geometry</code> attribute:
+     * <pre>
+     * [x, y, startFontSize, fontSize, fontFamily, italic, fontWeight,
+     *  [lastX, lastY], wordStarts, wordEnds]
+     * e.g. [72,95.2,9,9,"Times",false,700,[118.4,95.2],[[72,95.2,9,700],...],[...]]
+     * </pre>
+     * where <code>x</code>, <code>y</code> and <code>startFontSize</code> belong
+     * to the first character of the line and <code>fontSize</code> to the last,
+     * and <code>wordStarts</code> and <code>wordEnds</code> hold
+     * <code>[x, y, fontSize, fontWeight]</code> of the first and last character
+     * of each word. Font weights are numeric
+     * (400 for normal, 700 for bold). {@link LINE_GEOMETRY_FORMAT#NONE} writes no
+     * geometry at all.
+     *
+     * @param lineGeometryFormat format of the line geometry
+     * @since 1.24.1
+     */
+    public void setLineGeometryFormat(LINE_GEOMETRY_FORMAT lineGeometryFormat) {
+        this.lineGeometryFormat = lineGeometryFormat;
+    }
+
+    /**
+     * @see #setLineGeometryFormat(LINE_GEOMETRY_FORMAT)
+     * @param lineGeometryFormatString style, json or none
+     * @since 1.24.1
+     */
+    public void setLineGeometryFormat(String lineGeometryFormatString) {
+        this.lineGeometryFormat = LINE_GEOMETRY_FORMAT.parse(lineGeometryFormatString);
+    }
+
+    /**
+     * @see #setLineGeometryFormat(LINE_GEOMETRY_FORMAT)
+     * @return format of the line geometry
+     */
+    public LINE_GEOMETRY_FORMAT getLineGeometryFormat() {
+        return lineGeometryFormat;
+    }
+
+    /**
+     * First page (1-based) whose content is extracted.  Together with
+     * {@link #setEndPage(int)} this allows a very large document to be split
+     * into page ranges that are parsed independently, e.g. on several
+     * tika-server instances with the <code>X-Tika-PDFStartPage</code> and
+     * <code>X-Tika-PDFEndPage</code> headers.  Document level metadata,
+     * including the total page count in <code>xmpTPg:NPages</code>, is
+     * always extracted.
+     * <p/>
+     * If the range is restricted, marked content is not extracted; see
+     * {@link #setExtractMarkedContent(boolean)}.
+     * <p/>
+     * The default is <code>1</code>.
+     *
+     * @param startPage first page to extract
+     * @since 1.24.1
+     */
+    public void setStartPage(int startPage) {
+        if (startPage < 1) {
+            throw new IllegalArgumentException("startPage must be >= 1");
+        }
+        this.startPage = startPage;
+    }
+
+    /**
+     * @see #setStartPage(int)
+     * @return first page to extract
+     */
+    public int getStartPage() {
+        return startPage;
+    }
+
+    /**
+     * Last page (1-based, inclusive) whose content is extracted; a negative
+     * value means the last page of the document.  If this is less than
+     * {@link #getStartPage()}, no pages are extracted, which is the cheapest
+     * way to read only the document metadata and page count.
+     * <p/>
+     * The default is <code>-1</code>.
+     *
+     * @param endPage last page to extract
+     * @since 1.24.1
+     */
+    public void setEndPage(int endPage) {
+        this.endPage = endPage;
+    }
+
+    /**
+     * @see #setEndPage(int)
+     * @return last page to extract, or a negative value for the last page
+     */
+    public int getEndPage() {
+        return endPage;
+    }
+
+    /**
+     * @return whether {@link #setStartPage(int)} or {@link #setEndPage(int)}
+     * restrict extraction to a subset of the pages
+     */
+    boolean hasPageRange() {
+        return startPage > 1 || endPage > -1;
+    }
+
+    /**
+     * Number of pages that are OCR'd concurrently.  Pages are still rendered
+     * one after the other on the parsing thread, but encoding the rendered
+     * image and running Tesseract on it are handed to a pool of this size,
+     * so that rendering runs ahead of OCR.  The output is identical to
+     * inline OCR: the OCR text is written in page order.  At most twice
+     * this number of rendered pages are held in memory.
+     * <p/>
+     * A value close to the number of available cores keeps the cores busy
+     * on scanned documents.  This is ignored if the OCR strategy is
+     * {@link OCR_STRATEGY#NO_OCR}.
+     * <p/>
+     * The default is <code>1</code>, which OCRs each page inline.
+     *
+     * @param ocrThreads number of concurrent Tesseract processes
+     * @since 1.24.1
+     */
+    public void setOcrThreads(int ocrThreads) {
+        if (ocrThreads < 1) {
+            throw new IllegalArgumentException("ocrThreads must be >= 1");
+        }
+        this.ocrThreads = ocrThreads;
+    }
+
+    /**
+     * @see #setOcrThreads(int)
+     * @return number of concurrent Tesseract processes
+     */
+    public int getOcrThreads() {
+        return ocrThreads;
+    }
+
+    /**
+     * Number of pages that are OCR'd by a single Tesseract process.
+     * Starting Tesseract and loading its language models often takes
+     * longer than the OCR of a small page, so with a batch size greater
+     * than <code>1</code>, rendered pages are collected and handed to
+     * Tesseract as a list, and its output is split back into pages.  As
+     * with {@link #setOcrThreads(int)}, the OCR runs in the background
+     * and the OCR text is written in page order; up to
+     * {@link #getOcrThreads()} batches run concurrently.  A batch is held
+     * as encoded images in temporary files.
+     * <p/>
+     * A batch is limited by {@link org.apache.tika.parser.ocr.TesseractOCRConfig#setBatchTimeout(int)}
+     * instead of the timeout per image.  If a batch fails, the error is
+     * reported for each of its pages.  This is ignored if the OCR strategy
+     * is {@link OCR_STRATEGY#NO_OCR}.
+     * <p/>
+     * The default is <code>1</code>, which starts Tesseract for each page.
+     *
+     * @param ocrBatchSize number of pages per Tesseract process
+     * @since 1.24.1
+     */
+    public void setOcrBatchSize(int ocrBatchSize) {
+        if (ocrBatchSize < 1) {
+            throw new IllegalArgumentException("ocrBatchSize must be >= 1");
+        }
+        this.ocrBatchSize = ocrBatchSize;
+    }
+
+    /**
+     * @see #setOcrBatchSize(int)
+     * @return number of pages per Tesseract process
+     */
+    public int getOcrBatchSize() {
+        return ocrBatchSize;
+    }
+
+    /**
+     * With {@link OCR_STRATEGY#AUTO}, a page is OCR'd if fewer than this
+     * number of characters were extracted from its text layer.
+     * <code>0</code> disables this check.
+     * <p/>
+     * The default is <code>10</code>.
+     *
+     * @param ocrAutoMinCharsPerPage minimum number of characters of a page
+     *                               that is not OCR'd
+     * @since 1.24.1
+     */
+    public void setOcrAutoMinCharsPerPage(int ocrAutoMinCharsPerPage) {
+        if (ocrAutoMinCharsPerPage < 0) {
+            throw new IllegalArgumentException("ocrAutoMinCharsPerPage must be >= 0");
+        }
+        this.ocrAutoMinCharsPerPage = ocrAutoMinCharsPerPage;
+    }
+
+    /**
+     * @see #setOcrAutoMinCharsPerPage(int)
+     * @return minimum number of characters of a page that is not OCR'd
+     */
+    public int getOcrAutoMinCharsPerPage() {
+        return ocrAutoMinCharsPerPage;
+    }
+
+    /**
+     * With {@link OCR_STRATEGY#AUTO}, a page is OCR'd if more than this
+     * fraction of its characters have no unicode mapping, which is
+     * typical of fonts with broken or missing ToUnicode tables.
+     * <code>1</code> disables this check.
+     * <p/>
+     * The default is <code>0.5</code>.
+     *
+     * @param ocrAutoUnmappedRatio fraction, between 0 and 1, of unmapped characters
+     * @since 1.24.1
+     */
+    public void setOcrAutoUnmappedRatio(float ocrAutoUnmappedRatio) {
+        if (ocrAutoUnmappedRatio < 0 || ocrAutoUnmappedRatio > 1) {
+            throw new IllegalArgumentException("ocrAutoUnmappedRatio must be between 0 and 1");
+        }
+        this.ocrAutoUnmappedRatio = ocrAutoUnmappedRatio;
+    }
+
+    /**
+     * @see #setOcrAutoUnmappedRatio(float)
+     * @return fraction of unmapped characters above which a page is OCR'd
+     */
+    public float getOcrAutoUnmappedRatio() {
+        return ocrAutoUnmappedRatio;
+    }
+
+    /**
+     * With {@link OCR_STRATEGY#AUTO}, a page is OCR'd if a single image
+     * covers more than this fraction of the page's crop box, as is the case
+     * on scanned pages.  <code>1</code> disables this check.
+     * <p/>
+     * The default is <code>0.9</code>.
+     *
+     * @param ocrAutoImageCoverage fraction, between 0 and 1, of the page
+     * @since 1.24.1
+     */
+    public void setOcrAutoImageCoverage(float ocrAutoImageCoverage) {
+        if (ocrAutoImageCoverage < 0 || ocrAutoImageCoverage > 1) {
+            throw new IllegalArgumentException("ocrAutoImageCoverage must be between 0 and 1");
+        }
+        this.ocrAutoImageCoverage = ocrAutoImageCoverage;
+    }
+
+    /**
+     * @see #setOcrAutoImageCoverage(float)
+     * @return fraction of the page above which an image causes the page to be OCR'd
+     */
+    public float getOcrAutoImageCoverage() {
+        return ocrAutoImageCoverage;
+    }
+
+    /**
+     * If true, the time spent loading the document and, per page, stripping
+     * text, extracting images, handling annotations and OCR'ing, as well as
+     * the number of lines and paragraphs per page, are written to the
+     * metadata (e.g. {@link org.apache.tika.metadata.PDF#TEXT_MILLIS_PER_PAGE}).
+     * <p/>
+     * The same numbers are always added to the JVM wide
+     * {@link PDFParserMetricsMXBean}, whatever this setting.
+     * <p/>
+     * The default is <code>false</code>.
+     *
+     * @param collectStatistics whether to write timings and counters to the metadata
+     * @since 1.24.1
+     */
+    public void setCollectStatistics(boolean collectStatistics) {
+        this.collectStatistics = collectStatistics;
+    }
+
+    /**
+     * @see #setCollectStatistics(boolean)
+     * @return whether timings and counters are written to the metadata
+     */
+    public boolean getCollectStatistics() {
+        return collectStatistics;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -851,6 +1243,16 @@ public class PDFParserConfig implements Serializable {
         if (!getOcrImageFormatName().equals(config.getOcrImageFormatName())) return false;
         if (getExtractActions() != config.getExtractActions()) return false;
         if (!getAccessChecker().equals(config.getAccessChecker())) return false;
+        if (getPageExtractionThreads() != config.getPageExtractionThreads()) return false;
+        if (getLineGeometryFormat() != config.getLineGeometryFormat()) return false;
+        if (getStartPage() != config.getStartPage()) return false;
+        if (getEndPage() != config.getEndPage()) return false;
+        if (getOcrThreads() != config.getOcrThreads()) return false;
+        if (getOcrBatchSize() != config.getOcrBatchSize()) return false;
+        if (getOcrAutoMinCharsPerPage() != config.getOcrAutoMinCharsPerPage()) return false;
+        if (Float.compare(getOcrAutoUnmappedRatio(), config.getOcrAutoUnmappedRatio()) != 0) return false;
+        if (Float.compare(getOcrAutoImageCoverage(), config.getOcrAutoImageCoverage()) != 0) return false;
+        if (getCollectStatistics() != config.getCollectStatistics()) return false;
         return getMaxMainMemoryBytes() == config.getMaxMainMemoryBytes();
     }
 
@@ -876,6 +1278,16 @@ public class PDFParserConfig implements Serializable {
         result = 31 * result + (getCatchIntermediateIOExceptions() ? 1 : 0);
         result = 31 * result + (getExtractActions() ? 1 : 0);
         result = 31 * result + Long.valueOf(getMaxMainMemoryBytes()).hashCode();
+        result = 31 * result + getPageExtractionThreads();
+        result = 31 * result + getLineGeometryFormat().hashCode();
+        result = 31 * result + getStartPage();
+        result = 31 * result + getEndPage();
+        result = 31 * result + getOcrThreads();
+        result = 31 * result + getOcrBatchSize();
+        result = 31 * result + getOcrAutoMinCharsPerPage();
+        result = 31 * result + Float.floatToIntBits(getOcrAutoUnmappedRatio());
+        result = 31 * result + Float.floatToIntBits(getOcrAutoImageCoverage());
+        result = 31 * result + (getCollectStatistics() ? 1 : 0);
         return result;
     }
 
@@ -902,6 +1314,16 @@ public class PDFParserConfig implements Serializable {
                 ", extractActions=" + extractActions +
                 ", catchIntermediateIOExceptions=" + catchIntermediateIOExceptions +
                 ", maxMainMemoryBytes=" + maxMainMemoryBytes +
+                ", pageExtractionThreads=" + pageExtractionThreads +
+                ", lineGeometryFormat=" + lineGeometryFormat +
+                ", startPage=" + startPage +
+                ", endPage=" + endPage +
+                ", ocrThreads=" + ocrThreads +
+                ", ocrBatchSize=" + ocrBatchSize +
+                ", ocrAutoMinCharsPerPage=" + ocrAutoMinCharsPerPage +
+                ", ocrAutoUnmappedRatio=" + ocrAutoUnmappedRatio +
+                ", ocrAutoImageCoverage=" + ocrAutoImageCoverage +
+                ", collectStatistics=" + collectStatistics +
                 '}';
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The JVM wide {@link PDFParserMetricsMXBean}.  Everything is kept in
+ * nanoseconds and {@link LongAdder}s, so that concurrent parses do not
+ * contend on a single counter.
+ */
+final class PDFParserMetrics implements PDFParserMetricsMXBean {
+
+    static final String OBJECT_NAME = "org.apache.tika.parser.pdf:type=PDFParserMetrics";
+
+    private static final PDFParserMetrics INSTANCE = register(new PDFParserMetrics());
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder glyphs = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder paragraphs = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[ParseStatistics.Phase.values().length];
+
+    private PDFParserMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    static PDFParserMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static PDFParserMetrics register(PDFParserMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            //e.g. Tika was loaded by more than one class loader
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException|SecurityException e) {
+            //swallow -- the counters still work, they are just not published
+        }
+        return metrics;
+    }
+
+    void addDocument(long nanos) {
+        documents.increment();
+        loadNanos.add(nanos);
+    }
+
+    void addPage(int glyphs, int lines, int paragraphs) {
+        this.pages.increment();
+        this.glyphs.add(glyphs);
+        this.lines.add(lines);
+        this.paragraphs.add(paragraphs);
+    }
+
+    void addTime(ParseStatistics.Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getGlyphs() {
+        return glyphs.sum();
+    }
+
+    @Override
+    public long getLines() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getParagraphs() {
+        return paragraphs.sum();
+    }
+
+    @Override
+    public long getLoadMillis() {
+        return ParseStatistics.toMillis(loadNanos.sum());
+    }
+
+    @Override
+    public long getTextMillis() {
+        return getMillis(ParseStatistics.Phase.TEXT);
+    }
+
+    @Override
+    public long getImageMillis() {
+        return getMillis(ParseStatistics.Phase.IMAGES);
+    }
+
+    @Override
+    public long getAnnotationMillis() {
+        return getMillis(ParseStatistics.Phase.ANNOTATIONS);
+    }
+
+    @Override
+    public long getOcrMillis() {
+        return getMillis(ParseStatistics.Phase.OCR);
+    }
+
+    private long getMillis(ParseStatistics.Phase phase) {
+        return ParseStatistics.toMillis(phaseNanos[phase.ordinal()].sum());
+    }
+}
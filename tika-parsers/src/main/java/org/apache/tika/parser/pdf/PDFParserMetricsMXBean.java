@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+/**
+ * Cumulative counters and timers of all documents parsed by the
+ * {@link PDFParser} in this JVM, registered with the platform MBean server
+ * as <code>org.apache.tika.parser.pdf:type=PDFParserMetrics</code>.
+ * <p/>
+ * Sampling these and taking the differences gives rates and the share of
+ * time spent in each phase, without attaching a profiler.  The same numbers
+ * for a single document are written to its metadata if
+ * {@link PDFParserConfig#setCollectStatistics(boolean)} is set.
+ *
+ * @since 1.24.1
+ */
+public interface PDFParserMetricsMXBean {
+
+    /**
+     * @return number of documents that were loaded
+     */
+    long getDocuments();
+
+    /**
+     * @return number of pages that were extracted
+     */
+    long getPages();
+
+    long getGlyphs();
+
+    long getLines();
+
+    long getParagraphs();
+
+    /**
+     * @return milliseconds spent loading documents' structure
+     */
+    long getLoadMillis();
+
+    /**
+     * @return milliseconds spent stripping text from pages' content streams
+     */
+    long getTextMillis();
+
+    /**
+     * @return milliseconds spent extracting inline images
+     */
+    long getImageMillis();
+
+    /**
+     * @return milliseconds spent handling annotations
+     */
+    long getAnnotationMillis();
+
+    /**
+     * @return milliseconds spent rendering and OCR'ing pages, summed over all threads
+     */
+    long getOcrMillis();
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Records the events sent to an {@link XHTMLContentHandler} so that they
+ * can be replayed later into another one.  Because the events are
+ * captured before they reach the underlying handler, the replayed
+ * stream goes through the target's own XHTML formatting and filtering.
+ */
+class PageEventBuffer extends XHTMLContentHandler {
+
+    private static final int START_ELEMENT = 0;
+    private static final int END_ELEMENT = 1;
+    private static final int CHARACTERS = 2;
+    private static final int IGNORABLE_WHITESPACE = 3;
+    private static final int EXCEPTION = 4;
+
+    //the type of each event, and the events' arguments in a flat list
+    private List<Object> events = new ArrayList<>();
+    private int[] types = new int[64];
+    private int size = 0;
+
+    int totalChars = 0;
+    int unmappedUnicodeChars = 0;
+    float imageCoverage = 0;
+    ParseStatistics.Page statistics = null;
+    boolean pageEnded = false;
+    //an IOException or RuntimeException that aborted the page
+    Exception fatal = null;
+
+    PageEventBuffer() {
+        super(new DefaultHandler(), new Metadata());
+    }
+
+    void reset() {
+        events = new ArrayList<>();
+        types = new int[64];
+        size = 0;
+        totalChars = 0;
+        unmappedUnicodeChars = 0;
+        imageCoverage = 0;
+        statistics = null;
+        pageEnded = false;
+        fatal = null;
+    }
+
+    /**
+     * @return a copy of this buffer's content; this buffer is reset
+     */
+    PageEventBuffer detach() {
+        PageEventBuffer detached = new PageEventBuffer();
+        detached.events = events;
+        detached.types = types;
+        detached.size = size;
+        detached.totalChars = totalChars;
+        detached.unmappedUnicodeChars = unmappedUnicodeChars;
+        detached.imageCoverage = imageCoverage;
+        detached.statistics = statistics;
+        detached.pageEnded = pageEnded;
+        detached.fatal = fatal;
+        reset();
+        return detached;
+    }
+
+    private void add(int type) {
+        if (size == types.length) {
+            int[] tmp = new int[types.length * 2];
+            System.arraycopy(types, 0, tmp, 0, size);
+            types = tmp;
+        }
+        types[size++] = type;
+    }
+
+    @Override
+    public void startElement(String uri, String local, String name, Attributes attributes) {
+        add(START_ELEMENT);
+        events.add(uri);
+        events.add(local);
+        events.add(name);
+        events.add(new AttributesImpl(attributes));
+    }
+
+    @Override
+    public void endElement(String uri, String local, String name) {
+        add(END_ELEMENT);
+        events.add(uri);
+        events.add(local);
+        events.add(name);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        add(CHARACTERS);
+        char[] copy = new char[length];
+        System.arraycopy(ch, start, copy, 0, length);
+        events.add(copy);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        add(IGNORABLE_WHITESPACE);
+        char[] copy = new char[length];
+        System.arraycopy(ch, start, copy, 0, length);
+        events.add(copy);
+    }
+
+    void exception(IOException e) {
+        add(EXCEPTION);
+        events.add(e);
+    }
+
+    void replay(AbstractPDF2XHTML target) throws SAXException, IOException {
+        XHTMLContentHandler xhtml = target.xhtml;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case START_ELEMENT:
+                    xhtml.startElement((String) events.get(j), (String) events.get(j + 1),
+                            (String) events.get(j + 2), (Attributes) events.get(j + 3));
+                    j += 4;
+                    break;
+                case END_ELEMENT:
+                    xhtml.endElement((String) events.get(j), (String) events.get(j + 1),
+                            (String) events.get(j + 2));
+                    j += 3;
+                    break;
+                case CHARACTERS: {
+                    char[] ch = (char[]) events.get(j++);
+                    xhtml.characters(ch, 0, ch.length);
+                    break;
+                }
+                case IGNORABLE_WHITESPACE: {
+                    char[] ch = (char[]) events.get(j++);
+                    xhtml.ignorableWhitespace(ch, 0, ch.length);
+                    break;
+                }
+                case EXCEPTION:
+                    target.handleCatchableIOE((IOException) events.get(j++));
+                    break;
+                default:
+                    throw new IllegalStateException("unknown event type: " + types[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOExceptionWithCause;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageTree;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * {@link PDF2XHTML} that strips the text of the pages concurrently.
+ * <p>
+ * PDFBox's object model is not thread safe, so each page worker loads its
+ * own copy of the document through a {@link DocumentLoader}.  A worker
+ * records the SAX events of a page into a {@link PageEventBuffer}; the
+ * calling thread replays the buffers in page order into the real
+ * {@link XHTMLContentHandler} and then finishes each page itself
+ * (inline images, annotations, OCR and per page metadata), so the output
+ * and the order of the per page metadata are the same as with
+ * sequential extraction.
+ * <p>
+ * PDFBox doesn't respond to interrupts, so a page that a worker is still
+ * extracting when the parse ends can't be stopped.  Such a worker closes
+ * its copy of the document itself once it is done with the page.
+ */
+class ParallelPDF2XHTML extends PDF2XHTML {
+
+    /**
+     * Loads an independent copy of the document that is being parsed.
+     */
+    interface DocumentLoader {
+        PDDocument load() throws IOException;
+    }
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+    private final DocumentLoader documentLoader;
+    private final int numThreads;
+
+    //workers that are not currently processing a page, and all workers (for closing)
+    private final Queue<PageWorker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final List<PageWorker> allWorkers = Collections.synchronizedList(new ArrayList<PageWorker>());
+    //guarded by allWorkers
+    private boolean workersClosed = false;
+
+    ParallelPDF2XHTML(PDDocument document, ContentHandler handler, ParseContext context, Metadata metadata,
+                      PDFParserConfig config, DocumentLoader documentLoader) throws IOException {
+        super(document, handler, context, metadata, config);
+        this.documentLoader = documentLoader;
+        this.numThreads = config.getPageExtractionThreads();
+    }
+
+    @Override
+    protected void processPages(PDPageTree pages) throws IOException {
+        int numPages = pages.getCount();
+        int first = Math.max(getStartPage(), 1) - 1;
+        int last = Math.min(getEndPage(), numPages) - 1;
+        //keep the number of buffered pages bounded
+        int maxInFlight = numThreads * 2;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads, newThreadFactory());
+        Deque<Future<PageEventBuffer>> inFlight = new ArrayDeque<>();
+        try {
+            int nextToSubmit = first;
+            for (pageIndex = first; pageIndex <= last; pageIndex++) {
+                while (nextToSubmit <= last && nextToSubmit - pageIndex < maxInFlight) {
+                    inFlight.add(executorService.submit(new PageTask(nextToSubmit++)));
+                }
+                PageEventBuffer pageEvents = await(inFlight.removeFirst());
+                replayPage(pages.get(pageIndex), pageEvents);
+            }
+            pageIndex = numPages;
+        } finally {
+            executorService.shutdownNow();
+            boolean terminated = false;
+            try {
+                terminated = executorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            //if not, the workers that are still busy close their own documents
+            closeWorkers(terminated);
+        }
+    }
+
+    private PageEventBuffer await(Future<PageEventBuffer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOExceptionWithCause("interrupted while waiting for page " + getCurrentPageNo(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOExceptionWithCause("Unable to extract page " + getCurrentPageNo(), cause);
+        }
+    }
+
+    /**
+     * Replays a page's recorded events in the same order that
+     * {@link PDF2XHTML#processPage(PDPage)} would have produced them.
+     */
+    private void replayPage(PDPage page, PageEventBuffer pageEvents) throws IOException {
+        if (pageEvents.statistics != null) {
+            statistics.addPage(pageEvents.statistics);
+        }
+        totalCharsPerPage = pageEvents.totalChars;
+        unmappedUnicodeCharsPerPage = pageEvents.unmappedUnicodeChars;
+        imageCoveragePerPage = pageEvents.imageCoverage;
+        try {
+            pageEvents.replay(this);
+        } catch (SAXException e) {
+            throw new IOException("Unable to write page " + getCurrentPageNo(), e);
+        }
+        if (pageEvents.fatal instanceof IOException) {
+            throw (IOException) pageEvents.fatal;
+        } else if (pageEvents.fatal != null) {
+            throw (RuntimeException) pageEvents.fatal;
+        }
+        if (!pageEvents.pageEnded) {
+            return;
+        }
+        try {
+            endPageContent(page);
+        } catch (SAXException e) {
+            throw new IOException("Unable to end a page", e);
+        } catch (IOException e) {
+            handleCatchableIOE(e);
+        }
+    }
+
+    /**
+     * @param terminated whether or not all page tasks have finished
+     */
+    private void closeWorkers(boolean terminated) {
+        synchronized (allWorkers) {
+            workersClosed = true;
+            for (PageWorker worker : allWorkers) {
+                if (terminated || !worker.busy) {
+                    worker.close();
+                }
+            }
+            allWorkers.clear();
+            idleWorkers.clear();
+        }
+    }
+
+    private ThreadFactory newThreadFactory() {
+        final int poolNumber = POOL_COUNTER.incrementAndGet();
+        return new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "pdf-page-extractor-" + poolNumber + "-" +
+                        threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    private class PageTask implements Callable<PageEventBuffer> {
+        private final int workerPageIndex;
+
+        PageTask(int workerPageIndex) {
+            this.workerPageIndex = workerPageIndex;
+        }
+
+        @Override
+        public PageEventBuffer call() throws Exception {
+            PageWorker worker = idleWorkers.poll();
+            boolean isNew = worker == null;
+            if (isNew) {
+                worker = new PageWorker(documentLoader.load(), context, config);
+            }
+            synchronized (allWorkers) {
+                if (workersClosed) {
+                    //the parse has ended while this task was starting
+                    if (isNew) {
+                        worker.close();
+                    }
+                    throw new CancellationException();
+                }
+                if (isNew) {
+                    allWorkers.add(worker);
+                }
+                worker.busy = true;
+            }
+            try {
+                return worker.extract(workerPageIndex);
+            } finally {
+                synchronized (allWorkers) {
+                    worker.busy = false;
+                    if (workersClosed) {
+                        worker.close();
+                    } else {
+                        idleWorkers.offer(worker);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Strips the text of a single page of its own copy of the document into a
+     * {@link PageEventBuffer}.  Everything that is document level or that
+     * could have side effects beyond the page's SAX events is left to the
+     * calling thread.
+     */
+    private static class PageWorker extends PDF2XHTML {
+
+        private final PageEventBuffer buffer;
+        //guarded by the parser's allWorkers
+        private boolean busy = false;
+
+        private PageWorker(PDDocument document, ParseContext context, PDFParserConfig config)
+                throws IOException {
+            this(document, new PageEventBuffer(), context, config);
+        }
+
+        private PageWorker(PDDocument document, PageEventBuffer buffer, ParseContext context,
+                           PDFParserConfig config) throws IOException {
+            super(document, buffer, context, new Metadata(), config);
+            this.buffer = buffer;
+            config.configure(this);
+        }
+
+        void close() {
+            try {
+                pdDocument.close();
+            } catch (IOException e) {
+                //swallow
+            }
+        }
+
+        PageEventBuffer extract(int index) {
+            buffer.reset();
+            pageIndex = index;
+            try {
+                writeText(pdDocument, NULL_WRITER);
+            } catch (IOException|RuntimeException e) {
+                //rethrown by the calling thread after the events that preceded it
+                buffer.fatal = e;
+            }
+            buffer.totalChars = totalCharsPerPage;
+            buffer.unmappedUnicodeChars = unmappedUnicodeCharsPerPage;
+            buffer.imageCoverage = imageCoveragePerPage;
+            buffer.statistics = statistics.detachCurrentPage();
+            totalCharsPerPage = 0;
+            unmappedUnicodeCharsPerPage = 0;
+            imageCoveragePerPage = 0;
+            return buffer.detach();
+        }
+
+        @Override
+        protected void startDocument(PDDocument pdf) {
+            //no-op -- the calling thread writes the document start
+        }
+
+        @Override
+        protected void endDocument(PDDocument pdf) {
+            //no-op -- the calling thread writes the document end
+        }
+
+        @Override
+        protected void processPages(PDPageTree pages) throws IOException {
+            processPageAt(pages, pageIndex);
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            statistics.endText();
+            writeParagraphEnd();
+            buffer.pageEnded = true;
+        }
+
+        @Override
+        void finishStatistics() {
+            //no-op -- the page's statistics are handed to the calling thread
+        }
+
+        @Override
+        void handleCatchableIOE(IOException e) {
+            //the calling thread applies the real policy when it replays the page
+            buffer.exception(e);
+        }
+    }
+}
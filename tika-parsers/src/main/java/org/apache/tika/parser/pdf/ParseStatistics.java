@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.pdf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.PDF;
+import org.apache.tika.metadata.Property;
+
+/**
+ * Per page timings and counters of the extraction of a document.  They are
+ * added to the JVM wide {@link PDFParserMetrics} once the document is done,
+ * and written to its metadata if {@link PDFParserConfig#getCollectStatistics()}
+ * is set.
+ */
+class ParseStatistics {
+
+    /**
+     * The phases of the extraction of a page that are timed separately
+     */
+    enum Phase {
+        TEXT(PDF.TEXT_MILLIS, PDF.TEXT_MILLIS_PER_PAGE),
+        IMAGES(PDF.IMAGE_MILLIS, PDF.IMAGE_MILLIS_PER_PAGE),
+        ANNOTATIONS(PDF.ANNOTATION_MILLIS, PDF.ANNOTATION_MILLIS_PER_PAGE),
+        OCR(PDF.OCR_MILLIS, PDF.OCR_MILLIS_PER_PAGE);
+
+        private final Property total;
+        private final Property perPage;
+
+        Phase(Property total, Property perPage) {
+            this.total = total;
+            this.perPage = perPage;
+        }
+    }
+
+    /**
+     * The statistics of a single page.  The timings may be added to
+     * from other threads, e.g. by concurrent OCR.
+     */
+    static class Page {
+        private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+        private int glyphs = 0;
+        private int lines = 0;
+        private int paragraphs = 0;
+
+        void add(Phase phase, long phaseNanos) {
+            nanos.addAndGet(phase.ordinal(), phaseNanos);
+        }
+    }
+
+    private final List<Page> pages = new ArrayList<>();
+    private Page currentPage = null;
+    private long textStart = -1;
+
+    /**
+     * Starts a page, and its {@link Phase#TEXT} timer.
+     */
+    void startPage() {
+        addPage(new Page());
+        textStart = System.nanoTime();
+    }
+
+    /**
+     * Adds a page that was started elsewhere, e.g. by a page worker
+     * of {@link ParallelPDF2XHTML}.
+     */
+    void addPage(Page page) {
+        pages.add(page);
+        currentPage = page;
+        textStart = -1;
+    }
+
+    /**
+     * Stops the {@link Phase#TEXT} timer of the current page, if it is running.
+     */
+    void endText() {
+        if (textStart > -1 && currentPage != null) {
+            currentPage.add(Phase.TEXT, System.nanoTime() - textStart);
+        }
+        textStart = -1;
+    }
+
+    /**
+     * @param start value of {@link System#nanoTime()} when the phase started
+     */
+    void end(Phase phase, long start) {
+        if (currentPage != null) {
+            currentPage.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the current page, or <code>null</code> if no page was started
+     */
+    Page getCurrentPage() {
+        return currentPage;
+    }
+
+    /**
+     * @return the current page; the pages are forgotten
+     */
+    Page detachCurrentPage() {
+        Page page = currentPage;
+        pages.clear();
+        currentPage = null;
+        textStart = -1;
+        return page;
+    }
+
+    void setGlyphs(int glyphs) {
+        if (currentPage != null) {
+            currentPage.glyphs = glyphs;
+        }
+    }
+
+    void addLine() {
+        if (currentPage != null) {
+            currentPage.lines++;
+        }
+    }
+
+    void addParagraph() {
+        if (currentPage != null) {
+            currentPage.paragraphs++;
+        }
+    }
+
+    /**
+     * Adds the statistics of all pages to the {@link PDFParserMetrics} and,
+     * if requested, writes them to the metadata.
+     */
+    void finish(Metadata metadata, boolean writeMetadata) {
+        PDFParserMetrics metrics = PDFParserMetrics.getInstance();
+        long[] totals = new long[Phase.values().length];
+        for (Page page : pages) {
+            metrics.addPage(page.glyphs, page.lines, page.paragraphs);
+            for (Phase phase : Phase.values()) {
+                long phaseNanos = page.nanos.get(phase.ordinal());
+                totals[phase.ordinal()] += phaseNanos;
+                if (writeMetadata) {
+                    metadata.add(phase.perPage, (int) toMillis(phaseNanos));
+                }
+            }
+            if (writeMetadata) {
+                metadata.add(PDF.LINES_PER_PAGE, page.lines);
+                metadata.add(PDF.PARAGRAPHS_PER_PAGE, page.paragraphs);
+            }
+        }
+        for (Phase phase : Phase.values()) {
+            metrics.addTime(phase, totals[phase.ordinal()]);
+            if (writeMetadata) {
+                metadata.set(phase.total, (int) toMillis(totals[phase.ordinal()]));
+            }
+        }
+        pages.clear();
+        currentPage = null;
+    }
+
+    static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.parser.ocr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class ImagePreprocessorTest {
+
+    @Test
+    public void testSkewAngle() {
+        for (double skew : new double[]{-12, -4.5, -1, 0, 0.7, 3, 8}) {
+            BufferedImage page = ImagePreprocessor.toGray(newPage(skew));
+            assertEquals("skew " + skew, skew, ImagePreprocessor.getSkewAngle(page), 0.2);
+        }
+    }
+
+    @Test
+    public void testDeskew() {
+        TesseractOCRConfig config = new TesseractOCRConfig();
+        config.setResize(100);
+        config.setDepth(8);
+        config.setApplyRotation(true);
+        BufferedImage processed = ImagePreprocessor.process(newPage(5), config);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, processed.getType());
+        //the canvas grows to hold the rotated page
+        assertTrue(processed.getWidth() > 800);
+        assertEquals(0, ImagePreprocessor.getSkewAngle(processed), 0.2);
+    }
+
+    @Test
+    public void testBlankPage() {
+        BufferedImage blank = new BufferedImage(200, 300, BufferedImage.TYPE_BYTE_GRAY);
+        assertEquals(0, ImagePreprocessor.getSkewAngle(blank), 0);
+    }
+
+    @Test
+    public void testResize() {
+        TesseractOCRConfig config = new TesseractOCRConfig();
+        config.setResize(200);
+        config.setDepth(8);
+        BufferedImage processed = ImagePreprocessor.process(newPage(0), config);
+        assertEquals(1600, processed.getWidth());
+        assertEquals(2000, processed.getHeight());
+
+        config.setColorspace("sRGB");
+        config.setFilter("point");
+        processed = ImagePreprocessor.process(newPage(0), config);
+        assertEquals(BufferedImage.TYPE_INT_RGB, processed.getType());
+        assertEquals(1600, processed.getWidth());
+    }
+
+    @Test
+    public void testResizeBudget() {
+        //a letter page rendered at 300 dpi
+        BufferedImage page = new BufferedImage(2550, 3300, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage resized = ImagePreprocessor.resize(page, 9, "triangle");
+        //scaled to the budget instead of to 22950x29700, with the same aspect ratio
+        assertEquals(5092, resized.getWidth(), 1);
+        assertEquals(6590, resized.getHeight(), 1);
+        assertEquals(ImagePreprocessor.MAX_PIXELS, (double) resized.getWidth() * resized.getHeight(),
+                ImagePreprocessor.MAX_PIXELS / 1000.0);
+    }
+
+    @Test
+    public void testDepth() {
+        BufferedImage gray = ImagePreprocessor.toGray(newGradient());
+        assertEquals(256, getLevels(gray).size());
+        assertEquals(4, getLevels(ImagePreprocessor.reduceDepth(gray, 2)).size());
+        assertEquals(16, getLevels(ImagePreprocessor.reduceDepth(gray, 4)).size());
+        assertEquals(256, getLevels(ImagePreprocessor.reduceDepth(gray, 8)).size());
+
+        Set<Integer> binary = getLevels(ImagePreprocessor.reduceDepth(gray, 1));
+        assertEquals(2, binary.size());
+        assertTrue(binary.contains(0));
+        assertTrue(binary.contains(255));
+        //the input is not modified
+        assertEquals(256, getLevels(gray).size());
+    }
+
+    @Test
+    public void testOtsuThreshold() {
+        //dark text around 40 and paper around 220, with noise
+        Random random = new Random(42);
+        byte[] pixels = new byte[10000];
+        for (int i = 0; i < pixels.length; i++) {
+            int mean = i % 10 == 0 ? 40 : 220;
+            pixels[i] = (byte) Math.max(0, Math.min(255, mean + (int) (random.nextGaussian() * 15)));
+        }
+        int threshold = ImagePreprocessor.getOtsuThreshold(pixels);
+        assertTrue("threshold " + threshold, threshold > 80 && threshold < 180);
+    }
+
+    @Test
+    public void testTransparency() {
+        BufferedImage transparent = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage gray = ImagePreprocessor.toGray(transparent);
+        assertEquals(255, gray.getRaster().getSample(5, 5, 0));
+    }
+
+    /**
+     * @return a page with lines of "words" that are skewed by the given
+     * degrees, clockwise
+     */
+    private static BufferedImage newPage(double skew) {
+        BufferedImage page = new BufferedImage(800, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = page.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, 800, 1000);
+            g.rotate(Math.toRadians(skew), 400, 500);
+            g.setColor(Color.BLACK);
+            Random random = new Random(skew == 0 ? 1 : (long) (skew * 100));
+            for (int y = 150; y < 850; y += 30) {
+                int x = 120;
+                while (x < 650) {
+                    int length = 15 + random.nextInt(60);
+                    g.fillRect(x, y, Math.min(length, 680 - x), 14);
+                    x += length + 10;
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return page;
+    }
+
+    private static BufferedImage newGradient() {
+        BufferedImage gradient = new BufferedImage(256, 10, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 10; y++) {
+                gradient.setRGB(x, y, x << 16 | x << 8 | x);
+            }
+        }
+        return gradient;
+    }
+
+    private static Set<Integer> getLevels(BufferedImage gray) {
+        Set<Integer> levels = new TreeSet<>();
+        for (byte b : ((DataBufferByte) gray.getRaster().getDataBuffer()).getData()) {
+            levels.add(b & 0xff);
+        }
+        return levels;
+    }
+}
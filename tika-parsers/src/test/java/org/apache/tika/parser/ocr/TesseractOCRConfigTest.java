@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -41,6 +42,8 @@ public class TesseractOCRConfigTest extends TikaTest {
         assertEquals("Invalid default minFileSizeToOcr value", 0, config.getMinFileSizeToOcr());
         assertEquals("Invalid default maxFileSizeToOcr value", Integer.MAX_VALUE, config.getMaxFileSizeToOcr());
         assertEquals("Invalid default timeout value", 120, config.getTimeout());  
+        assertEquals("Invalid default batchTimeout value", 0, config.getBatchTimeout());
+        assertFalse("Invalid default streaming value", config.getStreaming());
         assertEquals("Invalid default ImageMagickPath value", "", config.getImageMagickPath());
         assertEquals("Invalid default density value", 300 , config.getDensity());
         assertEquals("Invalid default depth value", 4 , config.getDepth());
@@ -17,18 +17,27 @@
 package org.apache.tika.parser.ocr;
 
 import static org.apache.tika.parser.ocr.TesseractOCRParser.getTesseractProg;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.tika.TikaTest;
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.CompositeParser;
@@ -41,8 +50,13 @@ import org.apache.tika.parser.image.ImageParser;
 import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
 import org.apache.tika.sax.BasicContentHandlerFactory;
+import org.apache.tika.sax.ToTextContentHandler;
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.apache.tika.sax.XHTMLContentHandler;
 import org.junit.Assume;
 import org.junit.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 public class TesseractOCRParserTest extends TikaTest {
@@ -319,4 +333,154 @@ public class TesseractOCRParserTest extends TikaTest {
         assertContains("myspecial", tesseractOCRConfig.getTesseractPath());
     }
 
+    @Test
+    public void testSplitOutput() throws Exception {
+        //the separator follows each page
+        List<ToTextContentHandler> pages = newPageHandlers(3);
+        assertTrue(TesseractOCRParser.splitOutput(toStream("one\ftwo\f\f"), newXHTML(pages), "-"));
+        assertEquals("one-", pages.get(0).toString().trim());
+        assertEquals("two-", pages.get(1).toString().trim());
+        assertEquals("-", pages.get(2).toString().trim());
+
+        //the separator comes between pages
+        pages = newPageHandlers(3);
+        assertTrue(TesseractOCRParser.splitOutput(toStream("one\ftwo\f"), newXHTML(pages), ""));
+        assertEquals("one", pages.get(0).toString().trim());
+        assertEquals("two", pages.get(1).toString().trim());
+        assertEquals("", pages.get(2).toString().trim());
+
+        //nothing is written if the pages don't match
+        pages = newPageHandlers(3);
+        assertFalse(TesseractOCRParser.splitOutput(toStream("one\ftwo\fthree\ffour"), newXHTML(pages), ""));
+        assertEquals("", pages.get(0).toString());
+    }
+
+    @Test
+    public void testSplitHOCROutput() throws Exception {
+        String hocr = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title></title></head><body>\n" +
+                "<div class='ocr_page' id='page_1'><span class='ocrx_word'>one</span></div>\n" +
+                "<div class='ocr_page' id='page_2'><p><span class='ocrx_word'>two</span></p></div>\n" +
+                "</body></html>";
+        byte[] bytes = hocr.getBytes(UTF_8);
+
+        List<ToXMLContentHandler> pages = newPageHandlers(2, ToXMLContentHandler.class);
+        assertTrue(TesseractOCRParser.splitHOCROutput(bytes, new ParseContext(), newXHTML(pages)));
+        assertContains("page_1", pages.get(0).toString());
+        assertContains("one", pages.get(0).toString());
+        assertNotContained("two", pages.get(0).toString());
+        assertContains("page_2", pages.get(1).toString());
+        assertContains("two", pages.get(1).toString());
+        assertNotContained("one", pages.get(1).toString());
+
+        pages = newPageHandlers(3, ToXMLContentHandler.class);
+        assertFalse(TesseractOCRParser.splitHOCROutput(bytes, new ParseContext(), newXHTML(pages)));
+        assertEquals("", pages.get(0).toString());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        assumeTrue("can run OCR", canRun());
+        TesseractOCRParser parser = new TesseractOCRParser();
+        TesseractOCRConfig config = new TesseractOCRConfig();
+        List<Path> images = new ArrayList<>();
+        List<String> inline = new ArrayList<>();
+        TemporaryResources tmp = new TemporaryResources();
+        try {
+            for (String name : new String[]{"testOCR.jpg", "testOCR.png", "testOCR.jpg"}) {
+                Path image = tmp.createTempFile();
+                try (InputStream is = getResourceAsStream("/test-documents/" + name)) {
+                    Files.copy(is, image, StandardCopyOption.REPLACE_EXISTING);
+                }
+                images.add(image);
+                ToTextContentHandler text = new ToTextContentHandler();
+                try (InputStream is = TikaInputStream.get(image)) {
+                    parser.parseInline(is, new XHTMLContentHandler(text, new Metadata()),
+                            new ParseContext(), config);
+                }
+                inline.add(text.toString());
+            }
+            List<ToTextContentHandler> pages = newPageHandlers(images.size());
+            parser.parseInline(images, newXHTML(pages), new ParseContext(), config);
+            for (int i = 0; i < images.size(); i++) {
+                assertContains("OCR Testing", pages.get(i).toString());
+                assertEquals(inline.get(i), pages.get(i).toString());
+            }
+        } finally {
+            tmp.dispose();
+        }
+    }
+
+    @Test
+    public void testHasStdin() throws Exception {
+        assertTrue(TesseractOCRParser.hasStdin("tesseract 4.1.1\n leptonica-1.79.0\n"));
+        assertTrue(TesseractOCRParser.hasStdin("tesseract v5.0.0-alpha.20200328\n"));
+        assertTrue(TesseractOCRParser.hasStdin("tesseract 3.05.02\n"));
+        assertTrue(TesseractOCRParser.hasStdin("tesseract 3.03\n"));
+        assertFalse(TesseractOCRParser.hasStdin("tesseract 3.02.02\n"));
+        assertFalse(TesseractOCRParser.hasStdin("tesseract: command not found\n"));
+        assertFalse(TesseractOCRParser.hasStdin(""));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        assumeTrue("can run OCR", canRun());
+        TesseractOCRConfig config = new TesseractOCRConfig();
+        assumeTrue("tesseract reads stdin", new TesseractOCRParser().hasStdin(config));
+        for (TesseractOCRConfig.OUTPUT_TYPE outputType : TesseractOCRConfig.OUTPUT_TYPE.values()) {
+            config.setOutputType(outputType);
+            config.setStreaming(false);
+            String expected = ocrInline("testOCR.jpg", config);
+            assertContains("OCR Testing", expected);
+            config.setStreaming(true);
+            assertEquals(expected, ocrInline("testOCR.jpg", config));
+        }
+
+        //the metadata of the image is still extracted
+        config.setOutputType(TesseractOCRConfig.OUTPUT_TYPE.TXT);
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(TesseractOCRConfig.class, config);
+        XMLResult result = getXML("testOCR.jpg", parseContext);
+        assertContains("OCR Testing", result.xml);
+        assertEquals("136", result.metadata.get(Metadata.IMAGE_WIDTH));
+        assertEquals("66", result.metadata.get(Metadata.IMAGE_LENGTH));
+    }
+
+    private String ocrInline(String name, TesseractOCRConfig config) throws Exception {
+        ToTextContentHandler text = new ToTextContentHandler();
+        try (InputStream is = getResourceAsStream("/test-documents/" + name)) {
+            new TesseractOCRParser().parseInline(is, new XHTMLContentHandler(text, new Metadata()),
+                    new ParseContext(), config);
+        }
+        return text.toString();
+    }
+
+    private static List<ToTextContentHandler> newPageHandlers(int numPages) throws Exception {
+        return newPageHandlers(numPages, ToTextContentHandler.class);
+    }
+
+    private static <T extends ContentHandler> List<T> newPageHandlers(int numPages, Class<T> clazz)
+            throws Exception {
+        List<T> handlers = new ArrayList<>();
+        for (int i = 0; i < numPages; i++) {
+            handlers.add(clazz.newInstance());
+        }
+        return handlers;
+    }
+
+    private static List<XHTMLContentHandler> newXHTML(List<? extends ContentHandler> handlers)
+            throws SAXException {
+        List<XHTMLContentHandler> xhtmls = new ArrayList<>();
+        for (ContentHandler handler : handlers) {
+            XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, new Metadata());
+            xhtml.startDocument();
+            xhtmls.add(xhtml);
+        }
+        return xhtmls;
+    }
+
+    private static InputStream toStream(String s) {
+        return new ByteArrayInputStream(s.getBytes(UTF_8));
+    }
+
 }
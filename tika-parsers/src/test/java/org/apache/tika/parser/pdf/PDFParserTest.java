@@ -53,6 +53,7 @@ import org.apache.tika.metadata.Font;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.OfficeOpenXMLCore;
 import org.apache.tika.metadata.PDF;
+import org.apache.tika.metadata.PagedText;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.metadata.XMPMM;
 import org.apache.tika.mime.MediaType;
@@ -1366,6 +1367,66 @@ public class PDFParserTest extends TikaTest {
         assertEquals("", txt.trim());
     }
 
+    @Test
+    public void testOCRAutoModeThresholds() throws Exception {
+        assumeTrue("can run OCR", canRunOCR());
+        PDFParserConfig config = new PDFParserConfig();
+        config.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.AUTO);
+        ParseContext context = new ParseContext();
+        context.set(PDFParserConfig.class, config);
+
+        //testPDF_JBIG2.pdf has a healthy text layer next to a small image
+        assertNotContained("<div class=\"ocr\">", getXML("testPDF_JBIG2.pdf", context).xml);
+        config.setOcrAutoMinCharsPerPage(100);
+        assertContains("<div class=\"ocr\">", getXML("testPDF_JBIG2.pdf", context).xml);
+
+        //testOCR.pdf has no text, and an image that covers about 30% of the page
+        config.setOcrAutoMinCharsPerPage(0);
+        assertNotContained("<div class=\"ocr\">", getXML("testOCR.pdf", context).xml);
+        config.setOcrAutoImageCoverage(0.25f);
+        assertContains("<div class=\"ocr\">", getXML("testOCR.pdf", context).xml);
+    }
+
+    @Test
+    public void testConcurrentOCR() throws Exception {
+        assumeTrue("can run OCR", canRunOCR());
+        for (PDFParserConfig.OCR_STRATEGY strategy : new PDFParserConfig.OCR_STRATEGY[]{
+                PDFParserConfig.OCR_STRATEGY.OCR_ONLY,
+                PDFParserConfig.OCR_STRATEGY.OCR_AND_TEXT_EXTRACTION}) {
+            PDFParserConfig config = new PDFParserConfig();
+            config.setOcrStrategy(strategy);
+            config.setOcrDPI(100);
+            ParseContext context = new ParseContext();
+            context.set(PDFParserConfig.class, config);
+            String inline = getXML("testJournalParser.pdf", context).xml;
+
+            //the OCR output is written in page order
+            config.setOcrThreads(3);
+            assertEquals(strategy.toString(), inline, getXML("testJournalParser.pdf", context).xml);
+        }
+    }
+
+    @Test
+    public void testBatchedOCR() throws Exception {
+        assumeTrue("can run OCR", canRunOCR());
+        for (PDFParserConfig.OCR_STRATEGY strategy : new PDFParserConfig.OCR_STRATEGY[]{
+                PDFParserConfig.OCR_STRATEGY.OCR_ONLY,
+                PDFParserConfig.OCR_STRATEGY.OCR_AND_TEXT_EXTRACTION}) {
+            PDFParserConfig config = new PDFParserConfig();
+            config.setOcrStrategy(strategy);
+            config.setOcrDPI(100);
+            ParseContext context = new ParseContext();
+            context.set(PDFParserConfig.class, config);
+            String inline = getXML("testJournalParser.pdf", context).xml;
+
+            //one process for several pages, with a partial last batch
+            config.setOcrBatchSize(2);
+            assertEquals(strategy.toString(), inline, getXML("testJournalParser.pdf", context).xml);
+            config.setOcrThreads(2);
+            assertEquals(strategy.toString(), inline, getXML("testJournalParser.pdf", context).xml);
+        }
+    }
+
     @Test
     public void testTesseractInitializationWorks() throws Exception {
         //TIKA-2970 -- make sure that configurations set on the TesseractOCRParser
@@ -1489,12 +1550,17 @@ public class PDFParserTest extends TikaTest {
         pdfParserConfig.setDetectAngles(true);
         ParseContext parseContext = new ParseContext();
         parseContext.set(PDFParserConfig.class, pdfParserConfig);
-        String xml = getXML("testPDF_angles.pdf", parseContext).xml;
+        XMLResult xmlResult = getXML("testPDF_angles.pdf", parseContext);
+        String xml = xmlResult.xml;
         //make sure there is only one page!
         assertContainsCount("<div class=\"page\">", xml, 1);
         assertContains("IN-DEMAND", xml);
         assertContains("natural underground", xml);
         assertContains("transport mined materials", xml);
+
+        //the page is stripped once, whatever the number of angles
+        assertEquals(getXML("testPDF_angles.pdf").metadata.get(PDF.CHARACTERS_PER_PAGE),
+                xmlResult.metadata.get(PDF.CHARACTERS_PER_PAGE));
     }
 
     @Test
@@ -1528,6 +1594,110 @@ public class PDFParserTest extends TikaTest {
 
     }
 
+    @Test
+    public void testParallelPageExtraction() throws Exception {
+        PDFParserConfig pdfParserConfig = new PDFParserConfig();
+        pdfParserConfig.setPageExtractionThreads(3);
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(PDFParserConfig.class, pdfParserConfig);
+
+        assertEquals(getXML("testJournalParser.pdf").xml,
+                getXML("testJournalParser.pdf", parseContext).xml);
+
+        //bad page: exceptions, warnings and per page stats must stay in page order
+        Metadata sequential = getRecursiveMetadata("testPDF_bad_page_303226.pdf", true).get(0);
+        Metadata parallel = getRecursiveMetadata("testPDF_bad_page_303226.pdf", parseContext, true).get(0);
+        assertEquals(sequential.get(RecursiveParserWrapperHandler.TIKA_CONTENT),
+                parallel.get(RecursiveParserWrapperHandler.TIKA_CONTENT));
+        assertArrayEquals(sequential.getValues(PDF.CHARACTERS_PER_PAGE),
+                parallel.getValues(PDF.CHARACTERS_PER_PAGE));
+        assertArrayEquals(sequential.getValues(PDF.UNMAPPED_UNICODE_CHARS_PER_PAGE),
+                parallel.getValues(PDF.UNMAPPED_UNICODE_CHARS_PER_PAGE));
+        assertArrayEquals(sequential.getValues(TikaCoreProperties.TIKA_META_EXCEPTION_WARNING),
+                parallel.getValues(TikaCoreProperties.TIKA_META_EXCEPTION_WARNING));
+        assertEquals(1, parallel.getValues(TikaCoreProperties.TIKA_META_EXCEPTION_WARNING).length);
+    }
+
+    @Test
+    public void testPageRange() throws Exception {
+        PDFParserConfig pdfParserConfig = new PDFParserConfig();
+        pdfParserConfig.setStartPage(2);
+        pdfParserConfig.setEndPage(3);
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(PDFParserConfig.class, pdfParserConfig);
+
+        XMLResult all = getXML("testJournalParser.pdf");
+        XMLResult range = getXML("testJournalParser.pdf", parseContext);
+        assertEquals("10", range.metadata.get(PagedText.N_PAGES));
+        assertEquals(2, StringUtils.countMatches(range.xml, "<div class=\"page\">"));
+        String[] pages = all.xml.split("<div class=\"page\">");
+        assertContains(pages[2] + "<div class=\"page\">" + pages[3], range.xml);
+
+        //the same pages when they are extracted concurrently
+        pdfParserConfig.setPageExtractionThreads(3);
+        assertEquals(range.xml, getXML("testJournalParser.pdf", parseContext).xml);
+
+        //an empty range only extracts the metadata
+        pdfParserConfig.setEndPage(0);
+        range = getXML("testJournalParser.pdf", parseContext);
+        assertEquals("10", range.metadata.get(PagedText.N_PAGES));
+        assertNotContained("<div class=\"page\">", range.xml);
+    }
+
+    @Test
+    public void testCollectStatistics() throws Exception {
+        //off by default
+        Metadata metadata = getXML("testJournalParser.pdf").metadata;
+        assertNull(metadata.get(PDF.LOAD_MILLIS));
+        assertNull(metadata.get(PDF.LINES_PER_PAGE));
+
+        PDFParserConfig pdfParserConfig = new PDFParserConfig();
+        pdfParserConfig.setCollectStatistics(true);
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(PDFParserConfig.class, pdfParserConfig);
+
+        long pages = PDFParserMetrics.getInstance().getPages();
+        metadata = getXML("testJournalParser.pdf", parseContext).metadata;
+        assertTrue(PDFParserMetrics.getInstance().getPages() >= pages + 10);
+        assertNotNull(metadata.get(PDF.LOAD_MILLIS));
+        assertNotNull(metadata.get(PDF.TEXT_MILLIS));
+        int[] lines = metadata.getIntValues(PDF.LINES_PER_PAGE);
+        int[] paragraphs = metadata.getIntValues(PDF.PARAGRAPHS_PER_PAGE);
+        assertEquals(10, lines.length);
+        assertEquals(10, paragraphs.length);
+        assertEquals(10, metadata.getValues(PDF.TEXT_MILLIS_PER_PAGE).length);
+        assertEquals(10, metadata.getValues(PDF.OCR_MILLIS_PER_PAGE).length);
+        assertEquals(91, paragraphs[0]);
+
+        //the same counts when the pages are extracted concurrently
+        pdfParserConfig.setPageExtractionThreads(3);
+        Metadata parallel = getXML("testJournalParser.pdf", parseContext).metadata;
+        assertArrayEquals(lines, parallel.getIntValues(PDF.LINES_PER_PAGE));
+        assertArrayEquals(paragraphs, parallel.getIntValues(PDF.PARAGRAPHS_PER_PAGE));
+    }
+
+    @Test
+    public void testLineGeometryFormat() throws Exception {
+        PDFParserConfig pdfParserConfig = new PDFParserConfig();
+        pdfParserConfig.setLineGeometryFormat("json");
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(PDFParserConfig.class, pdfParserConfig);
+
+        String xml = getXML("testPDF.pdf", parseContext).xml;
+        assertContains("<p data-geometry=\"[18,27,4.53,4.53,&quot;Times-Roman&quot;,false,400," +
+                "[122.57533,27],[[18,27,4.53,400],[50.44072,27,4.53,400],", xml);
+        assertNotContained("style=", xml);
+
+        pdfParserConfig.setLineGeometryFormat(PDFParserConfig.LINE_GEOMETRY_FORMAT.NONE);
+        xml = getXML("testPDF.pdf", parseContext).xml;
+        assertNotContained("data-geometry", xml);
+        assertNotContained("style=", xml);
+
+        //the text is the same whatever the format
+        assertEquals(getText("testPDF.pdf", new PDFParser()),
+                getText("testPDF.pdf", new PDFParser(), new Metadata(), parseContext));
+    }
+
     @Test
     public void testNPEInPDFParserConfig() {
         //TIKA-3091
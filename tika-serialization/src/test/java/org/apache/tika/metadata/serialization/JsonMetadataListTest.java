@@ -72,6 +72,15 @@ public class JsonMetadataListTest {
 
     }
 
+    @Test
+    public void testStreamingEmpty() throws Exception {
+        StringWriter writer = new StringWriter();
+        try(JsonStreamingSerializer streamingSerializer = new JsonStreamingSerializer(writer)) {
+            streamingSerializer.flush();
+        }
+        assertEquals(0, JsonMetadataList.fromJson(new StringReader(writer.toString())).size());
+    }
+
     @Test
     public void testListNull() throws Exception {
         StringWriter writer = new StringWriter();
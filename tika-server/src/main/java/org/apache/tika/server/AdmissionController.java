@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caps the cost of the parses that run at the same time, so that a burst
+ * of requests is shed with 429 or 503 instead of piling up until the heap
+ * runs out.
+ * <p>
+ * Each parse takes a number of permits for as long as it runs.  Without
+ * weighting, every parse costs one permit.  With weighting, a parse costs
+ * one permit per <code>bytesPerPermit</code> of declared content length,
+ * and twice that for images, which are likely to be OCR'd.  No parse
+ * costs more than all permits.
+ * <p>
+ * A parse that can't get its permits right away waits in a FIFO queue
+ * for up to <code>maxWaitMillis</code>.  If the queue is full, it is
+ * rejected with 429, and if it waits too long, with 503.  Both carry a
+ * Retry-After header that estimates when permits will be free, based on
+ * the average duration of parses so far.
+ * <p>
+ * A thread that holds permits can parse again without taking more, so
+ * that jobs which take their permits up front (see
+ * {@link #acquire(int, boolean)}) are not counted twice.
+ */
+public class AdmissionController implements AdmissionControllerMXBean {
+
+    static final String OBJECT_NAME = "org.apache.tika.server:type=AdmissionController";
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final Permit NO_OP = new Permit(null, 0);
+
+    private final int maxPermits;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final long bytesPerPermit;
+
+    private final ThreadLocal<Permit> held = new ThreadLocal<>();
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private int available;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder heldNanos = new LongAdder();
+
+    /**
+     * @param maxPermits permits shared by all parses that run at the same time
+     * @param maxQueue number of parses that may wait for permits
+     * @param maxWaitMillis how long a parse may wait for permits
+     * @param bytesPerPermit content length that costs one permit, or 0 for one permit per parse
+     */
+    public AdmissionController(int maxPermits, int maxQueue, long maxWaitMillis, long bytesPerPermit) {
+        if (maxPermits < 1) {
+            throw new IllegalArgumentException("maxPermits must be > 0: " + maxPermits);
+        }
+        this.maxPermits = maxPermits;
+        this.maxQueue = maxQueue;
+        this.maxWaitMillis = maxWaitMillis;
+        this.bytesPerPermit = bytesPerPermit;
+        this.available = maxPermits;
+    }
+
+    /**
+     * Publishes the counters as an MXBean, in place of those of an earlier
+     * instance.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException|SecurityException e) {
+            LOG.warn("Couldn't register the admission controller's MXBean", e);
+        }
+    }
+
+    /**
+     * @param contentLength declared content length, or -1 if unknown
+     * @param mediaType declared media type, may be null
+     * @return number of permits that a parse of this document costs
+     */
+    public int getCost(long contentLength, String mediaType) {
+        if (bytesPerPermit <= 0) {
+            return 1;
+        }
+        long cost = 1;
+        if (contentLength > 0) {
+            cost = (contentLength + bytesPerPermit - 1) / bytesPerPermit;
+        }
+        if (mediaType != null && mediaType.toLowerCase(Locale.ROOT).startsWith("image/")) {
+            cost *= 2;
+        }
+        return (int) Math.min(cost, maxPermits);
+    }
+
+    /**
+     * Waits for permits, or rejects the parse if the server is saturated.
+     *
+     * @param cost permits to take, see {@link #getCost(long, String)}
+     * @param mayReject if false, waits as long as it takes, e.g. for jobs
+     *                  which are queued elsewhere already
+     * @return permit to close once the parse is done
+     * @throws WebApplicationException 429 or 503 with Retry-After if the parse is rejected
+     */
+    public Permit acquire(int cost, boolean mayReject) throws WebApplicationException {
+        Permit current = held.get();
+        if (current != null) {
+            if (!current.released.get()) {
+                return NO_OP;
+            }
+            //closed on another thread
+            held.remove();
+        }
+        cost = Math.max(1, Math.min(cost, maxPermits));
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (queue.isEmpty() && available >= cost) {
+                available -= cost;
+            } else {
+                if (mayReject && queue.size() >= maxQueue) {
+                    rejected.increment();
+                    throw reject(TOO_MANY_REQUESTS);
+                }
+                queued.increment();
+                Waiter waiter = new Waiter(cost);
+                queue.addLast(waiter);
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                try {
+                    while (!waiter.granted) {
+                        long remaining = deadline - System.nanoTime();
+                        if (mayReject && remaining <= 0) {
+                            queue.remove(waiter);
+                            //a smaller parse behind this one may fit now
+                            grant();
+                            waitNanos.add(System.nanoTime() - start);
+                            timedOut.increment();
+                            throw reject(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+                        }
+                        if (mayReject) {
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        } else {
+                            wait();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        available += cost;
+                    } else {
+                        queue.remove(waiter);
+                    }
+                    grant();
+                    Thread.currentThread().interrupt();
+                    throw new WebApplicationException(e, Response.Status.SERVICE_UNAVAILABLE);
+                }
+                waitNanos.add(System.nanoTime() - start);
+            }
+        }
+        admitted.increment();
+        Permit permit = new Permit(this, cost);
+        held.set(permit);
+        return permit;
+    }
+
+    private synchronized void release(Permit permit) {
+        //a permit may be closed on another thread than the one that took it
+        if (held.get() == permit) {
+            held.remove();
+        }
+        available += permit.cost;
+        released.increment();
+        heldNanos.add(System.nanoTime() - permit.acquired);
+        grant();
+    }
+
+    //in FIFO order, so that a large parse is not starved by small ones
+    private void grant() {
+        boolean granted = false;
+        while (!queue.isEmpty() && queue.peekFirst().cost <= available) {
+            Waiter waiter = queue.removeFirst();
+            available -= waiter.cost;
+            waiter.granted = true;
+            granted = true;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private WebApplicationException reject(int status) {
+        long retryAfter = getRetryAfterSeconds();
+        LOG.warn("Rejected a parse with {}: {} permits in use, {} parses waiting; retry after {} seconds",
+                status, maxPermits - available, queue.size(), retryAfter);
+        return new WebApplicationException(Response.status(status)
+                .header("Retry-After", Long.toString(retryAfter))
+                .entity("The server is saturated, retry after " + retryAfter + " seconds")
+                .type("text/plain").build());
+    }
+
+    private long getRetryAfterSeconds() {
+        long count = released.sum();
+        if (count == 0) {
+            return 1;
+        }
+        long averageMillis = TimeUnit.NANOSECONDS.toMillis(heldNanos.sum() / count);
+        //the queue drains at maxPermits parses per average duration
+        long millis = averageMillis * (queue.size() + 1) / maxPermits;
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(millis + 999));
+    }
+
+    @Override
+    public int getMaxPermits() {
+        return maxPermits;
+    }
+
+    @Override
+    public synchronized int getPermitsInUse() {
+        return maxPermits - available;
+    }
+
+    @Override
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    @Override
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    @Override
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    /**
+     * Permits held by a parse; closing returns them.  Closing a permit
+     * again is a no-op.
+     */
+    public static class Permit implements AutoCloseable {
+        private final AdmissionController controller;
+        private final int cost;
+        private final long acquired = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(AdmissionController controller, int cost) {
+            this.controller = controller;
+            this.cost = cost;
+        }
+
+        @Override
+        public void close() {
+            if (controller != null && released.compareAndSet(false, true)) {
+                controller.release(this);
+            }
+        }
+    }
+
+    /**
+     * Permits that a parse costs, estimated from the request's headers
+     * and passed to the parse in the {@link org.apache.tika.parser.ParseContext}.
+     */
+    public static class Cost {
+        private final int permits;
+
+        public Cost(int permits) {
+            this.permits = permits;
+        }
+
+        public int getPermits() {
+            return permits;
+        }
+    }
+
+    private static class Waiter {
+        private final int cost;
+        private boolean granted = false;
+
+        Waiter(int cost) {
+            this.cost = cost;
+        }
+    }
+}
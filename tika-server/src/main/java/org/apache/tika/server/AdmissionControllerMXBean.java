@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+/**
+ * Counters of the server's {@link AdmissionController}, registered with
+ * the platform MBean server as
+ * <code>org.apache.tika.server:type=AdmissionController</code>.
+ */
+public interface AdmissionControllerMXBean {
+
+    int getMaxPermits();
+
+    /**
+     * @return permits held by the parses that are running now
+     */
+    int getPermitsInUse();
+
+    /**
+     * @return number of parses that are waiting for permits now
+     */
+    int getQueueLength();
+
+    /**
+     * @return number of parses that were admitted, right away or after waiting
+     */
+    long getAdmitted();
+
+    /**
+     * @return number of parses that had to wait before they were admitted
+     */
+    long getQueued();
+
+    /**
+     * @return number of parses that were rejected with 429 because the queue was full
+     */
+    long getRejected();
+
+    /**
+     * @return number of parses that were rejected with 503 after waiting too long
+     */
+    long getTimedOut();
+
+    /**
+     * @return milliseconds that admitted and timed out parses spent in the queue
+     */
+    long getWaitMillis();
+}
@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens on the server's port in front of a pool of child processes, and
+ * forwards each request to the least loaded child that is running.
+ * <p>
+ * A child's load is the larger of the requests that are being forwarded to
+ * it and the tasks that it reported in its last status.  A child that is
+ * restarting is skipped, so that the other children keep serving while it
+ * warms up.  A child that refuses the connection, e.g. because it hasn't
+ * started listening yet, is skipped too; nothing of the request has been
+ * read at that point.  If no child can take a request, e.g. because the
+ * only one has just failed, the request waits a little for the watchdog
+ * to hand over to a standby or for another child to come back, and then
+ * gets a 503.
+ * <p>
+ * An /async job lives in the child that accepted it, so requests for a job
+ * go to that child.  If that child has died or was restarted, the job is
+ * gone for good, and the request gets a 404 rather than a 503.
+ */
+class ChildDispatcher {
+
+    /**
+     * A child process as seen by the dispatcher.
+     */
+    interface Child {
+
+        /**
+         * @return whether the child is running and may take requests
+         */
+        boolean isAvailable();
+
+        /**
+         * @return number of tasks that the child reported in its last status
+         */
+        int getNumTasks();
+
+        int getPort();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChildDispatcher.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int BUFFER_SIZE = 8192;
+    private static final long RETRY_MILLIS = 50;
+    private static final int MAX_ASYNC_JOBS = 10000;
+    private static final Pattern ASYNC_JOB = Pattern.compile("^/async/([^/]+)(?:/result)?/?$");
+
+    //not forwarded in either direction, or set by the connection itself
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "host", "content-length"));
+
+    private final List<? extends Child> children;
+    private final String childHost;
+    private final long maxWaitMillis;
+    private final AtomicIntegerArray inFlight;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Server server;
+
+    //job id -> index of the child that runs the job
+    private final Map<String, Integer> asyncJobs = Collections.synchronizedMap(
+            new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_ASYNC_JOBS;
+                }
+            });
+
+    /**
+     * @param maxWaitMillis how long a request may wait for a child to become available
+     */
+    ChildDispatcher(String host, int port, List<? extends Child> children, long maxWaitMillis) {
+        this.children = children;
+        this.childHost = getChildHost(host);
+        this.maxWaitMillis = maxWaitMillis;
+        this.inFlight = new AtomicIntegerArray(children.size());
+        this.server = new Server(new InetSocketAddress(host, port));
+        server.setHandler(new DispatchHandler());
+    }
+
+    /**
+     * @param host host that the children listen on
+     * @return host to connect to the children on
+     */
+    static String getChildHost(String host) {
+        return "0.0.0.0".equals(host) ? TikaServerCli.DEFAULT_HOST : host;
+    }
+
+    void start() throws Exception {
+        server.start();
+        LOG.info("Dispatching requests on {} to {} child processes", server.getURI(), children.size());
+    }
+
+    void stop() {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            LOG.warn("Problem stopping the dispatcher", e);
+        }
+    }
+
+    //least loaded first; ties are broken round robin
+    private List<Integer> rank() {
+        int size = children.size();
+        int offset = Math.floorMod(next.getAndIncrement(), size);
+        List<Integer> ranked = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = (offset + i) % size;
+            if (children.get(index).isAvailable()) {
+                ranked.add(index);
+            }
+        }
+        ranked.sort((a, b) -> Integer.compare(getLoad(a), getLoad(b)));
+        return ranked;
+    }
+
+    private int getLoad(int index) {
+        return Math.max(inFlight.get(index), children.get(index).getNumTasks());
+    }
+
+    private static String getJobId(String path) {
+        Matcher matcher = ASYNC_JOB.matcher(path);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    private enum Outcome {
+        FORWARDED,
+        //no child could take the request; it may be retried
+        NO_CHILD,
+        //the child that ran the request's async job is gone
+        JOB_LOST
+    }
+
+    //the client's request body couldn't be read
+    private static class ClientReadException extends IOException {
+        ClientReadException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    private class DispatchHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            while (true) {
+                Outcome outcome = dispatch(request, response);
+                if (outcome == Outcome.FORWARDED) {
+                    return;
+                } else if (outcome == Outcome.JOB_LOST) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND,
+                            "The child process that ran the job is gone");
+                    return;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    break;
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "No child process is available");
+        }
+
+        /**
+         * @return whether a child took the request; nothing has been read or written if not
+         */
+        private Outcome dispatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            String jobId = getJobId(request.getRequestURI());
+            Integer jobChild = jobId == null ? null : asyncJobs.get(jobId);
+            List<Integer> candidates = jobChild == null ? rank() : Collections.singletonList(jobChild);
+            for (int index : candidates) {
+                Child child = children.get(index);
+                if (!child.isAvailable()) {
+                    continue;
+                }
+                inFlight.incrementAndGet(index);
+                try {
+                    HttpURLConnection connection = open(child, request);
+                    try {
+                        connection.connect();
+                    } catch (ConnectException e) {
+                        LOG.debug("child on port {} refused the connection", child.getPort());
+                        continue;
+                    }
+                    forward(index, connection, request, response);
+                    return Outcome.FORWARDED;
+                } catch (ProtocolException e) {
+                    response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                    return Outcome.FORWARDED;
+                } finally {
+                    inFlight.decrementAndGet(index);
+                }
+            }
+            if (jobChild != null) {
+                asyncJobs.remove(jobId);
+                return Outcome.JOB_LOST;
+            }
+            return Outcome.NO_CHILD;
+        }
+
+        private HttpURLConnection open(Child child, HttpServletRequest request) throws IOException {
+            String query = request.getQueryString();
+            URL url = new URL("http", childHost, child.getPort(),
+                    request.getRequestURI() + (query == null ? "" : "?" + query));
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(request.getMethod());
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            //parses may take long; the child times out its own tasks
+            connection.setReadTimeout(0);
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+            for (String name : Collections.list(request.getHeaderNames())) {
+                if (HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                for (String value : Collections.list(request.getHeaders(name))) {
+                    connection.addRequestProperty(name, value);
+                }
+            }
+            long contentLength = request.getContentLengthLong();
+            if (contentLength > 0 || request.getHeader("Transfer-Encoding") != null) {
+                connection.setDoOutput(true);
+                if (contentLength >= 0) {
+                    connection.setFixedLengthStreamingMode(contentLength);
+                } else {
+                    connection.setChunkedStreamingMode(0);
+                }
+            }
+            return connection;
+        }
+
+        private void forward(int index, HttpURLConnection connection, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+            int status;
+            try {
+                if (connection.getDoOutput()) {
+                    try (OutputStream os = connection.getOutputStream()) {
+                        copyRequestBody(request.getInputStream(), os);
+                    }
+                }
+                status = connection.getResponseCode();
+            } catch (ClientReadException e) {
+                //the client went away or sent a broken body; the child is fine
+                LOG.debug("Couldn't read the request body for the child on port {}",
+                        children.get(index).getPort(), e);
+                connection.disconnect();
+                if (!response.isCommitted()) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                }
+                return;
+            } catch (IOException e) {
+                //the child died or was restarted while it had the request
+                LOG.warn("Lost the child on port {} during a request", children.get(index).getPort(), e);
+                if (!response.isCommitted()) {
+                    response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+                }
+                return;
+            }
+            response.setStatus(status);
+            String childBase = "http://" + childHost + ":" + children.get(index).getPort();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                String name = header.getKey();
+                //the status line has no name
+                if (name == null || (HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))
+                        && !"content-length".equalsIgnoreCase(name))) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    if ("location".equalsIgnoreCase(name) && value.startsWith(childBase)) {
+                        value = getBase(request) + value.substring(childBase.length());
+                    }
+                    response.addHeader(name, value);
+                }
+            }
+            trackAsyncJob(index, request, status, connection.getHeaderField("Location"));
+
+            InputStream is = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (is != null) {
+                try (InputStream childStream = is) {
+                    IOUtils.copy(childStream, response.getOutputStream());
+                }
+            }
+        }
+
+        private void copyRequestBody(InputStream is, OutputStream os) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                int n;
+                try {
+                    n = is.read(buffer);
+                } catch (IOException e) {
+                    throw new ClientReadException(e);
+                }
+                if (n == -1) {
+                    return;
+                }
+                os.write(buffer, 0, n);
+            }
+        }
+
+        private void trackAsyncJob(int index, HttpServletRequest request, int status, String location) {
+            String path = request.getRequestURI();
+            if (!path.startsWith("/async/")) {
+                return;
+            }
+            if (status == HttpServletResponse.SC_ACCEPTED && location != null
+                    && "PUT".equals(request.getMethod())) {
+                String jobId = getJobId(location.replaceFirst("^[a-z]+://[^/]+", ""));
+                if (jobId != null) {
+                    asyncJobs.put(jobId, index);
+                }
+            } else if ("DELETE".equals(request.getMethod())) {
+                String jobId = getJobId(path);
+                if (jobId != null) {
+                    asyncJobs.remove(jobId);
+                }
+            }
+        }
+
+        private String getBase(HttpServletRequest request) {
+            String host = request.getHeader("Host");
+            if (host == null) {
+                host = request.getServerName() + ":" + request.getServerPort();
+            }
+            return request.getScheme() + "://" + host;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up a standby child before it takes requests: waits until the child
+ * listens, and then parses a small corpus through /rmeta, so that the
+ * configuration, the parsers and their dependencies are loaded and the
+ * common paths have been compiled by the time the child is handed traffic.
+ * <p>
+ * The built-in corpus has one small document for each of the most common
+ * formats.  A directory of documents that are typical for the deployment
+ * can be used instead.
+ */
+class ChildWarmup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChildWarmup.class);
+
+    private static final String[] BUILT_IN_CORPUS = {
+            "warmup.pdf", "warmup.docx", "warmup.doc", "warmup.xlsx", "warmup.html", "warmup.rtf"
+    };
+
+    //each pass compiles more of the hot paths
+    private static final int ROUNDS = 3;
+
+    private static final long CONNECT_RETRY_MILLIS = 100;
+
+    private final String childHost;
+    private final Path corpusDir;
+
+    /**
+     * @param host host that the children listen on
+     * @param corpusDir documents to parse, or <code>null</code> for the built-in corpus
+     */
+    ChildWarmup(String host, Path corpusDir) {
+        this.childHost = ChildDispatcher.getChildHost(host);
+        this.corpusDir = corpusDir;
+    }
+
+    /**
+     * @param port port that the child listens on
+     * @param maxStartupMillis how long to wait for the child to listen
+     * @throws TimeoutException if the child doesn't listen in time
+     */
+    void warmUp(int port, long maxStartupMillis) throws IOException, InterruptedException, TimeoutException {
+        long start = System.currentTimeMillis();
+        awaitListening(port, start + maxStartupMillis);
+        List<Document> corpus = loadCorpus();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (Document document : corpus) {
+                int status = parse(port, document);
+                if (status != HttpURLConnection.HTTP_OK) {
+                    LOG.debug("warmup of {} on port {} returned {}", document.name, port, status);
+                }
+            }
+        }
+        LOG.info("Warmed up child on port {} with {} documents in {} ms", port, corpus.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void awaitListening(int port, long deadline) throws IOException, InterruptedException,
+            TimeoutException {
+        while (true) {
+            HttpURLConnection connection = open(port, "/tika", "GET");
+            try {
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                    drain(connection, HttpURLConnection.HTTP_OK);
+                    return;
+                }
+            } catch (IOException e) {
+                //not listening yet
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException("Child on port " + port + " didn't start listening in time");
+            }
+            Thread.sleep(CONNECT_RETRY_MILLIS);
+        }
+    }
+
+    private int parse(int port, Document document) throws IOException {
+        HttpURLConnection connection = open(port, "/rmeta/text", "PUT");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(document.bytes.length);
+        connection.setRequestProperty("Content-Disposition",
+                "attachment; filename=" + document.name);
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(document.bytes);
+        }
+        int status = connection.getResponseCode();
+        drain(connection, status);
+        return status;
+    }
+
+    private HttpURLConnection open(int port, String path, String method) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL("http", childHost, port, path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    //reads the response, so that the connection can be reused
+    private static void drain(HttpURLConnection connection, int status) throws IOException {
+        InputStream is = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (is != null) {
+            try (InputStream response = is) {
+                IOUtils.skip(response, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private List<Document> loadCorpus() throws IOException {
+        List<Document> corpus = new ArrayList<>();
+        if (corpusDir != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(corpusDir)) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file)) {
+                        corpus.add(new Document(file.getFileName().toString(), Files.readAllBytes(file)));
+                    }
+                }
+            }
+            return corpus;
+        }
+        for (String name : BUILT_IN_CORPUS) {
+            try (InputStream is = ChildWarmup.class.getResourceAsStream("warmup/" + name)) {
+                if (is == null) {
+                    throw new IOException("Missing warmup document: " + name);
+                }
+                corpus.add(new Document(name, IOUtils.toByteArray(is)));
+            }
+        }
+        return corpus;
+    }
+
+    private static class Document {
+        private final String name;
+        private final byte[] bytes;
+
+        Document(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.PasswordProvider;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.parser.utils.CommonsDigester;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Cache of the output of parses, so that a document that is submitted
+ * again with the same settings is answered without parsing it again.
+ * <p>
+ * The key is a digest of the document's content, the output type, the
+ * metadata that came with the request (e.g. the file name and content type),
+ * the password, and the effective {@link PDFParserConfig} and
+ * {@link TesseractOCRConfig} that were derived from the X-Tika-* headers.
+ * <p>
+ * The outputs are held in memory, least recently used first out, up to a
+ * total number of bytes.  With a directory, they are also written to disk,
+ * where they survive restarts and can be shared by several servers; that
+ * tier is bounded by its own number of bytes, and the files that were least
+ * recently read are removed first.  Outputs larger than the maximum entry
+ * size are not cached.
+ */
+public class ParseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseCache.class);
+
+    private static final String DIGEST_KEY = "X-TIKA:digest:SHA256";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final String salt;
+    private final DigestingParser.Digester digester;
+    private final long maxMemoryBytes;
+    private final int maxEntryBytes;
+    private final Path dir;
+    private final long maxDiskBytes;
+
+    //access ordered; guarded by itself
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    //a lock of its own, so that evicting from disk doesn't block reads from memory
+    private final Object disk = new Object();
+    //guarded by disk
+    private long diskBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * @param salt           added to every key, e.g. to tell apart the outputs
+     *                       of different versions or configurations in a shared directory
+     * @param digestMarkLimit how much of a document to buffer in memory
+     *                       while it is digested, before it is spooled to disk
+     * @param maxMemoryBytes maximum total size of the outputs held in memory
+     * @param maxEntryBytes  outputs larger than this are not cached
+     * @param dir            directory of the on-disk tier, or <code>null</code> for none
+     * @param maxDiskBytes   maximum total size of the outputs on disk
+     */
+    public ParseCache(String salt, int digestMarkLimit, long maxMemoryBytes, int maxEntryBytes,
+                      Path dir, long maxDiskBytes) throws IOException {
+        if (maxMemoryBytes < 0 || maxEntryBytes < 0 || maxDiskBytes < 0) {
+            throw new IllegalArgumentException("cache sizes must be >= 0");
+        }
+        this.salt = salt;
+        this.digester = new CommonsDigester(digestMarkLimit, "sha256");
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.dir = dir;
+        this.maxDiskBytes = maxDiskBytes;
+        if (dir != null) {
+            Files.createDirectories(dir);
+            for (Path p : listDir()) {
+                diskBytes += Files.size(p);
+            }
+            LOG.info("Parse cache directory {} holds {} bytes", dir, diskBytes);
+            synchronized (disk) {
+                evictDisk();
+            }
+        }
+    }
+
+    /**
+     * Computes the key of a parse.  This reads the document, and resets the
+     * stream to its start.
+     *
+     * @param outputType e.g. "text" or "html"; the outputs of a document
+     *                   differ per endpoint
+     * @param stream     the document
+     * @param metadata   the metadata that came with the request
+     * @param context    the context of the parse
+     */
+    public String getKey(String outputType, TikaInputStream stream, Metadata metadata,
+                         ParseContext context) throws IOException {
+        Metadata digest = new Metadata();
+        digester.digest(stream, digest, context);
+        MessageDigest md = newKeyDigest();
+        update(md, salt);
+        update(md, outputType);
+        update(md, digest.get(DIGEST_KEY));
+        String[] names = metadata.names();
+        Arrays.sort(names);
+        for (String name : names) {
+            update(md, name);
+            for (String value : metadata.getValues(name)) {
+                update(md, value);
+            }
+        }
+        PasswordProvider passwordProvider = context.get(PasswordProvider.class);
+        update(md, passwordProvider == null ? null : passwordProvider.getPassword(metadata));
+        update(md, context.get(PDFParserConfig.class));
+        update(md, context.get(TesseractOCRConfig.class));
+        return Hex.encodeHexString(md.digest());
+    }
+
+    /**
+     * Writes the cached output of the key to the stream.
+     *
+     * @return whether the output was cached
+     */
+    public boolean writeTo(String key, OutputStream outputStream) throws IOException {
+        byte[] output = get(key);
+        if (output == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        outputStream.write(output);
+        return true;
+    }
+
+    /**
+     * @return a stream that writes through to the output stream, and records
+     * what is written for {@link #put(String, Recorder)}
+     */
+    public Recorder record(OutputStream outputStream) {
+        return new Recorder(outputStream, maxEntryBytes);
+    }
+
+    /**
+     * Caches what was recorded, unless it was too large.  Only call this once
+     * the parse has succeeded.
+     */
+    public void put(String key, Recorder recorder) throws IOException {
+        recorder.flush();
+        if (recorder.overflowed) {
+            return;
+        }
+        byte[] output = recorder.recorded.toByteArray();
+        synchronized (memory) {
+            putInMemory(key, output);
+        }
+        if (dir != null) {
+            try {
+                putOnDisk(key, output);
+            } catch (IOException e) {
+                //the response has been written; the cache is best effort
+                LOG.warn("Unable to write the parse cache entry {}", key, e);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private byte[] get(String key) throws IOException {
+        synchronized (memory) {
+            byte[] output = memory.get(key);
+            if (output != null || dir == null) {
+                return output;
+            }
+        }
+        Path p = dir.resolve(key);
+        byte[] output;
+        try {
+            output = Files.readAllBytes(p);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            //the modification time orders the files by last use
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            //evicted in the meantime
+        }
+        synchronized (memory) {
+            putInMemory(key, output);
+        }
+        return output;
+    }
+
+    private void putInMemory(String key, byte[] output) {
+        if (output.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] previous = memory.put(key, output);
+        memoryBytes += output.length - (previous == null ? 0 : previous.length);
+        Iterator<byte[]> it = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private void putOnDisk(String key, byte[] output) throws IOException {
+        if (output.length > maxDiskBytes) {
+            return;
+        }
+        Path p = dir.resolve(key);
+        //write aside and move, so that readers never see a partial output
+        Path tmp = Files.createTempFile(dir, key, TMP_SUFFIX);
+        try {
+            Files.write(tmp, output);
+            long previous = Files.exists(p) ? Files.size(p) : 0;
+            Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (disk) {
+                diskBytes += output.length - previous;
+                evictDisk();
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    //call while holding the lock on disk, not on memory
+    private void evictDisk() throws IOException {
+        if (diskBytes <= maxDiskBytes) {
+            return;
+        }
+        List<Path> paths = listDir();
+        final Map<Path, FileTime> times = new LinkedHashMap<>();
+        for (Path p : paths) {
+            try {
+                times.put(p, Files.getLastModifiedTime(p));
+            } catch (NoSuchFileException e) {
+                //removed by another server sharing the directory
+            }
+        }
+        List<Path> oldestFirst = new ArrayList<>(times.keySet());
+        Collections.sort(oldestFirst, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return times.get(a).compareTo(times.get(b));
+            }
+        });
+        //recount; other servers may share the directory
+        diskBytes = 0;
+        for (Path p : oldestFirst) {
+            diskBytes += sizeOf(p);
+        }
+        for (Path p : oldestFirst) {
+            if (diskBytes <= maxDiskBytes) {
+                break;
+            }
+            long size = sizeOf(p);
+            Files.deleteIfExists(p);
+            diskBytes -= size;
+        }
+    }
+
+    private List<Path> listDir() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p) && !p.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                    paths.add(p);
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static long sizeOf(Path p) throws IOException {
+        try {
+            return Files.size(p);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private static MessageDigest newKeyDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        if (s == null) {
+            md.update((byte) 0);
+            return;
+        }
+        md.update((byte) 1);
+        byte[] bytes = s.getBytes(UTF_8);
+        md.update(Integer.toString(bytes.length).getBytes(UTF_8));
+        md.update((byte) ':');
+        md.update(bytes);
+    }
+
+    private static void update(MessageDigest md, Serializable config) throws IOException {
+        if (config == null) {
+            md.update((byte) 0);
+            return;
+        }
+        md.update((byte) 1);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(config);
+        }
+        md.update(bos.toByteArray());
+    }
+
+    /**
+     * Writes through to the response, and records what was written
+     * up to the maximum entry size.
+     */
+    public static class Recorder extends FilterOutputStream {
+
+        private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+        private final int maxBytes;
+        private boolean overflowed = false;
+
+        private Recorder(OutputStream out, int maxBytes) {
+            super(out);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (!overflowed) {
+                if (recorded.size() + 1 > maxBytes) {
+                    overflow();
+                } else {
+                    recorded.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (!overflowed) {
+                if (recorded.size() + len > maxBytes) {
+                    overflow();
+                } else {
+                    recorded.write(b, off, len);
+                }
+            }
+        }
+
+        private void overflow() {
+            overflowed = true;
+            recorded.reset();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.HttpHeaders;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.server.resource.TikaResource;
+
+/**
+ * The parsers of the server, built once for the configuration and shared
+ * by all requests, instead of building an {@link AutoDetectParser} (and a
+ * {@link DigestingParser}) per request.
+ * <p>
+ * The parsers hold no state of a request: that is in the request's
+ * {@link org.apache.tika.parser.ParseContext}.  The only setting that the
+ * per request parsers took from the request is the detector that trusts the
+ * Content-Type header, so there is a second graph with that detector.
+ * <p>
+ * The {@link TesseractOCRConfig} and {@link PDFParserConfig} that are
+ * derived from the X-Tika-OCR* and X-Tika-PDF* headers are cached too,
+ * keyed by those headers, so that clients that send the same settings with
+ * every request don't have them resolved by reflection every time.  They
+ * are shared by the requests with the same headers, and the parsers only
+ * read them.
+ */
+public class ParserGraph {
+
+    private static final int MAX_HEADER_CONFIGS = 1000;
+
+    private final Parser parser;
+    private final Parser hintedParser;
+
+    //headers -> configs derived from them
+    private final Map<List<String>, HeaderConfigs> headerConfigs = Collections.synchronizedMap(
+            new LinkedHashMap<List<String>, HeaderConfigs>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, HeaderConfigs> eldest) {
+                    return size() > MAX_HEADER_CONFIGS;
+                }
+            });
+
+    /**
+     * @param digester digester, or <code>null</code> not to digest documents
+     */
+    public ParserGraph(TikaConfig config, DigestingParser.Digester digester) {
+        AutoDetectParser autoDetectParser = new AutoDetectParser(config);
+        AutoDetectParser hintedAutoDetectParser = new AutoDetectParser(config);
+        hintedAutoDetectParser.setDetector(new ContentTypeHintDetector(config.getDetector()));
+        if (digester != null) {
+            parser = new DigestingParser(autoDetectParser, digester);
+            hintedParser = new DigestingParser(hintedAutoDetectParser, digester);
+        } else {
+            parser = autoDetectParser;
+            hintedParser = hintedAutoDetectParser;
+        }
+    }
+
+    /**
+     * @param contentTypeHint whether the Content-Type of the request
+     *                        overrides the detected type
+     * @return shared parser, wrapped in a {@link DigestingParser} if documents are digested
+     */
+    public Parser getParser(boolean contentTypeHint) {
+        return contentTypeHint ? hintedParser : parser;
+    }
+
+    /**
+     * @param httpHeaders headers of the request
+     * @param resolver derives the configs from the headers if they aren't cached
+     * @return configs derived from the X-Tika-OCR* and X-Tika-PDF* headers
+     */
+    public HeaderConfigs getHeaderConfigs(MultivaluedMap<String, String> httpHeaders,
+                                          Function<MultivaluedMap<String, String>, HeaderConfigs> resolver) {
+        //header names are case insensitive and arrive in any order
+        Map<String, String> sorted = new TreeMap<>();
+        for (String name : httpHeaders.keySet()) {
+            if (HeaderConfigs.isConfigHeader(name)) {
+                sorted.put(name.toLowerCase(Locale.ROOT), httpHeaders.getFirst(name));
+            }
+        }
+        if (sorted.isEmpty()) {
+            return HeaderConfigs.NONE;
+        }
+        List<String> key = new ArrayList<>(2 * sorted.size());
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            key.add(e.getKey());
+            key.add(e.getValue());
+        }
+        HeaderConfigs configs = headerConfigs.get(key);
+        if (configs == null) {
+            //invalid headers throw, and aren't cached
+            configs = resolver.apply(httpHeaders);
+            headerConfigs.put(key, configs);
+        }
+        return configs;
+    }
+
+    /**
+     * Configs derived from the X-Tika-OCR* and X-Tika-PDF* headers of a
+     * request; not to be changed once they are built.
+     */
+    public static class HeaderConfigs {
+
+        static final HeaderConfigs NONE = new HeaderConfigs(null, null);
+
+        private final TesseractOCRConfig ocrConfig;
+        private final PDFParserConfig pdfParserConfig;
+
+        /**
+         * @param ocrConfig OCR config, or <code>null</code> if no header sets one
+         * @param pdfParserConfig PDF config, or <code>null</code> if no header sets one
+         */
+        public HeaderConfigs(TesseractOCRConfig ocrConfig, PDFParserConfig pdfParserConfig) {
+            this.ocrConfig = ocrConfig;
+            this.pdfParserConfig = pdfParserConfig;
+        }
+
+        static boolean isConfigHeader(String name) {
+            return StringUtils.startsWith(name, TikaResource.X_TIKA_OCR_HEADER_PREFIX)
+                    || StringUtils.startsWith(name, TikaResource.X_TIKA_PDF_HEADER_PREFIX);
+        }
+
+        public TesseractOCRConfig getOcrConfig() {
+            return ocrConfig;
+        }
+
+        public PDFParserConfig getPdfParserConfig() {
+            return pdfParserConfig;
+        }
+    }
+
+    /**
+     * Trusts the Content-Type in the metadata, i.e. the one of the request,
+     * and falls back to detection without one.
+     */
+    public static class ContentTypeHintDetector implements Detector {
+
+        private final Detector detector;
+
+        public ContentTypeHintDetector(Detector detector) {
+            this.detector = detector;
+        }
+
+        @Override
+        public MediaType detect(InputStream inputStream, Metadata metadata) throws IOException {
+            String ct = metadata.get(HttpHeaders.CONTENT_TYPE);
+            //make sure never to return null -- TIKA-1845
+            MediaType type = null;
+            if (ct != null) {
+                //this can return null if ct is not a valid mime type
+                type = MediaType.parse(ct);
+            }
+            if (type != null) {
+                return type;
+            } else {
+                return detector.detect(inputStream, metadata);
+            }
+        }
+    }
+}
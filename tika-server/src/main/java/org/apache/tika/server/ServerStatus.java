@@ -19,11 +19,20 @@ package org.apache.tika.server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Status of the server and the tasks it is running.
+ * <p>
+ * Every parse starts and completes a task, so nothing here takes a lock:
+ * the tasks are kept in a concurrent map, and the watchdog scans them
+ * without blocking the request threads.
+ */
 public class ServerStatus {
 
     enum DIRECTIVES {
@@ -76,10 +85,12 @@ public class ServerStatus {
     };
     private static final Logger LOG = LoggerFactory.getLogger(ServerStatus.class);
 
-    private AtomicLong counter = new AtomicLong(0);
-    private Map<Long, TaskStatus> tasks = new HashMap<>();
+    //hands out the task ids and counts the files at the same time
+    private final AtomicLong counter = new AtomicLong(0);
+    private final Map<Long, TaskStatus> tasks = new ConcurrentHashMap<>();
+    private final Collection<TaskStatus> taskStatuses = Collections.unmodifiableCollection(tasks.values());
     private final boolean isLegacy;
-    private STATUS status = STATUS.OPERATING;
+    private volatile STATUS status = STATUS.OPERATING;
 
     public ServerStatus() {
         isLegacy = false;
@@ -89,9 +100,9 @@ public class ServerStatus {
         this.isLegacy = isLegacy;
     }
 
-    public synchronized long start(TASK task, String fileName) {
+    public long start(TASK task, String fileName) {
         long taskId = counter.incrementAndGet();
-        tasks.put(taskId, new TaskStatus(task, Instant.now(), fileName));
+        tasks.put(taskId, new TaskStatus(task, System.currentTimeMillis(), fileName));
         return taskId;
     }
 
@@ -101,28 +112,41 @@ public class ServerStatus {
      * @param taskId
      * @throws IllegalArgumentException if there is no task by that taskId in the collection
      */
-    public synchronized void complete(long taskId) throws IllegalArgumentException {
+    public void complete(long taskId) throws IllegalArgumentException {
         TaskStatus status = tasks.remove(taskId);
         if (status == null) {
             throw new IllegalArgumentException("TaskId is not in map:"+taskId);
         }
     }
 
-    public synchronized void setStatus(STATUS status) {
+    public void setStatus(STATUS status) {
         this.status = status;
     }
 
-    public synchronized STATUS getStatus() {
+    public STATUS getStatus() {
         return status;
     }
 
-    public synchronized Map<Long, TaskStatus> getTasks() {
-        Map<Long, TaskStatus> ret = new HashMap<>();
-        ret.putAll(tasks);
-        return ret;
+    /**
+     * @return a copy of the tasks that are running now
+     */
+    public Map<Long, TaskStatus> getTasks() {
+        return new HashMap<>(tasks);
+    }
+
+    /**
+     * @return a live, unmodifiable view of the tasks that are running now,
+     * which may be iterated while tasks start and complete
+     */
+    public Collection<TaskStatus> getTaskStatuses() {
+        return taskStatuses;
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
     }
 
-    public synchronized long getFilesProcessed() {
+    public long getFilesProcessed() {
         return counter.get();
     }
 
@@ -130,7 +154,7 @@ public class ServerStatus {
      *
      * @return true if this is legacy, otherwise whether or not status == OPERATING.
      */
-    public synchronized boolean isOperating() {
+    public boolean isOperating() {
         if (isLegacy) {
             return true;
         }
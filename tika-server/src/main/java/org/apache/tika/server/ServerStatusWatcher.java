@@ -23,13 +23,8 @@ import org.slf4j.LoggerFactory;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 
@@ -42,7 +37,7 @@ public class ServerStatusWatcher implements Runnable {
     private final long maxFiles;
     private final ServerTimeouts serverTimeouts;
     private final Path childStatusPath;
-    private final ByteBuffer statusBuffer = ByteBuffer.allocate(16);
+    private final StatusChannel statusChannel;
 
 
 
@@ -56,6 +51,7 @@ public class ServerStatusWatcher implements Runnable {
         this.maxFiles = maxFiles;
         this.serverTimeouts = serverTimeouts;
         this.childStatusPath = childStatusPath;
+        this.statusChannel = new StatusChannel(childStatusPath);
         serverStatus.setStatus(ServerStatus.STATUS.OPERATING);
         this.fromParent = new DataInputStream(inputStream);
         Thread statusWatcher = new Thread(new StatusWatcher());
@@ -106,28 +102,18 @@ public class ServerStatusWatcher implements Runnable {
         }
     }
 
-    private void writeStatus() throws IOException {
-        Instant started = Instant.now();
-        long elapsed = Duration.between(started, Instant.now()).toMillis();
-        try (FileChannel channel = FileChannel.open(childStatusPath,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE)) {
-            while (elapsed < serverTimeouts.getPingTimeoutMillis()) {
-                try (FileLock lock = channel.tryLock()) {
-                    if (lock != null) {
-                        ((Buffer) statusBuffer).position(0);
-                        statusBuffer.putLong(0, Instant.now().toEpochMilli());
-                        statusBuffer.putInt(8, serverStatus.getStatus().getInt());
-                        statusBuffer.putInt(12, serverStatus.getTasks().size());
-                        channel.write(statusBuffer);
-                        channel.force(true);
-                        return;
-                    }
-                }
-                elapsed = Duration.between(started, Instant.now()).toMillis();
-            }
+    //plain stores into the mapped status file; the parent reads them
+    //from the page cache, so there is nothing to lock or sync
+    private void writeStatus() {
+        long now = System.currentTimeMillis();
+        long longestTaskMillis = 0;
+        for (TaskStatus status : serverStatus.getTaskStatuses()) {
+            longestTaskMillis = Math.max(longestTaskMillis, now - status.started);
         }
-        throw new FatalException("Couldn't write to status file after trying for " + elapsed + " millis.");
+        Runtime runtime = Runtime.getRuntime();
+        statusChannel.write(now, serverStatus.getStatus().getInt(), serverStatus.getTaskCount(),
+                serverStatus.getFilesProcessed(), runtime.totalMemory() - runtime.freeMemory(),
+                longestTaskMillis);
     }
 
     private void checkForHitMaxFiles() {
@@ -141,16 +127,17 @@ public class ServerStatusWatcher implements Runnable {
     }
 
     private void checkForTaskTimeouts() {
-        Instant now = Instant.now();
-        for (TaskStatus status : serverStatus.getTasks().values()) {
-            long millisElapsed = Duration.between(status.started, now).toMillis();
+        long now = System.currentTimeMillis();
+        //iterates over the live tasks without copying or locking them
+        for (TaskStatus status : serverStatus.getTaskStatuses()) {
+            long millisElapsed = now - status.started;
             if (millisElapsed > serverTimeouts.getTaskTimeoutMillis()) {
                 serverStatus.setStatus(ServerStatus.STATUS.TIMEOUT);
-                if (status.fileName.isPresent()) {
+                if (status.fileName != null) {
                     LOG.error("Timeout task {}, millis elapsed {}, file {}" +
                                     "consider increasing the allowable time with the " +
                                     "-taskTimeoutMillis flag",
-                            status.task.toString(), Long.toString(millisElapsed), status.fileName.get());
+                            status.task.toString(), Long.toString(millisElapsed), status.fileName);
                 } else {
                     LOG.error("Timeout task {}, millis elapsed {}; " +
                                     "consider increasing the allowable time with the " +
@@ -173,6 +160,7 @@ public class ServerStatusWatcher implements Runnable {
         //the child process should try to delete the tmp file
         if (status == ServerStatus.STATUS.PARENT_EXCEPTION) {
             try {
+                statusChannel.close();
                 Files.delete(childStatusPath);
             } catch (IOException e) {
                 //swallow
@@ -212,14 +200,4 @@ public class ServerStatusWatcher implements Runnable {
             }
         }
     }
-
-    private static class FatalException extends RuntimeException {
-        public FatalException() {
-            super();
-        }
-
-        public FatalException(String msg) {
-            super(msg);
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import org.apache.tika.io.MappedBufferCleaner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodType.methodType;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The child's status, shared with the parent through a memory-mapped file.
+ * <p>
+ * Both processes map the file once and keep the mapping, so an update is
+ * a handful of stores into the page cache: no file is opened, locked or
+ * synced per ping.  The child is the only writer.  It guards each update
+ * with a sequence number that is odd while the update is in progress
+ * (a seqlock), and the parent retries a read until it sees the same even
+ * sequence number before and after it.
+ * <p>
+ * The buffer's loads and stores are plain accesses, so the sequence number
+ * is kept in order with the data by CPU fences: a store fence after the odd
+ * and before the even sequence number, and a load fence after the first and
+ * before the second read of it.  The fences are those of
+ * <code>sun.misc.Unsafe</code>, which act on the mapped memory that the
+ * other process sees, not just on this JVM's memory model.  If they aren't
+ * available, the ordering relies on HotSpot on a CPU with total store
+ * order, e.g. x86, which doesn't reorder stores with stores or loads with
+ * loads.
+ * <p>
+ * Layout, all big-endian:
+ * <pre>
+ *  0 long sequence number, 0 until the first update
+ *  8 long timestamp of the update, epoch millis
+ * 16 int  {@link ServerStatus.STATUS}
+ * 20 int  number of running tasks
+ * 24 long files processed
+ * 32 long heap used, bytes
+ * 40 long how long the longest running task has been running, millis
+ * </pre>
+ */
+final class StatusChannel implements Closeable {
+
+    static final int LENGTH = 64;
+
+    private static final int SEQUENCE = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int STATUS = 16;
+    private static final int NUM_TASKS = 20;
+    private static final int FILES_PROCESSED = 24;
+    private static final int HEAP_USED = 32;
+    private static final int LONGEST_TASK_MILLIS = 40;
+
+    private static final int MAX_READ_ATTEMPTS = 1000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatusChannel.class);
+
+    //Unsafe.storeFence() and Unsafe.loadFence(), null if they aren't available
+    private static final MethodHandle STORE_FENCE;
+    private static final MethodHandle LOAD_FENCE;
+
+    static {
+        MethodHandle storeFence = null;
+        MethodHandle loadFence = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            Object theUnsafe = f.get(null);
+            storeFence = lookup().findVirtual(unsafeClass, "storeFence", methodType(void.class))
+                    .bindTo(theUnsafe);
+            loadFence = lookup().findVirtual(unsafeClass, "loadFence", methodType(void.class))
+                    .bindTo(theUnsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Memory fences are not available; the status channel relies on " +
+                    "total store order", e);
+            storeFence = null;
+            loadFence = null;
+        }
+        STORE_FENCE = storeFence;
+        LOAD_FENCE = loadFence;
+    }
+
+    private final MappedByteBuffer buffer;
+    private long sequence = 0;
+    //the buffer must not be touched once it is unmapped
+    private boolean closed = false;
+
+    //without the fences, a volatile access at least keeps the JIT
+    //from moving the buffer's plain loads and stores across it
+    private volatile int fence;
+
+    StatusChannel(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+            //the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, LENGTH);
+        }
+    }
+
+    /**
+     * Publishes the child's status; only the child calls this.
+     */
+    synchronized void write(long timestamp, int status, int numTasks, long filesProcessed,
+                            long heapUsed, long longestTaskMillis) {
+        if (closed) {
+            return;
+        }
+        buffer.putLong(SEQUENCE, ++sequence);
+        storeFence();
+        buffer.putLong(TIMESTAMP, timestamp);
+        buffer.putInt(STATUS, status);
+        buffer.putInt(NUM_TASKS, numTasks);
+        buffer.putLong(FILES_PROCESSED, filesProcessed);
+        buffer.putLong(HEAP_USED, heapUsed);
+        buffer.putLong(LONGEST_TASK_MILLIS, longestTaskMillis);
+        storeFence();
+        buffer.putLong(SEQUENCE, ++sequence);
+    }
+
+    /**
+     * @return the latest consistent status, or <code>null</code> if the child
+     * hasn't written one yet, is in the middle of every attempted read, or
+     * the channel is closed
+     */
+    synchronized Status read() {
+        if (closed) {
+            return null;
+        }
+        for (int i = 0; i < MAX_READ_ATTEMPTS; i++) {
+            long before = buffer.getLong(SEQUENCE);
+            if (before == 0) {
+                return null;
+            }
+            if ((before & 1) == 0) {
+                loadFence();
+                Status status = new Status(buffer.getLong(TIMESTAMP), buffer.getInt(STATUS),
+                        buffer.getInt(NUM_TASKS), buffer.getLong(FILES_PROCESSED),
+                        buffer.getLong(HEAP_USED), buffer.getLong(LONGEST_TASK_MILLIS));
+                loadFence();
+                if (buffer.getLong(SEQUENCE) == before) {
+                    return status;
+                }
+            }
+            Thread.yield();
+        }
+        return null;
+    }
+
+    private void storeFence() {
+        fence(STORE_FENCE);
+    }
+
+    private void loadFence() {
+        fence(LOAD_FENCE);
+    }
+
+    private void fence(MethodHandle unsafeFence) {
+        if (unsafeFence == null) {
+            fence++;
+            return;
+        }
+        try {
+            unsafeFence.invokeExact();
+        } catch (Throwable t) {
+            //the fences don't throw
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Unmaps the file if the platform allows it, so that it can be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        MappedBufferCleaner.freeBuffer(buffer);
+    }
+
+    static class Status {
+        final long timestamp;
+        final int status;
+        final int numTasks;
+        final long filesProcessed;
+        final long heapUsed;
+        final long longestTaskMillis;
+
+        Status(long timestamp, int status, int numTasks, long filesProcessed,
+               long heapUsed, long longestTaskMillis) {
+            this.timestamp = timestamp;
+            this.status = status;
+            this.numTasks = numTasks;
+            this.filesProcessed = filesProcessed;
+            this.heapUsed = heapUsed;
+            this.longestTaskMillis = longestTaskMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Status{" +
+                    "timestamp=" + timestamp +
+                    ", status=" + status +
+                    ", numTasks=" + numTasks +
+                    ", filesProcessed=" + filesProcessed +
+                    ", heapUsed=" + heapUsed +
+                    ", longestTaskMillis=" + longestTaskMillis +
+                    '}';
+        }
+    }
+}
@@ -16,20 +16,17 @@
  */
 package org.apache.tika.server;
 
-import java.time.Instant;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class TaskStatus {
     final ServerStatus.TASK task;
-    final Instant started;
-    final Optional<String> fileName;
+    //epoch millis
+    final long started;
+    //may be null
+    final String fileName;
 
-    TaskStatus(ServerStatus.TASK task, Instant started, String fileName) {
+    TaskStatus(ServerStatus.TASK task, long started, String fileName) {
         this.task = task;
         this.started = started;
-        this.fileName = Optional.ofNullable(fileName);
+        this.fileName = fileName;
     }
 
 
@@ -18,7 +18,10 @@
 package org.apache.tika.server;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,13 +29,17 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.cxf.binding.BindingFactoryManager;
+import org.apache.cxf.buslifecycle.BusLifeCycleListener;
+import org.apache.cxf.buslifecycle.BusLifeCycleManager;
 import org.apache.cxf.jaxrs.JAXRSBindingFactory;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
@@ -45,6 +52,7 @@ import org.apache.tika.config.TikaConfig;
 import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.utils.BouncyCastleDigester;
 import org.apache.tika.parser.utils.CommonsDigester;
+import org.apache.tika.server.resource.AsyncResource;
 import org.apache.tika.server.resource.DetectorResource;
 import org.apache.tika.server.resource.LanguageResource;
 import org.apache.tika.server.resource.MetadataResource;
@@ -76,6 +84,12 @@ public class TikaServerCli {
 
     public static final int DEFAULT_PORT = 9998;
     private static final int DEFAULT_DIGEST_MARK_LIMIT = 20*1024*1024;
+    private static final int DEFAULT_PARSE_CACHE_ENTRY_MB = 16;
+    private static final int DEFAULT_PARSE_CACHE_DIR_MB = 1024;
+    private static final int DEFAULT_ASYNC_WORKERS = 2;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+    private static final int DEFAULT_ASYNC_RESULT_MINUTES = 60;
+    private static final long DEFAULT_ADMISSION_WAIT_MILLIS = 10000;
     public static final String DEFAULT_HOST = "localhost";
     public static final Set<String> LOG_LEVELS = new HashSet<>(Arrays.asList("debug", "info"));
     private static final Logger LOG = LoggerFactory.getLogger(TikaServerCli.class);
@@ -90,7 +104,8 @@ public class TikaServerCli {
     private static final List<String> ONLY_IN_SPAWN_CHILD_MODE =
             Arrays.asList(new String[] { "taskTimeoutMillis", "taskPulseMillis",
             "pingTimeoutMillis", "pingPulseMillis", "maxFiles", "javaHome", "maxRestarts",
-            "childStatusFile", "maxChildStartupMillis", "tmpFilePrefix"});
+            "childStatusFile", "maxChildStartupMillis", "tmpFilePrefix", "numChildren",
+            "standbyChild", "warmupDir"});
 
     private static Options getOptions() {
         Options options = new Options();
@@ -100,6 +115,31 @@ public class TikaServerCli {
         options.addOption("c", "config", true, "Tika Configuration file to override default config with.");
         options.addOption("d", "digest", true, "include digest in metadata, e.g. md5,sha1:32,sha256");
         options.addOption("dml", "digestMarkLimit", true, "max number of bytes to mark on stream for digest");
+        options.addOption("shareParsers", false, "build the parsers once and share them between requests, " +
+                "instead of building them for every request");
+        options.addOption("parseCacheMB", true, "cache the output of /tika parses in this many megabytes of memory, " +
+                "keyed by the digest of the document and its settings (default = no cache)");
+        options.addOption("parseCacheEntryMB", true, "don't cache outputs larger than this many megabytes (default = " +
+                DEFAULT_PARSE_CACHE_ENTRY_MB + ")");
+        options.addOption("parseCacheDir", true, "also cache the outputs in this directory, which may be shared by " +
+                "several servers; clear it when changing the Tika configuration");
+        options.addOption("parseCacheDirMB", true, "maximum size of the cache directory (default = " +
+                DEFAULT_PARSE_CACHE_DIR_MB + ")");
+        options.addOption("asyncWorkers", true, "number of /async jobs parsed at the same time (default = " +
+                DEFAULT_ASYNC_WORKERS + ")");
+        options.addOption("asyncQueueSize", true, "number of /async jobs that may wait for a worker before " +
+                "new jobs are rejected (default = " + DEFAULT_ASYNC_QUEUE_SIZE + ")");
+        options.addOption("maxConcurrentParses", true, "admission control: number of permits shared by the " +
+                "parses that run at the same time; further parses wait, or are rejected with 429 or 503 " +
+                "and Retry-After (default = no limit)");
+        options.addOption("parseQueueSize", true, "admission control: number of parses that may wait for " +
+                "permits (default = maxConcurrentParses)");
+        options.addOption("parseQueueMillis", true, "admission control: how long a parse may wait for " +
+                "permits (default = " + DEFAULT_ADMISSION_WAIT_MILLIS + ")");
+        options.addOption("parseBytesPerPermit", true, "admission control: weight parses by one permit per " +
+                "this many bytes of Content-Length, doubled for images (default = one permit per parse)");
+        options.addOption("asyncResultMinutes", true, "how long the results of /async jobs are kept (default = " +
+                DEFAULT_ASYNC_RESULT_MINUTES + ")");
         options.addOption("l", "log", true, "request URI log level ('debug' or 'info')");
         options.addOption("s", "includeStack", false, "whether or not to return a stack trace\nif there is an exception during 'parse'");
         options.addOption("?", "help", false, "this help message");
@@ -111,6 +151,13 @@ public class TikaServerCli {
         options.addOption("pingTimeoutMillis", true, "Only in spawn child mode: how long to wait to wait for a ping and/or ping response.");
         options.addOption("pingPulseMillis", true, "Only in spawn child mode: how often to check if a ping has timed out.");
         options.addOption("maxChildStartupMillis", true, "Only in spawn child mode: Maximum number of millis to wait for the child process to startup.");
+        options.addOption("numChildren", true, "Only in spawn child mode: number of child processes; with more than one, " +
+                "the children listen on the ports that follow the server's port, and the parent forwards each request " +
+                "to the least loaded child (default = 1)");
+        options.addOption("standbyChild", false, "Only in spawn child mode: keep a child started and warmed up, " +
+                "which takes over right away when a child has to be restarted; it listens on the port after the children's");
+        options.addOption("warmupDir", true, "Only in spawn child mode: warm the standby child up by parsing the " +
+                "documents in this directory (default = a small built-in corpus)");
         options.addOption("maxRestarts", true, "Only in spawn child mode: how many times to restart child process, default is -1 (always restart)");
         options.addOption("maxFiles", true, "Only in spawn child mode: shutdown server after this many files (to handle parsers that might introduce " +
                 "slowly building memory leaks); the default is "+DEFAULT_MAX_FILES +". Set to -1 to turn this off.");
@@ -145,7 +192,12 @@ public class TikaServerCli {
         //and they won't be needed in legacy.
         CommandLine line = cliParser.parse(options, stripChildArgs(args));
         if (line.hasOption("spawnChild")) {
-            TikaServerWatchDog watchDog = new TikaServerWatchDog();
+            int numChildren = Integer.parseInt(line.getOptionValue("numChildren", "1"));
+            TikaServerWatchDog watchDog = new TikaServerWatchDog(numChildren, getHost(line), getPort(line));
+            if (line.hasOption("standbyChild")) {
+                watchDog.enableStandbyChild(line.hasOption("warmupDir") ?
+                        Paths.get(line.getOptionValue("warmupDir")) : null);
+            }
             watchDog.execute(args, configureServerTimeouts(line));
         } else {
             if (! line.hasOption("child")) {
@@ -172,25 +224,35 @@ public class TikaServerCli {
         return ret.toArray(new String[ret.size()]);
     }
 
-    private static void executeLegacy(CommandLine line, Options options) throws Exception {
-            if (line.hasOption("help")) {
-                usage(options);
+    private static String getHost(CommandLine line) {
+        String host = DEFAULT_HOST;
+
+        if (line.hasOption("host")) {
+            host = line.getOptionValue("host");
+            if ("*".equals(host)) {
+                host = "0.0.0.0";
             }
+        }
+        return host;
+    }
 
-            String host = DEFAULT_HOST;
+    private static int getPort(CommandLine line) {
+        int port = DEFAULT_PORT;
 
-            if (line.hasOption("host")) {
-                host = line.getOptionValue("host");
-                if ("*".equals(host)) {
-                    host = "0.0.0.0";
-                }
+        if (line.hasOption("port")) {
+            port = Integer.valueOf(line.getOptionValue("port"));
+        }
+        return port;
+    }
+
+    private static void executeLegacy(CommandLine line, Options options) throws Exception {
+            if (line.hasOption("help")) {
+                usage(options);
             }
 
-            int port = DEFAULT_PORT;
+            String host = getHost(line);
 
-            if (line.hasOption("port")) {
-                port = Integer.valueOf(line.getOptionValue("port"));
-            }
+            int port = getPort(line);
 
             boolean returnStackTrace = false;
             if (line.hasOption("includeStack")) {
@@ -290,7 +352,20 @@ public class TikaServerCli {
             } else {
                 serverStatus = new ServerStatus(true);
             }
-            TikaResource.init(tika, digester, inputStreamFactory, serverStatus);
+            ParseCache parseCache = null;
+            if (line.hasOption("parseCacheMB") || line.hasOption("parseCacheDir")) {
+                parseCache = createParseCache(line);
+            }
+            AdmissionController admissionController = null;
+            if (line.hasOption("maxConcurrentParses")) {
+                admissionController = createAdmissionController(line);
+            }
+            ParserGraph parserGraph = null;
+            if (line.hasOption("shareParsers")) {
+                parserGraph = new ParserGraph(tika, digester);
+            }
+            TikaResource.init(tika, digester, inputStreamFactory, serverStatus, parseCache, admissionController,
+                    parserGraph);
             JAXRSServerFactoryBean sf = new JAXRSServerFactoryBean();
 
             List<ResourceProvider> rCoreProviders = new ArrayList<>();
@@ -301,6 +376,8 @@ public class TikaServerCli {
             rCoreProviders.add(new SingletonResourceProvider(new TranslateResource(serverStatus)));
             rCoreProviders.add(new SingletonResourceProvider(new TikaResource()));
             rCoreProviders.add(new SingletonResourceProvider(new UnpackerResource()));
+            final AsyncResource asyncResource = createAsyncResource(line, returnStackTrace);
+            rCoreProviders.add(new SingletonResourceProvider(asyncResource));
             rCoreProviders.add(new SingletonResourceProvider(new TikaMimeTypes()));
             rCoreProviders.add(new SingletonResourceProvider(new TikaDetectors()));
             rCoreProviders.add(new SingletonResourceProvider(new TikaParsers()));
@@ -339,10 +416,74 @@ public class TikaServerCli {
             JAXRSBindingFactory factory = new JAXRSBindingFactory();
             factory.setBus(sf.getBus());
             manager.registerBindingFactory(JAXRSBindingFactory.JAXRS_BINDING_ID, factory);
+            //stops the async workers when the server stops
+            BusLifeCycleManager lifeCycle = sf.getBus().getExtension(BusLifeCycleManager.class);
+            if (lifeCycle != null) {
+                lifeCycle.registerLifeCycleListener(new BusLifeCycleListener() {
+                    @Override
+                    public void initComplete() {
+                    }
+
+                    @Override
+                    public void preShutdown() {
+                    }
+
+                    @Override
+                    public void postShutdown() {
+                        asyncResource.close();
+                    }
+                });
+            }
             sf.create();
             LOG.info("Started Apache Tika server at {}", url);
     }
 
+    private static ParseCache createParseCache(CommandLine line) throws IOException {
+        long memoryMB = Long.parseLong(line.getOptionValue("parseCacheMB", "0"));
+        int entryMB = Integer.parseInt(line.getOptionValue("parseCacheEntryMB",
+                Integer.toString(DEFAULT_PARSE_CACHE_ENTRY_MB)));
+        Path dir = null;
+        long dirMB = 0;
+        if (line.hasOption("parseCacheDir")) {
+            dir = Paths.get(line.getOptionValue("parseCacheDir"));
+            dirMB = Long.parseLong(line.getOptionValue("parseCacheDirMB",
+                    Integer.toString(DEFAULT_PARSE_CACHE_DIR_MB)));
+        }
+        //outputs of other versions and configurations must not be mixed up in the directory
+        String salt = new Tika().toString();
+        if (line.hasOption("config")) {
+            salt += " " + DigestUtils.sha256Hex(Files.readAllBytes(Paths.get(line.getOptionValue("config"))));
+        }
+        LOG.info("Caching parse outputs in {} MB of memory{}", memoryMB,
+                dir == null ? "" : " and " + dirMB + " MB in " + dir);
+        return new ParseCache(salt, DEFAULT_DIGEST_MARK_LIMIT, memoryMB * 1024 * 1024,
+                (int) Math.min(Integer.MAX_VALUE, entryMB * 1024L * 1024L), dir, dirMB * 1024 * 1024);
+    }
+
+    private static AdmissionController createAdmissionController(CommandLine line) {
+        int maxPermits = Integer.parseInt(line.getOptionValue("maxConcurrentParses"));
+        int queueSize = Integer.parseInt(line.getOptionValue("parseQueueSize", Integer.toString(maxPermits)));
+        long waitMillis = Long.parseLong(line.getOptionValue("parseQueueMillis",
+                Long.toString(DEFAULT_ADMISSION_WAIT_MILLIS)));
+        long bytesPerPermit = Long.parseLong(line.getOptionValue("parseBytesPerPermit", "0"));
+        LOG.info("Admitting parses with up to {} permits, {} waiting for up to {} ms",
+                maxPermits, queueSize, waitMillis);
+        AdmissionController admissionController =
+                new AdmissionController(maxPermits, queueSize, waitMillis, bytesPerPermit);
+        admissionController.register();
+        return admissionController;
+    }
+
+    private static AsyncResource createAsyncResource(CommandLine line, boolean returnStackTrace) {
+        int workers = Integer.parseInt(line.getOptionValue("asyncWorkers",
+                Integer.toString(DEFAULT_ASYNC_WORKERS)));
+        int queueSize = Integer.parseInt(line.getOptionValue("asyncQueueSize",
+                Integer.toString(DEFAULT_ASYNC_QUEUE_SIZE)));
+        long resultMinutes = Long.parseLong(line.getOptionValue("asyncResultMinutes",
+                Integer.toString(DEFAULT_ASYNC_RESULT_MINUTES)));
+        return new AsyncResource(workers, queueSize, TimeUnit.MINUTES.toMillis(resultMinutes), returnStackTrace);
+    }
+
     private static void usage(Options options) {
         HelpFormatter helpFormatter = new HelpFormatter();
         helpFormatter.printHelp("tikaserver", options);
@@ -17,7 +17,6 @@
 
 package org.apache.tika.server;
 
-import org.apache.tika.io.MappedBufferCleaner;
 import org.apache.tika.utils.ProcessUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,26 +27,35 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
-
-import static java.nio.file.StandardOpenOption.READ;
-import static java.nio.file.StandardOpenOption.WRITE;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the server in one or more child processes, and restarts a child
+ * if it stops responding to pings, reports a non-operating status, or dies.
+ * <p>
+ * With a single child, the child listens on the server's port.  With more,
+ * the children listen on the ports that follow it, and a
+ * {@link ChildDispatcher} in this process listens on the server's port and
+ * forwards each request to the least loaded child.  A child is restarted on
+ * its own while the others keep serving.
+ * <p>
+ * Optionally, a standby child is kept started and warmed up; a child that
+ * fails is replaced by the standby right away, and the next standby is
+ * started in the background.
+ */
 public class TikaServerWatchDog {
 
     private enum CHILD_STATUS {
@@ -58,47 +66,113 @@ public class TikaServerWatchDog {
 
     private static final Logger LOG = LoggerFactory.getLogger(TikaServerWatchDog.class);
     private static final String DEFAULT_CHILD_STATUS_FILE_PREFIX = "tika-server-child-process-mmap-";
+    private static final long MIN_DISPATCH_WAIT_MILLIS = 1000;
+
+    private final int numChildren;
+    private final String host;
+    private final int port;
+    private final List<ChildSlot> slots = new ArrayList<>();
+    private final AtomicInteger restarts = new AtomicInteger();
+    private boolean standbyChild = false;
+    private Path warmupDir = null;
+    private String[] args;
+    private ServerTimeouts serverTimeouts;
+    private Standby standby = null;
+
+    public TikaServerWatchDog() {
+        this(1, TikaServerCli.DEFAULT_HOST, TikaServerCli.DEFAULT_PORT);
+    }
 
-    private Object[] childStatusLock = new Object[0];
-    private volatile CHILD_STATUS childStatus = CHILD_STATUS.INITIALIZING;
-    private volatile Instant lastPing = null;
-    private ChildProcess childProcess = null;
+    /**
+     * @param numChildren number of child processes
+     * @param host host that the server listens on
+     * @param port port that the server listens on; with more than one child,
+     *             the children listen on the <code>numChildren</code> ports that follow it
+     */
+    public TikaServerWatchDog(int numChildren, String host, int port) {
+        if (numChildren < 1) {
+            throw new IllegalArgumentException("numChildren must be > 0: " + numChildren);
+        }
+        this.numChildren = numChildren;
+        this.host = host;
+        this.port = port;
+    }
 
+    /**
+     * Keeps a standby child started and warmed up, which takes over right
+     * away from a child that has to be restarted.  The standby listens on
+     * the port after the children's, and requests go through the
+     * dispatcher, even with a single child.
+     *
+     * @param warmupDir documents to warm the standby up with, or <code>null</code>
+     *                  for a small built-in corpus
+     */
+    public void enableStandbyChild(Path warmupDir) {
+        this.standbyChild = true;
+        this.warmupDir = warmupDir;
+    }
 
     public void execute(String[] args, ServerTimeouts serverTimeouts) throws Exception {
         LOG.info("server watch dog is starting up");
+        this.args = args;
+        this.serverTimeouts = serverTimeouts;
+        boolean dispatch = numChildren > 1 || standbyChild;
+        if (!dispatch) {
+            slots.add(new ChildSlot(0, -1));
+        } else {
+            for (int i = 0; i < numChildren; i++) {
+                slots.add(new ChildSlot(i, port + 1 + i));
+            }
+        }
         startPingTimer(serverTimeouts);
-        try {
-            childProcess = new ChildProcess(args, serverTimeouts);
-            setChildStatus(CHILD_STATUS.RUNNING);
-            int restarts = 0;
-            while (true) {
-                if (!childProcess.ping()) {
-                    LOG.debug("bad ping, initializing");
-                    setChildStatus(CHILD_STATUS.INITIALIZING);
-                    lastPing = null;
-                    childProcess.close();
-                    LOG.debug("About to restart the child process");
-                    childProcess = new ChildProcess(args, serverTimeouts);
-                    LOG.info("Successfully restarted child process -- {} restarts so far)", restarts);
-                    setChildStatus(CHILD_STATUS.RUNNING);
-                    restarts++;
-                    if (serverTimeouts.getMaxRestarts() > -1 && restarts >= serverTimeouts.getMaxRestarts()) {
-                        LOG.warn("hit max restarts: "+restarts+". Stopping now");
-                        break;
-                    }
+        if (!dispatch) {
+            slots.get(0).supervise();
+            return;
+        }
+
+        //long enough for a slot to notice a failed child and hand over to the standby
+        long maxWaitMillis = Math.max(MIN_DISPATCH_WAIT_MILLIS, 2 * serverTimeouts.getPingPulseMillis());
+        ChildDispatcher dispatcher = new ChildDispatcher(host, port, slots, maxWaitMillis);
+        //the first slot to stop, e.g. after max restarts, stops the others
+        CountDownLatch stopped = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (ChildSlot slot : slots) {
+            Thread thread = new Thread(() -> {
+                try {
+                    slot.supervise();
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    stopped.countDown();
                 }
-                Thread.sleep(serverTimeouts.getPingPulseMillis());
+            }, "tika-child-watcher-" + slot.index);
+            threads.add(thread);
+        }
+        if (standbyChild) {
+            standby = new Standby(port + numChildren + 1, new ChildWarmup(host, warmupDir));
+            threads.add(new Thread(standby, "tika-standby-child-watcher"));
+        }
+        try {
+            dispatcher.start();
+            for (Thread thread : threads) {
+                thread.start();
             }
+            stopped.await();
         } catch (InterruptedException e) {
             //interrupted...shutting down
         } finally {
-            setChildStatus(CHILD_STATUS.SHUTTING_DOWN);
             LOG.debug("about to shutdown");
-            if (childProcess != null) {
-                LOG.info("about to shutdown process");
-                childProcess.close();
+            dispatcher.stop();
+            for (Thread thread : threads) {
+                thread.interrupt();
             }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
         }
     }
 
@@ -113,26 +187,8 @@ public class TikaServerWatchDog {
             @Override
             public void run() {
                 while (true) {
-                    long tmpLastPing = -1L;
-                    synchronized (childStatusLock) {
-                        if (childStatus == CHILD_STATUS.RUNNING) {
-                            tmpLastPing = lastPing.toEpochMilli();
-                        }
-                    }
-                    if (tmpLastPing > 0) {
-                        long elapsed = Duration.between(Instant.ofEpochMilli(tmpLastPing), Instant.now()).toMillis();
-                        if (elapsed > serverTimeouts.getPingTimeoutMillis()) {
-                            Process processToDestroy = null;
-                            try {
-                                processToDestroy = childProcess.process;
-                                LOG.warn("{} ms have elapsed since last successful ping. Destroying child now",
-                                        elapsed);
-                                destroyChildForcibly(processToDestroy);
-                                childProcess.close();
-                            } catch (NullPointerException e) {
-                                //ignore
-                            }
-                        }
+                    for (ChildSlot slot : slots) {
+                        slot.checkLastPing();
                     }
                     try {
                         Thread.sleep(serverTimeouts.getPingPulseMillis());
@@ -148,16 +204,26 @@ public class TikaServerWatchDog {
 
     }
 
-    private void setChildStatus(CHILD_STATUS status) {
-        synchronized (childStatusLock) {
-            childStatus = status;
+    //replaces the port, so that each child listens on its own
+    private static String[] setPort(String[] args, int port) {
+        List<String> argList = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-p") || args[i].equals("-port") || args[i].equals("--port")) {
+                i++;//skip argument value
+                continue;
+            }
+            argList.add(args[i]);
         }
+        argList.add("-p");
+        argList.add(Integer.toString(port));
+        return argList.toArray(new String[0]);
     }
 
     private static List<String> extractArgs(String[] args) {
         List<String> argList = new ArrayList<>();
         for (int i = 0; i < args.length; i++) {
-            if (args[i].startsWith("-J") || args[i].equals("-spawnChild") || args[i].equals("--spawnChild")) {
+            if (args[i].startsWith("-J") || args[i].equals("-spawnChild") || args[i].equals("--spawnChild")
+                    || args[i].equals("-standbyChild")) {
                 continue;
             }
             if (args[i].equals("-javaHome")) {
@@ -167,6 +233,10 @@ public class TikaServerWatchDog {
                 i++;//skip argument value
                 continue;
             }
+            if (args[i].equals("-numChildren") || args[i].equals("-warmupDir")) {
+                i++;//skip argument value
+                continue;
+            }
 
             argList.add(args[i]);
         }
@@ -213,16 +283,201 @@ public class TikaServerWatchDog {
         return jvmArgs;
     }
 
+    //supervises one child process, restarting it as needed
+    private class ChildSlot implements ChildDispatcher.Child {
+        private final int index;
+        private final int initialPort;
+        private final Object[] childStatusLock = new Object[0];
+        private volatile CHILD_STATUS childStatus = CHILD_STATUS.INITIALIZING;
+        private volatile ChildProcess childProcess = null;
+
+        /**
+         * @param initialPort port for the first child, or -1 to use the server's arguments as is
+         */
+        private ChildSlot(int index, int initialPort) {
+            this.index = index;
+            this.initialPort = initialPort;
+        }
+
+        private void supervise() throws Exception {
+            try {
+                childProcess = new ChildProcess(initialPort);
+                setChildStatus(CHILD_STATUS.RUNNING);
+                while (true) {
+                    if (!childProcess.ping()) {
+                        LOG.debug("bad ping from child {}, initializing", index);
+                        setChildStatus(CHILD_STATUS.INITIALIZING);
+                        ChildProcess failed = childProcess;
+                        ChildProcess standbyProcess = standby == null ? null : standby.take();
+                        if (standbyProcess != null) {
+                            //serve from the standby while the failed child is cleaned up
+                            childProcess = standbyProcess;
+                            setChildStatus(CHILD_STATUS.RUNNING);
+                            failed.close();
+                            standby.replace(failed.port);
+                            LOG.info("Handed child {} over to the standby child on port {} -- {} restarts so far",
+                                    index, standbyProcess.port, restarts.get());
+                        } else {
+                            failed.close();
+                            LOG.debug("About to restart child process {}", index);
+                            childProcess = new ChildProcess(failed.port);
+                            LOG.info("Successfully restarted child process {} -- {} restarts so far)",
+                                    index, restarts.get());
+                            setChildStatus(CHILD_STATUS.RUNNING);
+                        }
+                        int restartCount = restarts.incrementAndGet();
+                        if (serverTimeouts.getMaxRestarts() > -1 && restartCount >= serverTimeouts.getMaxRestarts()) {
+                            LOG.warn("hit max restarts: "+restartCount+". Stopping now");
+                            break;
+                        }
+                    }
+                    Thread.sleep(serverTimeouts.getPingPulseMillis());
+                }
+            } catch (InterruptedException e) {
+                //interrupted...shutting down
+            } finally {
+                setChildStatus(CHILD_STATUS.SHUTTING_DOWN);
+                if (childProcess != null) {
+                    LOG.info("about to shutdown process {}", index);
+                    childProcess.close();
+                }
+            }
+        }
+
+        private void checkLastPing() {
+            ChildProcess tmpChildProcess = null;
+            long tmpLastPing = -1L;
+            synchronized (childStatusLock) {
+                if (childStatus == CHILD_STATUS.RUNNING) {
+                    tmpChildProcess = childProcess;
+                    tmpLastPing = tmpChildProcess.lastPing.toEpochMilli();
+                }
+            }
+            if (tmpLastPing > 0) {
+                long elapsed = Duration.between(Instant.ofEpochMilli(tmpLastPing), Instant.now()).toMillis();
+                if (elapsed > serverTimeouts.getPingTimeoutMillis()) {
+                    LOG.warn("{} ms have elapsed since last successful ping. Destroying child {} now",
+                            elapsed, index);
+                    destroyChildForcibly(tmpChildProcess.process);
+                    tmpChildProcess.close();
+                }
+            }
+        }
+
+        private void setChildStatus(CHILD_STATUS status) {
+            synchronized (childStatusLock) {
+                childStatus = status;
+            }
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return childStatus == CHILD_STATUS.RUNNING;
+        }
+
+        @Override
+        public int getNumTasks() {
+            ChildProcess tmpChildProcess = childProcess;
+            return tmpChildProcess == null ? 0 : tmpChildProcess.numTasks;
+        }
+
+        @Override
+        public int getPort() {
+            return childProcess.port;
+        }
+    }
+
+    //keeps a child started and warmed up, to take over from a failed one
+    private class Standby implements Runnable {
+        //the port for the next standby; a standby that takes over
+        //gives up its port, and the failed child's port is reused
+        private final BlockingQueue<Integer> freePorts = new LinkedBlockingQueue<>();
+        private final AtomicReference<ChildProcess> ready = new AtomicReference<>();
+        private final ChildWarmup warmup;
+
+        private Standby(int port, ChildWarmup warmup) {
+            this.warmup = warmup;
+            freePorts.add(port);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int standbyPort = freePorts.take();
+                    ChildProcess standbyProcess = null;
+                    try {
+                        standbyProcess = new ChildProcess(standbyPort);
+                        warmup.warmUp(standbyPort, serverTimeouts.getMaxChildStartupMillis());
+                    } catch (InterruptedException e) {
+                        if (standbyProcess != null) {
+                            standbyProcess.close();
+                        }
+                        return;
+                    } catch (Exception e) {
+                        LOG.warn("Couldn't start the standby child on port {}", standbyPort, e);
+                        if (standbyProcess != null) {
+                            standbyProcess.close();
+                        }
+                        freePorts.add(standbyPort);
+                        Thread.sleep(serverTimeouts.getPingPulseMillis());
+                        continue;
+                    }
+                    ready.set(standbyProcess);
+                    LOG.info("Standby child is ready on port {}", standbyPort);
+                    //keep the standby alive until a slot takes it
+                    while (ready.get() == standbyProcess) {
+                        if (!standbyProcess.ping() && ready.compareAndSet(standbyProcess, null)) {
+                            LOG.warn("Standby child on port {} failed; starting another", standbyPort);
+                            standbyProcess.close();
+                            freePorts.add(standbyPort);
+                            break;
+                        }
+                        Thread.sleep(serverTimeouts.getPingPulseMillis());
+                    }
+                }
+            } catch (InterruptedException e) {
+                //interrupted...shutting down
+            } finally {
+                ChildProcess standbyProcess = ready.getAndSet(null);
+                if (standbyProcess != null) {
+                    standbyProcess.close();
+                }
+            }
+        }
+
+        /**
+         * @return the standby, or <code>null</code> if none is ready
+         */
+        private ChildProcess take() {
+            return ready.getAndSet(null);
+        }
+
+        /**
+         * Starts the next standby on the port of a failed child.
+         */
+        private void replace(int port) {
+            freePorts.add(port);
+        }
+    }
+
     private class ChildProcess {
         private Thread SHUTDOWN_HOOK = null;
 
         private final Process process;
         private final DataOutputStream toChild;
-        private final ServerTimeouts serverTimeouts;
         private final Path childStatusFile;
-        private final ByteBuffer statusBuffer = ByteBuffer.allocate(16);
-
-        private ChildProcess(String[] args, ServerTimeouts serverTimeouts) throws Exception {
+        private final StatusChannel statusChannel;
+        private final int port;
+        private volatile Instant lastPing = null;
+        private volatile int numTasks = 0;
+
+        /**
+         * @param port port that the child listens on, or -1 to use the server's arguments as is
+         */
+        private ChildProcess(int port) throws Exception {
+            this.port = port;
+            String[] args = port < 0 ? TikaServerWatchDog.this.args : setPort(TikaServerWatchDog.this.args, port);
             String prefix = DEFAULT_CHILD_STATUS_FILE_PREFIX;
             for (int i = 0; i < args.length; i++) {
                 if (args[i].equals("-tmpFilePrefix")) {
@@ -231,22 +486,17 @@ public class TikaServerWatchDog {
             }
 
             this.childStatusFile = Files.createTempFile(prefix, "");
-            this.serverTimeouts = serverTimeouts;
+            //mapped once for the life of the child, see StatusChannel
+            this.statusChannel = new StatusChannel(childStatusFile);
             this.process = startProcess(args, childStatusFile);
 
-            //wait for file to be written/initialized by child process
+            //wait for the first status to be written by child process
             Instant start = Instant.now();
             long elapsed = Duration.between(start, Instant.now()).toMillis();
-            try {
-                while (process.isAlive() && Files.size(childStatusFile) < 12
-                        && elapsed < serverTimeouts.getMaxChildStartupMillis()) {
-                    Thread.sleep(50);
-                    elapsed = Duration.between(start, Instant.now()).toMillis();
-                }
-            } catch (IOException e) {
-                //the childStatusFile can be deleted by the
-                //child process if it closes...this can lead to a NoSuchFileException
-                LOG.warn("failed to start child process", e);
+            while (process.isAlive() && statusChannel.read() == null
+                    && elapsed < serverTimeouts.getMaxChildStartupMillis()) {
+                Thread.sleep(50);
+                elapsed = Duration.between(start, Instant.now()).toMillis();
             }
 
             if (elapsed > serverTimeouts.getMaxChildStartupMillis()) {
@@ -266,7 +516,8 @@ public class TikaServerWatchDog {
             lastPing = Instant.now();
         }
 
-        public boolean ping() {
+        //synchronized, as a standby may be pinged by two threads while it is taken over
+        public synchronized boolean ping() {
             if (!process.isAlive()) {
                 LOG.debug("process is not alive");
                 return false;
@@ -278,7 +529,7 @@ public class TikaServerWatchDog {
                 LOG.warn("Exception pinging child process", e);
                 return false;
             }
-            ChildStatus childStatus = null;
+            StatusChannel.Status childStatus = null;
             try {
                 childStatus = readStatus();
             } catch (Exception e) {
@@ -294,8 +545,8 @@ public class TikaServerWatchDog {
 
             long elapsedSinceLastUpdate =
                     Duration.between(Instant.ofEpochMilli(childStatus.timestamp), Instant.now()).toMillis();
-            LOG.debug("last update: {}, elapsed:{}, status:{}", childStatus.timestamp, elapsedSinceLastUpdate,
-                    childStatus.status);
+            LOG.debug("last update: {}, elapsed:{}, child status:{}", childStatus.timestamp,
+                    elapsedSinceLastUpdate, childStatus);
 
             if (elapsedSinceLastUpdate >
                     serverTimeouts.getPingTimeoutMillis()) {
@@ -305,31 +556,22 @@ public class TikaServerWatchDog {
                 return false;
             }
 
+            numTasks = childStatus.numTasks;
             lastPing = Instant.now();
             return true;
         }
 
-        private ChildStatus readStatus() throws Exception {
+        private StatusChannel.Status readStatus() throws Exception {
             Instant started = Instant.now();
-            Long elapsed = Duration.between(started, Instant.now()).toMillis();
-            //only reading, but need to include write to allow for locking
-            try (FileChannel fc = FileChannel.open(childStatusFile, READ, WRITE)) {
-
-                while (elapsed < serverTimeouts.getPingTimeoutMillis()) {
-                    try (FileLock lock = fc.tryLock(0, 16, true)) {
-                        if (lock != null) {
-                            ((Buffer)statusBuffer).position(0);
-                            fc.read(statusBuffer);
-                            long timestamp = statusBuffer.getLong(0);
-                            int status = statusBuffer.getInt(8);
-                            int numTasks = statusBuffer.getInt(12);
-                            return new ChildStatus(timestamp, status, numTasks);
-                        }
-                    } catch (OverlappingFileLockException e) {
-                        //swallow
-                    }
-                    elapsed = Duration.between(started, Instant.now()).toMillis();
+            long elapsed = Duration.between(started, Instant.now()).toMillis();
+            //the child's update may be mid-flight or not yet visible; no locks to wait for
+            while (elapsed < serverTimeouts.getPingTimeoutMillis()) {
+                StatusChannel.Status status = statusChannel.read();
+                if (status != null) {
+                    return status;
                 }
+                Thread.sleep(1);
+                elapsed = Duration.between(started, Instant.now()).toMillis();
             }
             throw new RuntimeException("couldn't read from status file after "+elapsed +" millis");
         }
@@ -355,6 +597,13 @@ public class TikaServerWatchDog {
             }
             destroyChildForcibly(process);
 
+            if (statusChannel != null) {
+                try {
+                    statusChannel.close();
+                } catch (IOException e) {
+                    LOG.debug("Problem unmapping child status file", e);
+                }
+            }
             if (childStatusFile != null) {
                 try {
                     if (Files.isRegularFile(childStatusFile)) {
@@ -441,25 +690,4 @@ public class TikaServerWatchDog {
         }
     }
 
-    private static class ChildStatus {
-        private final long timestamp;
-        private final int status;
-        private final int numTasks;
-
-        public ChildStatus(long timestamp, int status, int numTasks) {
-            this.timestamp = timestamp;
-            this.status = status;
-            this.numTasks = numTasks;
-        }
-
-        @Override
-        public String toString() {
-            return "ChildStatus{" +
-                    "timestamp=" + timestamp +
-                    ", status=" + status +
-                    ", numTasks=" + numTasks +
-                    '}';
-        }
-    }
-
 }
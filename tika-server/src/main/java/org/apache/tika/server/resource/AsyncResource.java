@@ -0,0 +1,535 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server.resource;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.stream.JsonWriter;
+import org.apache.tika.io.IOUtils;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.server.AdmissionController;
+import org.apache.tika.server.TikaServerParseException;
+import org.apache.tika.server.TikaServerParseExceptionMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses documents in the background so that long parses don't hold
+ * an HTTP connection open.
+ * <p>
+ * A PUT to /async/text, /async/main, /async/html, /async/xml or
+ * /async/rmeta[/handler] spools the document, queues the job and answers
+ * 202 with the job's status, whose id is also in the Location header.
+ * The same headers as on the synchronous endpoints configure the parse.
+ * When the queue is full, the answer is 503.
+ * <p>
+ * GET /async/{id} returns the job's status.  GET /async/{id}/result
+ * returns the output once the job has finished, or the status code and
+ * message of its failure; with <code>?wait=seconds</code>, it waits up
+ * to that long for the job to finish before answering 202 with the
+ * status.  DELETE /async/{id} cancels a job or removes its result.
+ * Results that aren't deleted expire after a configurable time; they are
+ * swept in the background, so that their files don't outlive them.
+ * <p>
+ * The parses go through {@link TikaResource}, so they are registered as
+ * tasks with the server status, and the watchdog's task timeouts apply
+ * to them as to any other parse.  With admission control, jobs wait
+ * for their permits instead of being rejected.  Jobs are held in memory: a restart of
+ * the (child) server process loses them, and clients should resubmit
+ * jobs that come back 404.
+ * <p>
+ * The workers and the sweeper are started by the first job, so a server
+ * that doesn't use this endpoint doesn't run them; {@link #close()} stops
+ * them.
+ */
+@Path("/async")
+public class AsyncResource implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncResource.class);
+
+    private static final String HANDLER_TYPE_PARAM = "handler";
+
+    /**
+     * Upper bound for how long a request for a result may wait
+     */
+    public static final long MAX_WAIT_SECONDS = 60;
+
+    //upper bound for how long an expired result may stay around
+    private static final long MAX_SWEEP_MILLIS = 60000;
+
+    public enum STATE {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final int workers;
+    private final int queueSize;
+    private final long resultMillis;
+    private final TikaServerParseExceptionMapper exceptionMapper;
+    private final TikaResource tikaResource = new TikaResource();
+    private final RecursiveMetadataResource recursiveMetadataResource = new RecursiveMetadataResource();
+
+    //started by the first job
+    private ThreadPoolExecutor executor;
+    private ScheduledThreadPoolExecutor sweeper;
+    private boolean closed = false;
+
+    /**
+     * @param workers number of jobs that are parsed at the same time
+     * @param queueSize number of jobs that may wait for a worker
+     * @param resultMillis how long a finished job is kept
+     * @param returnStack whether or not a failed job's message includes the stack trace
+     */
+    public AsyncResource(int workers, int queueSize, long resultMillis, boolean returnStack) {
+        this.workers = workers;
+        this.queueSize = queueSize;
+        this.resultMillis = resultMillis;
+        this.exceptionMapper = new TikaServerParseExceptionMapper(returnStack);
+    }
+
+    @PUT
+    @Consumes("*/*")
+    @Produces("application/json")
+    @Path("text")
+    public Response submitText(InputStream is, @Context final HttpHeaders httpHeaders,
+                               @Context final UriInfo info) throws IOException {
+        return submit(is, httpHeaders, info, "text/plain; charset=UTF-8",
+                input -> tikaResource.getText(input, httpHeaders, info));
+    }
+
+    @PUT
+    @Consumes("*/*")
+    @Produces("application/json")
+    @Path("main")
+    public Response submitTextMain(InputStream is, @Context final HttpHeaders httpHeaders,
+                                   @Context final UriInfo info) throws IOException {
+        return submit(is, httpHeaders, info, "text/plain; charset=UTF-8",
+                input -> tikaResource.getTextMain(input, httpHeaders, info));
+    }
+
+    @PUT
+    @Consumes("*/*")
+    @Produces("application/json")
+    @Path("html")
+    public Response submitHTML(InputStream is, @Context final HttpHeaders httpHeaders,
+                               @Context final UriInfo info) throws IOException {
+        return submit(is, httpHeaders, info, "text/html; charset=UTF-8",
+                input -> tikaResource.getHTML(input, httpHeaders, info));
+    }
+
+    @PUT
+    @Consumes("*/*")
+    @Produces("application/json")
+    @Path("xml")
+    public Response submitXML(InputStream is, @Context final HttpHeaders httpHeaders,
+                              @Context final UriInfo info) throws IOException {
+        return submit(is, httpHeaders, info, "text/xml; charset=UTF-8",
+                input -> tikaResource.getXML(input, httpHeaders, info));
+    }
+
+    /**
+     * Queues a job whose result is the streamed json list of metadata
+     * objects of /rmeta/stream.
+     */
+    @PUT
+    @Consumes("*/*")
+    @Produces("application/json")
+    @Path("rmeta{" + HANDLER_TYPE_PARAM + " : (/\\w+)?}")
+    public Response submitRecursiveMetadata(InputStream is, @Context final HttpHeaders httpHeaders,
+                                            @Context final UriInfo info,
+                                            @PathParam(HANDLER_TYPE_PARAM) final String handlerTypeName)
+            throws IOException {
+        return submit(is, httpHeaders, info, MediaType.APPLICATION_JSON,
+                input -> recursiveMetadataResource.getMetadataStream(input, httpHeaders, info, handlerTypeName));
+    }
+
+    @GET
+    @Produces("application/json")
+    @Path("{id}")
+    public Response getStatus(@PathParam("id") String id) {
+        return Response.ok(getJob(id).toJson(), MediaType.APPLICATION_JSON).build();
+    }
+
+    @GET
+    @Path("{id}/result")
+    public Response getResult(@PathParam("id") String id,
+                              @QueryParam("wait") @DefaultValue("0") long waitSeconds)
+            throws InterruptedException {
+        Job job = getJob(id);
+        job.await(TimeUnit.SECONDS.toMillis(Math.min(Math.max(waitSeconds, 0), MAX_WAIT_SECONDS)));
+        synchronized (job) {
+            switch (job.state) {
+                case SUCCEEDED:
+                    final java.nio.file.Path result = job.result;
+                    return Response.ok(new StreamingOutput() {
+                        @Override
+                        public void write(OutputStream outputStream) throws IOException {
+                            Files.copy(result, outputStream);
+                        }
+                    }, job.mediaType).build();
+                case FAILED:
+                    Response.ResponseBuilder builder = Response.status(job.errorStatus);
+                    if (job.error != null) {
+                        builder.entity(job.error).type(MediaType.TEXT_PLAIN);
+                    }
+                    return builder.build();
+                default:
+                    return Response.status(Response.Status.ACCEPTED)
+                            .entity(job.toJson()).type(MediaType.APPLICATION_JSON).build();
+            }
+        }
+    }
+
+    @DELETE
+    @Path("{id}")
+    public Response delete(@PathParam("id") String id) {
+        Job job = jobs.remove(id);
+        if (job == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        job.cancel();
+        return Response.noContent().build();
+    }
+
+    /**
+     * @return number of jobs that wait for a worker
+     */
+    public synchronized int getQueueSize() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    /**
+     * Stops the workers and the sweeper, and cancels the jobs that are
+     * left, deleting their results
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+                sweeper.shutdownNow();
+            }
+        }
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            it.remove();
+            job.cancel();
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (closed) {
+            throw new RejectedExecutionException("closed");
+        }
+        if (executor == null) {
+            WorkerThreadFactory threadFactory = new WorkerThreadFactory();
+            executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), threadFactory);
+            sweeper = new ScheduledThreadPoolExecutor(1, threadFactory);
+            long period = Math.max(1, Math.min(resultMillis, MAX_SWEEP_MILLIS));
+            sweeper.scheduleWithFixedDelay(this::removeExpired, period, period, TimeUnit.MILLISECONDS);
+        }
+        return executor;
+    }
+
+    private Response submit(InputStream is, HttpHeaders httpHeaders, UriInfo info, String mediaType,
+                            Producer producer) throws IOException {
+        TikaResource.checkIsOperating();
+        TikaInputStream tis = TikaInputStream.get(is);
+        Job job = new Job(UUID.randomUUID().toString(), mediaType, tis, producer);
+        try {
+            //the request's body won't be around when the job runs
+            tis.getPath();
+            AdmissionController admission = TikaResource.getAdmissionController();
+            if (admission != null) {
+                job.cost = admission.getCost(tis.getLength(),
+                        httpHeaders.getHeaderString(HttpHeaders.CONTENT_TYPE));
+            }
+            jobs.put(job.id, job);
+            getExecutor().execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            IOUtils.closeQuietly(tis);
+            LOG.warn("Rejected job, the queue of {} jobs is full", getQueueSize());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("The job queue is full").type(MediaType.TEXT_PLAIN).build();
+        } catch (IOException | RuntimeException e) {
+            jobs.remove(job.id);
+            IOUtils.closeQuietly(tis);
+            throw e;
+        }
+        LOG.debug("Queued job {}", job.id);
+        return Response.status(Response.Status.ACCEPTED)
+                .location(info.getBaseUriBuilder().path("async").path(job.id).build())
+                .entity(job.toJson()).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    private Job getJob(String id) {
+        Job job = jobs.get(id);
+        //the sweeper may not have come round to it yet
+        if (job != null && job.isFinishedBefore(getExpiry()) && jobs.remove(id, job)) {
+            job.cancel();
+            job = null;
+        }
+        if (job == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        return job;
+    }
+
+    private Instant getExpiry() {
+        return Instant.now().minusMillis(resultMillis);
+    }
+
+    private void removeExpired() {
+        Instant expired = getExpiry();
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (job.isFinishedBefore(expired)) {
+                it.remove();
+                job.cancel();
+            }
+        }
+    }
+
+    private int getErrorStatus(Throwable t) {
+        if (t instanceof TikaServerParseException) {
+            return exceptionMapper.toResponse((TikaServerParseException) t).getStatus();
+        } else if (t instanceof WebApplicationException) {
+            return ((WebApplicationException) t).getResponse().getStatus();
+        }
+        return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+    }
+
+    private String getErrorMessage(Throwable t) {
+        if (t instanceof TikaServerParseException) {
+            Object entity = exceptionMapper.toResponse((TikaServerParseException) t).getEntity();
+            return entity == null ? null : entity.toString();
+        }
+        return t.getMessage();
+    }
+
+    /**
+     * Calls the synchronous endpoint for the spooled document
+     */
+    private interface Producer {
+        StreamingOutput produce(InputStream input) throws Exception;
+    }
+
+    private class Job implements Runnable {
+
+        private final String id;
+        private final String mediaType;
+        private final Instant submitted = Instant.now();
+        private final TikaInputStream input;
+        private final Producer producer;
+
+        private int cost = 1;
+        private STATE state = STATE.QUEUED;
+        private Instant started;
+        private Instant finished;
+        private java.nio.file.Path result;
+        private int errorStatus;
+        private String error;
+
+        Job(String id, String mediaType, TikaInputStream input, Producer producer) {
+            this.id = id;
+            this.mediaType = mediaType;
+            this.input = input;
+            this.producer = producer;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != STATE.QUEUED) {
+                    return;
+                }
+                state = STATE.RUNNING;
+                started = Instant.now();
+            }
+            java.nio.file.Path output = null;
+            //jobs are queued already, so they wait for admission rather than being rejected
+            AdmissionController admission = TikaResource.getAdmissionController();
+            try (AdmissionController.Permit permit =
+                         admission == null ? null : admission.acquire(cost, false)) {
+                output = Files.createTempFile("tika-async-", "");
+                try (OutputStream os = Files.newOutputStream(output)) {
+                    producer.produce(input).write(os);
+                }
+                if (finish(STATE.SUCCEEDED, output, 0, null)) {
+                    output = null;
+                }
+            } catch (Throwable t) {
+                LOG.warn("Job {} failed", id, t);
+                finish(STATE.FAILED, null, getErrorStatus(t), getErrorMessage(t));
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+            } finally {
+                IOUtils.closeQuietly(input);
+                deleteQuietly(output);
+            }
+        }
+
+        /**
+         * @return whether or not the result was kept
+         */
+        private synchronized boolean finish(STATE state, java.nio.file.Path result,
+                                            int errorStatus, String error) {
+            if (this.state == STATE.CANCELLED) {
+                return false;
+            }
+            this.state = state;
+            this.result = result;
+            this.errorStatus = errorStatus;
+            this.error = error;
+            finished = Instant.now();
+            notifyAll();
+            return true;
+        }
+
+        synchronized void await(long millis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + millis;
+            long remaining = millis;
+            while ((state == STATE.QUEUED || state == STATE.RUNNING) && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+
+        synchronized boolean isFinishedBefore(Instant instant) {
+            return finished != null && finished.isBefore(instant);
+        }
+
+        /**
+         * Cancels a queued job, discards the result of a running one
+         * once it finishes, and deletes the result of a finished one.
+         */
+        void cancel() {
+            boolean queued;
+            java.nio.file.Path toDelete;
+            synchronized (this) {
+                queued = state == STATE.QUEUED;
+                toDelete = result;
+                result = null;
+                state = STATE.CANCELLED;
+                notifyAll();
+            }
+            if (queued) {
+                synchronized (AsyncResource.this) {
+                    //the executor is created lazily, when the first job is submitted
+                    if (executor != null) {
+                        executor.remove(this);
+                    }
+                }
+                IOUtils.closeQuietly(input);
+            }
+            deleteQuietly(toDelete);
+        }
+
+        synchronized String toJson() {
+            StringWriter writer = new StringWriter();
+            try (JsonWriter json = new JsonWriter(writer)) {
+                json.beginObject();
+                json.name("id").value(id);
+                json.name("status").value(state.name());
+                json.name("submitted").value(submitted.toString());
+                if (started != null) {
+                    json.name("started").value(started.toString());
+                }
+                if (finished != null) {
+                    json.name("finished").value(finished.toString());
+                }
+                if (state == STATE.FAILED) {
+                    json.name("errorStatus").value(errorStatus);
+                }
+                json.endObject();
+            } catch (IOException e) {
+                //can't happen with a StringWriter
+                throw new IllegalStateException(e);
+            }
+            return writer.toString();
+        }
+    }
+
+    private static void deleteQuietly(java.nio.file.Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("Couldn't delete {}", path, e);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "tika-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -122,7 +122,7 @@ public class MetadataResource {
     private Metadata parseMetadata(InputStream is, Metadata metadata,
                                    MultivaluedMap<String, String> httpHeaders, UriInfo info) throws IOException {
         final ParseContext context = new ParseContext();
-        Parser parser = TikaResource.createParser();
+        Parser parser = TikaResource.createParser(httpHeaders);
         TikaResource.fillMetadata(parser, metadata, context, httpHeaders);
         //no need to pass parser for embedded document parsing
         TikaResource.fillParseContext(context, httpHeaders, null);
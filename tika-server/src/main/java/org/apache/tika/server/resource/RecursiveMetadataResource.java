@@ -23,24 +23,38 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
 import org.apache.tika.language.detect.LanguageHandler;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.serialization.JsonStreamingSerializer;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.parser.RecursiveParserWrapper;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
 import org.apache.tika.sax.BasicContentHandlerFactory;
+import org.apache.tika.sax.ContentHandlerFactory;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
 import org.apache.tika.server.MetadataList;
+import org.apache.tika.server.TikaServerParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Path("/rmeta")
 public class RecursiveMetadataResource {
@@ -125,11 +139,86 @@ public class RecursiveMetadataResource {
 						httpHeaders.getRequestHeaders(), info, handlerTypeName)).build();
     }
 
+    /**
+     * Streams the list of {@link Metadata} objects as a json array,
+     * writing each embedded document's object as soon as that document
+     * has been parsed instead of buffering the whole list.  Heap use is
+     * bounded by the largest single document, and the first bytes reach
+     * the client before the parse of a large container has finished.
+     * <p>
+     * Unlike {@link #getMetadata}, the objects come in the order in which
+     * the documents finish parsing: descendants come before their parents,
+     * and the main document is the <em>last</em> object in the array.
+     * {@link org.apache.tika.metadata.serialization.JsonMetadataList#fromJson}
+     * moves it back to the front.
+     * <p>
+     * Specify the handler for the content (xml, html, text, ignore)
+     * in the path:<br/>
+     * /rmeta/stream (default: xml)<br/>
+     * /rmeta/stream/xml    (store the content as xml)<br/>
+     * /rmeta/stream/text   (store the content as text)<br/>
+     * /rmeta/stream/ignore (don't record any content)<br/>
+     *
+     * @param info uri info
+     * @param handlerTypeName which type of handler to use
+     * @return StreamingOutput that writes a json array of {@link Metadata} objects
+     * @throws Exception
+     */
+    @PUT
+    @Produces("application/json")
+    @Path("stream{" + HANDLER_TYPE_PARAM + " : (/\\w+)?}")
+    public StreamingOutput getMetadataStream(final InputStream is,
+                                             @Context HttpHeaders httpHeaders,
+                                             @Context final UriInfo info,
+                                             @PathParam(HANDLER_TYPE_PARAM) String handlerTypeName)
+            throws Exception {
+        //fail with a status code before the response has been committed
+        TikaResource.checkIsOperating();
+        final Metadata metadata = new Metadata();
+        final InputStream tis = TikaResource.getInputStream(is, metadata, httpHeaders);
+        final ParseContext context = new ParseContext();
+        final Parser parser = TikaResource.createParser(httpHeaders.getRequestHeaders());
+        final RecursiveParserWrapper wrapper = new RecursiveParserWrapper(parser);
+
+        TikaResource.fillMetadata(parser, metadata, context, httpHeaders.getRequestHeaders());
+        TikaResource.fillParseContext(context, httpHeaders.getRequestHeaders(), null);
+        TikaResource.logRequest(LOG, info, metadata);
+
+        if (handlerTypeName != null && handlerTypeName.startsWith("/")) {
+            handlerTypeName = handlerTypeName.substring(1);
+        }
+        final BasicContentHandlerFactory.HANDLER_TYPE type =
+                BasicContentHandlerFactory.parseHandlerType(handlerTypeName, DEFAULT_HANDLER_TYPE);
+
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                JsonStreamingSerializer serializer = new JsonStreamingSerializer(
+                        new OutputStreamWriter(outputStream, UTF_8));
+                StreamingHandler handler = new StreamingHandler(
+                        new BasicContentHandlerFactory(type, -1), serializer);
+                try {
+                    TikaResource.parse(wrapper, LOG, info.getPath(), tis, handler, metadata, context);
+                } catch (SecurityException e) {
+                    throw e;
+                } catch (TikaServerParseException e) {
+                    //swallow it and report it via the container's metadata
+                } catch (WebApplicationException e) {
+                    //the server is saturated or shutting down, and nothing has been written yet
+                    throw e;
+                } catch (Exception e) {
+                    //swallow it and report it via the container's metadata
+                }
+                serializer.close();
+            }
+        };
+    }
+
 	private MetadataList parseMetadata(InputStream is, Metadata metadata,
 			MultivaluedMap<String, String> httpHeaders, UriInfo info, String handlerTypeName)
 			throws Exception {
 		final ParseContext context = new ParseContext();
-		Parser parser = TikaResource.createParser();
+		Parser parser = TikaResource.createParser(httpHeaders);
 		// TODO: parameterize choice of max chars/max embedded attachments
 		RecursiveParserWrapper wrapper = new RecursiveParserWrapper(parser);
 
@@ -147,6 +236,11 @@ public class RecursiveMetadataResource {
             TikaResource.parse(wrapper, LOG, info.getPath(), is, handler, metadata, context);
         } catch (SecurityException e) {
 		    throw e;
+        } catch (TikaServerParseException e) {
+		    //swallow it and report it via the metadata list
+        } catch (WebApplicationException e) {
+		    //the server is saturated or shutting down
+		    throw e;
         } catch (Exception e) {
 		    //swallow it and report it via the metadata list
         }
@@ -161,4 +255,50 @@ public class RecursiveMetadataResource {
 		return new MetadataList(handler.getMetadataList());
 	}
 
+    /**
+     * Writes each document's metadata out as soon as its parse completes,
+     * so that nothing but the current document is held in memory.
+     */
+    private static class StreamingHandler extends AbstractRecursiveParserWrapperHandler {
+
+        private final JsonStreamingSerializer serializer;
+
+        StreamingHandler(ContentHandlerFactory contentHandlerFactory,
+                         JsonStreamingSerializer serializer) {
+            super(contentHandlerFactory);
+            this.serializer = serializer;
+        }
+
+        @Override
+        public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata)
+                throws SAXException {
+            super.endEmbeddedDocument(contentHandler, metadata);
+            write(contentHandler, metadata);
+        }
+
+        @Override
+        public void endDocument(ContentHandler contentHandler, Metadata metadata)
+                throws SAXException {
+            super.endDocument(contentHandler, metadata);
+            write(contentHandler, metadata);
+        }
+
+        private void write(ContentHandler contentHandler, Metadata metadata)
+                throws SAXException {
+            //same rules as RecursiveParserWrapperHandler for recording the content
+            if (! contentHandler.getClass().equals(DefaultHandler.class)) {
+                String content = contentHandler.toString();
+                if (content != null && content.trim().length() > 0) {
+                    metadata.add(TIKA_CONTENT, content);
+                    metadata.add(TIKA_CONTENT_HANDLER, contentHandler.getClass().getSimpleName());
+                }
+            }
+            try {
+                serializer.add(metadata);
+                serializer.flush();
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
 }
@@ -26,6 +26,7 @@ import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.EncryptedDocumentException;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaMetadataKeys;
 import org.apache.tika.mime.MediaType;
@@ -41,7 +42,10 @@ import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.ExpandedTitleContentHandler;
 import org.apache.tika.sax.RichTextContentHandler;
+import org.apache.tika.server.AdmissionController;
 import org.apache.tika.server.InputStreamFactory;
+import org.apache.tika.server.ParseCache;
+import org.apache.tika.server.ParserGraph;
 import org.apache.tika.server.ServerStatus;
 import org.apache.tika.server.TikaServerParseException;
 import org.slf4j.Logger;
@@ -100,20 +104,70 @@ public class TikaResource {
     private static DigestingParser.Digester digester = null;
     private static InputStreamFactory inputStreamFactory = null;
     private static ServerStatus SERVER_STATUS = null;
+    private static ParseCache parseCache = null;
+    private static AdmissionController admissionController = null;
+    private static ParserGraph parserGraph = null;
     public static void init(TikaConfig config, DigestingParser.Digester digestr,
                             InputStreamFactory iSF, ServerStatus serverStatus) {
+        init(config, digestr, iSF, serverStatus, null);
+    }
+
+    /**
+     * @param cache cache of the outputs of the /tika endpoints, or <code>null</code>
+     */
+    public static void init(TikaConfig config, DigestingParser.Digester digestr,
+                            InputStreamFactory iSF, ServerStatus serverStatus, ParseCache cache) {
+        init(config, digestr, iSF, serverStatus, cache, null);
+    }
+
+    /**
+     * @param cache cache of the outputs of the /tika endpoints, or <code>null</code>
+     * @param admission admission control for parses, or <code>null</code> for no limit
+     */
+    public static void init(TikaConfig config, DigestingParser.Digester digestr,
+                            InputStreamFactory iSF, ServerStatus serverStatus, ParseCache cache,
+                            AdmissionController admission) {
+        init(config, digestr, iSF, serverStatus, cache, admission, null);
+    }
+
+    /**
+     * @param cache cache of the outputs of the /tika endpoints, or <code>null</code>
+     * @param admission admission control for parses, or <code>null</code> for no limit
+     * @param graph parsers shared by all requests, or <code>null</code> to build them per request
+     */
+    public static void init(TikaConfig config, DigestingParser.Digester digestr,
+                            InputStreamFactory iSF, ServerStatus serverStatus, ParseCache cache,
+                            AdmissionController admission, ParserGraph graph) {
         tikaConfig = config;
         digester = digestr;
         inputStreamFactory = iSF;
         SERVER_STATUS = serverStatus;
+        parseCache = cache;
+        admissionController = admission;
+        parserGraph = graph;
+    }
+
+    /**
+     * @return admission control for parses, or <code>null</code> if there is no limit
+     */
+    public static AdmissionController getAdmissionController() {
+        return admissionController;
     }
 
     static {
         ExtractorFactory.setAllThreadsPreferEventExtractors(true);
     }
 
+    /**
+     * @return parser that detects the type of the document, whatever the
+     * Content-Type of the request; with a shared {@link ParserGraph}, use
+     * {@link #createParser(MultivaluedMap)} for requests
+     */
     @SuppressWarnings("serial")
     public static Parser createParser() {
+        if (parserGraph != null) {
+            return parserGraph.getParser(false);
+        }
         final Parser parser = new AutoDetectParser(tikaConfig);
 
         if (digester != null) {
@@ -122,6 +176,18 @@ public class TikaResource {
         return parser;
     }
 
+    /**
+     * @param httpHeaders headers of the request
+     * @return parser for the request, to be passed to
+     * {@link #fillMetadata(Parser, Metadata, ParseContext, MultivaluedMap)}
+     */
+    public static Parser createParser(MultivaluedMap<String, String> httpHeaders) {
+        if (parserGraph != null) {
+            return parserGraph.getParser(getContentTypeHint(httpHeaders) != null);
+        }
+        return createParser();
+    }
+
     public static TikaConfig getConfig() {
         return tikaConfig;
     }
@@ -147,6 +213,20 @@ public class TikaResource {
 
     public static void fillParseContext(ParseContext parseContext, MultivaluedMap<String, String> httpHeaders,
                                         Parser embeddedParser) {
+        ParserGraph.HeaderConfigs configs = parserGraph == null ? resolveHeaderConfigs(httpHeaders)
+                : parserGraph.getHeaderConfigs(httpHeaders, TikaResource::resolveHeaderConfigs);
+        if (configs.getOcrConfig() != null) {
+            parseContext.set(TesseractOCRConfig.class, configs.getOcrConfig());
+        }
+        if (configs.getPdfParserConfig() != null) {
+            parseContext.set(PDFParserConfig.class, configs.getPdfParserConfig());
+        }
+        if (embeddedParser != null) {
+            parseContext.set(Parser.class, embeddedParser);
+        }
+    }
+
+    private static ParserGraph.HeaderConfigs resolveHeaderConfigs(MultivaluedMap<String, String> httpHeaders) {
         //lazily initialize configs
         //if a header is submitted, any params set in --tika-config tika-config.xml
         //upon server startup will be ignored.
@@ -161,15 +241,7 @@ public class TikaResource {
                 processHeaderConfig(httpHeaders, pdfParserConfig, key, X_TIKA_PDF_HEADER_PREFIX);
             }
         }
-        if (ocrConfig != null) {
-            parseContext.set(TesseractOCRConfig.class, ocrConfig);
-        }
-        if (pdfParserConfig != null) {
-            parseContext.set(PDFParserConfig.class, pdfParserConfig);
-        }
-        if (embeddedParser != null) {
-            parseContext.set(Parser.class, embeddedParser);
-        }
+        return new ParserGraph.HeaderConfigs(ocrConfig, pdfParserConfig);
     }
 
     public static InputStream getInputStream(InputStream is, Metadata metadata, HttpHeaders headers) {
@@ -303,37 +375,18 @@ public class TikaResource {
         }
 
         String contentTypeHeader = httpHeaders.getFirst(HttpHeaders.CONTENT_TYPE);
-        javax.ws.rs.core.MediaType mediaType = contentTypeHeader == null ? null
-                : javax.ws.rs.core.MediaType.valueOf(contentTypeHeader);
-        if (mediaType != null && "xml".equals(mediaType.getSubtype())) {
-            mediaType = null;
-        }
-
-        if (mediaType != null && mediaType.equals(javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM_TYPE)) {
-            mediaType = null;
-        }
+        javax.ws.rs.core.MediaType mediaType = getContentTypeHint(httpHeaders);
 
         if (mediaType != null) {
             metadata.add(org.apache.tika.metadata.HttpHeaders.CONTENT_TYPE, mediaType.toString());
 
             final Detector detector = getDetector(parser);
-
-            setDetector(parser, new Detector() {
-                public MediaType detect(InputStream inputStream, Metadata metadata) throws IOException {
-                    String ct = metadata.get(org.apache.tika.metadata.HttpHeaders.CONTENT_TYPE);
-                    //make sure never to return null -- TIKA-1845
-                    MediaType type = null;
-                    if (ct != null) {
-                        //this can return null if ct is not a valid mime type
-                        type = MediaType.parse(ct);
-                    }
-                    if (type != null) {
-                        return type;
-                    } else {
-                        return detector.detect(inputStream, metadata);
-                    }
+            if (!(detector instanceof ParserGraph.ContentTypeHintDetector)) {
+                if (parserGraph != null) {
+                    throw new IllegalStateException("Shared parsers must be created with createParser(httpHeaders)");
                 }
-            });
+                setDetector(parser, new ParserGraph.ContentTypeHintDetector(detector));
+            }
         }
 
         String tmpPassword = httpHeaders.getFirst(PASSWORD_BASE64_UTF8);
@@ -351,6 +404,37 @@ public class TikaResource {
                 }
             });
         }
+
+        if (admissionController != null) {
+            long contentLength = -1;
+            String contentLengthHeader = httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH);
+            if (contentLengthHeader != null) {
+                try {
+                    contentLength = Long.parseLong(contentLengthHeader.trim());
+                } catch (NumberFormatException e) {
+                    //treat as unknown
+                }
+            }
+            context.set(AdmissionController.Cost.class, new AdmissionController.Cost(
+                    admissionController.getCost(contentLength, contentTypeHeader)));
+        }
+    }
+
+    /**
+     * @return the Content-Type of the request, if it is to override the detected type
+     */
+    private static javax.ws.rs.core.MediaType getContentTypeHint(MultivaluedMap<String, String> httpHeaders) {
+        String contentTypeHeader = httpHeaders.getFirst(HttpHeaders.CONTENT_TYPE);
+        javax.ws.rs.core.MediaType mediaType = contentTypeHeader == null ? null
+                : javax.ws.rs.core.MediaType.valueOf(contentTypeHeader);
+        if (mediaType != null && "xml".equals(mediaType.getSubtype())) {
+            mediaType = null;
+        }
+
+        if (mediaType != null && mediaType.equals(javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM_TYPE)) {
+            mediaType = null;
+        }
+        return mediaType;
     }
 
     private static String decodeBase64UTF8(String s) {
@@ -401,7 +485,15 @@ public class TikaResource {
     public static void parse(Parser parser, Logger logger, String path, InputStream inputStream,
                              ContentHandler handler, Metadata metadata, ParseContext parseContext) throws IOException {
 
-        checkIsOperating();
+        AdmissionController.Permit permit;
+        try {
+            checkIsOperating();
+            permit = admit(parseContext);
+        } catch (WebApplicationException e) {
+            //a rejected request's stream may be spooled to a tmp file already
+            inputStream.close();
+            throw e;
+        }
         String fileName = metadata.get(Metadata.RESOURCE_NAME_KEY);
         long taskId = SERVER_STATUS.start(ServerStatus.TASK.PARSE,
                 fileName);
@@ -421,10 +513,84 @@ public class TikaResource {
             throw e;
         } finally {
             SERVER_STATUS.complete(taskId);
+            if (permit != null) {
+                permit.close();
+            }
             inputStream.close();
         }
     }
 
+    /**
+     * Waits until the parse may run, if there is admission control.
+     *
+     * @return permit to close after the parse, or <code>null</code>
+     * @throws WebApplicationException 429 or 503 if the server is saturated
+     */
+    private static AdmissionController.Permit admit(ParseContext parseContext) {
+        if (admissionController == null) {
+            return null;
+        }
+        AdmissionController.Cost cost = parseContext.get(AdmissionController.Cost.class);
+        return admissionController.acquire(cost == null ? 1 : cost.getPermits(), true);
+    }
+
+    /**
+     * Parses into the handler that is created for the output stream -- unless
+     * the {@link ParseCache} holds the output of an earlier parse of the same
+     * document with the same settings, which is then written instead.
+     * Like {@link #parse(Parser, Logger, String, InputStream, ContentHandler, Metadata, ParseContext)},
+     * this closes the InputStream.
+     *
+     * @param outputType the output type, part of the cache key
+     */
+    private static void parseToOutput(String outputType, Parser parser, String path,
+                                      InputStream inputStream, Metadata metadata,
+                                      ParseContext parseContext, OutputStream outputStream,
+                                      OutputHandlerFactory handlerFactory) throws IOException {
+        if (parseCache == null) {
+            Writer writer = new OutputStreamWriter(outputStream, UTF_8);
+            parse(parser, LOG, path, inputStream, handlerFactory.newHandler(writer),
+                    metadata, parseContext);
+            return;
+        }
+        checkIsOperating();
+        TikaInputStream tis = TikaInputStream.get(inputStream);
+        //parse() closes the stream once it is called
+        boolean parsing = false;
+        AdmissionController.Permit permit = null;
+        try {
+            //admit before the key is computed, which reads and spools the whole
+            //document; parse() runs with this permit
+            permit = admit(parseContext);
+            String key = parseCache.getKey(outputType, tis, metadata, parseContext);
+            if (parseCache.writeTo(key, outputStream)) {
+                LOG.debug("{}: Returning the cached output ({})", path,
+                        metadata.get(Metadata.RESOURCE_NAME_KEY));
+                return;
+            }
+            ParseCache.Recorder recorder = parseCache.record(outputStream);
+            Writer writer = new OutputStreamWriter(recorder, UTF_8);
+            parsing = true;
+            parse(parser, LOG, path, tis, handlerFactory.newHandler(writer), metadata, parseContext);
+            writer.flush();
+            parseCache.put(key, recorder);
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            if (!parsing) {
+                tis.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the handler that writes an endpoint's output
+     */
+    private interface OutputHandlerFactory {
+        ContentHandler newHandler(Writer writer);
+    }
+
     public static void checkIsOperating() {
         //check that server is not in shutdown mode
         if (! SERVER_STATUS.isOperating()) {
@@ -474,7 +640,7 @@ public class TikaResource {
     }
 
     public StreamingOutput produceTextMain(final InputStream is, MultivaluedMap<String, String> httpHeaders, final UriInfo info) {
-        final Parser parser = createParser();
+        final Parser parser = createParser(httpHeaders);
         final Metadata metadata = new Metadata();
         final ParseContext context = new ParseContext();
 
@@ -485,11 +651,12 @@ public class TikaResource {
 
         return new StreamingOutput() {
             public void write(OutputStream outputStream) throws IOException, WebApplicationException {
-                Writer writer = new OutputStreamWriter(outputStream, UTF_8);
-
-                ContentHandler handler = new BoilerpipeContentHandler(writer);
-
-                parse(parser, LOG, info.getPath(), is, handler, metadata, context);
+                parseToOutput("text-main", parser, info.getPath(), is, metadata, context, outputStream,
+                        new OutputHandlerFactory() {
+                            public ContentHandler newHandler(Writer writer) {
+                                return new BoilerpipeContentHandler(writer);
+                            }
+                        });
             }
         };
     }
@@ -504,7 +671,7 @@ public class TikaResource {
     }
 
     public StreamingOutput produceText(final InputStream is, final Metadata metadata, MultivaluedMap<String, String> httpHeaders, final UriInfo info) {
-        final Parser parser = createParser();
+        final Parser parser = createParser(httpHeaders);
         final ParseContext context = new ParseContext();
 
         fillMetadata(parser, metadata, context, httpHeaders);
@@ -514,11 +681,12 @@ public class TikaResource {
 
         return new StreamingOutput() {
             public void write(OutputStream outputStream) throws IOException, WebApplicationException {
-                Writer writer = new OutputStreamWriter(outputStream, UTF_8);
-
-                BodyContentHandler body = new BodyContentHandler(new RichTextContentHandler(writer));
-
-                parse(parser, LOG, info.getPath(), is, body, metadata, context);
+                parseToOutput("text", parser, info.getPath(), is, metadata, context, outputStream,
+                        new OutputHandlerFactory() {
+                            public ContentHandler newHandler(Writer writer) {
+                                return new BodyContentHandler(new RichTextContentHandler(writer));
+                            }
+                        });
             }
         };
     }
@@ -560,7 +728,7 @@ public class TikaResource {
 
     private StreamingOutput produceOutput(final InputStream is, Metadata metadata, final MultivaluedMap<String, String> httpHeaders,
                                           final UriInfo info, final String format) {
-        final Parser parser = createParser();
+        final Parser parser = createParser(httpHeaders);
         final ParseContext context = new ParseContext();
 
         fillMetadata(parser, metadata, context, httpHeaders);
@@ -572,22 +740,22 @@ public class TikaResource {
         return new StreamingOutput() {
             public void write(OutputStream outputStream)
                     throws IOException, WebApplicationException {
-                Writer writer = new OutputStreamWriter(outputStream, UTF_8);
-                ContentHandler content;
-
-                try {
-                    SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-                    TransformerHandler handler = factory.newTransformerHandler();
-                    handler.getTransformer().setOutputProperty(OutputKeys.METHOD, format);
-                    handler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
-                    handler.getTransformer().setOutputProperty(OutputKeys.ENCODING, UTF_8.name());
-                    handler.setResult(new StreamResult(writer));
-                    content = new ExpandedTitleContentHandler(handler);
-                } catch (TransformerConfigurationException e) {
-                    throw new WebApplicationException(e);
-                }
-
-                parse(parser, LOG, info.getPath(), is, content, metadata, context);
+                parseToOutput(format, parser, info.getPath(), is, metadata, context, outputStream,
+                        new OutputHandlerFactory() {
+                            public ContentHandler newHandler(Writer writer) {
+                                try {
+                                    SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+                                    TransformerHandler handler = factory.newTransformerHandler();
+                                    handler.getTransformer().setOutputProperty(OutputKeys.METHOD, format);
+                                    handler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
+                                    handler.getTransformer().setOutputProperty(OutputKeys.ENCODING, UTF_8.name());
+                                    handler.setResult(new StreamResult(writer));
+                                    return new ExpandedTitleContentHandler(handler);
+                                } catch (TransformerConfigurationException e) {
+                                    throw new WebApplicationException(e);
+                                }
+                            }
+                        });
             }
         };
     }
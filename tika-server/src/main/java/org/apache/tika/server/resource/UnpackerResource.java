@@ -124,7 +124,7 @@ public class UnpackerResource {
         Metadata metadata = new Metadata();
         ParseContext pc = new ParseContext();
 
-        Parser parser = TikaResource.createParser();
+        Parser parser = TikaResource.createParser(httpHeaders.getRequestHeaders());
         if (parser instanceof DigestingParser) {
             //no need to digest for unwrapping
             parser = ((DigestingParser)parser).getWrappedParser();
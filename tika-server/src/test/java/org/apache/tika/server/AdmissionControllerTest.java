@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import javax.ws.rs.WebApplicationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControllerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCost() {
+        AdmissionController unweighted = new AdmissionController(4, 4, 1000, 0);
+        assertEquals(1, unweighted.getCost(100 * MB, "image/png"));
+
+        AdmissionController weighted = new AdmissionController(4, 4, 1000, MB);
+        assertEquals(1, weighted.getCost(-1, null));
+        assertEquals(1, weighted.getCost(MB, "application/pdf"));
+        assertEquals(3, weighted.getCost(2 * MB + 1, "application/pdf"));
+        assertEquals(2, weighted.getCost(MB, "image/png"));
+        //never more than all permits
+        assertEquals(4, weighted.getCost(3 * MB, "image/png"));
+    }
+
+    @Test
+    public void testRejection() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 1, 200, 0);
+        try (AdmissionController.Permit permit = controller.acquire(1, true)) {
+            //the same thread doesn't take more permits
+            controller.acquire(1, true).close();
+            assertEquals(1, controller.getPermitsInUse());
+
+            Future<?> waiting = executor.submit(() -> controller.acquire(1, true).close());
+            waitForQueueLength(controller, 1);
+
+            //the queue is full
+            assertStatus(429, executor.submit(() -> controller.acquire(1, true).close()));
+            //waited too long
+            assertStatus(503, waiting);
+        }
+        assertEquals(0, controller.getPermitsInUse());
+        assertEquals(0, controller.getQueueLength());
+        assertEquals(1, controller.getAdmitted());
+        assertEquals(1, controller.getRejected());
+        assertEquals(1, controller.getTimedOut());
+        assertTrue(controller.getWaitMillis() >= 200);
+    }
+
+    @Test
+    public void testCloseTwice() throws Exception {
+        final AdmissionController controller = new AdmissionController(2, 1, 200, 0);
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            AdmissionController.Permit permit = worker.submit(() -> controller.acquire(2, true))
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(2, controller.getPermitsInUse());
+            permit.close();
+            permit.close();
+            assertEquals(0, controller.getPermitsInUse());
+            //the limit hasn't been raised, not even for the thread that took the closed permit
+            try (AdmissionController.Permit all = controller.acquire(2, true)) {
+                assertStatus(503, worker.submit(() -> controller.acquire(1, true).close()));
+                assertEquals(2, controller.getPermitsInUse());
+            }
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseOnAnotherThread() throws Exception {
+        final AdmissionController controller = new AdmissionController(2, 1, 200, 0);
+        AdmissionController.Permit other = executor.submit(() -> controller.acquire(1, true))
+                .get(10, TimeUnit.SECONDS);
+        try (AdmissionController.Permit permit = controller.acquire(1, true)) {
+            other.close();
+            //this thread still holds its permit, so it doesn't take another one
+            controller.acquire(1, true).close();
+            assertEquals(1, controller.getPermitsInUse());
+            assertEquals(2, controller.getAdmitted());
+        }
+        assertEquals(0, controller.getPermitsInUse());
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        final AdmissionController controller = new AdmissionController(2, 2, 10000, 0);
+        Future<?> large;
+        Future<?> small;
+        try (AdmissionController.Permit permit = controller.acquire(1, true)) {
+            large = executor.submit(() -> controller.acquire(2, true).close());
+            waitForQueueLength(controller, 1);
+            //doesn't overtake the large parse, although there is a permit left
+            small = executor.submit(() -> controller.acquire(1, true).close());
+            waitForQueueLength(controller, 2);
+            assertEquals(1, controller.getPermitsInUse());
+        }
+        large.get(10, TimeUnit.SECONDS);
+        small.get(10, TimeUnit.SECONDS);
+        assertEquals(3, controller.getAdmitted());
+        assertEquals(2, controller.getQueued());
+        assertEquals(0, controller.getPermitsInUse());
+    }
+
+    @Test
+    public void testUnbounded() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 1, 200, 0);
+        Future<?> first;
+        Future<?> second;
+        try (AdmissionController.Permit permit = controller.acquire(1, true)) {
+            first = executor.submit(() -> controller.acquire(1, false).close());
+            waitForQueueLength(controller, 1);
+            assertStatus(429, executor.submit(() -> controller.acquire(1, true).close()));
+            //waits beyond the queue's size and wait time
+            second = executor.submit(() -> controller.acquire(1, false).close());
+            waitForQueueLength(controller, 2);
+            Thread.sleep(300);
+            assertEquals(2, controller.getQueueLength());
+        }
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(3, controller.getAdmitted());
+        assertEquals(0, controller.getTimedOut());
+    }
+
+    private static void waitForQueueLength(AdmissionController controller, int length)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (controller.getQueueLength() != length) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("queue length " + controller.getQueueLength() + " instead of " + length);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertStatus(int status, Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("should have been rejected");
+        } catch (ExecutionException e) {
+            WebApplicationException cause = (WebApplicationException) e.getCause();
+            assertEquals(status, cause.getResponse().getStatus());
+            assertNotNull(cause.getResponse().getHeaderString("Retry-After"));
+        }
+    }
+}
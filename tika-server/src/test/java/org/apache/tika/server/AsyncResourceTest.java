@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.Response;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.serialization.JsonMetadataList;
+import org.apache.tika.server.resource.AsyncResource;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncResourceTest extends CXFTestBase {
+
+    private static final String ASYNC_PATH = "/async";
+    private static final String TEST_RECURSIVE_DOC = "test_recursive_embedded.docx";
+    private static final long RESULT_MILLIS = 2000;
+
+    private final AsyncResource asyncResource = new AsyncResource(1, 10, RESULT_MILLIS, false);
+
+    @Override
+    protected void setUpResources(JAXRSServerFactoryBean sf) {
+        sf.setResourceClasses(AsyncResource.class);
+        sf.setResourceProvider(AsyncResource.class,
+                new SingletonResourceProvider(asyncResource));
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        asyncResource.close();
+    }
+
+    @Override
+    protected void setUpProviders(JAXRSServerFactoryBean sf) {
+        List<Object> providers = new ArrayList<>();
+        providers.add(new TikaServerParseExceptionMapper(false));
+        sf.setProviders(providers);
+    }
+
+    @Test
+    public void testText() throws Exception {
+        Response response = WebClient.create(endPoint + ASYNC_PATH + "/text")
+                .type("application/msword")
+                .put(ClassLoader.getSystemResourceAsStream(TikaResourceTest.TEST_DOC));
+        assertEquals(202, response.getStatus());
+        String id = getId(response);
+        assertNotNull(response.getLocation());
+        assertTrue(response.getLocation().toString().endsWith(ASYNC_PATH + "/" + id));
+
+        response = getResult(id);
+        assertEquals(200, response.getStatus());
+        assertTrue(getStringFromInputStream((InputStream) response.getEntity()).contains("test"));
+
+        //the result is kept until it is deleted
+        response = WebClient.create(endPoint + ASYNC_PATH + "/" + id).get();
+        assertEquals("SUCCEEDED", getStatus(response));
+        response = getResult(id);
+        assertTrue(getStringFromInputStream((InputStream) response.getEntity()).contains("test"));
+
+        response = WebClient.create(endPoint + ASYNC_PATH + "/" + id).delete();
+        assertEquals(204, response.getStatus());
+        response = WebClient.create(endPoint + ASYNC_PATH + "/" + id).get();
+        assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    public void testRecursiveMetadata() throws Exception {
+        Response response = WebClient.create(endPoint + ASYNC_PATH + "/rmeta/text")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        assertEquals(202, response.getStatus());
+
+        response = getResult(getId(response));
+        assertEquals(200, response.getStatus());
+        Reader reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        List<Metadata> metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(12, metadataList.size());
+        assertEquals("Microsoft Office Word", metadataList.get(0).get("Application-Name"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Response response = WebClient.create(endPoint + ASYNC_PATH + "/text")
+                .type("application/vnd.ms-excel")
+                .put(ClassLoader.getSystemResourceAsStream(TikaResourceTest.TEST_PASSWORD_PROTECTED));
+        String id = getId(response);
+
+        //same status code as the synchronous endpoint
+        response = getResult(id);
+        assertEquals(422, response.getStatus());
+        response = WebClient.create(endPoint + ASYNC_PATH + "/" + id).get();
+        assertEquals("FAILED", getStatus(response));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        Response response = WebClient.create(endPoint + ASYNC_PATH + "/text")
+                .type("application/msword")
+                .put(ClassLoader.getSystemResourceAsStream(TikaResourceTest.TEST_DOC));
+        String id = getId(response);
+        assertEquals(200, getResult(id).getStatus());
+
+        Thread.sleep(RESULT_MILLIS + 500);
+        assertEquals(404, WebClient.create(endPoint + ASYNC_PATH + "/" + id).get().getStatus());
+        assertEquals(404, getResult(id).getStatus());
+    }
+
+    @Test
+    public void testUnknownJob() throws Exception {
+        assertEquals(404, WebClient.create(endPoint + ASYNC_PATH + "/nonexistent").get().getStatus());
+        assertEquals(404, WebClient.create(endPoint + ASYNC_PATH + "/nonexistent/result").get().getStatus());
+        assertEquals(404, WebClient.create(endPoint + ASYNC_PATH + "/nonexistent").delete().getStatus());
+    }
+
+    private Response getResult(String id) {
+        return WebClient.create(endPoint + ASYNC_PATH + "/" + id + "/result")
+                .query("wait", AsyncResource.MAX_WAIT_SECONDS)
+                .get();
+    }
+
+    private String getId(Response response) throws Exception {
+        return parse(response).get("id").getAsString();
+    }
+
+    private String getStatus(Response response) throws Exception {
+        return parse(response).get("status").getAsString();
+    }
+
+    private JsonObject parse(Response response) throws Exception {
+        return new JsonParser().parse(
+                getStringFromInputStream((InputStream) response.getEntity())).getAsJsonObject();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Collections;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChildDispatcherTest {
+
+    private static final String HOST = "localhost";
+    private static final long MAX_WAIT_MILLIS = 2000;
+
+    private Server childServer;
+    private TestChild child;
+    private ChildDispatcher dispatcher;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        childServer = new Server(0);
+        childServer.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                if ("PUT".equals(request.getMethod())) {
+                    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                    response.setHeader("Location", "http://" + HOST + ":" + child.getPort() + "/async/job1");
+                } else {
+                    response.setStatus(HttpServletResponse.SC_OK);
+                }
+            }
+        });
+        childServer.start();
+        child = new TestChild(((ServerConnector) childServer.getConnectors()[0]).getLocalPort());
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        dispatcher = new ChildDispatcher(HOST, port, Collections.singletonList(child), MAX_WAIT_MILLIS);
+        dispatcher.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.stop();
+        childServer.stop();
+    }
+
+    @Test
+    public void testLostAsyncJob() throws Exception {
+        HttpURLConnection put = open("/async/text", "PUT");
+        put.setDoOutput(true);
+        put.getOutputStream().write(new byte[]{1, 2, 3});
+        assertEquals(HttpServletResponse.SC_ACCEPTED, put.getResponseCode());
+        assertEquals(HttpServletResponse.SC_OK, open("/async/job1", "GET").getResponseCode());
+
+        //the child that ran the job dies; the job is gone, so don't make the client retry
+        child.available = false;
+        long start = System.currentTimeMillis();
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, open("/async/job1", "GET").getResponseCode());
+        assertTrue(System.currentTimeMillis() - start < MAX_WAIT_MILLIS);
+
+        //other requests wait for a child
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, open("/tika", "GET").getResponseCode());
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http", HOST, port, path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static class TestChild implements ChildDispatcher.Child {
+        private final int port;
+        private volatile boolean available = true;
+
+        TestChild(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public int getNumTasks() {
+            return 0;
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+    }
+}
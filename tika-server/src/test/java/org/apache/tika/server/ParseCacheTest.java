@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParseCacheTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tika-parse-cache-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        ParseCache cache = new ParseCache("test", 1024, 1024, 1024, null, 0);
+        ParseContext context = new ParseContext();
+        Metadata metadata = new Metadata();
+        String key = key(cache, "text", "content", metadata, context);
+        assertEquals(key, key(cache, "text", "content", metadata, context));
+
+        assertNotEquals(key, key(cache, "html", "content", metadata, context));
+        assertNotEquals(key, key(cache, "text", "other content", metadata, context));
+
+        Metadata named = new Metadata();
+        named.set(Metadata.RESOURCE_NAME_KEY, "test.txt");
+        assertNotEquals(key, key(cache, "text", "content", named, context));
+
+        //the effective config counts, not how it was set
+        PDFParserConfig config = new PDFParserConfig();
+        context.set(PDFParserConfig.class, config);
+        String configured = key(cache, "text", "content", metadata, context);
+        assertNotEquals(key, configured);
+        PDFParserConfig other = new PDFParserConfig();
+        other.setSortByPosition(!config.getSortByPosition());
+        other.setSortByPosition(config.getSortByPosition());
+        context.set(PDFParserConfig.class, other);
+        assertEquals(configured, key(cache, "text", "content", metadata, context));
+        other.setEndPage(2);
+        assertNotEquals(configured, key(cache, "text", "content", metadata, context));
+
+        //the digest of a large document is taken from its spooled file
+        byte[] large = new byte[4096];
+        String largeKey = key(cache, "text", new String(large, UTF_8), metadata, context);
+        try (TikaInputStream tis = TikaInputStream.get(large)) {
+            assertEquals(largeKey, cache.getKey("text", tis, metadata, context));
+            //and the stream is left at its start
+            assertEquals(0, tis.getPosition());
+        }
+    }
+
+    @Test
+    public void testMemoryEviction() throws Exception {
+        ParseCache cache = new ParseCache("test", 1024, 100, 60, null, 0);
+        put(cache, "a", 40);
+        put(cache, "b", 40);
+        assertTrue(isCached(cache, "a"));
+        //b is the least recently used
+        put(cache, "c", 40);
+        assertFalse(isCached(cache, "b"));
+        assertTrue(isCached(cache, "a"));
+        assertTrue(isCached(cache, "c"));
+
+        //too large
+        put(cache, "d", 61);
+        assertFalse(isCached(cache, "d"));
+        assertTrue(isCached(cache, "a"));
+    }
+
+    @Test
+    public void testDisk() throws Exception {
+        ParseCache cache = new ParseCache("test", 1024, 50, 100, dir, 100);
+        put(cache, "a", 40);
+        put(cache, "b", 40);
+        //a only fits on disk
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        assertTrue(cache.writeTo("a", bos));
+        assertEquals(40, bos.size());
+
+        //the disk tier outlives the cache
+        cache = new ParseCache("test", 1024, 50, 100, dir, 100);
+        assertTrue(isCached(cache, "a"));
+        assertTrue(isCached(cache, "b"));
+        Files.setLastModifiedTime(dir.resolve("b"),
+                Files.getLastModifiedTime(dir.resolve("a")));
+        Thread.sleep(10);
+        assertTrue(isCached(cache, "a"));
+        //the least recently read file goes first
+        put(cache, "c", 40);
+        cache = new ParseCache("test", 1024, 50, 100, dir, 100);
+        assertTrue(isCached(cache, "a"));
+        assertFalse(isCached(cache, "b"));
+        assertTrue(isCached(cache, "c"));
+    }
+
+    private static String key(ParseCache cache, String outputType, String content,
+                              Metadata metadata, ParseContext context) throws IOException {
+        try (TikaInputStream tis = TikaInputStream.get(content.getBytes(UTF_8))) {
+            return cache.getKey(outputType, tis, metadata, context);
+        }
+    }
+
+    private static void put(ParseCache cache, String key, int length) throws IOException {
+        ParseCache.Recorder recorder = cache.record(new ByteArrayOutputStream());
+        recorder.write(new byte[length]);
+        cache.put(key, recorder);
+    }
+
+    private static boolean isCached(ParseCache cache, String key) throws IOException {
+        return cache.writeTo(key, new ByteArrayOutputStream());
+    }
+}
@@ -31,7 +31,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
@@ -53,6 +55,7 @@ import org.junit.Test;
 public class RecursiveMetadataResourceTest extends CXFTestBase {
 
     private static final String FORM_PATH = "/form";
+    private static final String STREAM_PATH = "/stream";
     private static final String META_PATH = "/rmeta";
     private static final String TEXT_PATH = "/text";
     private static final String IGNORE_PATH = "/ignore";
@@ -130,6 +133,67 @@ public class RecursiveMetadataResourceTest extends CXFTestBase {
         assertEquals("a38e6c7b38541af87148dee9634cb811", metadataList.get(10).get("X-TIKA:digest:MD5"));
     }
 
+    @Test
+    public void testStreaming() throws Exception {
+        Response response = WebClient
+                .create(endPoint + META_PATH + STREAM_PATH + TEXT_PATH)
+                .accept("application/json")
+                .put(ClassLoader
+                        .getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+
+        Reader reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        List<Metadata> metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(12, metadataList.size());
+        //the main document is streamed last, fromJson moves it to the front
+        Metadata container = metadataList.get(0);
+        assertEquals("Microsoft Office Word", container.get(OfficeOpenXMLExtended.APPLICATION));
+        assertEquals("0", container.get(AbstractRecursiveParserWrapperHandler.EMBEDDED_DEPTH));
+        assertContains("embed_0", container.get(AbstractRecursiveParserWrapperHandler.TIKA_CONTENT));
+        assertEquals("ToTextContentHandler",
+                container.get(AbstractRecursiveParserWrapperHandler.TIKA_CONTENT_HANDLER));
+
+        //same documents as the buffered list
+        response = WebClient
+                .create(endPoint + META_PATH + TEXT_PATH)
+                .accept("application/json")
+                .put(ClassLoader
+                        .getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        List<Metadata> buffered = JsonMetadataList.fromJson(reader);
+        assertEquals(embeddedPaths(buffered), embeddedPaths(metadataList));
+
+        //default handler type
+        response = WebClient
+                .create(endPoint + META_PATH + STREAM_PATH)
+                .accept("application/json")
+                .put(ClassLoader
+                        .getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(12, metadataList.size());
+        String content = metadataList.get(0).get(AbstractRecursiveParserWrapperHandler.TIKA_CONTENT).trim();
+        assertTrue(content.startsWith("<html xmlns=\"http://www.w3.org/1999/xhtml\">"));
+
+        //ignore
+        response = WebClient
+                .create(endPoint + META_PATH + STREAM_PATH + IGNORE_PATH)
+                .accept("application/json")
+                .put(ClassLoader
+                        .getSystemResourceAsStream(TEST_RECURSIVE_DOC));
+        reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(12, metadataList.size());
+        assertNull(metadataList.get(0).get(AbstractRecursiveParserWrapperHandler.TIKA_CONTENT));
+    }
+
+    private static Set<String> embeddedPaths(List<Metadata> metadataList) {
+        Set<String> paths = new HashSet<>();
+        for (Metadata metadata : metadataList) {
+            paths.add(metadata.get(AbstractRecursiveParserWrapperHandler.EMBEDDED_RESOURCE_PATH));
+        }
+        return paths;
+    }
+
     @Test
     public void testPasswordProtected() throws Exception {
         Response response = WebClient
@@ -18,6 +18,7 @@ package org.apache.tika.server;
 
 import org.junit.Test;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
@@ -37,6 +38,25 @@ public class ServerStatusTest {
         status.complete(2);
     }
 
+    @Test
+    public void testTaskStatuses() throws Exception {
+        ServerStatus status = new ServerStatus();
+        Collection<TaskStatus> statuses = status.getTaskStatuses();
+        long first = status.start(ServerStatus.TASK.PARSE, "first");
+        long second = status.start(ServerStatus.TASK.DETECT, null);
+        assertEquals(2, status.getTaskCount());
+        //the view is live, the map is a copy
+        Map<Long, TaskStatus> tasks = status.getTasks();
+        assertEquals(2, statuses.size());
+        status.complete(first);
+        assertEquals(1, statuses.size());
+        assertEquals(ServerStatus.TASK.DETECT, statuses.iterator().next().task);
+        assertEquals(2, tasks.size());
+        status.complete(second);
+        assertEquals(0, status.getTaskCount());
+        assertEquals(2, status.getFilesProcessed());
+    }
+
     @Test(timeout = 60000)
     public void testBasicMultiThreading() throws Exception {
         //make sure that synchronization is basically working
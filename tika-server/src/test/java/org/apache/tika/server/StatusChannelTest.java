@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatusChannelTest {
+
+    private Path statusFile;
+
+    @Before
+    public void setUp() throws Exception {
+        statusFile = Files.createTempFile("tika-status-channel-test-", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(statusFile);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        //one mapping per process, as in the parent and the child
+        try (StatusChannel child = new StatusChannel(statusFile);
+             StatusChannel parent = new StatusChannel(statusFile)) {
+            assertEquals(StatusChannel.LENGTH, Files.size(statusFile));
+            //nothing written yet
+            assertNull(parent.read());
+
+            child.write(1000L, ServerStatus.STATUS.OPERATING.getInt(), 2, 3L, 4L, 5L);
+            StatusChannel.Status status = parent.read();
+            assertEquals(1000L, status.timestamp);
+            assertEquals(ServerStatus.STATUS.OPERATING.getInt(), status.status);
+            assertEquals(2, status.numTasks);
+            assertEquals(3L, status.filesProcessed);
+            assertEquals(4L, status.heapUsed);
+            assertEquals(5L, status.longestTaskMillis);
+
+            child.write(2000L, ServerStatus.STATUS.TIMEOUT.getInt(), 0, 6L, 7L, 0L);
+            status = parent.read();
+            assertEquals(2000L, status.timestamp);
+            assertEquals(ServerStatus.STATUS.TIMEOUT.getInt(), status.status);
+            assertEquals(6L, status.filesProcessed);
+
+            parent.close();
+            assertNull(parent.read());
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        try (StatusChannel child = new StatusChannel(statusFile);
+             StatusChannel parent = new StatusChannel(statusFile)) {
+            //every field of an update is derived from the same value,
+            //so a torn read shows up as fields that don't match
+            final int updates = 200000;
+            Thread writer = new Thread(() -> {
+                for (long i = 1; i <= updates; i++) {
+                    child.write(i, (int) i, (int) i, i, i, i);
+                }
+            });
+            writer.start();
+            long last = 0;
+            while (last < updates) {
+                StatusChannel.Status status = parent.read();
+                if (status == null) {
+                    continue;
+                }
+                long value = status.timestamp;
+                assertEquals((int) value, status.status);
+                assertEquals((int) value, status.numTasks);
+                assertEquals(value, status.filesProcessed);
+                assertEquals(value, status.heapUsed);
+                assertEquals(value, status.longestTaskMillis);
+                assertTrue(value >= last);
+                last = value;
+            }
+            writer.join();
+        }
+    }
+}
@@ -24,14 +24,22 @@ import org.apache.cxf.attachment.AttachmentUtil;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.client.WebClient;
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
+import org.apache.cxf.jaxrs.impl.MetadataMap;
 import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.apache.tika.parser.ocr.TesseractOCRParser;
+import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.server.resource.TikaResource;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.helpers.DefaultHandler;
 
 import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import java.io.ByteArrayInputStream;
@@ -41,11 +49,17 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.apache.cxf.helpers.HttpHeaderHelper.CONTENT_ENCODING;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TikaResourceTest extends CXFTestBase {
     public static final String TEST_DOC = "test.doc";
@@ -377,6 +391,209 @@ public class TikaResourceTest extends CXFTestBase {
 
     }
 
+    @Test
+    public void testParseCache() throws Exception {
+        ParseCache parseCache = new ParseCache("test", 1024 * 1024,
+                10 * 1024 * 1024, 1024 * 1024, null, 0);
+        TikaResource.init(TikaResource.getConfig(), null, new DefaultInputStreamFactory(),
+                new ServerStatus(true), parseCache);
+
+        String parsed = putPDF("text/plain", "true");
+        assertEquals(0, parseCache.getHits());
+        assertEquals(parsed, putPDF("text/plain", "true"));
+        assertEquals(1, parseCache.getHits());
+
+        //other settings or another output type are parsed again
+        String unsorted = putPDF("text/plain", "false");
+        assertFalse(parsed.equals(unsorted));
+        String html = putPDF("text/html", "true");
+        assertContains("<div class=\"page\">", html);
+        assertEquals(1, parseCache.getHits());
+        assertEquals(unsorted, putPDF("text/plain", "false"));
+        assertEquals(html, putPDF("text/html", "true"));
+        assertEquals(3, parseCache.getHits());
+        assertEquals(3, parseCache.getMisses());
+    }
+
+    @Test
+    public void testParseCacheAdmission() throws Exception {
+        ParseCache parseCache = new ParseCache("test", 1024 * 1024,
+                10 * 1024 * 1024, 1024 * 1024, null, 0);
+        AdmissionController admission = new AdmissionController(1, 0, 0, 0);
+        TikaResource.init(TikaResource.getConfig(), null, new DefaultInputStreamFactory(),
+                new ServerStatus(true), parseCache, admission);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (AdmissionController.Permit permit = executor.submit(() -> admission.acquire(1, true))
+                .get(10, TimeUnit.SECONDS)) {
+            Response response = WebClient.create(endPoint + TIKA_PATH)
+                    .type("application/pdf")
+                    .accept("text/plain")
+                    .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+            assertEquals(429, response.getStatus());
+            //rejected before the document was read for its key
+            assertEquals(0, parseCache.getMisses());
+        } finally {
+            executor.shutdownNow();
+        }
+        putPDF("text/plain", "true");
+        assertEquals(1, parseCache.getMisses());
+        assertEquals(0, admission.getPermitsInUse());
+        assertEquals(2, admission.getAdmitted());
+    }
+
+    @Test
+    public void testRejectedStreamIsClosed() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 0, 0, 0);
+        TikaResource.init(TikaResource.getConfig(), null, new DefaultInputStreamFactory(),
+                new ServerStatus(true), null, admission);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (AdmissionController.Permit permit = executor.submit(() -> admission.acquire(1, true))
+                .get(10, TimeUnit.SECONDS)) {
+            AtomicBoolean closed = new AtomicBoolean(false);
+            InputStream is = new ByteArrayInputStream(new byte[0]) {
+                @Override
+                public void close() {
+                    closed.set(true);
+                }
+            };
+            try {
+                TikaResource.parse(new AutoDetectParser(), LoggerFactory.getLogger(TikaResourceTest.class),
+                        "/tika", is, new DefaultHandler(), new Metadata(), new ParseContext());
+                fail("should have been rejected");
+            } catch (WebApplicationException e) {
+                assertEquals(429, e.getResponse().getStatus());
+            }
+            assertTrue(closed.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedParsers() throws Exception {
+        ParserGraph graph = new ParserGraph(TikaResource.getConfig(), null);
+        TikaResource.init(TikaResource.getConfig(), null, new DefaultInputStreamFactory(),
+                new ServerStatus(true), null, null, graph);
+
+        MultivaluedMap<String, String> headers = new MetadataMap<>();
+        assertSame(graph.getParser(false), TikaResource.createParser(headers));
+        headers.putSingle("Content-Type", "application/pdf");
+        assertSame(graph.getParser(true), TikaResource.createParser(headers));
+
+        //the settings of one request don't stick to the shared parsers
+        String sorted = putPDF("text/plain", "true");
+        String unsorted = putPDF("text/plain", "false");
+        assertFalse(sorted.equals(unsorted));
+        assertEquals(sorted, putPDF("text/plain", "true"));
+        assertEquals(unsorted, putPDF("text/plain", "false"));
+
+        //the configs of the same headers are resolved once
+        headers.putSingle(TikaResource.X_TIKA_PDF_HEADER_PREFIX + "sortByPosition", "false");
+        ParseContext context = new ParseContext();
+        TikaResource.fillParseContext(context, headers, null);
+        ParseContext other = new ParseContext();
+        TikaResource.fillParseContext(other, headers, null);
+        assertSame(context.get(PDFParserConfig.class), other.get(PDFParserConfig.class));
+        assertFalse(context.get(PDFParserConfig.class).getSortByPosition());
+
+        //...whatever the order and the case of their names
+        MultivaluedMap<String, String> ordered = new MetadataMap<>();
+        ordered.putSingle(TikaResource.X_TIKA_OCR_HEADER_PREFIX + "language", "fra");
+        ordered.putSingle(TikaResource.X_TIKA_PDF_HEADER_PREFIX + "sortByPosition", "false");
+        MultivaluedMap<String, String> reordered = new MetadataMap<>();
+        reordered.putSingle(TikaResource.X_TIKA_PDF_HEADER_PREFIX + "SortByPosition", "false");
+        reordered.putSingle(TikaResource.X_TIKA_OCR_HEADER_PREFIX + "Language", "fra");
+        context = new ParseContext();
+        TikaResource.fillParseContext(context, ordered, null);
+        other = new ParseContext();
+        TikaResource.fillParseContext(other, reordered, null);
+        assertSame(context.get(PDFParserConfig.class), other.get(PDFParserConfig.class));
+        assertSame(context.get(TesseractOCRConfig.class), other.get(TesseractOCRConfig.class));
+        assertEquals("fra", other.get(TesseractOCRConfig.class).getLanguage());
+
+        //the content type of the request is only trusted when it is sent
+        Response response = WebClient.create(endPoint + TIKA_PATH)
+                .type("text/plain")
+                .accept("text/plain")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        assertNotFound("Left column line 1",
+                getStringFromInputStream((InputStream) response.getEntity()));
+        response = WebClient.create(endPoint + TIKA_PATH)
+                .accept("text/plain")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        assertContains("Left column line 1",
+                getStringFromInputStream((InputStream) response.getEntity()));
+
+        //invalid headers are still rejected
+        response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept("text/plain")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX + "StartPage", "0")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        assertEquals(400, response.getStatus());
+    }
+
+    private String putPDF(String accept, String sortByPosition) throws Exception {
+        Response response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept(accept)
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"sortByPosition", sortByPosition)
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        assertEquals(200, response.getStatus());
+        return getStringFromInputStream((InputStream) response.getEntity());
+    }
+
+    @Test
+    public void testPDFPageRange() throws Exception {
+        //an empty range reports the page count without extracting any page
+        Response response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept("text/html")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"EndPage", "0")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        String responseMsg = getStringFromInputStream((InputStream) response
+                .getEntity());
+        assertContains("<meta name=\"xmpTPg:NPages\" content=\"1\"", responseMsg);
+        assertNotFound("<div class=\"page\">", responseMsg);
+
+        response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept("text/plain")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"StartPage", "1")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"EndPage", "1")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        responseMsg = getStringFromInputStream((InputStream) response
+                .getEntity());
+        assertContains("Left column line 1", responseMsg);
+
+        response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept("text/plain")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"StartPage", "0")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testPDFLineGeometryFormat() throws Exception {
+        Response response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept("text/html")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"LineGeometryFormat", "json")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        String responseMsg = getStringFromInputStream((InputStream) response
+                .getEntity());
+        assertContains("<p data-geometry=\"[", responseMsg);
+        assertNotFound("style=", responseMsg);
+
+        response = WebClient.create(endPoint + TIKA_PATH)
+                .type("application/pdf")
+                .accept("text/html")
+                .header(TikaResource.X_TIKA_PDF_HEADER_PREFIX+"LineGeometryFormat", "non-sense-value")
+                .put(ClassLoader.getSystemResourceAsStream("testPDFTwoTextBoxes.pdf"));
+        assertEquals(400, response.getStatus());
+    }
+
 
     @Test
     public void testExtractTextAcceptPlainText() throws Exception {
@@ -41,6 +41,7 @@ import java.nio.file.StandardCopyOption;
 import java.security.Permission;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeoutException;
@@ -48,6 +49,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TikaServerIntegrationTest extends TikaTest {
 
@@ -289,6 +291,104 @@ public class TikaServerIntegrationTest extends TikaTest {
         }
     }
 
+    @Test
+    public void testMultipleChildren() throws Exception {
+
+        Thread serverThread = new Thread() {
+            @Override
+            public void run() {
+                TikaServerCli.main(
+                        new String[]{
+                                "-spawnChild", "-numChildren", "2",
+                                "-p", INTEGRATION_TEST_PORT,
+                                "-pingPulseMillis", "100",
+                                "-tmpFilePrefix", "tika-server-multiple"
+                        });
+            }
+        };
+        serverThread.start();
+        try {
+            awaitServerStartup();
+            //the children listen on the following ports
+            int port = Integer.parseInt(INTEGRATION_TEST_PORT);
+            awaitServerStartup("http://localhost:" + (port + 1));
+            awaitServerStartup("http://localhost:" + (port + 2));
+
+            //jobs are spread over the children, and their results
+            //are fetched from the child that runs them
+            List<String> locations = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Response response = WebClient.create(endPoint + "/async/text")
+                        .type("application/msword")
+                        .put(ClassLoader.getSystemResourceAsStream(TikaResourceTest.TEST_DOC));
+                assertEquals(202, response.getStatus());
+                assertTrue(response.getLocation().toString().startsWith(endPoint + "/async/"));
+                locations.add(response.getLocation().toString());
+            }
+            for (String location : locations) {
+                Response response = WebClient.create(location + "/result")
+                        .query("wait", 30).get();
+                assertEquals(200, response.getStatus());
+            }
+
+            try {
+                WebClient
+                        .create(endPoint + META_PATH)
+                        .accept("application/json")
+                        .put(ClassLoader
+                                .getSystemResourceAsStream(TEST_SYSTEM_EXIT));
+            } catch (Exception e) {
+                //sys exit causes catchable problems for the client
+            }
+            //the other child serves while the first one restarts
+            testBaseline();
+        } finally {
+            serverThread.interrupt();
+            serverThread.join(30000);
+        }
+    }
+
+    @Test
+    public void testStandbyChild() throws Exception {
+
+        Thread serverThread = new Thread() {
+            @Override
+            public void run() {
+                TikaServerCli.main(
+                        new String[]{
+                                "-spawnChild", "-standbyChild",
+                                "-p", INTEGRATION_TEST_PORT,
+                                "-pingPulseMillis", "100",
+                                "-tmpFilePrefix", "tika-server-standby"
+                        });
+            }
+        };
+        serverThread.start();
+        try {
+            awaitServerStartup();
+            //the standby listens on the port after the child's
+            int port = Integer.parseInt(INTEGRATION_TEST_PORT);
+            awaitServerStartup("http://localhost:" + (port + 2));
+
+            try {
+                WebClient
+                        .create(endPoint + META_PATH)
+                        .accept("application/json")
+                        .put(ClassLoader
+                                .getSystemResourceAsStream(TEST_SYSTEM_EXIT));
+            } catch (Exception e) {
+                //sys exit causes catchable problems for the client
+            }
+            testBaseline();
+            //the next standby is started on the failed child's port
+            awaitServerStartup("http://localhost:" + (port + 1));
+            testBaseline();
+        } finally {
+            serverThread.interrupt();
+            serverThread.join(30000);
+        }
+    }
+
     @Test
     public void testBadJVMArgs() throws Exception {
         final AtomicInteger i = new AtomicInteger();
@@ -426,6 +526,10 @@ public class TikaServerIntegrationTest extends TikaTest {
     }
 
     private void awaitServerStartup() throws Exception {
+        awaitServerStartup(endPoint);
+    }
+
+    private void awaitServerStartup(String endPoint) throws Exception {
         Instant started = Instant.now();
         long elapsed = Duration.between(started, Instant.now()).toMillis();
         WebClient client = WebClient.create(endPoint+"/tika").accept("text/plain");